@@ -42,6 +42,7 @@ import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.PersistentSearch;
 import org.opends.server.core.PersistentSearch.CancellationCallback;
+import org.opends.server.core.PersistentSearchDispatcher;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.core.ServerContext;
 import org.opends.server.monitors.BackendMonitor;
@@ -102,6 +103,9 @@ public abstract class Backend<C extends Configuration>
   /** The set of persistent searches registered with this backend. */
   private final ConcurrentLinkedQueue<PersistentSearch> persistentSearches = new ConcurrentLinkedQueue<>();
 
+  /** Dispatches the changes made to the entries of this backend to the persistent searches. */
+  private final PersistentSearchDispatcher persistentSearchDispatcher = new PersistentSearchDispatcher();
+
   /**
    * Configure this backend based on the information in the provided configuration.
    * When the method returns, the backend will have been configured (ready to be opened) but still unable
@@ -582,7 +586,12 @@ public abstract class Backend<C extends Configuration>
      */
     BACKUP,
     /** Indicates whether this backend can restore a backup. */
-    RESTORE;
+    RESTORE,
+    /**
+     * Indicates whether this backend can export its entries as binary records rather than as LDIF,
+     * so that they can be imported without being parsed.
+     */
+    BINARY_ENTRY_EXPORT;
   }
 
   /**
@@ -803,6 +812,7 @@ public abstract class Backend<C extends Configuration>
   public void registerPersistentSearch(PersistentSearch persistentSearch) throws DirectoryException
   {
     persistentSearches.add(persistentSearch);
+    persistentSearchDispatcher.register(persistentSearch);
 
     persistentSearch.registerCancellationCallback(new CancellationCallback()
     {
@@ -810,6 +820,7 @@ public abstract class Backend<C extends Configuration>
       public void persistentSearchCancelled(PersistentSearch psearch)
       {
         persistentSearches.remove(psearch);
+        persistentSearchDispatcher.deregister(psearch);
       }
     });
   }
@@ -826,6 +837,20 @@ public abstract class Backend<C extends Configuration>
     return persistentSearches;
   }
 
+  /**
+   * Returns the dispatcher which notifies the persistent searches registered
+   * with this backend of the changes made to its entries. Only the persistent
+   * searches which may return a change are evaluated, and their clients are
+   * notified asynchronously.
+   *
+   * @return the dispatcher of the changes made to the entries of this backend
+   *         to the persistent searches
+   */
+  public PersistentSearchDispatcher getPersistentSearchDispatcher()
+  {
+    return persistentSearchDispatcher;
+  }
+
   /**
    * Sets the backend monitor for this backend.
    *
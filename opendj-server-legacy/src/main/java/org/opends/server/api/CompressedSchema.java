@@ -200,18 +200,7 @@ public class CompressedSchema
   public final Attribute decodeAttribute(final ByteSequenceReader reader)
       throws DirectoryException
   {
-    // First decode the encoded attribute description id.
-    final int id = decodeId(reader);
-
-    // Before returning the attribute, make sure that the attribute type is not stale.
-    final Mappings mappings = reloadMappingsIfSchemaChanged(false);
-    final AttributeDescription ad = mappings.adDecodeMap.get(id);
-    if (ad == null)
-    {
-      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-          ERR_COMPRESSEDSCHEMA_UNRECOGNIZED_AD_TOKEN.get(id));
-    }
-
+    final AttributeDescription ad = decodeAttributeDescription(reader);
     AttributeType attrType = ad.getAttributeType();
 
     // Determine the number of values for the attribute.
@@ -235,6 +224,45 @@ public class CompressedSchema
     }
   }
 
+  /**
+   * Decodes the description of the attribute at the current position and skips over its values,
+   * without decoding them. The reader is left at the position of the next attribute.
+   *
+   * @param reader
+   *          The byte string reader containing the encoded entry.
+   * @return The description of the skipped attribute.
+   * @throws DirectoryException
+   *           If the attribute description could not be decoded properly for some reason.
+   */
+  public final AttributeDescription skipAttribute(final ByteSequenceReader reader)
+      throws DirectoryException
+  {
+    final AttributeDescription ad = decodeAttributeDescription(reader);
+    final int numValues = reader.readBERLength();
+    for (int i = 0; i < numValues; i++)
+    {
+      reader.skip(reader.readBERLength());
+    }
+    return ad;
+  }
+
+  private AttributeDescription decodeAttributeDescription(final ByteSequenceReader reader)
+      throws DirectoryException
+  {
+    // First decode the encoded attribute description id.
+    final int id = decodeId(reader);
+
+    // Before returning the attribute description, make sure that the attribute type is not stale.
+    final Mappings mappings = reloadMappingsIfSchemaChanged(false);
+    final AttributeDescription ad = mappings.adDecodeMap.get(id);
+    if (ad == null)
+    {
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+          ERR_COMPRESSEDSCHEMA_UNRECOGNIZED_AD_TOKEN.get(id));
+    }
+    return ad;
+  }
+
   private ByteString readValue(final ByteSequenceReader reader)
   {
     return reader.readByteSequence(reader.readBERLength()).toByteString();
@@ -27,6 +27,7 @@ import org.opends.server.core.ServerContext;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.opends.server.types.DirectoryException;
 import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DN.CompactDn;
 import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
 import org.opends.server.types.MemberList;
@@ -437,6 +438,26 @@ public abstract class Group<T extends GroupImplementationCfg>
 
 
 
+  /**
+   * Retrieves the DNs explicitly listed as members of this group,
+   * without resolving nested groups.  This is used by the group
+   * manager to maintain its reverse membership index.  Group
+   * implementations whose membership is not defined by an explicit
+   * list of DNs (e.g., dynamic groups) should not override this
+   * method: membership in such groups is evaluated on a per-entry
+   * basis instead.
+   *
+   * @return  The DNs explicitly listed as members of this group, or
+   *          {@code null} if this group does not list its members
+   *          explicitly.
+   */
+  public Iterable<CompactDn> getExplicitMemberDNs()
+  {
+    return null;
+  }
+
+
+
   /**
    * Indicates whether it is possible to alter the member list for
    * this group (e.g., in order to add members to the group or remove
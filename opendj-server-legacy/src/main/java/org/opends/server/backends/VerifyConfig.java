@@ -33,6 +33,10 @@ public class VerifyConfig
   private ArrayList<String> completeList = new ArrayList<>();
   /** The names of indexes to be verified for cleanliness. */
   private ArrayList<String> cleanList = new ArrayList<>();
+  /** The number of threads verifying the indexes. */
+  private int threadCount = 1;
+  /** The percentage of the records to be verified. */
+  private int samplingPercentage = 100;
 
   /**
    * Get the base DN to be verified.
@@ -89,4 +93,46 @@ public class VerifyConfig
     Reject.ifNull(index);
     cleanList.add(index);
   }
+
+  /**
+   * Get the number of threads verifying the indexes.
+   * @return The number of threads verifying the indexes, or zero to use as many threads as
+   *         available processors.
+   */
+  public int getThreadCount()
+  {
+    return threadCount;
+  }
+
+  /**
+   * Set the number of threads verifying the indexes.
+   * @param threadCount The number of threads verifying the indexes, or zero to use as many threads
+   *                    as available processors.
+   */
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Get the percentage of the records to be verified.
+   * @return The percentage of the records to be verified.
+   */
+  public int getSamplingPercentage()
+  {
+    return samplingPercentage;
+  }
+
+  /**
+   * Set the percentage of the records to be verified. The records are randomly sampled, so that
+   * verifying a small percentage of the records quickly estimates the number of errors in the
+   * indexes.
+   * @param samplingPercentage The percentage of the records to be verified, which must be positive.
+   *                           All the records are verified when it is 100 or more.
+   */
+  public void setSamplingPercentage(int samplingPercentage)
+  {
+    Reject.ifFalse(samplingPercentage > 0, "samplingPercentage must be a positive integer");
+    this.samplingPercentage = Math.min(samplingPercentage, 100);
+  }
 }
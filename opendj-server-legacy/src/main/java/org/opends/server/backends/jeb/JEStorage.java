@@ -64,9 +64,11 @@ import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.SequentialCursor;
 import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.backends.pluggable.spi.StoragePreloader;
 import org.opends.server.backends.pluggable.spi.StorageStatus;
 import org.opends.server.backends.pluggable.spi.StorageUtils;
 import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.TreePreloadStats;
 import org.opends.server.backends.pluggable.spi.UpdateFunction;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
@@ -90,6 +92,7 @@ import com.sleepycat.je.Durability;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
 import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.StatsConfig;
 import com.sleepycat.je.Transaction;
 import com.sleepycat.je.TransactionConfig;
 
@@ -1089,6 +1092,27 @@ public final class JEStorage implements Storage, Backupable, ConfigurationChange
     }
   }
 
+  @Override
+  public List<TreePreloadStats> preload(List<TreeName> treeNames, long timeLimit) throws StorageRuntimeException
+  {
+    return new StoragePreloader(this)
+    {
+      @Override
+      protected boolean isCacheFull()
+      {
+        try
+        {
+          return isFull(env.getStats(new StatsConfig().setFast(true)).getCacheTotalBytes(),
+              env.getConfig().getCacheSize());
+        }
+        catch (DatabaseException e)
+        {
+          throw new StorageRuntimeException(e);
+        }
+      }
+    }.preload(treeNames, timeLimit);
+  }
+
   @Override
   public boolean isConfigurationChangeAcceptable(JEBackendCfg newCfg,
       List<LocalizableMessage> unacceptableReasons)
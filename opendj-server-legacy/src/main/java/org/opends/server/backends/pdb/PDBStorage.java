@@ -61,9 +61,11 @@ import org.opends.server.backends.pluggable.spi.SequentialCursor;
 import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageInUseException;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.backends.pluggable.spi.StoragePreloader;
 import org.opends.server.backends.pluggable.spi.StorageStatus;
 import org.opends.server.backends.pluggable.spi.StorageUtils;
 import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.TreePreloadStats;
 import org.opends.server.backends.pluggable.spi.UpdateFunction;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
@@ -81,6 +83,7 @@ import com.persistit.Configuration;
 import com.persistit.Configuration.BufferPoolConfiguration;
 import com.persistit.Exchange;
 import com.persistit.Key;
+import com.persistit.Management.BufferPoolInfo;
 import com.persistit.Persistit;
 import com.persistit.Transaction;
 import com.persistit.Value;
@@ -1143,6 +1146,33 @@ public final class PDBStorage implements Storage, Backupable, ConfigurationChang
     }
   }
 
+  @Override
+  public List<TreePreloadStats> preload(List<TreeName> treeNames, long timeLimit) throws StorageRuntimeException
+  {
+    return new StoragePreloader(this)
+    {
+      @Override
+      protected boolean isCacheFull()
+      {
+        try
+        {
+          for (BufferPoolInfo bufferPoolInfo : db.getManagement().getBufferPoolInfoArray())
+          {
+            if (bufferPoolInfo.getBufferSize() == BUFFER_SIZE)
+            {
+              return isFull(bufferPoolInfo.getValidPageCount(), bufferPoolInfo.getBufferCount());
+            }
+          }
+          return false;
+        }
+        catch (RemoteException e)
+        {
+          throw new StorageRuntimeException(e);
+        }
+      }
+    }.preload(treeNames, timeLimit);
+  }
+
   /**
    * TODO: it would be nice to use the low-level key/value APIs. They seem quite
    * inefficient at the moment for simple byte arrays.
@@ -103,9 +103,10 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
     private final Indexer indexer;
 
     private MatchingRuleIndex(EntryContainer entryContainer, AttributeType attributeType, State state, Indexer indexer,
-        int indexEntryLimit)
+        int indexEntryLimit, boolean bigIndexKeysEnabled)
     {
-      super(getIndexName(entryContainer, attributeType, indexer.getIndexID()), state, indexEntryLimit, entryContainer);
+      super(getIndexName(entryContainer, attributeType, indexer.getIndexID()), state, indexEntryLimit,
+          bigIndexKeysEnabled, entryContainer);
       this.attributeType = attributeType;
       this.indexer = indexer;
     }
@@ -273,7 +274,8 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
        throw new ConfigException(ERR_CONFIG_INDEX_TYPE_NEEDS_MATCHING_RULE.get(attributeType, indexType));
       }
     }
-    return buildIndexesForIndexers(entryContainer, attributeType, state, indexEntryLimit, indexers);
+    return buildIndexesForIndexers(
+        entryContainer, attributeType, state, indexEntryLimit, config.isBigIndexKeysEnabled(), indexers);
   }
 
   private static void throwIfNoMatchingRule(AttributeType attributeType, IndexType indexType, MatchingRule rule)
@@ -286,7 +288,8 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
   }
 
   private static Map<String, MatchingRuleIndex> buildIndexesForIndexers(EntryContainer entryContainer,
-      AttributeType attributeType, State state, int indexEntryLimit, Collection<? extends Indexer> indexers)
+      AttributeType attributeType, State state, int indexEntryLimit, boolean bigIndexKeysEnabled,
+      Collection<? extends Indexer> indexers)
   {
     final Map<String, MatchingRuleIndex> indexes = new HashMap<>();
     for (Indexer indexer : indexers)
@@ -294,7 +297,8 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
       final String indexID = indexer.getIndexID();
       if (!indexes.containsKey(indexID))
       {
-        indexes.put(indexID, new MatchingRuleIndex(entryContainer, attributeType, state, indexer, indexEntryLimit));
+        indexes.put(indexID,
+            new MatchingRuleIndex(entryContainer, attributeType, state, indexer, indexEntryLimit, bigIndexKeysEnabled));
       }
     }
     return indexes;
@@ -837,6 +841,7 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
       for (Index updatedIndex : updatedIndexes.values())
       {
         updateIndex(updatedIndex, newConfiguration.getIndexEntryLimit(), ccr);
+        updateBigIndexKeys(updatedIndex, newConfiguration.isBigIndexKeysEnabled(), ccr);
       }
     }
     catch (Exception e)
@@ -868,6 +873,15 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
     }
   }
 
+  private static void updateBigIndexKeys(Index updatedIndex, boolean bigIndexKeysEnabled, ConfigChangeResult ccr)
+  {
+    if (updatedIndex.setBigIndexKeysEnabled(bigIndexKeysEnabled))
+    {
+      ccr.setAdminActionRequired(true);
+      ccr.addMessage(NOTE_CONFIG_BIG_INDEX_KEYS_REQUIRES_REBUILD.get(updatedIndex.getName()));
+    }
+  }
+
   private static void deleteIndex(WriteableTransaction txn, EntryContainer entryContainer, Index index)
   {
     entryContainer.exclusiveLock.lock();
@@ -914,6 +928,41 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
     return indexIdToIndexes;
   }
 
+  /**
+   * Returns the index whose keys are the attribute values normalized by the ordering matching rule of the
+   * attribute type, and sorted accordingly.
+   *
+   * @return the ordering index, or {@code null} if the attribute is not indexed for ordering
+   */
+  MatchingRuleIndex getOrderingIndex()
+  {
+    final MatchingRule rule = getAttributeType().getOrderingMatchingRule();
+    if (rule != null && config.getIndexType().contains(IndexType.ORDERING))
+    {
+      for (Indexer indexer : rule.createIndexers(indexingOptions))
+      {
+        final MatchingRuleIndex index = indexIdToIndexes.get(indexer.getIndexID());
+        if (index != null)
+        {
+          return index;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the index of the entries having at least one value for the attribute.
+   *
+   * @return the presence index, or {@code null} if the attribute is not indexed for presence
+   */
+  MatchingRuleIndex getPresenceIndex()
+  {
+    return config.getIndexType().contains(IndexType.PRESENCE)
+        ? indexIdToIndexes.get(PRESENCE_INDEXER.getIndexID())
+        : null;
+  }
+
   /**
    * Retrieve the entry IDs that might match an extensible filter.
    *
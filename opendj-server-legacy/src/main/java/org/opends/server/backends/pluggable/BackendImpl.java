@@ -289,7 +289,7 @@ public abstract class BackendImpl<C extends PluggableBackendCfg> extends Backend
     case RESTORE:
       // Responsibility of the underlying storage.
       return storage.supportsBackupAndRestore();
-    default: // INDEXING, LDIF_EXPORT, LDIF_IMPORT
+    default: // INDEXING, LDIF_EXPORT, LDIF_IMPORT, BINARY_ENTRY_EXPORT
       // Responsibility of this pluggable backend.
       return true;
     }
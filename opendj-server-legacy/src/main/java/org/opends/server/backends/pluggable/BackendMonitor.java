@@ -28,6 +28,7 @@ import org.forgerock.i18n.LocalizableMessage;
 import org.opends.server.admin.std.server.MonitorProviderCfg;
 import org.opends.server.api.MonitorData;
 import org.opends.server.api.MonitorProvider;
+import org.opends.server.backends.pluggable.spi.TreePreloadStats;
 import org.opends.server.types.SearchFilter;
 import org.opends.server.util.TimeThread;
 
@@ -110,6 +111,12 @@ class BackendMonitor extends MonitorProvider<MonitorProviderCfg>
       monitorAttrs.add("need-reindex", needReindexValues);
     }
 
+    Collection<String> preloadValues = createPreloadValues();
+    if (!preloadValues.isEmpty())
+    {
+      monitorAttrs.add("preloaded-trees", preloadValues);
+    }
+
     if (filterUseEnabled)
     {
       monitorAttrs.add("filter-use-startTime", startTimeStamp);
@@ -137,6 +144,16 @@ class BackendMonitor extends MonitorProvider<MonitorProviderCfg>
     return values;
   }
 
+  private Collection<String> createPreloadValues()
+  {
+    Collection<String> values = new ArrayList<>();
+    for (TreePreloadStats stats : rootContainer.getPreloadStats())
+    {
+      values.add(stats.toString());
+    }
+    return values;
+  }
+
   private List<String> createFilterUseValues()
   {
     List<String> values = new ArrayList<>();
@@ -0,0 +1,270 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+/**
+ * Trains a deflate dictionary from a sample of encoded entries.
+ * <p>
+ * Deflate can reference the content of a preset dictionary as if it preceded the data to
+ * compress. The trainer selects the byte segments which are shared by many of the sampled
+ * entries: the object class sets, attribute descriptions and attribute values common to most
+ * entries, or the suffix of their DNs. Segments which save the most bytes are stored at the end
+ * of the dictionary, where they are the cheapest to reference.
+ * <p>
+ * This class is not thread safe.
+ */
+final class CompressionDictionaryTrainer
+{
+  /** The maximum size of a deflate dictionary, which is the size of the deflate window. */
+  static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+  /** The length of the byte sequences used to find the segments shared by the samples. */
+  private static final int GRAM_LENGTH = 8;
+
+  /** A segment is selected if it is contained in at least this fraction of the samples. */
+  private static final int MIN_SAMPLE_RATIO = 20;
+
+  /** Bounds the memory used for training, which is proportional to the size of the samples. */
+  private static final int MAX_SAMPLES_SIZE = 512 * 1024;
+
+  private final int maxSamples;
+  private final List<ByteString> samples = new ArrayList<>();
+  private int samplesSize;
+
+  /**
+   * Creates a new trainer.
+   *
+   * @param maxSamples
+   *          The number of samples to collect before training the dictionary.
+   */
+  CompressionDictionaryTrainer(int maxSamples)
+  {
+    this.maxSamples = maxSamples;
+  }
+
+  /**
+   * Adds a sample to train the dictionary from.
+   *
+   * @param sample
+   *          The encoded entry to add as a sample.
+   * @return {@code true} if enough samples have been collected to train the dictionary
+   */
+  boolean addSample(ByteSequence sample)
+  {
+    if (!isComplete())
+    {
+      samples.add(sample.toByteString());
+      samplesSize += sample.length();
+    }
+    return isComplete();
+  }
+
+  /**
+   * Returns whether enough samples have been collected to train the dictionary.
+   *
+   * @return {@code true} if enough samples have been collected
+   */
+  boolean isComplete()
+  {
+    return samples.size() >= maxSamples || samplesSize >= MAX_SAMPLES_SIZE;
+  }
+
+  /**
+   * Trains a dictionary from the samples collected so far.
+   *
+   * @param maxSize
+   *          The maximum size of the dictionary.
+   * @return the dictionary, which is empty if the samples do not share any content
+   */
+  byte[] train(int maxSize)
+  {
+    final int minSamples = Math.max(2, samples.size() / MIN_SAMPLE_RATIO);
+    final Set<Long> sharedGrams = getSharedGrams(minSamples);
+
+    // Count the number of samples containing each maximal run of shared grams.
+    final Map<ByteString, int[]> segmentCounts = new HashMap<>();
+    for (ByteString sample : samples)
+    {
+      final Set<ByteString> sampleSegments = new HashSet<>();
+      int runStart = -1;
+      for (int i = 0; i <= sample.length() - GRAM_LENGTH; i++)
+      {
+        final boolean shared = sharedGrams.contains(gramAt(sample, i));
+        if (shared && runStart < 0)
+        {
+          runStart = i;
+        }
+        else if (!shared && runStart >= 0)
+        {
+          sampleSegments.add(sample.subSequence(runStart, i - 1 + GRAM_LENGTH));
+          runStart = -1;
+        }
+      }
+      if (runStart >= 0)
+      {
+        sampleSegments.add(sample.subSequence(runStart, sample.length()));
+      }
+      for (ByteString segment : sampleSegments)
+      {
+        final int[] count = segmentCounts.get(segment);
+        if (count != null)
+        {
+          count[0]++;
+        }
+        else
+        {
+          segmentCounts.put(segment, new int[] { 1 });
+        }
+      }
+    }
+    return buildDictionary(segmentCounts, minSamples, maxSize);
+  }
+
+  private Set<Long> getSharedGrams(int minSamples)
+  {
+    final Map<Long, int[]> gramCounts = new HashMap<>();
+    for (ByteString sample : samples)
+    {
+      final Set<Long> sampleGrams = new HashSet<>();
+      for (int i = 0; i <= sample.length() - GRAM_LENGTH; i++)
+      {
+        sampleGrams.add(gramAt(sample, i));
+      }
+      for (Long gram : sampleGrams)
+      {
+        final int[] count = gramCounts.get(gram);
+        if (count != null)
+        {
+          count[0]++;
+        }
+        else
+        {
+          gramCounts.put(gram, new int[] { 1 });
+        }
+      }
+    }
+
+    final Set<Long> sharedGrams = new HashSet<>();
+    for (Map.Entry<Long, int[]> gramCount : gramCounts.entrySet())
+    {
+      if (gramCount.getValue()[0] >= minSamples)
+      {
+        sharedGrams.add(gramCount.getKey());
+      }
+    }
+    return sharedGrams;
+  }
+
+  private static long gramAt(ByteSequence sample, int position)
+  {
+    long gram = 0;
+    for (int i = position; i < position + GRAM_LENGTH; i++)
+    {
+      gram = (gram << 8) | (sample.byteAt(i) & 0xFF);
+    }
+    return gram;
+  }
+
+  private static byte[] buildDictionary(Map<ByteString, int[]> segmentCounts, int minSamples, int maxSize)
+  {
+    final List<Map.Entry<ByteString, int[]>> segments = new ArrayList<>();
+    for (Map.Entry<ByteString, int[]> segmentCount : segmentCounts.entrySet())
+    {
+      if (segmentCount.getValue()[0] >= minSamples)
+      {
+        segments.add(segmentCount);
+      }
+    }
+    // Sort by decreasing number of bytes saved.
+    Collections.sort(segments, new Comparator<Map.Entry<ByteString, int[]>>()
+    {
+      @Override
+      public int compare(Map.Entry<ByteString, int[]> e1, Map.Entry<ByteString, int[]> e2)
+      {
+        final long score1 = (long) e1.getValue()[0] * e1.getKey().length();
+        final long score2 = (long) e2.getValue()[0] * e2.getKey().length();
+        return score1 != score2 ? Long.compare(score2, score1) : e1.getKey().compareTo(e2.getKey());
+      }
+    });
+
+    final List<ByteString> selected = new ArrayList<>();
+    int size = 0;
+    for (Map.Entry<ByteString, int[]> segment : segments)
+    {
+      final ByteString bytes = segment.getKey();
+      if (size + bytes.length() > maxSize)
+      {
+        continue;
+      }
+      if (!isContainedInAny(bytes, selected))
+      {
+        selected.add(bytes);
+        size += bytes.length();
+      }
+    }
+
+    // The most valuable segments are the closest to the data to compress.
+    final ByteStringBuilder dictionary = new ByteStringBuilder(size);
+    for (int i = selected.size() - 1; i >= 0; i--)
+    {
+      dictionary.appendBytes(selected.get(i));
+    }
+    return dictionary.toByteArray();
+  }
+
+  private static boolean isContainedInAny(ByteString segment, List<ByteString> selected)
+  {
+    for (ByteString other : selected)
+    {
+      if (indexOf(other, segment) >= 0)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int indexOf(ByteString sequence, ByteString subSequence)
+  {
+    final int last = sequence.length() - subSequence.length();
+    for (int i = 0; i <= last; i++)
+    {
+      int j = 0;
+      while (j < subSequence.length() && sequence.byteAt(i + j) == subSequence.byteAt(j))
+      {
+        j++;
+      }
+      if (j == subSequence.length())
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
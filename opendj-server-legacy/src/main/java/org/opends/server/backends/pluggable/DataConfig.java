@@ -29,6 +29,9 @@ final class DataConfig
   /** Indicates whether data should be compressed before writing to the storage. */
   private final boolean compressed;
 
+  /** Indicates whether data should be compressed against a trained dictionary. */
+  private final boolean compressedWithDictionary;
+
   /** The configuration to use when encoding entries in the tree. */
   private final EntryEncodeConfig encodeConfig;
 
@@ -42,8 +45,26 @@ final class DataConfig
    * be {@code null} if compactEncoding is {@code true}.
    */
   DataConfig(boolean compressed, boolean compactEncoding, CompressedSchema compressedSchema)
+  {
+    this(compressed, false, compactEncoding, compressedSchema);
+  }
+
+  /**
+   * Construct a new DataConfig object with the specified settings.
+   *
+   * @param compressed true if data should be compressed, false if not.
+   * @param compressedWithDictionary true if data should be compressed against
+   * a dictionary trained from a sample of the data, false if not.
+   * @param compactEncoding true if data should be encoded in compact form,
+   * false if not.
+   * @param compressedSchema the compressed schema manager to use.  It must not
+   * be {@code null} if compactEncoding is {@code true}.
+   */
+  DataConfig(boolean compressed, boolean compressedWithDictionary, boolean compactEncoding,
+      CompressedSchema compressedSchema)
   {
     this.compressed = compressed;
+    this.compressedWithDictionary = compressed && compressedWithDictionary;
 
     if (compressedSchema == null)
     {
@@ -66,6 +87,16 @@ final class DataConfig
     return compressed;
   }
 
+  /**
+   * Determine whether data should be compressed against a dictionary trained
+   * from a sample of the data.
+   * @return true if data should be compressed against a dictionary.
+   */
+  boolean isCompressedWithDictionary()
+  {
+    return compressedWithDictionary;
+  }
+
   /**
    * Get the EntryEncodeConfig object in use by this configuration.
    * @return the EntryEncodeConfig object in use by this configuration.
@@ -85,6 +116,8 @@ final class DataConfig
     final StringBuilder builder = new StringBuilder();
     builder.append("DataConfig(compressed=");
     builder.append(compressed);
+    builder.append(", compressedWithDictionary=");
+    builder.append(compressedWithDictionary);
     builder.append(", ");
     encodeConfig.toString(builder);
     builder.append(")");
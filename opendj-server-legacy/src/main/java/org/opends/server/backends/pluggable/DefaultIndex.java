@@ -17,20 +17,28 @@
 package org.opends.server.backends.pluggable;
 
 import static org.forgerock.util.Reject.*;
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.State.IndexFlag.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteSequenceReader;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.util.promise.NeverThrowsException;
 import org.opends.server.backends.pluggable.CursorTransformer.ValueTransformer;
 import org.opends.server.backends.pluggable.EntryIDSet.EntryIDSetCodec;
 import org.opends.server.backends.pluggable.State.IndexFlag;
 import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Importer;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
@@ -41,15 +49,33 @@ import org.opends.server.backends.pluggable.spi.WriteableTransaction;
  * Represents an index implemented by a tree in which each key maps to a set of entry IDs. The key
  * is a byte array, and is constructed from some normalized form of an attribute value (or fragment
  * of a value) appearing in the entry.
+ * <p>
+ * When big index keys are enabled, the entry IDs of a key exceeding the index entry limit are split
+ * into segments of at most index entry limit entry IDs, stored in a companion tree. The record of
+ * such a big key only holds the lower bounds of its segments, so that adding or removing an entry
+ * only rewrites the segment holding its entry ID.
  */
 class DefaultIndex extends AbstractTree implements Index
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** Suffix of the name of the tree holding the segments of the big keys of an index. */
+  static final String SEGMENTS_TREE_SUFFIX = ".segments";
+
+  /**
+   * First byte of the record of a big key, followed by the lower bounds of its segments. All the
+   * codecs decode such a record as an undefined set.
+   */
+  private static final byte BIG_KEY = (byte) 0xFF;
+
   /** The limit on the number of entry IDs that may be indexed by one key. */
   private final State state;
   private final EntryContainer entryContainer;
+  private final TreeName segmentsTreeName;
   private int indexEntryLimit;
+  private volatile boolean bigIndexKeysEnabled;
+  /** Whether the tree holding the segments of the big keys of this index may exist. */
+  private volatile boolean hasSegments;
   private EntryIDSetCodec codec;
 
   /**
@@ -80,19 +106,49 @@ class DefaultIndex extends AbstractTree implements Index
    */
   DefaultIndex(TreeName name, State state, int indexEntryLimit, EntryContainer entryContainer)
       throws StorageRuntimeException
+  {
+    this(name, state, indexEntryLimit, false, entryContainer);
+  }
+
+  /**
+   * Create a new index object.
+   *
+   * @param name
+   *          The name of the index tree within the entryContainer.
+   * @param state
+   *          The state tree to persist index state info.
+   * @param indexEntryLimit
+   *          The configured limit on the number of entry IDs that may be indexed by one key.
+   * @param bigIndexKeysEnabled
+   *          Whether keys exceeding the index entry limit are split into segments rather than no
+   *          longer maintained.
+   * @param entryContainer
+   *          The entryContainer holding this index.
+   * @throws StorageRuntimeException
+   *           If an error occurs in the storage.
+   */
+  DefaultIndex(TreeName name, State state, int indexEntryLimit, boolean bigIndexKeysEnabled,
+      EntryContainer entryContainer) throws StorageRuntimeException
   {
     super(name);
     this.indexEntryLimit = indexEntryLimit;
+    this.bigIndexKeysEnabled = bigIndexKeysEnabled;
     this.state = state;
     this.entryContainer = entryContainer;
+    this.segmentsTreeName = new TreeName(name.getBaseDN(), name.getIndexId() + SEGMENTS_TREE_SUFFIX);
   }
 
   @Override
   final void afterOpen(WriteableTransaction txn, boolean createOnDemand)
   {
     final EnumSet<IndexFlag> flags = state.getIndexFlags(txn, getName());
-    codec = flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+    codec = flags.contains(BITMAP) ? CODEC_V3 : flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
     trusted = flags.contains(TRUSTED);
+    hasSegments = flags.contains(BIG_KEYS);
+    if (hasSegments)
+    {
+      txn.openTree(segmentsTreeName, createOnDemand);
+    }
     if (!trusted && entryContainer.getHighestEntryID(txn).longValue() == 0)
     {
       // If there are no entries in the entry container then there
@@ -101,9 +157,23 @@ class DefaultIndex extends AbstractTree implements Index
     }
   }
 
+  @Override
+  void beforeDelete(WriteableTransaction txn)
+  {
+    if (hasSegments)
+    {
+      txn.deleteTree(segmentsTreeName);
+      hasSegments = false;
+    }
+  }
+
   @Override
   public String valueToString(ByteString value)
   {
+    if (isBigKey(value))
+    {
+      return "[SEGMENTS:" + decodeSegmentLowerBounds(value).length + "]";
+    }
     StringBuilder sb = new StringBuilder();
     final EntryIDSet eIDSet = decodeValue(ByteString.empty(), value);
     eIDSet.toString(sb);
@@ -119,7 +189,7 @@ class DefaultIndex extends AbstractTree implements Index
   }
 
   @Override
-  public final Cursor<ByteString, EntryIDSet> openCursor(ReadableTransaction txn)
+  public final Cursor<ByteString, EntryIDSet> openCursor(final ReadableTransaction txn)
   {
     checkNotNull(txn, "txn must not be null");
     return CursorTransformer.transformValues(txn.openCursor(getName()),
@@ -128,11 +198,25 @@ class DefaultIndex extends AbstractTree implements Index
           @Override
           public EntryIDSet transform(ByteString key, ByteString value) throws NeverThrowsException
           {
-            return decodeValue(key, value);
+            return isBigKey(value) ? readSegments(txn, key) : decodeValue(key, value);
           }
         });
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Contrary to {@link #openCursor(ReadableTransaction)}, the entry IDs of a big key are not read all at once: the
+   * cursor returns one record per segment of the big key, all of them with the same key, in ascending entry ID order.
+   * Readers can therefore stream the entry IDs of big keys and stop reading once they have read enough of them.
+   */
+  @Override
+  public final Cursor<ByteString, EntryIDSet> openSegmentedCursor(ReadableTransaction txn)
+  {
+    checkNotNull(txn, "txn must not be null");
+    return new SegmentedCursor(txn);
+  }
+
   EntryIDSet decodeValue(ByteSequence key, ByteString value)
   {
     return codec.decode(key, value);
@@ -153,24 +237,38 @@ class DefaultIndex extends AbstractTree implements Index
       return;
     }
 
+    final ByteString value = txn.read(getName(), key);
+    if (isBigKey(value))
+    {
+      updateSegments(txn, key, decodeSegmentLowerBounds(value), deletedIDs, addedIDs);
+      return;
+    }
+
     /*
      * Avoid taking a write lock on a record which has hit all IDs because it is likely to be a
      * point of contention.
      */
-    if (!get(txn, key).isDefined())
+    if (value != null ? !decodeValue(key, value).isDefined() : !trusted)
     {
       return;
     }
 
     // The record is going to be changed in some way.
+    final List<long[]> newSegments = new ArrayList<>();
     txn.update(getName(), key, new UpdateFunction()
     {
       @Override
       public ByteSequence computeNewValue(final ByteSequence oldValue)
       {
+        newSegments.clear();
         if (oldValue != null)
         {
           EntryIDSet entryIDSet = computeEntryIDSet(key, oldValue.toByteString(), deletedIDs, addedIDs);
+          if (isAboveIndexEntryLimit(entryIDSet))
+          {
+            // Big index keys are enabled: the key becomes a big key
+            return splitIntoSegments(entryIDSet.toLongArray(), newSegments);
+          }
           /*
            * If there are no more IDs then return null indicating that the record should be removed.
            * If index is not trusted then this will cause all subsequent reads for this key to
@@ -184,6 +282,10 @@ class DefaultIndex extends AbstractTree implements Index
           {
             logIndexCorruptError(txn, key);
           }
+          if (isAboveIndexEntryLimit(addedIDs))
+          {
+            return splitIntoSegments(addedIDs.toLongArray(), newSegments);
+          }
           if (isNotEmpty(addedIDs))
           {
             return toValue(addedIDs);
@@ -192,6 +294,7 @@ class DefaultIndex extends AbstractTree implements Index
         return null; // no change.
       }
     });
+    writeSegments(txn, key, newSegments);
   }
 
   private static boolean isNullOrEmpty(EntryIDSet entryIDSet)
@@ -213,7 +316,7 @@ class DefaultIndex extends AbstractTree implements Index
       {
         final long nbDeleted = deletedIDs != null ? deletedIDs.size() : 0;
         final long idCountDelta = addedIDs.size() - nbDeleted;
-        if (idCountDelta + entryIDSet.size() >= indexEntryLimit)
+        if (idCountDelta + entryIDSet.size() >= indexEntryLimit && !bigIndexKeysEnabled)
         {
           entryIDSet = newUndefinedSetWithKey(key);
           if (logger.isTraceEnabled())
@@ -233,6 +336,256 @@ class DefaultIndex extends AbstractTree implements Index
     return entryIDSet;
   }
 
+  private boolean isAboveIndexEntryLimit(EntryIDSet entryIDSet)
+  {
+    return bigIndexKeysEnabled && indexEntryLimit > 0 && entryIDSet != null
+        && entryIDSet.isDefined() && entryIDSet.size() >= indexEntryLimit;
+  }
+
+  /** Returns the maximum number of entry IDs of a new segment, leaving room for the segment to grow. */
+  private int getSegmentSize()
+  {
+    return Math.max(indexEntryLimit / 2, 1);
+  }
+
+  private static boolean isBigKey(ByteSequence value)
+  {
+    return value != null && value.length() > 1 && value.byteAt(0) == BIG_KEY;
+  }
+
+  private static ByteString encodeSegmentLowerBounds(List<Long> lowerBounds)
+  {
+    final ByteStringBuilder builder = new ByteStringBuilder();
+    builder.appendByte(BIG_KEY);
+    builder.appendCompactUnsigned(lowerBounds.size());
+    long previous = 0;
+    for (long lowerBound : lowerBounds)
+    {
+      builder.appendCompactUnsigned(lowerBound - previous);
+      previous = lowerBound;
+    }
+    return builder.toByteString();
+  }
+
+  private static long[] decodeSegmentLowerBounds(ByteString value)
+  {
+    final ByteSequenceReader reader = value.asReader();
+    reader.skip(1);
+    final long[] lowerBounds = new long[reader.readCompactUnsignedInt()];
+    long previous = 0;
+    for (int i = 0; i < lowerBounds.length; i++)
+    {
+      previous += reader.readCompactUnsignedLong();
+      lowerBounds[i] = previous;
+    }
+    return lowerBounds;
+  }
+
+  /**
+   * Returns the key of a segment of a big key in the segments tree. The length of the big key is
+   * prepended so that the segments of a big key are not interleaved with the segments of the big
+   * keys it is a prefix of.
+   */
+  private static ByteStringBuilder segmentKeyPrefix(ByteSequence key)
+  {
+    return new ByteStringBuilder(key.length() + 16).appendCompactUnsigned(key.length()).appendBytes(key);
+  }
+
+  private static ByteString segmentKey(ByteSequence key, long lowerBound)
+  {
+    return segmentKeyPrefix(key).appendLong(lowerBound).toByteString();
+  }
+
+  /**
+   * Splits the provided entry IDs into new segments.
+   *
+   * @return the record of the big key
+   */
+  private ByteString splitIntoSegments(long[] entryIDs, List<long[]> segments)
+  {
+    final List<Long> lowerBounds = new ArrayList<>();
+    addSegments(entryIDs, segments, lowerBounds);
+    return encodeSegmentLowerBounds(lowerBounds);
+  }
+
+  private void addSegments(long[] entryIDs, List<long[]> segments, List<Long> lowerBounds)
+  {
+    final int segmentSize = getSegmentSize();
+    for (int from = 0; from < entryIDs.length; from += segmentSize)
+    {
+      final long[] segment = Arrays.copyOfRange(entryIDs, from, Math.min(from + segmentSize, entryIDs.length));
+      segments.add(segment);
+      lowerBounds.add(segment[0]);
+    }
+  }
+
+  private void writeSegments(WriteableTransaction txn, ByteString key, List<long[]> segments)
+  {
+    if (segments.isEmpty())
+    {
+      return;
+    }
+    if (!hasSegments)
+    {
+      txn.openTree(segmentsTreeName, true);
+      state.addFlagsToIndex(txn, getName(), BIG_KEYS);
+      hasSegments = true;
+    }
+    for (long[] segment : segments)
+    {
+      txn.put(segmentsTreeName, segmentKey(key, segment[0]), toValue(newDefinedSet(segment)));
+    }
+  }
+
+  /**
+   * Applies the changes to the segments of a big key. Only the segments holding the deleted or
+   * added entry IDs are read and rewritten. The record of the big key is only rewritten when
+   * segments are split or removed.
+   */
+  private void updateSegments(WriteableTransaction txn, ByteString key, long[] lowerBounds, EntryIDSet deletedIDs,
+      EntryIDSet addedIDs)
+  {
+    final long[] deleted = toSortedArray(deletedIDs);
+    final long[] added = toSortedArray(addedIDs);
+    final List<Long> newLowerBounds = new ArrayList<>(lowerBounds.length + 1);
+    final List<long[]> newSegments = new ArrayList<>();
+    boolean lowerBoundsChanged = false;
+    for (int i = 0; i < lowerBounds.length; i++)
+    {
+      // The first segment also holds the entry IDs lower than its lower bound
+      final long from = i == 0 ? Long.MIN_VALUE : lowerBounds[i];
+      final long to = i + 1 < lowerBounds.length ? lowerBounds[i + 1] : Long.MAX_VALUE;
+      final long[] segmentDeleted = subRange(deleted, from, to);
+      final long[] segmentAdded = subRange(added, from, to);
+      if (segmentDeleted.length == 0 && segmentAdded.length == 0)
+      {
+        newLowerBounds.add(lowerBounds[i]);
+        continue;
+      }
+
+      final ByteString segmentKey = segmentKey(key, lowerBounds[i]);
+      final ByteString segmentValue = txn.read(segmentsTreeName, segmentKey);
+      final EntryIDSet entryIDs = segmentValue != null ? decodeValue(key, segmentValue) : newDefinedSet();
+      entryIDs.addAll(newDefinedSet(segmentAdded));
+      entryIDs.removeAll(newDefinedSet(segmentDeleted));
+      if (entryIDs.size() == 0)
+      {
+        txn.delete(segmentsTreeName, segmentKey);
+        lowerBoundsChanged = true;
+      }
+      else if (indexEntryLimit > 0 && entryIDs.size() >= indexEntryLimit)
+      {
+        final long[] ids = entryIDs.toLongArray();
+        if (ids[0] != lowerBounds[i])
+        {
+          // The new segments are keyed by their lowest entry ID
+          txn.delete(segmentsTreeName, segmentKey);
+        }
+        addSegments(ids, newSegments, newLowerBounds);
+        lowerBoundsChanged = true;
+      }
+      else
+      {
+        txn.put(segmentsTreeName, segmentKey, toValue(entryIDs));
+        newLowerBounds.add(lowerBounds[i]);
+      }
+    }
+
+    writeSegments(txn, key, newSegments);
+    if (!lowerBoundsChanged)
+    {
+      return;
+    }
+    if (newLowerBounds.isEmpty())
+    {
+      txn.delete(getName(), key);
+    }
+    else
+    {
+      txn.put(getName(), key, encodeSegmentLowerBounds(newLowerBounds));
+    }
+  }
+
+  private static long[] toSortedArray(EntryIDSet entryIDSet)
+  {
+    final long[] entryIDs = entryIDSet != null ? entryIDSet.toLongArray() : null;
+    return entryIDs != null ? entryIDs : new long[0];
+  }
+
+  /** Returns the entry IDs of the provided sorted array which are in the range [from, to). */
+  private static long[] subRange(long[] sortedIDs, long from, long to)
+  {
+    final int fromIndex = insertionPoint(sortedIDs, from);
+    final int toIndex = insertionPoint(sortedIDs, to);
+    return Arrays.copyOfRange(sortedIDs, fromIndex, toIndex);
+  }
+
+  private static int insertionPoint(long[] sortedIDs, long id)
+  {
+    final int index = Arrays.binarySearch(sortedIDs, id);
+    return index >= 0 ? index : -(index + 1);
+  }
+
+  /** Reads the entry IDs of a big key by iterating over its segments in ascending order. */
+  private EntryIDSet readSegments(ReadableTransaction txn, ByteSequence key)
+  {
+    final ByteString prefix = segmentKeyPrefix(key).toByteString();
+    final List<EntryIDSet> segments = new ArrayList<>();
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(segmentsTreeName))
+    {
+      boolean found = cursor.positionToKeyOrNext(prefix);
+      while (found && cursor.getKey().startsWith(prefix))
+      {
+        segments.add(decodeValue(key, cursor.getValue()));
+        found = cursor.next();
+      }
+    }
+    return newSetFromUnion(segments);
+  }
+
+  /**
+   * Imports the entry IDs of a key. When big index keys are enabled, entry IDs reaching the index
+   * entry limit are split into segments, so that the first update of the key does not have to read
+   * and split a single huge record.
+   *
+   * @param txn
+   *          The transaction wrapping the importer.
+   * @param key
+   *          The key.
+   * @param value
+   *          The encoded entry IDs of the key, as merged by the importer.
+   */
+  final void importKey(WriteableTransaction txn, ByteSequence key, ByteString value)
+  {
+    if (bigIndexKeysEnabled)
+    {
+      final EntryIDSet entryIDs = decodeValue(key, value);
+      if (isAboveIndexEntryLimit(entryIDs))
+      {
+        final List<long[]> segments = new ArrayList<>();
+        txn.put(getName(), key, splitIntoSegments(entryIDs.toLongArray(), segments));
+        importSegments(txn, key, segments);
+        return;
+      }
+    }
+    txn.put(getName(), key, value);
+  }
+
+  private synchronized void importSegments(WriteableTransaction txn, ByteSequence key, List<long[]> segments)
+  {
+    if (!hasSegments)
+    {
+      // Importers create the tree when clearing it
+      txn.deleteTree(segmentsTreeName);
+      state.addFlagsToIndex(txn, getName(), BIG_KEYS);
+      hasSegments = true;
+    }
+    for (long[] segment : segments)
+    {
+      txn.put(segmentsTreeName, segmentKey(key, segment[0]), toValue(newDefinedSet(segment)));
+    }
+  }
+
   private void logIndexCorruptError(WriteableTransaction txn, ByteString key)
   {
     if (logger.isTraceEnabled())
@@ -252,7 +605,7 @@ class DefaultIndex extends AbstractTree implements Index
       ByteString value = txn.read(getName(), key);
       if (value != null)
       {
-        return decodeValue(key, value);
+        return isBigKey(value) ? readSegments(txn, key) : decodeValue(key, value);
       }
       return trusted ? newDefinedSet() : newUndefinedSet();
     }
@@ -277,6 +630,30 @@ class DefaultIndex extends AbstractTree implements Index
     return indexEntryLimit;
   }
 
+  /**
+   * Returns the maximum number of entry IDs that a key may reference before it is no longer
+   * maintained.
+   *
+   * @return the index entry limit, or {@link Integer#MAX_VALUE} if big index keys are enabled
+   */
+  final int getKeyEntryLimit()
+  {
+    return bigIndexKeysEnabled ? Integer.MAX_VALUE : indexEntryLimit;
+  }
+
+  final boolean isBigIndexKeysEnabled()
+  {
+    return bigIndexKeysEnabled;
+  }
+
+  @Override
+  public final boolean setBigIndexKeysEnabled(boolean enabled)
+  {
+    final boolean rebuildRequired = !bigIndexKeysEnabled && enabled;
+    this.bigIndexKeysEnabled = enabled;
+    return rebuildRequired;
+  }
+
   @Override
   public final synchronized void setTrusted(WriteableTransaction txn, boolean trusted) throws StorageRuntimeException
   {
@@ -296,4 +673,129 @@ class DefaultIndex extends AbstractTree implements Index
   {
     return trusted;
   }
+  /**
+   * A cursor on the index tree merging the segments of the big keys read from the segments tree.
+   * Each segment of a big key is returned as a record with the key of the big key.
+   */
+  private final class SegmentedCursor implements Cursor<ByteString, EntryIDSet>
+  {
+    private final ReadableTransaction txn;
+    private final Cursor<ByteString, ByteString> indexCursor;
+    /** Opened on the first big key. */
+    private Cursor<ByteString, ByteString> segmentsCursor;
+    /** The prefix of the segments of the current big key, or {@code null} if the current key is not a big key. */
+    private ByteString segmentKeyPrefix;
+    private EntryIDSet value;
+
+    private SegmentedCursor(ReadableTransaction txn)
+    {
+      this.txn = txn;
+      this.indexCursor = txn.openCursor(getName());
+    }
+
+    @Override
+    public boolean positionToKey(ByteSequence key)
+    {
+      return indexCursor.positionToKey(key) ? readKey() : clearValue();
+    }
+
+    @Override
+    public boolean positionToKeyOrNext(ByteSequence key)
+    {
+      return indexCursor.positionToKeyOrNext(key) ? readKey() : clearValue();
+    }
+
+    @Override
+    public boolean positionToLastKey()
+    {
+      return indexCursor.positionToLastKey() ? readKey() : clearValue();
+    }
+
+    @Override
+    public boolean positionToIndex(int index)
+    {
+      return indexCursor.positionToIndex(index) ? readKey() : clearValue();
+    }
+
+    @Override
+    public boolean next()
+    {
+      if (segmentKeyPrefix != null && segmentsCursor.next() && segmentsCursor.getKey().startsWith(segmentKeyPrefix))
+      {
+        value = decodeValue(indexCursor.getKey(), segmentsCursor.getValue());
+        return true;
+      }
+      return indexCursor.next() ? readKey() : clearValue();
+    }
+
+    /** Reads the entry IDs of the current key, or of the first segment of the current big key. */
+    private boolean readKey()
+    {
+      final ByteString key = indexCursor.getKey();
+      final ByteString rawValue = indexCursor.getValue();
+      if (!isBigKey(rawValue))
+      {
+        segmentKeyPrefix = null;
+        value = decodeValue(key, rawValue);
+        return true;
+      }
+      if (segmentsCursor == null)
+      {
+        segmentsCursor = txn.openCursor(segmentsTreeName);
+      }
+      segmentKeyPrefix = segmentKeyPrefix(key).toByteString();
+      value = segmentsCursor.positionToKeyOrNext(segmentKeyPrefix)
+          && segmentsCursor.getKey().startsWith(segmentKeyPrefix)
+          ? decodeValue(key, segmentsCursor.getValue())
+          : newDefinedSet();
+      return true;
+    }
+
+    private boolean clearValue()
+    {
+      segmentKeyPrefix = null;
+      value = null;
+      return false;
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return value != null;
+    }
+
+    @Override
+    public ByteString getKey() throws NoSuchElementException
+    {
+      checkDefined();
+      return indexCursor.getKey();
+    }
+
+    @Override
+    public EntryIDSet getValue() throws NoSuchElementException
+    {
+      checkDefined();
+      return value;
+    }
+
+    private void checkDefined()
+    {
+      if (value == null)
+      {
+        throw new NoSuchElementException();
+      }
+    }
+
+    @Override
+    public void delete() throws NoSuchElementException, UnsupportedOperationException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close()
+    {
+      closeSilently(indexCursor, segmentsCursor);
+    }
+  }
 }
@@ -46,6 +46,7 @@ import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteSequenceReader;
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.opendj.ldap.DN;
@@ -65,6 +66,7 @@ import org.opends.server.api.EntryCache;
 import org.opends.server.api.VirtualAttributeProvider;
 import org.opends.server.api.plugin.PluginResult.SubordinateDelete;
 import org.opends.server.api.plugin.PluginResult.SubordinateModifyDN;
+import org.opends.server.backends.pluggable.AttributeIndex.MatchingRuleIndex;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
@@ -97,6 +99,7 @@ import org.opends.server.types.Modification;
 import org.opends.server.types.Operation;
 import org.opends.server.types.Privilege;
 import org.opends.server.types.SearchFilter;
+import org.opends.server.types.SortKey;
 import org.opends.server.types.SortOrder;
 import org.opends.server.types.VirtualAttributeRule;
 import org.opends.server.util.ServerConstants;
@@ -161,6 +164,9 @@ public class EntryContainer
    */
   private final String treePrefix;
 
+  /** Cache of the sort keys used for sorting search results which cannot use a VLV index. */
+  private final SortKeyCache sortKeyCache;
+
   /**
    * This class is responsible for managing the configuration for attribute
    * indexes used within this entry container.
@@ -363,6 +369,7 @@ public class EntryContainer
     this.dn2id = new DN2ID(getIndexName(DN2ID_TREE_NAME), baseDN);
     this.dn2uri = new DN2URI(getIndexName(REFERRAL_TREE_NAME), this);
     this.state = new State(getIndexName(STATE_TREE_NAME));
+    this.sortKeyCache = new SortKeyCache(config.getSortKeyCacheSize());
 
     config.addPluggableChangeListener(this);
 
@@ -393,8 +400,9 @@ public class EntryContainer
     boolean shouldCreate = accessMode.isWriteable();
     try
     {
-      DataConfig entryDataConfig = new DataConfig(
-          config.isEntriesCompressed(), config.isCompactEncoding(), rootContainer.getCompressedSchema());
+      DataConfig entryDataConfig = new DataConfig(config.isEntriesCompressed(),
+          config.isEntriesCompressionDictionaryEnabled(), config.isCompactEncoding(),
+          rootContainer.getCompressedSchema());
 
       id2entry = new ID2Entry(getIndexName(ID2ENTRY_TREE_NAME), entryDataConfig);
       id2entry.open(txn, shouldCreate);
@@ -734,6 +742,7 @@ public class EntryContainer
           // requires us to use an entryIDSet where the entryIDs are ordered
           // so further paging can restart where it previously stopped
           long[] reorderedCandidateEntryIDs;
+          boolean lastCandidateStartsNextPage = false;
           if (candidateEntryIDs == null)
           {
             if (processSearchWithVirtualAttributeRule(searchOperation, true))
@@ -772,7 +781,12 @@ public class EntryContainer
               try
               {
                 SortOrder sortOrder = sortRequest.getSortOrder();
-                reorderedCandidateEntryIDs = sort(txn, candidateEntryIDs, searchOperation, sortOrder, vlvRequest);
+                reorderedCandidateEntryIDs =
+                    sort(txn, candidateEntryIDs, searchOperation, sortOrder, vlvRequest, pageRequest);
+                // Candidates sorted for a page end with the first entry of the next page
+                lastCandidateStartsNextPage = vlvRequest == null && pageRequest != null
+                    && reorderedCandidateEntryIDs != null
+                    && reorderedCandidateEntryIDs.length == pageRequest.getSize() + 1;
               }
               catch (DirectoryException de)
               {
@@ -827,7 +841,8 @@ public class EntryContainer
           if (reorderedCandidateEntryIDs != null)
           {
             rootContainer.getMonitorProvider().incrementIndexedSearchCount();
-            searchIndexed(txn, reorderedCandidateEntryIDs, candidatesAreInScope, searchOperation, pageRequest);
+            searchIndexed(txn, reorderedCandidateEntryIDs, candidatesAreInScope, lastCandidateStartsNextPage,
+                searchOperation, pageRequest);
           }
           else
           {
@@ -849,7 +864,18 @@ public class EntryContainer
 
             if (sortRequest != null)
             {
-              // FIXME OPENDJ-2628: Add support for sorting unindexed searches using indexes like DSEE currently does
+              // Sort the entries by walking the ordering index of the primary sort key, like DSEE does
+              final SortOrder sortOrder = sortRequest.getSortOrder();
+              final MatchingRuleIndex orderingIndex =
+                  vlvRequest == null && sortRequest.containsSortKeys() ? getOrderingIndexForSort(sortOrder) : null;
+              if (orderingIndex != null)
+              {
+                searchOperation.addAdditionalLogItem(keyOnly(getClass(), "sortedByIndex"));
+                addServerSideSortControl(searchOperation, SUCCESS);
+                new IndexSortedSearch(txn, searchOperation, sortOrder, orderingIndex, pageRequest).search();
+                return null;
+              }
+
               addServerSideSortControl(searchOperation, UNWILLING_TO_PERFORM);
               if (sortRequest.isCritical())
               {
@@ -902,46 +928,6 @@ public class EntryContainer
         {
           searchOp.addResponseControl(new ServerSideSortResponseControl(resultCode, null));
         }
-
-        private EntryIDSet getIDSetFromScope(final ReadableTransaction txn, DN aBaseDN, SearchScope searchScope,
-            int idSetLimit) throws DirectoryException
-        {
-          final EntryIDSet scopeSet;
-          try
-          {
-            switch (searchScope.asEnum())
-            {
-            case BASE_OBJECT:
-              try (final SequentialCursor<?, EntryID> scopeCursor = dn2id.openCursor(txn, aBaseDN))
-              {
-                scopeSet = EntryIDSet.newDefinedSet(scopeCursor.getValue().longValue());
-              }
-              break;
-            case SINGLE_LEVEL:
-              try (final SequentialCursor<?, EntryID> scopeCursor = dn2id.openChildrenCursor(txn, aBaseDN))
-              {
-                scopeSet = newIDSetFromCursor(scopeCursor, false, idSetLimit);
-              }
-              break;
-            case SUBORDINATES:
-            case WHOLE_SUBTREE:
-              try (final SequentialCursor<?, EntryID> scopeCursor = dn2id.openSubordinatesCursor(txn, aBaseDN))
-              {
-                scopeSet = newIDSetFromCursor(scopeCursor, searchScope.equals(SearchScope.WHOLE_SUBTREE), idSetLimit);
-              }
-              break;
-            default:
-              throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
-                  CoreMessages.INFO_ERROR_SEARCH_SCOPE_NOT_ALLOWED.get());
-            }
-          }
-          catch (NoSuchElementException e)
-          {
-            throw new DirectoryException(ResultCode.NO_SUCH_OBJECT, ERR_SEARCH_NO_SUCH_OBJECT.get(aBaseDN),
-                getMatchedDN(txn, aBaseDN), e);
-          }
-          return scopeSet;
-        }
       });
     }
     catch (Exception e)
@@ -950,6 +936,46 @@ public class EntryContainer
     }
   }
 
+  private EntryIDSet getIDSetFromScope(ReadableTransaction txn, DN aBaseDN, SearchScope searchScope,
+      int idSetLimit) throws DirectoryException
+  {
+    final EntryIDSet scopeSet;
+    try
+    {
+      switch (searchScope.asEnum())
+      {
+      case BASE_OBJECT:
+        try (final SequentialCursor<?, EntryID> scopeCursor = dn2id.openCursor(txn, aBaseDN))
+        {
+          scopeSet = EntryIDSet.newDefinedSet(scopeCursor.getValue().longValue());
+        }
+        break;
+      case SINGLE_LEVEL:
+        try (final SequentialCursor<?, EntryID> scopeCursor = dn2id.openChildrenCursor(txn, aBaseDN))
+        {
+          scopeSet = newIDSetFromCursor(scopeCursor, false, idSetLimit);
+        }
+        break;
+      case SUBORDINATES:
+      case WHOLE_SUBTREE:
+        try (final SequentialCursor<?, EntryID> scopeCursor = dn2id.openSubordinatesCursor(txn, aBaseDN))
+        {
+          scopeSet = newIDSetFromCursor(scopeCursor, searchScope.equals(SearchScope.WHOLE_SUBTREE), idSetLimit);
+        }
+        break;
+      default:
+        throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+            CoreMessages.INFO_ERROR_SEARCH_SCOPE_NOT_ALLOWED.get());
+      }
+    }
+    catch (NoSuchElementException e)
+    {
+      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT, ERR_SEARCH_NO_SUCH_OBJECT.get(aBaseDN),
+          getMatchedDN(txn, aBaseDN), e);
+    }
+    return scopeSet;
+  }
+
   private static EntryIDSet newIDSetFromCursor(SequentialCursor<?, EntryID> cursor, boolean includeCurrent,
       int idSetLimit)
   {
@@ -1182,6 +1208,422 @@ public class EntryContainer
     addPagedResultsControl(searchOperation, pageRequest, null);
   }
 
+  /**
+   * Returns the ordering index which can be walked for returning entries in the provided sort order, or
+   * {@code null} if there is none.
+   * <p>
+   * Entries are sorted on the lowest value of their attributes. Walking an ordering index in key order therefore
+   * returns entries sorted on their primary sort key, provided that this key is ascending, uses the ordering
+   * matching rule of the index and that the attribute has no virtual values which would escape the index.
+   */
+  private MatchingRuleIndex getOrderingIndexForSort(SortOrder sortOrder)
+  {
+    final SortKey[] sortKeys = sortOrder.getSortKeys();
+    if (sortKeys.length == 0 || !sortKeys[0].ascending())
+    {
+      return null;
+    }
+    final AttributeType attributeType = sortKeys[0].getAttributeType();
+    final AttributeIndex attributeIndex = attrIndexMap.get(attributeType);
+    if (attributeIndex == null
+        || !Objects.equals(sortKeys[0].getEffectiveOrderingRule(), attributeType.getOrderingMatchingRule()))
+    {
+      return null;
+    }
+    for (VirtualAttributeRule rule : DirectoryServer.getVirtualAttributes())
+    {
+      if (rule.getAttributeType().equals(attributeType))
+      {
+        return null;
+      }
+    }
+    final MatchingRuleIndex orderingIndex = attributeIndex.getOrderingIndex();
+    return orderingIndex != null && orderingIndex.isTrusted() ? orderingIndex : null;
+  }
+
+  /**
+   * Processes an unindexed search requesting sorted results by walking the ordering index of the primary sort key.
+   * <p>
+   * Entries are read and returned one ordering index key at a time, so that the search never holds more than the
+   * entries sharing the same primary sort key value. When the search scope does not exceed the index entry limit, only
+   * the entries in scope are read. An entry is returned under the first key the walk finds it, which is its lowest
+   * primary sort key value, and is then skipped.
+   * <p>
+   * Entries whose lowest primary sort key value exceeded the index entry limit and entries without any value for the
+   * primary sort key, which sort last, can only be found by reading the entries in scope. A single scan of the search
+   * scope finds all of them: it happens when the walk reaches the first key which exceeded the index entry limit, or
+   * once the walk is over. The matching entries found for the keys which exceeded the index entry limit are held until
+   * the walk reaches them. The entries already walked are not read again, and the presence index, when usable, spares
+   * reading the entries with values when only the entries without any value remain to be returned. An entry read by
+   * both the scan and the walk only counts once against the lookthrough limit.
+   * <p>
+   * The paged results cookie holds the ordering index key and the sort key of the next entry to be returned.
+   */
+  private final class IndexSortedSearch
+  {
+    /** Marks the cookies of the pages returning entries without any value for the primary sort key. */
+    private static final int MISSING_VALUES = -1;
+
+    private final ReadableTransaction txn;
+    private final SearchOperation searchOperation;
+    private final SortOrder sortOrder;
+    private final SortKey primarySortKey;
+    private final MatchingRuleIndex orderingIndex;
+    private final MatchingRuleIndex presenceIndex;
+    private final PagedResultsControl pageRequest;
+    private final boolean manageDsaIT;
+    private final int lookthroughLimit;
+    private int lookthroughCount;
+    private boolean lookthroughLimitExceeded;
+
+    /** The IDs of the entries in scope, undefined if the scope exceeds the index entry limit. */
+    private EntryIDSet scopeIDs;
+    /** The IDs of the entries which have been walked or set aside by the scan of the search scope. */
+    private final EntryIDBitmap handledIDs = new EntryIDBitmap();
+    /** The IDs of the entries counted against the lookthrough limit. */
+    private final EntryIDBitmap countedIDs = new EntryIDBitmap();
+    /** Whether the search scope has already been scanned. */
+    private boolean scopeScanned;
+    /** The matching entries found by the scan, by lowest primary sort key value exceeding the index entry limit. */
+    private final Map<ByteString, TreeMap<ByteString, EntryID>> entriesByUndefinedKey = new HashMap<>();
+    /** Whether the ordering index keys met by the scan exceeded the index entry limit. */
+    private final Map<ByteString, Boolean> undefinedKeys = new HashMap<>();
+    /** The matching entries without any value for the primary sort key, found by the scan. */
+    private final TreeMap<ByteString, EntryID> entriesWithoutValue = new TreeMap<>();
+
+    private IndexSortedSearch(ReadableTransaction txn, SearchOperation searchOperation, SortOrder sortOrder,
+        MatchingRuleIndex orderingIndex, PagedResultsControl pageRequest)
+    {
+      this.txn = txn;
+      this.searchOperation = searchOperation;
+      this.sortOrder = sortOrder;
+      this.primarySortKey = sortOrder.getSortKeys()[0];
+      this.orderingIndex = orderingIndex;
+      this.presenceIndex = attrIndexMap.get(primarySortKey.getAttributeType()).getPresenceIndex();
+      this.pageRequest = pageRequest;
+      this.manageDsaIT = isManageDsaITOperation(searchOperation);
+      this.lookthroughLimit = searchOperation.getClientConnection().getLookthroughLimit();
+    }
+
+    private void search() throws DirectoryException, CanceledOperationException
+    {
+      final DN aBaseDN = searchOperation.getBaseDN();
+      final SearchScope searchScope = searchOperation.getScope();
+
+      // Set the starting value.
+      ByteString beginIndexKey = null;
+      ByteString beginSortKey = null;
+      boolean beginWithMissingValues = false;
+      if (pageRequest != null && pageRequest.getCookie().length() != 0)
+      {
+        try
+        {
+          final ByteSequenceReader reader = pageRequest.getCookie().asReader();
+          final int indexKeyLength = reader.readInt();
+          beginWithMissingValues = indexKeyLength == MISSING_VALUES;
+          beginIndexKey = beginWithMissingValues ? null : reader.readByteString(indexKeyLength);
+          beginSortKey = reader.readByteString(reader.remaining());
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+          throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+              ERR_INVALID_PAGED_RESULTS_COOKIE.get(pageRequest.getCookie().toHexString()), e);
+        }
+      }
+      else
+      {
+        final Entry baseEntry = fetchBaseEntry(txn, aBaseDN, searchScope);
+        if (!manageDsaIT)
+        {
+          dn2uri.checkTargetForReferral(baseEntry, searchScope);
+          if (!dn2uri.returnSearchReferences(txn, searchOperation))
+          {
+            // Indicate no more pages.
+            addPagedResultsControl(searchOperation, pageRequest, null);
+            return;
+          }
+        }
+      }
+
+      final int indexEntryLimit = config.getIndexEntryLimit();
+      scopeIDs = getIDSetFromScope(txn, aBaseDN, searchScope,
+          indexEntryLimit == 0 ? CURSOR_ENTRY_LIMIT : indexEntryLimit);
+
+      if (!beginWithMissingValues)
+      {
+        try (final Cursor<ByteString, EntryIDSet> cursor = orderingIndex.openCursor(txn))
+        {
+          boolean success = beginIndexKey != null ? cursor.positionToKeyOrNext(beginIndexKey) : cursor.next();
+          while (success)
+          {
+            final ByteString indexKey = cursor.getKey();
+            final EntryIDSet entryIDs = cursor.getValue();
+            TreeMap<ByteString, EntryID> sortMap = new TreeMap<>();
+            if (entryIDs.isDefined())
+            {
+              for (EntryID entryID : entryIDs)
+              {
+                if (isInScope(entryID) && !handledIDs.contains(entryID.longValue())
+                    && !addIfLowestValue(entryID, indexKey, sortMap))
+                {
+                  return;
+                }
+              }
+            }
+            else
+            {
+              // The index entry limit has been exceeded for this key
+              if (!scopeScanned && !scanScope(indexKey))
+              {
+                return;
+              }
+              final TreeMap<ByteString, EntryID> entries = entriesByUndefinedKey.remove(indexKey);
+              if (entries != null)
+              {
+                sortMap = entries;
+              }
+            }
+            if (!returnEntries(indexKey, sortMap, beginSortKey))
+            {
+              return;
+            }
+            success = cursor.next();
+          }
+        }
+      }
+
+      if ((scopeScanned || scanScope(null)) && returnEntries(null, entriesWithoutValue, beginSortKey))
+      {
+        // Indicate no more pages.
+        addPagedResultsControl(searchOperation, pageRequest, null);
+      }
+    }
+
+    private boolean isInScope(EntryID entryID)
+    {
+      return !scopeIDs.isDefined() || scopeIDs.contains(entryID);
+    }
+
+    /**
+     * Adds the provided entry to the sort map if it matches the search and if the lowest value of its primary sort
+     * key is the walked one. Returns false if the search must stop.
+     */
+    private boolean addIfLowestValue(EntryID entryID, ByteString indexKey, TreeMap<ByteString, EntryID> sortMap)
+        throws DirectoryException
+    {
+      final Entry entry = readEntry(entryID);
+      if (lookthroughLimitExceeded)
+      {
+        return false;
+      }
+      handledIDs.add(entryID.longValue());
+      // Entries with several values are only returned for their lowest value
+      if (entry != null && Objects.equals(getLowestAttributeValue(entry, primarySortKey), indexKey))
+      {
+        addIfMatches(entry, entryID, sortMap);
+      }
+      return true;
+    }
+
+    /**
+     * Scans the search scope for the entries which cannot be found by walking the ordering index: the entries without
+     * any value for the primary sort key and, when the walk reached a key which exceeded the index entry limit, the
+     * entries whose lowest value is this key or a later key which also exceeded it. Returns false if the search must
+     * stop.
+     */
+    private boolean scanScope(ByteString firstUndefinedKey) throws DirectoryException, CanceledOperationException
+    {
+      scopeScanned = true;
+      // When only the entries without any value remain to be found, the entries with values need not be read
+      final EntryIDSet presentIDs = firstUndefinedKey == null ? getPresentIDs() : null;
+      if (scopeIDs.isDefined())
+      {
+        for (EntryID entryID : scopeIDs)
+        {
+          if (!scanEntry(entryID, firstUndefinedKey, presentIDs))
+          {
+            return false;
+          }
+          searchOperation.checkIfCanceled(false);
+        }
+        return true;
+      }
+
+      final DN aBaseDN = searchOperation.getBaseDN();
+      final SearchScope searchScope = searchOperation.getScope();
+      try (final SequentialCursor<?, EntryID> scopeCursor = searchScope == SearchScope.SINGLE_LEVEL
+          ? dn2id.openChildrenCursor(txn, aBaseDN)
+          : dn2id.openSubordinatesCursor(txn, aBaseDN))
+      {
+        // The cursor is initially positioned on the base entry
+        boolean success = searchScope == SearchScope.WHOLE_SUBTREE || scopeCursor.next();
+        while (success)
+        {
+          if (!scanEntry(scopeCursor.getValue(), firstUndefinedKey, presentIDs))
+          {
+            return false;
+          }
+          searchOperation.checkIfCanceled(false);
+          success = scopeCursor.next();
+        }
+      }
+      catch (NoSuchElementException e)
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT, ERR_SEARCH_NO_SUCH_OBJECT.get(aBaseDN),
+            getMatchedDN(txn, aBaseDN), e);
+      }
+      return true;
+    }
+
+    /**
+     * Sets aside the provided entry if it is not found by walking the ordering index from the provided key. Entries
+     * whose lowest value is a key still to be walked are left for the walk. Returns false if the search must stop.
+     */
+    private boolean scanEntry(EntryID entryID, ByteString firstUndefinedKey, EntryIDSet presentIDs)
+        throws DirectoryException
+    {
+      if (handledIDs.contains(entryID.longValue()) || (presentIDs != null && presentIDs.contains(entryID)))
+      {
+        return true;
+      }
+      final Entry entry = readEntry(entryID);
+      if (lookthroughLimitExceeded)
+      {
+        return false;
+      }
+      if (entry == null)
+      {
+        return true;
+      }
+      final ByteString lowestValue = getLowestAttributeValue(entry, primarySortKey);
+      if (lowestValue == null)
+      {
+        handledIDs.add(entryID.longValue());
+        addIfMatches(entry, entryID, entriesWithoutValue);
+      }
+      else if (firstUndefinedKey != null && lowestValue.compareTo(firstUndefinedKey) >= 0
+          && isUndefinedKey(lowestValue))
+      {
+        handledIDs.add(entryID.longValue());
+        TreeMap<ByteString, EntryID> sortMap = entriesByUndefinedKey.get(lowestValue);
+        if (sortMap == null)
+        {
+          sortMap = new TreeMap<>();
+          entriesByUndefinedKey.put(lowestValue, sortMap);
+        }
+        addIfMatches(entry, entryID, sortMap);
+      }
+      return true;
+    }
+
+    private boolean isUndefinedKey(ByteString indexKey)
+    {
+      Boolean undefined = undefinedKeys.get(indexKey);
+      if (undefined == null)
+      {
+        undefined = !orderingIndex.get(txn, indexKey).isDefined();
+        undefinedKeys.put(indexKey, undefined);
+      }
+      return undefined;
+    }
+
+    /** Returns the IDs of the entries having a value for the primary sort key, or {@code null} if unknown. */
+    private EntryIDSet getPresentIDs()
+    {
+      if (presenceIndex == null || !presenceIndex.isTrusted())
+      {
+        return null;
+      }
+      final EntryIDSet presentIDs = presenceIndex.get(txn, AttributeIndex.PRESENCE_KEY);
+      return presentIDs.isDefined() ? presentIDs : null;
+    }
+
+    /**
+     * Reads the provided entry, counting it against the lookthrough limit unless it has already been read by this
+     * search.
+     */
+    private Entry readEntry(EntryID entryID) throws DirectoryException
+    {
+      final Entry entry = getEntry(txn, entryID);
+      if (entry != null && !countedIDs.contains(entryID.longValue()))
+      {
+        if (lookthroughLimit > 0 && lookthroughCount >= lookthroughLimit)
+        {
+          // Lookthrough limit exceeded
+          searchOperation.setResultCode(ResultCode.ADMIN_LIMIT_EXCEEDED);
+          searchOperation.appendErrorMessage(NOTE_LOOKTHROUGH_LIMIT_EXCEEDED.get(lookthroughLimit));
+          lookthroughLimitExceeded = true;
+          return null;
+        }
+        countedIDs.add(entryID.longValue());
+        lookthroughCount++;
+      }
+      return entry;
+    }
+
+    /** Adds the provided entry to the sort map if it matches the search. */
+    private void addIfMatches(Entry entry, EntryID entryID, TreeMap<ByteString, EntryID> sortMap)
+        throws DirectoryException
+    {
+      if (entry.matchesBaseAndScope(searchOperation.getBaseDN(), searchOperation.getScope())
+          && (manageDsaIT || entry.getReferralURLs() == null)
+          && searchOperation.getFilter().matchesEntry(entry))
+      {
+        sortMap.put(encodeVLVKey(sortOrder, entry, entryID.longValue()), entryID);
+      }
+    }
+
+    /**
+     * Returns the entries of the sort map in sort order, starting from the provided sort key if any. Returns false
+     * if the search must stop.
+     */
+    private boolean returnEntries(ByteString indexKey, TreeMap<ByteString, EntryID> sortMap, ByteString beginSortKey)
+        throws DirectoryException, CanceledOperationException
+    {
+      final Map<ByteString, EntryID> entriesToReturn =
+          beginSortKey != null ? sortMap.tailMap(beginSortKey, true) : sortMap;
+      for (Map.Entry<ByteString, EntryID> mapEntry : entriesToReturn.entrySet())
+      {
+        final Entry entry = getEntry(txn, mapEntry.getValue());
+        if (entry == null)
+        {
+          continue;
+        }
+        if (isPageFull(searchOperation, pageRequest))
+        {
+          // Set the cookie to remember where we were.
+          addPagedResultsControl(searchOperation, pageRequest, encodeCookie(indexKey, mapEntry.getKey()));
+          return false;
+        }
+        if (!searchOperation.returnEntry(entry, null))
+        {
+          // We have been told to discontinue processing of the search.
+          // This could be due to size limit exceeded or operation cancelled
+          return false;
+        }
+      }
+      searchOperation.checkIfCanceled(false);
+      return true;
+    }
+
+    private ByteString encodeCookie(ByteString indexKey, ByteString sortKey)
+    {
+      final ByteStringBuilder builder = new ByteStringBuilder();
+      if (indexKey != null)
+      {
+        builder.appendInt(indexKey.length());
+        builder.appendBytes(indexKey);
+      }
+      else
+      {
+        builder.appendInt(MISSING_VALUES);
+      }
+      builder.appendBytes(sortKey);
+      return builder.toByteString();
+    }
+  }
+
   private boolean isPageFull(SearchOperation searchOperation, PagedResultsControl pageRequest)
   {
     return pageRequest != null && searchOperation.getEntriesSent() == pageRequest.getSize();
@@ -1220,11 +1662,22 @@ public class EntryContainer
     {
       // Put the entry in the cache making sure not to overwrite a newer copy
       // that may have been inserted since the time we read the cache.
-      entryCache.putEntryIfAbsent(entry, backendID, entryID.longValue());
+      putEntryIfAbsent(entryCache, entry, entryID);
     }
     return entry;
   }
 
+  /**
+   * Puts an entry read from id2entry in the entry cache, where it may be shared with other threads.
+   * The virtual attribute processing deferred when decoding the entry modifies it when its
+   * attributes are read, so it is completed first.
+   */
+  private void putEntryIfAbsent(EntryCache<?> entryCache, Entry entry, EntryID entryID)
+  {
+    entry.processDeferredVirtualAttributes();
+    entryCache.putEntryIfAbsent(entry, backendID, entryID.longValue());
+  }
+
   /**
    * We were able to obtain a set of candidate entry IDs for the search from the indexes.
    * <p>
@@ -1241,6 +1694,8 @@ public class EntryContainer
    *          The candidate entry IDs.
    * @param candidatesAreInScope
    *          true if it is certain that every candidate entry is in the search scope.
+   * @param lastCandidateStartsNextPage
+   *          true if the last candidate entry must not be returned but used as the first entry of the next page.
    * @param searchOperation
    *          The search operation.
    * @param pageRequest
@@ -1249,8 +1704,8 @@ public class EntryContainer
    *           If an error prevented the search from being processed.
    */
   private void searchIndexed(ReadableTransaction txn, long[] entryIDReorderedSet, boolean candidatesAreInScope,
-      SearchOperation searchOperation, PagedResultsControl pageRequest) throws DirectoryException,
-      CanceledOperationException
+      boolean lastCandidateStartsNextPage, SearchOperation searchOperation, PagedResultsControl pageRequest)
+      throws DirectoryException, CanceledOperationException
   {
     SearchScope searchScope = searchOperation.getScope();
     DN aBaseDN = searchOperation.getBaseDN();
@@ -1293,7 +1748,12 @@ public class EntryContainer
     if (continueSearch)
     {
       final SearchFilter filter = searchOperation.getFilter();
-      for (int i = findStartIndex(beginEntryID, entryIDReorderedSet); i < entryIDReorderedSet.length; i++)
+      final int startIndex = findStartIndex(beginEntryID, entryIDReorderedSet);
+      final boolean resumeFromLastCandidate =
+          lastCandidateStartsNextPage && startIndex < entryIDReorderedSet.length - 1;
+      final int endIndex = resumeFromLastCandidate ? entryIDReorderedSet.length - 1 : entryIDReorderedSet.length;
+      boolean discontinued = false;
+      for (int i = startIndex; i < endIndex; i++)
       {
         EntryID entryID = new EntryID(entryIDReorderedSet[i]);
         Entry entry;
@@ -1324,11 +1784,19 @@ public class EntryContainer
             {
               // We have been told to discontinue processing of the search.
               // This could be due to size limit exceeded or operation cancelled
+              discontinued = true;
               break;
             }
           }
       }
       searchOperation.checkIfCanceled(false);
+
+      if (resumeFromLastCandidate && !discontinued)
+      {
+        // The page may not be full if some candidates were not returned: the search must resume anyway
+        addPagedResultsControl(searchOperation, pageRequest, new EntryID(entryIDReorderedSet[endIndex]).toByteString());
+        return;
+      }
     }
 
     // Before we return success from the search we must ensure the base entry
@@ -1526,7 +1994,7 @@ public class EntryContainer
     final IndexBuffer indexBuffer = IndexBuffer.newImportIndexBuffer(txn, entryID);
     insertEntryIntoIndexes(indexBuffer, entry, entryID);
     dn2id.put(txn, entry.getName(), entryID);
-    id2entry.put(txn, entryID, id2entry.encode(entry));
+    id2entry.importEntry(txn, entryID, entry);
     dn2uri.addEntry(txn, entry);
     indexBuffer.flush(txn);
   }
@@ -1551,6 +2019,7 @@ public class EntryContainer
           throws DirectoryException, StorageRuntimeException, CanceledOperationException
   {
     final IndexBuffer indexBuffer = new IndexBuffer();
+    final List<Long> deletedEntryIDs = new ArrayList<>();
     try
     {
       storage.write(new WriteOperation()
@@ -1559,6 +2028,7 @@ public class EntryContainer
         public void run(WriteableTransaction txn) throws Exception
         {
           indexBuffer.reset();
+          deletedEntryIDs.clear();
           try
           {
             // Check for referral entries above the target entry.
@@ -1622,6 +2092,7 @@ public class EntryContainer
             }
             // The target entry will have the lowest entryID so it will remain the first element.
             Collections.sort(entriesToBeDeleted);
+            deletedEntryIDs.addAll(entriesToBeDeleted);
 
             // Now update id2entry, dn2uri, and id2childrenCount in key order.
             id2childrenCount.updateCount(txn, parentID, -1);
@@ -1703,6 +2174,10 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    finally
+    {
+      sortKeyCache.invalidate(deletedEntryIDs);
+    }
   }
 
   /**
@@ -1811,7 +2286,7 @@ public class EntryContainer
        * Put the entry in the cache making sure not to overwrite a newer copy that may have been
        * inserted since the time we read the cache.
        */
-      entryCache.putEntryIfAbsent(entry, backendID, entryID.longValue());
+      putEntryIfAbsent(entryCache, entry, entryID);
     }
     return entry;
   }
@@ -1834,6 +2309,7 @@ public class EntryContainer
   {
     final IndexBuffer indexBuffer = new IndexBuffer();
     final ByteString encodedNewEntry = id2entry.encode(newEntry);
+    final List<Long> modifiedEntryIDs = new ArrayList<>(1);
     try
     {
       storage.write(new WriteOperation()
@@ -1842,6 +2318,7 @@ public class EntryContainer
         public void run(WriteableTransaction txn) throws Exception
         {
           indexBuffer.reset();
+          modifiedEntryIDs.clear();
           try
           {
             EntryID entryID = dn2id.get(txn, newEntry.getName());
@@ -1861,6 +2338,7 @@ public class EntryContainer
 
             // Ensure same ordering as deleteEntry: id2entry, dn2uri, then indexes.
             id2entry.put(txn, entryID, encodedNewEntry);
+            modifiedEntryIDs.add(entryID.longValue());
 
             // Update the referral tree and indexes
             dn2uri.modifyEntry(txn, oldEntry, newEntry, modifyOperation.getModifications());
@@ -1900,6 +2378,10 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    finally
+    {
+      sortKeyCache.invalidate(modifiedEntryIDs);
+    }
   }
 
   /**
@@ -1926,6 +2408,7 @@ public class EntryContainer
       throws StorageRuntimeException, DirectoryException, CanceledOperationException
   {
     final IndexBuffer indexBuffer = new IndexBuffer();
+    final List<Long> renamedOrMovedEntryIDs = new ArrayList<>();
     try
     {
       storage.write(new WriteOperation()
@@ -1934,6 +2417,7 @@ public class EntryContainer
         public void run(WriteableTransaction txn) throws Exception
         {
           indexBuffer.reset();
+          renamedOrMovedEntryIDs.clear();
           try
           {
             // Validate the request.
@@ -2069,6 +2553,8 @@ public class EntryContainer
             cursor.delete();
           }
           id2entry.put(txn, newEntryID, newEntry);
+          renamedOrMovedEntryIDs.add(oldEntryID.longValue());
+          renamedOrMovedEntryIDs.add(newEntryID.longValue());
           dn2uri.deleteEntry(txn, oldEntry);
           dn2uri.addEntry(txn, newEntry);
           if (renumberEntryIDs)
@@ -2142,6 +2628,10 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    finally
+    {
+      sortKeyCache.invalidate(renamedOrMovedEntryIDs);
+    }
   }
 
   /**
@@ -2353,6 +2843,8 @@ public class EntryContainer
   public ConfigChangeResult applyConfigurationChange(final PluggableBackendCfg cfg)
   {
     final ConfigChangeResult ccr = new ConfigChangeResult();
+    final boolean dictionaryEnabled = cfg.isEntriesCompressed() && cfg.isEntriesCompressionDictionaryEnabled()
+        && !(config.isEntriesCompressed() && config.isEntriesCompressionDictionaryEnabled());
 
     exclusiveLock.lock();
     try
@@ -2363,8 +2855,10 @@ public class EntryContainer
         public void run(WriteableTransaction txn) throws Exception
         {
           DataConfig entryDataConfig = new DataConfig(cfg.isEntriesCompressed(),
-              cfg.isCompactEncoding(), rootContainer.getCompressedSchema());
+              cfg.isEntriesCompressionDictionaryEnabled(), cfg.isCompactEncoding(),
+              rootContainer.getCompressedSchema());
           id2entry.setDataConfig(entryDataConfig);
+          sortKeyCache.setMaxSize(cfg.getSortKeyCacheSize());
 
           EntryContainer.this.config = cfg;
         }
@@ -2380,9 +2874,26 @@ public class EntryContainer
       exclusiveLock.unlock();
     }
 
+    if (dictionaryEnabled && ccr.getResultCode() == ResultCode.SUCCESS)
+    {
+      // Train a new version of the dictionary from the current entries, without holding the exclusive lock
+      id2entry.trainDictionary(storage, false);
+    }
     return ccr;
   }
 
+  /**
+   * Trains the compression dictionary of the entries when the entries must be compressed against a
+   * dictionary which has not been trained yet.
+   */
+  void trainCompressionDictionaryIfNeeded()
+  {
+    if (id2entry.isDictionaryTrainingNeeded())
+    {
+      id2entry.trainDictionary(storage, true);
+    }
+  }
+
   /**
    * Clear the contents of this entry container.
    *
@@ -2499,26 +3010,147 @@ public class EntryContainer
   }
 
   private long[] sort(ReadableTransaction txn, EntryIDSet entryIDSet, SearchOperation searchOperation,
-      SortOrder sortOrder, VLVRequestControl vlvRequest) throws DirectoryException
+      SortOrder sortOrder, VLVRequestControl vlvRequest, PagedResultsControl pageRequest) throws DirectoryException
   {
     if (!entryIDSet.isDefined())
     {
       return null;
     }
 
+    // Only keep the best candidates when the whole set of candidates would not be rejected by the lookthrough limit
+    final int lookthroughLimit = searchOperation.getClientConnection().getLookthroughLimit();
+    final boolean canSelectTopCandidates = lookthroughLimit <= 0 || entryIDSet.size() <= lookthroughLimit;
+    final TreeMap<ByteString, EntryID> sortMap = new TreeMap<>();
+
+    // See if there is a VLV request to further pare down the set of results, and if there is where it should be
+    // processed by offset or assertion value.
+    if (vlvRequest == null)
+    {
+      if (canSelectTopCandidates && pageRequest != null && pageRequest.getSize() < Integer.MAX_VALUE)
+      {
+        final ByteString startKey = getPageStartKey(txn, sortOrder, pageRequest);
+        if (startKey != null || pageRequest.getCookie().length() == 0)
+        {
+          // The last selected candidate is only used as the cookie of the next page
+          selectCandidates(txn, entryIDSet, searchOperation, sortOrder, sortMap, startKey, pageRequest.getSize() + 1,
+              false);
+          return toArray(sortMap.values());
+        }
+      }
+      selectCandidates(txn, entryIDSet, searchOperation, sortOrder, sortMap, null, Integer.MAX_VALUE, true);
+      return toArray(sortMap.values());
+    }
+
+    if (vlvRequest.getTargetType() == VLVRequestControl.TYPE_TARGET_BYOFFSET)
+    {
+      final int targetOffset = Math.max(vlvRequest.getOffset(), 1);
+      final long maxEntries = (long) targetOffset + vlvRequest.getAfterCount();
+      if (canSelectTopCandidates && vlvRequest.getOffset() >= 0 && maxEntries < Integer.MAX_VALUE)
+      {
+        final int contentCount = selectCandidates(txn, entryIDSet, searchOperation, sortOrder, sortMap, null,
+            (int) maxEntries, true);
+        if (targetOffset - 1 - vlvRequest.getBeforeCount() < contentCount)
+        {
+          return sortByOffset(searchOperation, vlvRequest, sortMap, contentCount);
+        }
+        // The target is beyond the end of the list: the last candidates are needed
+        sortMap.clear();
+      }
+      final int contentCount =
+          selectCandidates(txn, entryIDSet, searchOperation, sortOrder, sortMap, null, Integer.MAX_VALUE, true);
+      return sortByOffset(searchOperation, vlvRequest, sortMap, contentCount);
+    }
+    selectCandidates(txn, entryIDSet, searchOperation, sortOrder, sortMap, null, Integer.MAX_VALUE, true);
+    return sortByGreaterThanOrEqualAssertion(searchOperation, vlvRequest, sortOrder, sortMap);
+  }
+
+  /**
+   * Returns the sort key of the entry whose ID is held in the paged results cookie, or {@code null} if there is no
+   * cookie or if the entry cannot be read any more.
+   */
+  private ByteString getPageStartKey(ReadableTransaction txn, SortOrder sortOrder, PagedResultsControl pageRequest)
+  {
+    if (pageRequest.getCookie().length() == 0)
+    {
+      return null;
+    }
+    try
+    {
+      final EntryID cookieEntryID = new EntryID(pageRequest.getCookie().toLong());
+      final Entry cookieEntry = getEntry(txn, cookieEntryID);
+      return cookieEntry != null ? encodeVLVKey(sortOrder, cookieEntry, cookieEntryID.longValue()) : null;
+    }
+    catch (Exception e)
+    {
+      // Let the full sort and the search deal with the invalid cookie
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /**
+   * Selects in {@code sortMap} the first {@code maxEntries} candidate entries matching the search, in sort order,
+   * whose sort keys are greater than or equal to {@code startKey}.
+   *
+   * @param startKey
+   *          the lowest sort key which may be selected, or {@code null} for selecting from the first entry
+   * @param maxEntries
+   *          the maximum number of entries kept in {@code sortMap}
+   * @param countAll
+   *          whether all the entries matching the search must be counted, even those which cannot be selected
+   * @return the number of entries matching the search, only accurate if {@code countAll} is true
+   */
+  private int selectCandidates(ReadableTransaction txn, EntryIDSet entryIDSet, SearchOperation searchOperation,
+      SortOrder sortOrder, TreeMap<ByteString, EntryID> sortMap, ByteString startKey, int maxEntries,
+      boolean countAll) throws DirectoryException
+  {
     final DN baseDN = searchOperation.getBaseDN();
     final SearchScope scope = searchOperation.getScope();
     final SearchFilter filter = searchOperation.getFilter();
+    // Referrals are not returned as entries by paged searches, do not let them take the place of an entry
+    final boolean excludeReferrals = !countAll && !isManageDsaITOperation(searchOperation);
 
-    final TreeMap<ByteString, EntryID> sortMap = new TreeMap<>();
+    int matchCount = 0;
     for (EntryID id : entryIDSet)
     {
       try
       {
-        Entry e = getEntry(txn, id);
-        if (e.matchesBaseAndScope(baseDN, scope) && filter.matchesEntry(e))
+        final ByteString cachedKey = sortKeyCache.get(sortOrder, id.longValue());
+        if (!countAll && cachedKey != null && !canBeSelected(cachedKey, sortMap, startKey, maxEntries))
+        {
+          // No need to read the entry
+          continue;
+        }
+
+        final long invalidationCount = sortKeyCache.getInvalidationCount();
+        final Entry e = getEntry(txn, id);
+        if (e == null)
         {
-          sortMap.put(encodeVLVKey(sortOrder, e, id.longValue()), id);
+          continue;
+        }
+        ByteString key = cachedKey;
+        if (key == null && sortKeyCache.isEnabled())
+        {
+          key = encodeVLVKey(sortOrder, e, id.longValue());
+          sortKeyCache.put(sortOrder, id.longValue(), key, invalidationCount);
+        }
+        if (e.matchesBaseAndScope(baseDN, scope)
+            && (!excludeReferrals || e.getReferralURLs() == null)
+            && filter.matchesEntry(e))
+        {
+          matchCount++;
+          if (key == null)
+          {
+            key = encodeVLVKey(sortOrder, e, id.longValue());
+          }
+          if (canBeSelected(key, sortMap, startKey, maxEntries))
+          {
+            sortMap.put(key, id);
+            if (sortMap.size() > maxEntries)
+            {
+              sortMap.pollLastEntry();
+            }
+          }
         }
       }
       catch (Exception e)
@@ -2527,19 +3159,14 @@ public class EntryContainer
         throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
       }
     }
+    return matchCount;
+  }
 
-    // See if there is a VLV request to further pare down the set of results, and if there is where it should be
-    // processed by offset or assertion value.
-    if (vlvRequest == null)
-    {
-      return toArray(sortMap.values());
-    }
-
-    if (vlvRequest.getTargetType() == VLVRequestControl.TYPE_TARGET_BYOFFSET)
-    {
-      return sortByOffset(searchOperation, vlvRequest, sortMap);
-    }
-    return sortByGreaterThanOrEqualAssertion(searchOperation, vlvRequest, sortOrder, sortMap);
+  private static boolean canBeSelected(ByteString key, TreeMap<ByteString, EntryID> sortMap, ByteString startKey,
+      int maxEntries)
+  {
+    return (startKey == null || key.compareTo(startKey) >= 0)
+        && (sortMap.size() < maxEntries || key.compareTo(sortMap.lastKey()) < 0);
   }
 
   private static final long[] toArray(Collection<EntryID> entryIDs)
@@ -2613,13 +3240,13 @@ public class EntryContainer
   }
 
   private static final long[] sortByOffset(SearchOperation searchOperation, VLVRequestControl vlvRequest,
-      TreeMap<ByteString, EntryID> sortMap) throws DirectoryException
+      TreeMap<ByteString, EntryID> sortMap, int contentCount) throws DirectoryException
   {
     int targetOffset = vlvRequest.getOffset();
     if (targetOffset < 0)
     {
       // The client specified a negative target offset. This should never be allowed.
-      addVLVResponseControl(searchOperation, targetOffset, sortMap.size(), OFFSET_RANGE_ERROR);
+      addVLVResponseControl(searchOperation, targetOffset, contentCount, OFFSET_RANGE_ERROR);
 
       LocalizableMessage message = ERR_ENTRYIDSORTER_NEGATIVE_START_POS.get();
       throw new DirectoryException(ResultCode.VIRTUAL_LIST_VIEW_ERROR, message);
@@ -2640,12 +3267,12 @@ public class EntryContainer
       startPos = 0;
       beforeCount = listOffset;
     }
-    else if (startPos >= sortMap.size())
+    else if (startPos >= contentCount)
     {
       // The start position is beyond the end of the list. In this case, we'll assume that the start position was
       // one greater than the size of the list and will only return the beforeCount entries.
-      targetOffset = sortMap.size() + 1;
-      listOffset = sortMap.size();
+      targetOffset = contentCount + 1;
+      listOffset = contentCount;
       startPos = listOffset - beforeCount;
       afterCount = 0;
     }
@@ -2674,7 +3301,7 @@ public class EntryContainer
       sortedIDs = Arrays.copyOf(sortedIDs, arrayPos);
     }
 
-    addVLVResponseControl(searchOperation, targetOffset, sortMap.size(), SUCCESS);
+    addVLVResponseControl(searchOperation, targetOffset, contentCount, SUCCESS);
     return sortedIDs;
   }
 
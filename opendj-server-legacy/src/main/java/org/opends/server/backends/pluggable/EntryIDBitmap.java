@@ -0,0 +1,1155 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.forgerock.opendj.ldap.ByteSequenceReader;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+import com.forgerock.opendj.util.PackedLong;
+
+/**
+ * A compressed bitmap of entry IDs, organized like a Roaring bitmap: the entry IDs are partitioned by their 48 high
+ * bits, and the 16 low bits of the entry IDs of each partition are stored in a container which is either:
+ * <ul>
+ * <li>a sorted array of the low bits, for partitions of at most {@value #MAX_ARRAY_CARDINALITY} entry IDs,</li>
+ * <li>or a bitmap of 2<sup>16</sup> bits, for denser partitions.</li>
+ * </ul>
+ * Adding or removing an entry ID only updates the container of its partition, and intersections, unions and
+ * differences of bitmaps are computed container by container.
+ * <p>
+ * When encoded, each container is written as an array of deltas, a bitmap or a list of runs of consecutive entry IDs,
+ * whichever is the smallest. Dense partitions therefore take at most one bit per entry ID, and partitions of entry IDs
+ * added in sequence, such as the ones of an equality index key shared by most entries, take a few bytes.
+ * <p>
+ * This class is not thread safe.
+ */
+final class EntryIDBitmap
+{
+  /** The maximum number of entry IDs in an array container, above which a bitmap container is smaller. */
+  static final int MAX_ARRAY_CARDINALITY = 4096;
+
+  private static final int BITMAP_WORDS = (1 << 16) / Long.SIZE;
+  private static final int BITMAP_SIZE = BITMAP_WORDS * Long.SIZE / Byte.SIZE;
+
+  private static final byte ARRAY_CONTAINER = 0;
+  private static final byte BITMAP_CONTAINER = 1;
+  private static final byte RUN_CONTAINER = 2;
+
+  /** The sorted high bits of the partitions. */
+  private long[] keys;
+  /** The containers of the low bits of the partitions, in the order of {@link #keys}. */
+  private Container[] containers;
+  private int nbContainers;
+
+  /** Creates an empty bitmap. */
+  EntryIDBitmap()
+  {
+    this(4);
+  }
+
+  private EntryIDBitmap(int capacity)
+  {
+    keys = new long[capacity];
+    containers = new Container[capacity];
+  }
+
+  /**
+   * Creates a bitmap containing the provided entry IDs.
+   *
+   * @param sortedEntryIDs
+   *          The entry IDs, sorted in ascending order.
+   * @return a new bitmap containing the provided entry IDs
+   */
+  static EntryIDBitmap valueOf(long... sortedEntryIDs)
+  {
+    final EntryIDBitmap bitmap = new EntryIDBitmap(4);
+    int start = 0;
+    while (start < sortedEntryIDs.length)
+    {
+      final long key = highBits(sortedEntryIDs[start]);
+      int end = start + 1;
+      while (end < sortedEntryIDs.length && highBits(sortedEntryIDs[end]) == key)
+      {
+        end++;
+      }
+      bitmap.append(key, newContainer(sortedEntryIDs, start, end));
+      start = end;
+    }
+    return bitmap;
+  }
+
+  private static Container newContainer(long[] sortedEntryIDs, int start, int end)
+  {
+    final int cardinality = end - start;
+    if (cardinality > MAX_ARRAY_CARDINALITY)
+    {
+      final BitmapContainer container = new BitmapContainer();
+      for (int i = start; i < end; i++)
+      {
+        container.set(lowBits(sortedEntryIDs[i]));
+      }
+      return container;
+    }
+    final char[] values = new char[cardinality];
+    for (int i = 0; i < cardinality; i++)
+    {
+      values[i] = lowBits(sortedEntryIDs[start + i]);
+    }
+    return new ArrayContainer(values, cardinality);
+  }
+
+  private static long highBits(long entryID)
+  {
+    return entryID >>> 16;
+  }
+
+  private static char lowBits(long entryID)
+  {
+    return (char) entryID;
+  }
+
+  /**
+   * Returns the number of entry IDs in this bitmap.
+   *
+   * @return the number of entry IDs in this bitmap
+   */
+  long size()
+  {
+    long size = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      size += containers[i].cardinality();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the lowest entry ID of this bitmap, which must not be empty.
+   *
+   * @return the lowest entry ID
+   */
+  long first()
+  {
+    return keys[0] << 16 | containers[0].first();
+  }
+
+  /**
+   * Returns the highest entry ID of this bitmap, which must not be empty.
+   *
+   * @return the highest entry ID
+   */
+  long last()
+  {
+    return keys[nbContainers - 1] << 16 | containers[nbContainers - 1].last();
+  }
+
+  /**
+   * Indicates whether this bitmap contains the provided entry ID.
+   *
+   * @param entryID
+   *          The entry ID.
+   * @return {@code true} if this bitmap contains the entry ID
+   */
+  boolean contains(long entryID)
+  {
+    final int index = indexOf(highBits(entryID));
+    return index >= 0 && containers[index].contains(lowBits(entryID));
+  }
+
+  /**
+   * Adds the provided entry ID to this bitmap.
+   *
+   * @param entryID
+   *          The entry ID.
+   * @return {@code true} if this bitmap did not already contain the entry ID
+   */
+  boolean add(long entryID)
+  {
+    final long key = highBits(entryID);
+    final int index = indexOf(key);
+    if (index < 0)
+    {
+      insertAt(-(index + 1), key, new ArrayContainer(new char[] { lowBits(entryID) }, 1));
+      return true;
+    }
+    final Container container = containers[index];
+    final int cardinality = container.cardinality();
+    containers[index] = container.add(lowBits(entryID));
+    return containers[index].cardinality() != cardinality;
+  }
+
+  /**
+   * Removes the provided entry ID from this bitmap.
+   *
+   * @param entryID
+   *          The entry ID.
+   * @return {@code true} if this bitmap contained the entry ID
+   */
+  boolean remove(long entryID)
+  {
+    final int index = indexOf(highBits(entryID));
+    if (index < 0)
+    {
+      return false;
+    }
+    final Container container = containers[index];
+    final int cardinality = container.cardinality();
+    final Container newContainer = container.remove(lowBits(entryID));
+    if (newContainer.cardinality() == 0)
+    {
+      removeAt(index);
+    }
+    else
+    {
+      containers[index] = newContainer;
+    }
+    return newContainer.cardinality() != cardinality;
+  }
+
+  /**
+   * Returns the entry IDs of this bitmap.
+   *
+   * @return a new array containing the entry IDs of this bitmap, sorted in ascending order
+   */
+  long[] toArray()
+  {
+    final long size = size();
+    final long[] entryIDs = new long[(int) size];
+    int offset = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      offset = containers[i].copyTo(entryIDs, offset, keys[i] << 16);
+    }
+    return entryIDs;
+  }
+
+  /**
+   * Returns a copy of this bitmap.
+   *
+   * @return a copy of this bitmap
+   */
+  EntryIDBitmap copy()
+  {
+    final EntryIDBitmap copy = new EntryIDBitmap(Math.max(nbContainers, 1));
+    for (int i = 0; i < nbContainers; i++)
+    {
+      copy.append(keys[i], containers[i].copy());
+    }
+    return copy;
+  }
+
+  /**
+   * Adds the entry IDs of the provided bitmap to this bitmap.
+   *
+   * @param that
+   *          The bitmap whose entry IDs are added.
+   */
+  void or(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(nbContainers + that.nbContainers);
+    int i = 0;
+    int j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        result.append(keys[i], containers[i]);
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        result.append(that.keys[j], that.containers[j].copy());
+        j++;
+      }
+      else
+      {
+        result.append(keys[i], containers[i].or(that.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    for (; i < nbContainers; i++)
+    {
+      result.append(keys[i], containers[i]);
+    }
+    for (; j < that.nbContainers; j++)
+    {
+      result.append(that.keys[j], that.containers[j].copy());
+    }
+    replaceWith(result);
+  }
+
+  /**
+   * Removes from this bitmap the entry IDs which are not in the provided bitmap.
+   *
+   * @param that
+   *          The bitmap whose entry IDs are retained.
+   */
+  void and(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(Math.max(Math.min(nbContainers, that.nbContainers), 1));
+    int i = 0;
+    int j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        j++;
+      }
+      else
+      {
+        result.appendIfNotEmpty(keys[i], containers[i].and(that.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    replaceWith(result);
+  }
+
+  /**
+   * Removes from this bitmap the entry IDs which are in the provided bitmap.
+   *
+   * @param that
+   *          The bitmap whose entry IDs are removed.
+   */
+  void andNot(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(Math.max(nbContainers, 1));
+    int i = 0;
+    int j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        result.append(keys[i], containers[i]);
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        j++;
+      }
+      else
+      {
+        result.appendIfNotEmpty(keys[i], containers[i].andNot(that.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    for (; i < nbContainers; i++)
+    {
+      result.append(keys[i], containers[i]);
+    }
+    replaceWith(result);
+  }
+
+  /**
+   * Returns an iterator over the entry IDs of this bitmap, in ascending order. The bitmap must not be modified while
+   * iterating.
+   *
+   * @return an iterator over the entry IDs of this bitmap
+   */
+  IDIterator iterator()
+  {
+    return new IDIterator();
+  }
+
+  /** Iterator over the entry IDs of a bitmap. */
+  final class IDIterator
+  {
+    private int containerIndex;
+    private int lastLowBits = -1;
+    private long nextEntryID = -1;
+
+    private IDIterator()
+    {
+      advance();
+    }
+
+    private void advance()
+    {
+      while (containerIndex < nbContainers)
+      {
+        final int lowBits = containers[containerIndex].nextValue(lastLowBits + 1);
+        if (lowBits >= 0)
+        {
+          lastLowBits = lowBits;
+          nextEntryID = keys[containerIndex] << 16 | lowBits;
+          return;
+        }
+        containerIndex++;
+        lastLowBits = -1;
+      }
+      nextEntryID = -1;
+    }
+
+    /**
+     * Indicates whether there are more entry IDs to iterate on.
+     *
+     * @return {@code true} if there are more entry IDs
+     */
+    boolean hasNext()
+    {
+      return nextEntryID >= 0;
+    }
+
+    /**
+     * Returns the next entry ID.
+     *
+     * @return the next entry ID
+     * @throws NoSuchElementException
+     *           If there are no more entry IDs.
+     */
+    long nextID()
+    {
+      if (nextEntryID < 0)
+      {
+        throw new NoSuchElementException();
+      }
+      final long entryID = nextEntryID;
+      advance();
+      return entryID;
+    }
+  }
+
+  /**
+   * Appends the encoded form of this bitmap to the provided builder.
+   *
+   * @param builder
+   *          The builder.
+   * @return the builder
+   */
+  ByteStringBuilder encode(ByteStringBuilder builder)
+  {
+    builder.appendCompactUnsigned(nbContainers);
+    long previousKey = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      builder.appendCompactUnsigned(keys[i] - previousKey);
+      previousKey = keys[i];
+      encode(builder, containers[i]);
+    }
+    return builder;
+  }
+
+  private static void encode(ByteStringBuilder builder, Container container)
+  {
+    // Compute the encoded size of the container as an array of deltas and as a list of runs.
+    final int cardinality = container.cardinality();
+    int arraySize = PackedLong.getEncodedSize(cardinality - 1);
+    int nbRuns = 0;
+    int runsSize = 0;
+    int previousValue = 0;
+    int runStart = -1;
+    int nextRunStart = 0;
+    for (int value = container.nextValue(0); value >= 0; value = container.nextValue(value + 1))
+    {
+      arraySize += PackedLong.getEncodedSize(value - previousValue);
+      if (runStart < 0 || value != previousValue + 1)
+      {
+        if (runStart >= 0)
+        {
+          runsSize += PackedLong.getEncodedSize(runStart - nextRunStart)
+                    + PackedLong.getEncodedSize(previousValue - runStart);
+          nextRunStart = previousValue + 1;
+        }
+        runStart = value;
+        nbRuns++;
+      }
+      previousValue = value;
+    }
+    runsSize += PackedLong.getEncodedSize(runStart - nextRunStart) + PackedLong.getEncodedSize(previousValue - runStart)
+              + PackedLong.getEncodedSize(nbRuns - 1);
+
+    if (runsSize < arraySize && runsSize < BITMAP_SIZE)
+    {
+      builder.appendByte(RUN_CONTAINER);
+      encodeRuns(builder, container, nbRuns);
+    }
+    else if (arraySize <= BITMAP_SIZE)
+    {
+      builder.appendByte(ARRAY_CONTAINER);
+      builder.appendCompactUnsigned(cardinality - 1);
+      int previous = 0;
+      for (int value = container.nextValue(0); value >= 0; value = container.nextValue(value + 1))
+      {
+        builder.appendCompactUnsigned(value - previous);
+        previous = value;
+      }
+    }
+    else
+    {
+      builder.appendByte(BITMAP_CONTAINER);
+      for (long word : BitmapContainer.valueOf(container).words)
+      {
+        builder.appendLong(word);
+      }
+    }
+  }
+
+  private static void encodeRuns(ByteStringBuilder builder, Container container, int nbRuns)
+  {
+    builder.appendCompactUnsigned(nbRuns - 1);
+    int nextRunStart = 0;
+    int runStart = container.nextValue(0);
+    while (runStart >= 0)
+    {
+      int runEnd = runStart;
+      int value = container.nextValue(runStart + 1);
+      while (value == runEnd + 1)
+      {
+        runEnd = value;
+        value = container.nextValue(value + 1);
+      }
+      builder.appendCompactUnsigned(runStart - nextRunStart);
+      builder.appendCompactUnsigned(runEnd - runStart);
+      nextRunStart = runEnd + 1;
+      runStart = value;
+    }
+  }
+
+  /**
+   * Decodes a bitmap encoded with {@link #encode(ByteStringBuilder)}.
+   *
+   * @param reader
+   *          The reader positioned at the start of the encoded bitmap.
+   * @return the decoded bitmap
+   */
+  static EntryIDBitmap decode(ByteSequenceReader reader)
+  {
+    final int nbContainers = reader.readCompactUnsignedInt();
+    final EntryIDBitmap bitmap = new EntryIDBitmap(Math.max(nbContainers, 1));
+    long key = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      key += reader.readCompactUnsignedLong();
+      bitmap.append(key, decodeContainer(reader));
+    }
+    return bitmap;
+  }
+
+  private static Container decodeContainer(ByteSequenceReader reader)
+  {
+    final byte type = reader.readByte();
+    switch (type)
+    {
+    case ARRAY_CONTAINER:
+      final int cardinality = reader.readCompactUnsignedInt() + 1;
+      final char[] values = new char[cardinality];
+      int value = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        value += reader.readCompactUnsignedInt();
+        values[i] = (char) value;
+      }
+      final ArrayContainer array = new ArrayContainer(values, cardinality);
+      return cardinality > MAX_ARRAY_CARDINALITY ? BitmapContainer.valueOf(array) : array;
+
+    case BITMAP_CONTAINER:
+      final BitmapContainer bitmap = new BitmapContainer();
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        bitmap.words[i] = reader.readLong();
+        bitmap.cardinality += Long.bitCount(bitmap.words[i]);
+      }
+      return bitmap;
+
+    case RUN_CONTAINER:
+      final int nbRuns = reader.readCompactUnsignedInt() + 1;
+      final int[] runStarts = new int[nbRuns];
+      final int[] runEnds = new int[nbRuns];
+      int runsCardinality = 0;
+      int nextRunStart = 0;
+      for (int i = 0; i < nbRuns; i++)
+      {
+        runStarts[i] = nextRunStart + reader.readCompactUnsignedInt();
+        runEnds[i] = runStarts[i] + reader.readCompactUnsignedInt();
+        runsCardinality += runEnds[i] - runStarts[i] + 1;
+        nextRunStart = runEnds[i] + 1;
+      }
+      if (runsCardinality > MAX_ARRAY_CARDINALITY)
+      {
+        final BitmapContainer runsBitmap = new BitmapContainer();
+        for (int i = 0; i < nbRuns; i++)
+        {
+          runsBitmap.setRange(runStarts[i], runEnds[i]);
+        }
+        return runsBitmap;
+      }
+      final char[] runsValues = new char[runsCardinality];
+      int index = 0;
+      for (int i = 0; i < nbRuns; i++)
+      {
+        for (int v = runStarts[i]; v <= runEnds[i]; v++)
+        {
+          runsValues[index++] = (char) v;
+        }
+      }
+      return new ArrayContainer(runsValues, runsCardinality);
+
+    default:
+      throw new IllegalArgumentException("Unknown container type " + type);
+    }
+  }
+
+  private int indexOf(long key)
+  {
+    if (nbContainers > 0 && keys[nbContainers - 1] == key)
+    {
+      // Fast path: entry IDs are mostly added in ascending order.
+      return nbContainers - 1;
+    }
+    return Arrays.binarySearch(keys, 0, nbContainers, key);
+  }
+
+  private void append(long key, Container container)
+  {
+    ensureCapacity(nbContainers + 1);
+    keys[nbContainers] = key;
+    containers[nbContainers] = container;
+    nbContainers++;
+  }
+
+  private void appendIfNotEmpty(long key, Container container)
+  {
+    if (container.cardinality() > 0)
+    {
+      append(key, container);
+    }
+  }
+
+  private void insertAt(int index, long key, Container container)
+  {
+    ensureCapacity(nbContainers + 1);
+    System.arraycopy(keys, index, keys, index + 1, nbContainers - index);
+    System.arraycopy(containers, index, containers, index + 1, nbContainers - index);
+    keys[index] = key;
+    containers[index] = container;
+    nbContainers++;
+  }
+
+  private void removeAt(int index)
+  {
+    System.arraycopy(keys, index + 1, keys, index, nbContainers - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, nbContainers - index - 1);
+    nbContainers--;
+    containers[nbContainers] = null;
+  }
+
+  private void ensureCapacity(int capacity)
+  {
+    if (capacity > keys.length)
+    {
+      final int newCapacity = Math.max(capacity, keys.length * 2);
+      keys = Arrays.copyOf(keys, newCapacity);
+      containers = Arrays.copyOf(containers, newCapacity);
+    }
+  }
+
+  private void replaceWith(EntryIDBitmap that)
+  {
+    keys = that.keys;
+    containers = that.containers;
+    nbContainers = that.nbContainers;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder builder = new StringBuilder("[");
+    for (IDIterator it = iterator(); it.hasNext();)
+    {
+      builder.append(it.nextID());
+      if (it.hasNext())
+      {
+        builder.append(", ");
+      }
+    }
+    return builder.append("]").toString();
+  }
+
+  /** Container of the 16 low bits of the entry IDs of a partition. Operations may return a different container. */
+  private abstract static class Container
+  {
+    abstract int cardinality();
+
+    abstract boolean contains(char value);
+
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    /** Returns the lowest value of this container, which must not be empty. */
+    abstract int first();
+
+    /** Returns the highest value of this container, which must not be empty. */
+    abstract int last();
+
+    /** Returns the lowest value greater than or equal to the provided value, or -1 if there is none. */
+    abstract int nextValue(int fromValue);
+
+    abstract int copyTo(long[] entryIDs, int offset, long highBits);
+
+    abstract Container copy();
+
+    abstract Container and(Container that);
+
+    abstract Container or(Container that);
+
+    abstract Container andNot(Container that);
+  }
+
+  /** Container storing its values in a sorted array. */
+  private static final class ArrayContainer extends Container
+  {
+    private char[] values;
+    private int cardinality;
+
+    ArrayContainer(char[] values, int cardinality)
+    {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      int index = cardinality > 0 && values[cardinality - 1] < value
+          ? -(cardinality + 1) : Arrays.binarySearch(values, 0, cardinality, value);
+      if (index >= 0)
+      {
+        return this;
+      }
+      if (cardinality == MAX_ARRAY_CARDINALITY)
+      {
+        return BitmapContainer.valueOf(this).add(value);
+      }
+      index = -(index + 1);
+      if (cardinality == values.length)
+      {
+        values = Arrays.copyOf(values, Math.min(Math.max(cardinality * 2, 4), MAX_ARRAY_CARDINALITY));
+      }
+      System.arraycopy(values, index, values, index + 1, cardinality - index);
+      values[index] = value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      final int index = Arrays.binarySearch(values, 0, cardinality, value);
+      if (index >= 0)
+      {
+        System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    int first()
+    {
+      return values[0];
+    }
+
+    @Override
+    int last()
+    {
+      return values[cardinality - 1];
+    }
+
+    @Override
+    int nextValue(int fromValue)
+    {
+      if (fromValue > Character.MAX_VALUE)
+      {
+        return -1;
+      }
+      int index = Arrays.binarySearch(values, 0, cardinality, (char) fromValue);
+      if (index < 0)
+      {
+        index = -(index + 1);
+      }
+      return index < cardinality ? values[index] : -1;
+    }
+
+    @Override
+    int copyTo(long[] entryIDs, int offset, long highBits)
+    {
+      for (int i = 0; i < cardinality; i++)
+      {
+        entryIDs[offset++] = highBits | values[i];
+      }
+      return offset;
+    }
+
+    @Override
+    Container copy()
+    {
+      return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      final char[] result = new char[Math.min(cardinality, that.cardinality())];
+      int size = 0;
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < other.cardinality)
+        {
+          if (values[i] < other.values[j])
+          {
+            i++;
+          }
+          else if (values[i] > other.values[j])
+          {
+            j++;
+          }
+          else
+          {
+            result[size++] = values[i];
+            i++;
+            j++;
+          }
+        }
+      }
+      else
+      {
+        for (int i = 0; i < cardinality && size < result.length; i++)
+        {
+          if (that.contains(values[i]))
+          {
+            result[size++] = values[i];
+          }
+        }
+      }
+      return new ArrayContainer(result, size);
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      if (that instanceof BitmapContainer)
+      {
+        return that.or(this);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      final char[] result = new char[cardinality + other.cardinality];
+      int size = 0;
+      int i = 0;
+      int j = 0;
+      while (i < cardinality && j < other.cardinality)
+      {
+        if (values[i] < other.values[j])
+        {
+          result[size++] = values[i++];
+        }
+        else if (values[i] > other.values[j])
+        {
+          result[size++] = other.values[j++];
+        }
+        else
+        {
+          result[size++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      while (i < cardinality)
+      {
+        result[size++] = values[i++];
+      }
+      while (j < other.cardinality)
+      {
+        result[size++] = other.values[j++];
+      }
+      final ArrayContainer union = new ArrayContainer(result, size);
+      return size > MAX_ARRAY_CARDINALITY ? BitmapContainer.valueOf(union) : union;
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final char[] result = new char[cardinality];
+      int size = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        if (!that.contains(values[i]))
+        {
+          result[size++] = values[i];
+        }
+      }
+      return new ArrayContainer(result, size);
+    }
+  }
+
+  /** Container storing its values in a bitmap of 2<sup>16</sup> bits. */
+  private static final class BitmapContainer extends Container
+  {
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer()
+    {
+      this(new long[BITMAP_WORDS], 0);
+    }
+
+    private BitmapContainer(long[] words, int cardinality)
+    {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    static BitmapContainer valueOf(Container container)
+    {
+      if (container instanceof BitmapContainer)
+      {
+        return (BitmapContainer) container;
+      }
+      final ArrayContainer array = (ArrayContainer) container;
+      final BitmapContainer bitmap = new BitmapContainer();
+      for (int i = 0; i < array.cardinality; i++)
+      {
+        bitmap.set(array.values[i]);
+      }
+      return bitmap;
+    }
+
+    void set(int value)
+    {
+      final long mask = 1L << value;
+      final int index = value >>> 6;
+      if ((words[index] & mask) == 0)
+      {
+        words[index] |= mask;
+        cardinality++;
+      }
+    }
+
+    void setRange(int fromValue, int toValue)
+    {
+      for (int value = fromValue; value <= toValue; value++)
+      {
+        set(value);
+      }
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      set(value);
+      return this;
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      final long mask = 1L << value;
+      final int index = value >>> 6;
+      if ((words[index] & mask) != 0)
+      {
+        words[index] &= ~mask;
+        cardinality--;
+      }
+      return cardinality <= MAX_ARRAY_CARDINALITY ? toArrayContainer() : this;
+    }
+
+    @Override
+    int first()
+    {
+      return nextValue(0);
+    }
+
+    @Override
+    int last()
+    {
+      for (int i = BITMAP_WORDS - 1; i >= 0; i--)
+      {
+        if (words[i] != 0)
+        {
+          return i * Long.SIZE + Long.SIZE - 1 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int nextValue(int fromValue)
+    {
+      int index = fromValue >>> 6;
+      if (index >= BITMAP_WORDS)
+      {
+        return -1;
+      }
+      long word = words[index] & (-1L << fromValue);
+      while (word == 0)
+      {
+        if (++index == BITMAP_WORDS)
+        {
+          return -1;
+        }
+        word = words[index];
+      }
+      return index * Long.SIZE + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    int copyTo(long[] entryIDs, int offset, long highBits)
+    {
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          entryIDs[offset++] = highBits | (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    @Override
+    Container copy()
+    {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      if (that instanceof ArrayContainer)
+      {
+        return that.and(this);
+      }
+      final long[] otherWords = ((BitmapContainer) that).words;
+      final BitmapContainer result = new BitmapContainer();
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        result.words[i] = words[i] & otherWords[i];
+        result.cardinality += Long.bitCount(result.words[i]);
+      }
+      return result.optimize();
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      final BitmapContainer result = (BitmapContainer) copy();
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer array = (ArrayContainer) that;
+        for (int i = 0; i < array.cardinality; i++)
+        {
+          result.set(array.values[i]);
+        }
+        return result;
+      }
+      final long[] otherWords = ((BitmapContainer) that).words;
+      result.cardinality = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        result.words[i] |= otherWords[i];
+        result.cardinality += Long.bitCount(result.words[i]);
+      }
+      return result;
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final BitmapContainer result = (BitmapContainer) copy();
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer array = (ArrayContainer) that;
+        for (int i = 0; i < array.cardinality; i++)
+        {
+          final char value = array.values[i];
+          final long mask = 1L << value;
+          if ((result.words[value >>> 6] & mask) != 0)
+          {
+            result.words[value >>> 6] &= ~mask;
+            result.cardinality--;
+          }
+        }
+        return result.optimize();
+      }
+      final long[] otherWords = ((BitmapContainer) that).words;
+      result.cardinality = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        result.words[i] &= ~otherWords[i];
+        result.cardinality += Long.bitCount(result.words[i]);
+      }
+      return result.optimize();
+    }
+
+    private Container optimize()
+    {
+      return cardinality <= MAX_ARRAY_CARDINALITY ? toArrayContainer() : this;
+    }
+
+    private ArrayContainer toArrayContainer()
+    {
+      final char[] values = new char[cardinality];
+      int size = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          values[size++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, size);
+    }
+  }
+}
@@ -40,6 +40,7 @@ final class EntryIDSet implements Iterable<EntryID>
 {
   public static final EntryIDSetCodec CODEC_V1 = new EntryIDSetCodecV1();
   public static final EntryIDSetCodec CODEC_V2 = new EntryIDSetCodecV2();
+  public static final EntryIDSetCodec CODEC_V3 = new EntryIDSetCodecV3();
 
   private static final ByteSequence NO_KEY = ByteString.valueOfUtf8("<none>");
   private static final long[] EMPTY_LONG_ARRAY = new long[0];
@@ -357,6 +358,91 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Concrete implementation representing a set of EntryIDs stored in a compressed bitmap. Intersections, unions and
+   * differences with other bitmap sets are computed container by container rather than ID by ID.
+   */
+  private static final class BitmapImpl implements EntryIDSetImplementor
+  {
+    private final EntryIDBitmap bitmap;
+
+    BitmapImpl(EntryIDBitmap bitmap)
+    {
+      Reject.ifNull(bitmap, "bitmap must not be null");
+      this.bitmap = bitmap;
+    }
+
+    @Override
+    public long size()
+    {
+      return bitmap.size();
+    }
+
+    @Override
+    public void toString(StringBuilder buffer)
+    {
+      buffer.append("[COUNT:").append(size()).append("]");
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return true;
+    }
+
+    @Override
+    public boolean add(EntryID entryID)
+    {
+      return bitmap.add(entryID.longValue());
+    }
+
+    @Override
+    public boolean remove(EntryID entryID)
+    {
+      return bitmap.remove(entryID.longValue());
+    }
+
+    @Override
+    public boolean contains(EntryID entryID)
+    {
+      return bitmap.contains(entryID.longValue());
+    }
+
+    @Override
+    public void addAll(EntryIDSet that)
+    {
+      bitmap.or(toBitmap(that));
+    }
+
+    @Override
+    public void removeAll(EntryIDSet that)
+    {
+      bitmap.andNot(toBitmap(that));
+    }
+
+    @Override
+    public Iterator<EntryID> iterator()
+    {
+      return new BitmapIterator(bitmap.iterator());
+    }
+
+    @Override
+    public long[] getRange()
+    {
+      if (bitmap.size() != 0)
+      {
+        return new long[] { bitmap.first(), bitmap.last() };
+      }
+      return NO_ENTRY_IDS_RANGE;
+    }
+
+    @Override
+    public long[] getIDs()
+    {
+      return bitmap.toArray();
+    }
+  }
+
   /** Iterator for a set of Entry IDs. It must return values in order of ID. */
   private static final class IDSetIterator implements Iterator<EntryID>
   {
@@ -391,6 +477,35 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /** Iterator for a set of Entry IDs stored in a compressed bitmap. */
+  private static final class BitmapIterator implements Iterator<EntryID>
+  {
+    private final EntryIDBitmap.IDIterator iterator;
+
+    BitmapIterator(EntryIDBitmap.IDIterator iterator)
+    {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public EntryID next()
+    {
+      return new EntryID(iterator.nextID());
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   /** Legacy EntryIDSet codec implementation. */
   private static final class EntryIDSetCodecV1 implements EntryIDSetCodec
   {
@@ -535,6 +650,45 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Compressed bitmap EntryIDSet codec implementation. The IDs are stored in an {@link EntryIDBitmap}, whose containers
+   * are encoded as deltas, bitmaps or runs of consecutive IDs, whichever is the smallest: keys referencing a large
+   * proportion of the entries take at most one bit per entry instead of one byte or more with the compacted codec.
+   * Decoded sets are backed by the bitmap so that index filters intersect and merge them container by container.
+   */
+  private static final class EntryIDSetCodecV3 implements EntryIDSetCodec
+  {
+    private static final byte UNDEFINED_SET = (byte) 0xFF;
+
+    @Override
+    public ByteString encode(EntryIDSet idSet)
+    {
+      checkNotNull(idSet, "idSet must not be null");
+      final ByteStringBuilder builder = new ByteStringBuilder();
+      if (idSet.isDefined())
+      {
+        toBitmap(idSet).encode(builder);
+      }
+      else
+      {
+        builder.appendByte(UNDEFINED_SET);
+      }
+      return ByteString.wrap(builder.getBackingArray(), 0, builder.length());
+    }
+
+    @Override
+    public EntryIDSet decode(ByteSequence key, ByteString value)
+    {
+      checkNotNull(key, "key must not be null");
+      checkNotNull(value, "value must not be null");
+      if (value.byteAt(0) == UNDEFINED_SET)
+      {
+        return newUndefinedSetWithKey(key);
+      }
+      return new EntryIDSet(new BitmapImpl(EntryIDBitmap.decode(value.asReader())));
+    }
+  }
+
   static EntryIDSet newUndefinedSet()
   {
     return newUndefinedSetWithKey(NO_KEY);
@@ -562,6 +716,39 @@ final class EntryIDSet implements Iterable<EntryID>
     return new EntryIDSet(new DefinedImpl(entryIDs));
   }
 
+  /**
+   * Returns the bitmap of the provided defined set: the bitmap backing it if any, which must not be modified, or a new
+   * bitmap otherwise.
+   */
+  private static EntryIDBitmap toBitmap(EntryIDSet set)
+  {
+    if (set.concreteImpl instanceof BitmapImpl)
+    {
+      return ((BitmapImpl) set.concreteImpl).bitmap;
+    }
+    return EntryIDBitmap.valueOf(set.getIDs());
+  }
+
+  private static boolean isBitmap(EntryIDSet set)
+  {
+    return set.concreteImpl instanceof BitmapImpl;
+  }
+
+  /** Returns the IDs of the provided sorted array which are contained in the provided bitmap. */
+  private static long[] intersection(long[] set, EntryIDBitmap bitmap)
+  {
+    final long[] target = new long[set.length];
+    int ci = 0;
+    for (long id : set)
+    {
+      if (bitmap.contains(id))
+      {
+        target[ci++] = id;
+      }
+    }
+    return ci < target.length ? Arrays.copyOf(target, ci) : target;
+  }
+
   private static long[] intersection(long[] set1, long[] set2)
   {
     long[] target = new long[Math.min(set1.length, set2.length)];
@@ -605,6 +792,7 @@ final class EntryIDSet implements Iterable<EntryID>
     int count = 0;
 
     boolean containsUndefinedSet = false;
+    boolean containsBitmapSet = false;
     for (EntryIDSet l : sets)
     {
       if (!l.isDefined())
@@ -615,6 +803,7 @@ final class EntryIDSet implements Iterable<EntryID>
         }
         containsUndefinedSet = true;
       }
+      containsBitmapSet |= isBitmap(l);
       count += l.size();
     }
 
@@ -623,6 +812,16 @@ final class EntryIDSet implements Iterable<EntryID>
       return newUndefinedSet();
     }
 
+    if (containsBitmapSet)
+    {
+      final EntryIDBitmap union = new EntryIDBitmap();
+      for (EntryIDSet l : sets)
+      {
+        union.or(toBitmap(l));
+      }
+      return new EntryIDSet(new BitmapImpl(union));
+    }
+
     boolean needSort = false;
     long[] n = new long[count];
     int pos = 0;
@@ -823,7 +1022,9 @@ final class EntryIDSet implements Iterable<EntryID>
     checkNotNull(that, "that must not be null");
     if (!concreteImpl.isDefined())
     {
-      if ( that.isDefined() ) {
+      if (isBitmap(that)) {
+        concreteImpl = new BitmapImpl(toBitmap(that).copy());
+      } else if ( that.isDefined() ) {
         // NOTE: It's ok to share the same array instance here thanks to the copy-on-write
         // performed by the implementation.
         concreteImpl = new DefinedImpl(that.getIDs());
@@ -837,6 +1038,12 @@ final class EntryIDSet implements Iterable<EntryID>
       return;
     }
 
+    if (isBitmap(this) || isBitmap(that))
+    {
+      retainAllWithBitmap(that);
+      return;
+    }
+
     final boolean thatSetOverlap = compareForOverlap(getRange(), that.getRange()) == 0;
     if (thatSetOverlap)
     {
@@ -848,6 +1055,22 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  private void retainAllWithBitmap(EntryIDSet that)
+  {
+    if (!isBitmap(this))
+    {
+      concreteImpl = new DefinedImpl(intersection(concreteImpl.getIDs(), toBitmap(that)));
+    }
+    else if (!isBitmap(that))
+    {
+      concreteImpl = new DefinedImpl(intersection(that.getIDs(), toBitmap(this)));
+    }
+    else
+    {
+      toBitmap(this).and(toBitmap(that));
+    }
+  }
+
   /**
    * Remove all IDs in this set that are in a given set.
    *
@@ -16,17 +16,35 @@
  */
 package org.opends.server.backends.pluggable;
 
+import static org.forgerock.util.Utils.*;
+import static org.opends.messages.BackendMessages.*;
+
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.Entry;
@@ -34,13 +52,30 @@ import org.opends.server.types.LDIFExportConfig;
 import org.opends.server.util.LDIFException;
 import org.opends.server.util.StaticUtils;
 
-import static org.opends.messages.BackendMessages.*;
-
-/** Export a backend to LDIF. */
+/**
+ * Export a backend to LDIF.
+ * <p>
+ * When several threads are requested, the id2entry key space of each entry container is split into
+ * ranges of entry IDs which are decoded, filtered and formatted by a pool of worker threads, each
+ * reading its range in its own read transaction. The entries are then either written to a single
+ * LDIF file in entry ID order, like a sequential export, or each range is written to its own LDIF
+ * file when the export is split into several files.
+ * <p>
+ * When the export is in binary format, the entries are written as binary records rather than as
+ * LDIF, and the export is never split into several files.
+ */
 class ExportJob
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  private static final String EXPORTER_THREAD_NAME = "EXPORTER-%d";
+
+  /**
+   * The number of entry IDs of the ranges formatted in memory before being written in order to a
+   * single LDIF file.
+   */
+  private static final long ORDERED_RANGE_SIZE = 1000;
+
   /** The requested LDIF export configuration. */
   private final LDIFExportConfig exportConfig;
 
@@ -48,10 +83,13 @@ class ExportJob
   private final long progressInterval = 10000;
 
   /** The current number of entries exported. */
-  private long exportedCount;
+  private final AtomicLong exportedCount = new AtomicLong();
 
   /** The current number of entries skipped. */
-  private long skippedCount;
+  private final AtomicLong skippedCount = new AtomicLong();
+
+  /** The ranges currently being exported by worker threads, sorted by their first entry ID. */
+  private final Map<Long, Range> activeRanges = new ConcurrentSkipListMap<>();
 
   /**
    * Create a new export job.
@@ -100,6 +138,9 @@ class ExportJob
       }
     }
 
+    final int threadCount = exportConfig.getThreadCount() == 0 ? Runtime.getRuntime().availableProcessors()
+                                                                : exportConfig.getThreadCount();
+
     // Make a note of the time we started.
     long startTime = System.currentTimeMillis();
 
@@ -111,31 +152,14 @@ class ExportJob
     // Iterate through the containers.
     try
     {
-      rootContainer.getStorage().read(new ReadOperation<Void>()
+      if (threadCount > 1 || exportConfig.getShardCount() > 1)
       {
-        @Override
-        public Void run(ReadableTransaction txn) throws Exception
-        {
-          for (EntryContainer exportContainer : exportContainers)
-          {
-            if (exportConfig.isCancelled())
-            {
-              break;
-            }
-
-            exportContainer.sharedLock.lock();
-            try
-            {
-              exportContainer(txn, exportContainer);
-            }
-            finally
-            {
-              exportContainer.sharedLock.unlock();
-            }
-          }
-          return null;
-        }
-      });
+        exportContainersInParallel(rootContainer.getStorage(), exportContainers, threadCount);
+      }
+      else
+      {
+        exportContainers(rootContainer.getStorage(), exportContainers);
+      }
     }
     catch (Exception e)
     {
@@ -152,29 +176,228 @@ class ExportJob
     float rate = 0;
     if (totalTime > 0)
     {
-      rate = 1000f*exportedCount / totalTime;
+      rate = 1000f*exportedCount.get() / totalTime;
     }
 
-    logger.info(NOTE_EXPORT_FINAL_STATUS, exportedCount, skippedCount, totalTime/1000, rate);
+    logger.info(NOTE_EXPORT_FINAL_STATUS, exportedCount.get(), skippedCount.get(), totalTime/1000, rate);
+  }
+
+  private void exportContainers(Storage storage, final List<EntryContainer> exportContainers) throws Exception
+  {
+    storage.read(new ReadOperation<Void>()
+    {
+      @Override
+      public Void run(ReadableTransaction txn) throws Exception
+      {
+        for (EntryContainer exportContainer : exportContainers)
+        {
+          if (exportConfig.isCancelled())
+          {
+            break;
+          }
+
+          exportContainer.sharedLock.lock();
+          try
+          {
+            exportRange(txn, new Range(exportContainer, 0, 0, Long.MAX_VALUE), null, null);
+          }
+          finally
+          {
+            exportContainer.sharedLock.unlock();
+          }
+        }
+        return null;
+      }
+    });
+  }
+
+  private void exportContainersInParallel(Storage storage, List<EntryContainer> exportContainers, int threadCount)
+      throws Exception
+  {
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threadCount, newThreadFactory(null, EXPORTER_THREAD_NAME, true));
+    try
+    {
+      for (EntryContainer exportContainer : exportContainers)
+      {
+        if (exportConfig.isCancelled())
+        {
+          break;
+        }
+
+        exportContainer.sharedLock.lock();
+        try
+        {
+          final long[] bounds = getEntryIDBounds(storage, exportContainer);
+          if (bounds == null)
+          {
+            continue;
+          }
+          if (exportConfig.getShardCount() > 1 && !exportConfig.isBinaryFormat())
+          {
+            exportShards(executor, storage, exportContainer, bounds[1]);
+          }
+          else
+          {
+            exportInOrder(executor, storage, exportContainer, bounds[0], bounds[1], threadCount);
+          }
+        }
+        finally
+        {
+          exportContainer.sharedLock.unlock();
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the first and last entry IDs of the provided entry container, or {@code null} if it
+   * does not contain any entry.
+   */
+  private long[] getEntryIDBounds(Storage storage, final EntryContainer entryContainer) throws Exception
+  {
+    return storage.read(new ReadOperation<long[]>()
+    {
+      @Override
+      public long[] run(ReadableTransaction txn) throws Exception
+      {
+        try (Cursor<ByteString, ByteString> cursor = txn.openCursor(entryContainer.getID2Entry().getName()))
+        {
+          if (!cursor.positionToKeyOrNext(ByteString.valueOfLong(1)))
+          {
+            return null;
+          }
+          final long firstID = toEntryID(cursor.getKey(), 0);
+          cursor.positionToLastKey();
+          return new long[] { firstID, toEntryID(cursor.getKey(), firstID) };
+        }
+      }
+    });
+  }
+
+  private static long toEntryID(ByteString key, long defaultValue)
+  {
+    return key.length() == 8 ? key.toLong() : defaultValue;
   }
 
   /**
-   * Export the entries in a single entry entryContainer, in other words from
+   * Splits the entry IDs of the provided entry container into as many ranges as LDIF files, and
+   * writes each range to its own LDIF file. All the entry containers are written to the same set
+   * of files.
+   */
+  private void exportShards(ExecutorService executor, Storage storage, EntryContainer entryContainer, long lastID)
+      throws Exception
+  {
+    final int shardCount = exportConfig.getShardCount();
+    final long rangeSize = lastID / shardCount + 1;
+    final List<Future<Void>> futures = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++)
+    {
+      final long highID = i == shardCount - 1 ? Long.MAX_VALUE : (i + 1) * rangeSize;
+      final Range range = new Range(entryContainer, i, i * rangeSize, highID);
+      futures.add(executor.submit(new RangeExporter(storage, range, exportConfig.getShardWriter(i), null)));
+    }
+    for (Future<Void> future : futures)
+    {
+      waitFor(future);
+    }
+  }
+
+  /**
+   * Splits the entry IDs of the provided entry container into small ranges which are formatted in
+   * memory by the worker threads, and writes the ranges in entry ID order to the LDIF file, or to
+   * the output stream when the export is in binary format. The
+   * number of ranges formatted ahead of the range being written is bounded in order to bound the
+   * memory used by the export.
+   */
+  private void exportInOrder(ExecutorService executor, Storage storage, EntryContainer entryContainer,
+      long firstID, long lastID, int threadCount) throws Exception
+  {
+    final Queue<Future<Void>> pendingFutures = new ArrayDeque<>();
+    final Queue<StringWriter> pendingOutputs = new ArrayDeque<>();
+    final Queue<ByteStringBuilder> pendingRecords = new ArrayDeque<>();
+    int nbRanges = 0;
+    long nextID = 0;
+    while (nextID >= 0 || !pendingFutures.isEmpty())
+    {
+      while (nextID >= 0 && pendingFutures.size() < 2 * threadCount && !exportConfig.isCancelled())
+      {
+        // The first range starts at the beginning of the tree, and the last range covers the entries added since.
+        final long highID = Math.max(firstID, nextID) + ORDERED_RANGE_SIZE;
+        final Range range = new Range(entryContainer, nbRanges++, nextID, highID > lastID ? Long.MAX_VALUE : highID);
+        final StringWriter output = new StringWriter();
+        final ByteStringBuilder records = new ByteStringBuilder();
+        pendingFutures.add(executor.submit(new RangeExporter(storage, range, new BufferedWriter(output), records)));
+        pendingOutputs.add(output);
+        pendingRecords.add(records);
+        nextID = highID > lastID ? -1 : highID;
+      }
+      if (pendingFutures.isEmpty())
+      {
+        break;
+      }
+
+      waitFor(pendingFutures.remove());
+      final StringWriter output = pendingOutputs.remove();
+      if (output.getBuffer().length() > 0)
+      {
+        exportConfig.getWriter().append(output.getBuffer());
+      }
+      final ByteStringBuilder records = pendingRecords.remove();
+      if (records.length() > 0)
+      {
+        writeRecords(records);
+      }
+    }
+  }
+
+  private void writeRecords(ByteStringBuilder records) throws IOException
+  {
+    final OutputStream outputStream = exportConfig.getOutputStream();
+    outputStream.write(records.getBackingArray(), 0, records.length());
+  }
+
+  private static void waitFor(Future<Void> future) throws Exception
+  {
+    try
+    {
+      future.get();
+    }
+    catch (ExecutionException e)
+    {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
+
+  /**
+   * Export the entries of a range of entry IDs of a single entry container, in other words from
    * one of the base DNs.
-   * @param entryContainer The entry container that holds the entries to be
-   *                       exported.
+   * @param txn The transaction used to read the entries.
+   * @param range The range of entries to be exported.
+   * @param writer The writer to which the entries are written, or {@code null} to use the writer
+   *               of the export configuration.
+   * @param records The buffer to which the binary entry records are written when the export is in
+   *                binary format, or {@code null} to write them to the output stream of the
+   *                export configuration.
    * @throws StorageRuntimeException If an error occurs in the storage.
    * @throws IOException If an error occurs while writing an entry.
    * @throws  LDIFException  If an error occurs while trying to determine
    *                         whether to write an entry.
    */
-  private void exportContainer(ReadableTransaction txn, EntryContainer entryContainer)
+  private void exportRange(ReadableTransaction txn, Range range, BufferedWriter writer, ByteStringBuilder records)
        throws StorageRuntimeException, IOException, LDIFException
   {
+    final EntryContainer entryContainer = range.entryContainer;
     Cursor<ByteString, ByteString> cursor = txn.openCursor(entryContainer.getID2Entry().getName());
     try
     {
-      while (cursor.next())
+      boolean found = range.lowID > 0 ? cursor.positionToKeyOrNext(ByteString.valueOfLong(range.lowID))
+                                      : cursor.next();
+      for (; found; found = cursor.next())
       {
         if (exportConfig.isCancelled())
         {
@@ -195,10 +418,14 @@ class ExportJob
 
             logger.trace("Malformed id2entry ID %s.%n", StaticUtils.bytesToHex(key));
           }
-          skippedCount++;
+          range.skip(skippedCount);
           continue;
         }
 
+        if (entryID.longValue() >= range.highID)
+        {
+          break;
+        }
         if (entryID.longValue() == 0)
         {
           // This is the stored entry count.
@@ -209,8 +436,7 @@ class ExportJob
         Entry entry = null;
         try
         {
-          entry = ID2Entry.entryFromDatabase(value,
-                       entryContainer.getRootContainer().getCompressedSchema());
+          entry = entryContainer.getID2Entry().decodeEntry(value);
         }
         catch (Exception e)
         {
@@ -221,17 +447,19 @@ class ExportJob
             logger.trace("Malformed id2entry record for ID %d:%n%s%n",
                        entryID, StaticUtils.bytesToHex(value));
           }
-          skippedCount++;
+          range.skip(skippedCount);
           continue;
         }
 
-        if (entry.toLDIF(exportConfig))
+        final boolean isExported = exportConfig.isBinaryFormat() ? toBinaryRecord(entry, records)
+                                                                  : entry.toLDIF(exportConfig, writer);
+        if (isExported)
         {
-          exportedCount++;
+          range.export(exportedCount);
         }
         else
         {
-          skippedCount++;
+          range.skip(skippedCount);
         }
       }
     }
@@ -241,6 +469,96 @@ class ExportJob
     }
   }
 
+  private boolean toBinaryRecord(Entry entry, ByteStringBuilder records) throws IOException, LDIFException
+  {
+    if (records != null)
+    {
+      return entry.toBinaryRecord(exportConfig, records);
+    }
+    final ByteStringBuilder record = new ByteStringBuilder();
+    if (entry.toBinaryRecord(exportConfig, record))
+    {
+      writeRecords(record);
+      return true;
+    }
+    return false;
+  }
+
+  /** A range of entry IDs of an entry container, together with its export progress. */
+  private static final class Range
+  {
+    private final EntryContainer entryContainer;
+    /** The index of this range in the entry container. */
+    private final int index;
+    /** The first entry ID of this range. */
+    private final long lowID;
+    /** The entry ID following the last entry ID of this range. */
+    private final long highID;
+    private final AtomicLong exportedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    private Range(EntryContainer entryContainer, int index, long lowID, long highID)
+    {
+      this.entryContainer = entryContainer;
+      this.index = index;
+      this.lowID = lowID;
+      this.highID = highID;
+    }
+
+    private void export(AtomicLong totalExportedCount)
+    {
+      exportedCount.incrementAndGet();
+      totalExportedCount.incrementAndGet();
+    }
+
+    private void skip(AtomicLong totalSkippedCount)
+    {
+      skippedCount.incrementAndGet();
+      totalSkippedCount.incrementAndGet();
+    }
+  }
+
+  /** Exports a range of entry IDs in its own read transaction. */
+  private final class RangeExporter implements Callable<Void>
+  {
+    private final Storage storage;
+    private final Range range;
+    private final BufferedWriter writer;
+    private final ByteStringBuilder records;
+
+    private RangeExporter(Storage storage, Range range, BufferedWriter writer, ByteStringBuilder records)
+    {
+      this.storage = storage;
+      this.range = range;
+      this.writer = writer;
+      this.records = records;
+    }
+
+    @Override
+    public Void call() throws Exception
+    {
+      activeRanges.put(range.lowID, range);
+      try
+      {
+        storage.read(new ReadOperation<Void>()
+        {
+          @Override
+          public Void run(ReadableTransaction txn) throws Exception
+          {
+            exportRange(txn, range, writer, records);
+            return null;
+          }
+        });
+        writer.flush();
+        return null;
+      }
+      finally
+      {
+        activeRanges.remove(range.lowID);
+      }
+    }
+  }
+
   /** This class reports progress of the export job at fixed intervals. */
   private class ProgressTask extends TimerTask
   {
@@ -260,7 +578,7 @@ class ExportJob
     @Override
     public void run()
     {
-      long latestCount = exportedCount;
+      long latestCount = exportedCount.get();
       long deltaCount = latestCount - previousCount;
       long latestTime = System.currentTimeMillis();
       long deltaTime = latestTime - previousTime;
@@ -272,7 +590,12 @@ class ExportJob
 
       float rate = 1000f*deltaCount / deltaTime;
 
-      logger.info(NOTE_EXPORT_PROGRESS_REPORT, latestCount, skippedCount, rate);
+      logger.info(NOTE_EXPORT_PROGRESS_REPORT, latestCount, skippedCount.get(), rate);
+      for (Range range : activeRanges.values())
+      {
+        logger.info(NOTE_EXPORT_RANGE_PROGRESS_REPORT, range.index, range.entryContainer.getBaseDN(), range.lowID,
+            range.exportedCount.get(), range.skippedCount.get());
+      }
 
       previousCount = latestCount;
       previousTime = latestTime;
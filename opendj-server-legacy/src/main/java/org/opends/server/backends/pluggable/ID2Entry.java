@@ -23,10 +23,12 @@ import static org.opends.server.backends.pluggable.CursorTransformer.transformKe
 import static org.opends.server.core.DirectoryServer.*;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.DataFormatException;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.io.ASN1;
@@ -40,9 +42,12 @@ import org.forgerock.util.Function;
 import org.forgerock.util.Reject;
 import org.opends.server.api.CompressedSchema;
 import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.types.DirectoryException;
@@ -52,6 +57,11 @@ import org.opends.server.types.LDAPException;
 /**
  * Represents the tree containing the LDAP entries.
  * The key is the entry ID and the value is the entry contents.
+ * <p>
+ * Compressed entries may be compressed against a dictionary trained from a sample of the entries.
+ * The dictionaries are stored in a companion tree, keyed by their ID, and are never modified:
+ * training a new dictionary adds a new version, so that the entries compressed against the
+ * previous versions remain readable.
  */
 class ID2Entry extends AbstractTree
 {
@@ -75,9 +85,32 @@ class ID2Entry extends AbstractTree
     }
   };
 
+  /** Suffix of the name of the tree holding the compression dictionaries of the entries. */
+  static final String DICTIONARIES_TREE_SUFFIX = ".dictionaries";
+
+  /** The number of entries sampled to train a compression dictionary. */
+  static final int DICTIONARY_SAMPLE_SIZE = 1000;
+  /**
+   * The key of the record of the dictionaries tree holding the number of entries when the last
+   * training produced no dictionary. Dictionary IDs start at 1.
+   */
+  static final ByteString NO_DICTIONARY_KEY = ByteString.valueOfInt(0);
+
   /** Parameters for compression and encryption. */
   private DataConfig dataConfig;
 
+  private final TreeName dictionariesTreeName;
+  /** The compression dictionaries referenced by the entries, keyed by their ID. */
+  private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+  /** The ID of the dictionary against which the entries are compressed, or 0 if there is none. */
+  private volatile int currentDictionaryID;
+  /** The number of entries when the last training produced no dictionary, or 0 if it never happened. */
+  private volatile long noDictionaryRecordCount;
+  /** Samples the imported entries for training a compression dictionary. */
+  private CompressionDictionaryTrainer importTrainer;
+  /** Whether the imported entries have already been sampled. */
+  private volatile boolean importSampled;
+
   /** Cached encoding buffers. */
   private static final ThreadLocal<EntryCodec> ENTRY_CODEC_CACHE = new ThreadLocal<EntryCodec>()
   {
@@ -94,13 +127,17 @@ class ID2Entry extends AbstractTree
     if (codec.maxBufferSize != getMaxInternalBufferSize())
     {
       // Setting has changed, so recreate the codec.
+      codec.end();
       codec = new EntryCodec();
       ENTRY_CODEC_CACHE.set(codec);
     }
     return codec;
   }
 
-  /** A cached set of ByteStringBuilder buffers and ASN1Writer used to encode entries. */
+  /**
+   * A cached set of ByteStringBuilder buffers, ASN1Writer and compressors used to encode
+   * entries. The compressors are reset before each use, rather than created for each entry.
+   */
   private static final class EntryCodec
   {
     /** The ASN1 tag for the ByteString type. */
@@ -112,6 +149,9 @@ class ID2Entry extends AbstractTree
     private final ByteStringBuilder compressedEntryBuffer = new ByteStringBuilder();
     private final ASN1Writer writer;
     private final int maxBufferSize;
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private final byte[] deflateBuffer = new byte[BUFFER_INIT_SIZE];
 
     private EntryCodec()
     {
@@ -127,8 +167,14 @@ class ID2Entry extends AbstractTree
       compressedEntryBuffer.clearAndTruncate(maxBufferSize, BUFFER_INIT_SIZE);
     }
 
-    private Entry decode(ByteString bytes, CompressedSchema compressedSchema)
-        throws DirectoryException, DecodeException, IOException
+    private void end()
+    {
+      deflater.end();
+      inflater.end();
+    }
+
+    private Entry decode(ByteString bytes, CompressedSchema compressedSchema, Map<Integer, byte[]> dictionaries)
+        throws DirectoryException, DecodeException, IOException, DataFormatException
     {
       // Get the format version.
       byte formatVersion = bytes.byteAt(0);
@@ -145,41 +191,86 @@ class ID2Entry extends AbstractTree
       int uncompressedSize = (int)reader.readInteger();
       if(uncompressedSize > 0)
       {
-        // It was compressed.
+        // It was compressed, optionally against a dictionary.
+        // Read the compressed entry in the reused buffer rather than in a new array.
         reader.readOctetString(compressedEntryBuffer);
-
-        OutputStream decompressor = null;
-        try
+        byte[] dictionary = null;
+        if (reader.hasNextElement())
         {
-          // TODO: Should handle the case where uncompress fails
-          decompressor = new InflaterOutputStream(entryBuffer.asOutputStream());
-          compressedEntryBuffer.copyTo(decompressor);
-        }
-        finally {
-          closeSilently(decompressor);
+          final int dictionaryID = (int) reader.readInteger();
+          dictionary = dictionaries.get(dictionaryID);
+          if (dictionary == null)
+          {
+            throw DecodeException.error(ERR_ENTRY_COMPRESSION_DICTIONARY_NOT_FOUND.get(dictionaryID));
+          }
         }
 
-        // Since we are used the cached buffers (ByteStringBuilders),
-        // the decoded attribute values will not refer back to the
-        // original buffer.
-        return Entry.decode(entryBuffer.asReader(), compressedSchema);
+        // The attribute values are lazily decoded from the entry, so it is
+        // inflated in its own array rather than in the reused buffers.
+        final byte[] entry = inflate(compressedEntryBuffer, uncompressedSize, dictionary);
+        return Entry.decodeLazily(ByteString.wrap(entry), compressedSchema);
       }
       else
       {
         // Since we don't have to do any decompression, we can just decode
         // the entry directly.
         ByteString encodedEntry = reader.readOctetString();
-        return Entry.decode(encodedEntry.asReader(), compressedSchema);
+        return Entry.decodeLazily(encodedEntry, compressedSchema);
       }
     }
 
-    private ByteString encode(Entry entry, DataConfig dataConfig) throws DirectoryException
+    private byte[] inflate(ByteStringBuilder compressedEntry, int uncompressedSize, byte[] dictionary)
+        throws DataFormatException, DecodeException
     {
-      encodeVolatile(entry, dataConfig);
+      final byte[] entry = new byte[uncompressedSize];
+      inflater.reset();
+      inflater.setInput(compressedEntry.getBackingArray(), 0, compressedEntry.length());
+      int length = 0;
+      while (length < uncompressedSize)
+      {
+        final int inflated = inflater.inflate(entry, length, uncompressedSize - length);
+        if (inflated == 0)
+        {
+          if (inflater.needsDictionary() && dictionary != null)
+          {
+            inflater.setDictionary(dictionary);
+            dictionary = null;
+          }
+          else
+          {
+            throw DecodeException.error(ERR_ENTRY_DECOMPRESSION_FAILED.get());
+          }
+        }
+        length += inflated;
+      }
+      return entry;
+    }
+
+    private void deflate(byte[] dictionary)
+    {
+      deflater.reset();
+      if (dictionary != null)
+      {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(entryBuffer.getBackingArray(), 0, entryBuffer.length());
+      deflater.finish();
+      while (!deflater.finished())
+      {
+        final int length = deflater.deflate(deflateBuffer);
+        compressedEntryBuffer.appendBytes(deflateBuffer, 0, length);
+      }
+    }
+
+    private ByteString encode(Entry entry, DataConfig dataConfig, int dictionaryID, byte[] dictionary)
+        throws DirectoryException
+    {
+      encodeVolatile(entry, dataConfig, dictionaryID, dictionary);
       return encodedBuffer.toByteString();
     }
 
-    private void encodeVolatile(Entry entry, DataConfig dataConfig) throws DirectoryException
+    private void encodeVolatile(Entry entry, DataConfig dataConfig, int dictionaryID, byte[] dictionary)
+        throws DirectoryException
     {
       // Encode the entry for later use.
       entry.encode(entryBuffer, dataConfig.getEntryEncodeConfig());
@@ -194,18 +285,15 @@ class ID2Entry extends AbstractTree
 
         if (dataConfig.isCompressed())
         {
-          OutputStream compressor = null;
-          try {
-            compressor = new DeflaterOutputStream(compressedEntryBuffer.asOutputStream());
-            entryBuffer.copyTo(compressor);
-          }
-          finally {
-            closeSilently(compressor);
-          }
+          deflate(dictionary);
 
           // Compression needed and successful.
           writer.writeInteger(entryBuffer.length());
           writer.writeOctetString(compressedEntryBuffer);
+          if (dictionary != null)
+          {
+            writer.writeInteger(dictionaryID);
+          }
         }
         else
         {
@@ -235,6 +323,7 @@ class ID2Entry extends AbstractTree
   {
     super(name);
     this.dataConfig = dataConfig;
+    this.dictionariesTreeName = new TreeName(name.getBaseDN(), name.getIndexId() + DICTIONARIES_TREE_SUFFIX);
   }
 
   @Override
@@ -246,6 +335,188 @@ class ID2Entry extends AbstractTree
     {
       cursor.next();
     }
+
+    txn.openTree(dictionariesTreeName, createOnDemand);
+    try
+    {
+      loadDictionaries(txn);
+    }
+    catch (StorageRuntimeException e)
+    {
+      if (createOnDemand)
+      {
+        throw e;
+      }
+      // The dictionaries tree does not exist in read-only backends created by older versions.
+      logger.traceException(e);
+    }
+  }
+
+  /**
+   * Returns whether the entries must be compressed against a dictionary which has not been trained yet.
+   *
+   * @return {@code true} if a compression dictionary should be trained
+   */
+  boolean isDictionaryTrainingNeeded()
+  {
+    return dataConfig.isCompressedWithDictionary() && currentDictionaryID == 0;
+  }
+
+  @Override
+  void beforeDelete(WriteableTransaction txn) throws StorageRuntimeException
+  {
+    txn.deleteTree(dictionariesTreeName);
+    synchronized (this)
+    {
+      dictionaries.clear();
+      currentDictionaryID = 0;
+      noDictionaryRecordCount = 0;
+      importTrainer = null;
+      importSampled = false;
+    }
+  }
+
+  private void loadDictionaries(ReadableTransaction txn)
+  {
+    try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(dictionariesTreeName))
+    {
+      while (cursor.next())
+      {
+        if (cursor.getKey().equals(NO_DICTIONARY_KEY))
+        {
+          noDictionaryRecordCount = cursor.getValue().toLong();
+          continue;
+        }
+        final int dictionaryID = cursor.getKey().toInt();
+        dictionaries.put(dictionaryID, cursor.getValue().toByteArray());
+        currentDictionaryID = Math.max(currentDictionaryID, dictionaryID);
+      }
+    }
+  }
+
+  /**
+   * Trains a new compression dictionary from a sample of the entries of this tree. The new
+   * dictionary is used for compressing the entries written afterwards. Nothing is done if this
+   * tree does not contain enough entries sharing content.
+   * <p>
+   * The entries are sampled in a read transaction by seeking to evenly spaced entry IDs, then the
+   * new dictionary is stored in a separate write transaction: no transaction is held while training.
+   *
+   * @param storage the storage holding this tree
+   * @param onlyIfGrown whether nothing is done when the last training produced no dictionary and
+   *          the number of entries has not doubled since
+   */
+  void trainDictionary(Storage storage, final boolean onlyIfGrown)
+  {
+    final CompressionDictionaryTrainer trainer = new CompressionDictionaryTrainer(DICTIONARY_SAMPLE_SIZE);
+    try
+    {
+      final long estimatedRecordCount = storage.read(new ReadOperation<Long>()
+      {
+        @Override
+        public Long run(ReadableTransaction txn) throws Exception
+        {
+          return sampleEntries(txn, trainer, onlyIfGrown);
+        }
+      });
+      if (estimatedRecordCount == 0)
+      {
+        return;
+      }
+      final byte[] dictionary = trainer.train(CompressionDictionaryTrainer.MAX_DICTIONARY_SIZE);
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          addDictionary(txn, dictionary, estimatedRecordCount);
+        }
+      });
+    }
+    catch (Exception e)
+    {
+      // Do not prevent the backend from working: entries are compressed without dictionary.
+      logger.traceException(e);
+    }
+  }
+
+  /**
+   * Samples entries evenly spread over this tree by seeking to entry IDs, rather than walking all
+   * the entries.
+   *
+   * @return the estimated number of entries of this tree, or 0 if no entries have been sampled
+   */
+  private long sampleEntries(ReadableTransaction txn, CompressionDictionaryTrainer trainer, boolean onlyIfGrown)
+      throws Exception
+  {
+    try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      if (!cursor.next())
+      {
+        return 0;
+      }
+      final long firstID = new EntryID(cursor.getKey()).longValue();
+      cursor.positionToLastKey();
+      // Entry IDs are allocated sequentially, so their range bounds the number of entries
+      final long estimatedRecordCount = new EntryID(cursor.getKey()).longValue() - firstID + 1;
+      if (onlyIfGrown && !isWorthTraining(estimatedRecordCount))
+      {
+        return 0;
+      }
+
+      final long step = Math.max(estimatedRecordCount / DICTIONARY_SAMPLE_SIZE, 1);
+      long nextID = firstID;
+      while (!trainer.isComplete() && cursor.positionToKeyOrNext(new EntryID(nextID).toByteString()))
+      {
+        trainer.addSample(encodeUncompressed(decodeEntry(cursor.getValue())));
+        nextID = new EntryID(cursor.getKey()).longValue() + step;
+      }
+      return estimatedRecordCount;
+    }
+  }
+
+  /**
+   * Avoids training each time the tree is opened when the last training produced no dictionary:
+   * training again is only worth it once the number of entries has doubled.
+   */
+  private boolean isWorthTraining(long estimatedRecordCount)
+  {
+    final long lastRecordCount = noDictionaryRecordCount;
+    return lastRecordCount == 0 || estimatedRecordCount >= 2 * lastRecordCount;
+  }
+
+  /**
+   * Adds a newly trained dictionary, or remembers that training produced no dictionary, so that it
+   * is not attempted again each time the tree is opened.
+   */
+  private synchronized void addDictionary(WriteableTransaction txn, byte[] dictionary, long recordCount)
+  {
+    if (dictionary.length == 0)
+    {
+      noDictionaryRecordCount = Math.max(recordCount, 1);
+      txn.put(dictionariesTreeName, NO_DICTIONARY_KEY, ByteString.valueOfLong(noDictionaryRecordCount));
+      return;
+    }
+    if (noDictionaryRecordCount != 0)
+    {
+      txn.delete(dictionariesTreeName, NO_DICTIONARY_KEY);
+      noDictionaryRecordCount = 0;
+    }
+    int dictionaryID = 1;
+    for (int id : dictionaries.keySet())
+    {
+      dictionaryID = Math.max(dictionaryID, id + 1);
+    }
+    txn.put(dictionariesTreeName, ByteString.valueOfInt(dictionaryID), ByteString.wrap(dictionary));
+    dictionaries.put(dictionaryID, dictionary);
+    currentDictionaryID = dictionaryID;
+  }
+
+  private ByteString encodeUncompressed(Entry entry) throws DirectoryException
+  {
+    final ByteStringBuilder buffer = new ByteStringBuilder();
+    entry.encode(buffer, dataConfig.getEntryEncodeConfig());
+    return buffer.toByteString();
   }
 
   /**
@@ -256,8 +527,10 @@ class ID2Entry extends AbstractTree
    * <pre>
    * ByteString ::= [APPLICATION 0] IMPLICIT SEQUENCE {
    *  uncompressedSize      INTEGER,      -- A zero value means not compressed.
-   *  dataBytes             OCTET STRING  -- Optionally compressed encoding of
+   *  dataBytes             OCTET STRING, -- Optionally compressed encoding of
    *                                         the data bytes.
+   *  dictionaryID          INTEGER OPTIONAL -- The dictionary the data bytes
+   *                                            are compressed against.
    * }
    *
    * ID2EntryValue ::= ByteString
@@ -286,11 +559,17 @@ class ID2Entry extends AbstractTree
   static Entry entryFromDatabase(ByteString bytes,
       CompressedSchema compressedSchema) throws DirectoryException,
       DecodeException, LDAPException, DataFormatException, IOException
+  {
+    return entryFromDatabase(bytes, compressedSchema, Collections.<Integer, byte[]> emptyMap());
+  }
+
+  private static Entry entryFromDatabase(ByteString bytes, CompressedSchema compressedSchema,
+      Map<Integer, byte[]> dictionaries) throws DirectoryException, DecodeException, IOException, DataFormatException
   {
     EntryCodec codec = acquireEntryCodec();
     try
     {
-      return codec.decode(bytes, compressedSchema);
+      return codec.decode(bytes, compressedSchema, dictionaries);
     }
     finally
     {
@@ -309,11 +588,17 @@ class ID2Entry extends AbstractTree
    *                              the entry.
    */
   static ByteString entryToDatabase(Entry entry, DataConfig dataConfig) throws DirectoryException
+  {
+    return entryToDatabase(entry, dataConfig, 0, null);
+  }
+
+  private static ByteString entryToDatabase(Entry entry, DataConfig dataConfig, int dictionaryID, byte[] dictionary)
+      throws DirectoryException
   {
     EntryCodec codec = acquireEntryCodec();
     try
     {
-      return codec.encode(entry, dataConfig);
+      return codec.encode(entry, dataConfig, dictionaryID, dictionary);
     }
     finally
     {
@@ -322,9 +607,65 @@ class ID2Entry extends AbstractTree
   }
 
   ByteString encode(Entry entry) throws DirectoryException {
+    final int dictionaryID = currentDictionaryID;
+    if (dataConfig.isCompressedWithDictionary() && dictionaryID != 0)
+    {
+      return entryToDatabase(entry, dataConfig, dictionaryID, dictionaries.get(dictionaryID));
+    }
     return entryToDatabase(entry, dataConfig);
   }
 
+  /**
+   * Decodes an entry from its tree representation, without processing its virtual attributes.
+   *
+   * @param value The tree value of the entry.
+   * @return The decoded entry.
+   * @throws Exception If the tree value cannot be decoded.
+   */
+  Entry decodeEntry(ByteString value) throws Exception
+  {
+    return entryFromDatabase(value, dataConfig.getEntryEncodeConfig().getCompressedSchema(), dictionaries);
+  }
+
+  /**
+   * Writes an imported entry in the entry tree. When entries must be compressed against a dictionary
+   * which has not been trained yet, the first imported entries are sampled to train it.
+   *
+   * @param txn a non null transaction
+   * @param entryID The entry ID which forms the key.
+   * @param entry The imported entry.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   * @throws DirectoryException If a problem occurs while attempting to encode the entry.
+   */
+  void importEntry(WriteableTransaction txn, EntryID entryID, Entry entry)
+      throws StorageRuntimeException, DirectoryException
+  {
+    if (dataConfig.isCompressedWithDictionary() && currentDictionaryID == 0 && !importSampled)
+    {
+      sampleImportedEntry(txn, entry);
+    }
+    put(txn, entryID, encode(entry));
+  }
+
+  private synchronized void sampleImportedEntry(WriteableTransaction txn, Entry entry) throws DirectoryException
+  {
+    if (currentDictionaryID != 0 || importSampled)
+    {
+      return;
+    }
+    if (importTrainer == null)
+    {
+      importTrainer = new CompressionDictionaryTrainer(DICTIONARY_SAMPLE_SIZE);
+    }
+    if (importTrainer.addSample(encodeUncompressed(entry)))
+    {
+      // Entries are compressed without dictionary if the samples do not share enough content.
+      addDictionary(txn, importTrainer.train(CompressionDictionaryTrainer.MAX_DICTIONARY_SIZE), DICTIONARY_SAMPLE_SIZE);
+      importTrainer = null;
+      importSampled = true;
+    }
+  }
+
   /**
    * Write a record in the entry tree.
    *
@@ -398,8 +739,8 @@ class ID2Entry extends AbstractTree
     {
       return null;
     }
-    final Entry entry = entryFromDatabase(value, dataConfig.getEntryEncodeConfig().getCompressedSchema());
-    entry.processVirtualAttributes();
+    final Entry entry = decodeEntry(value);
+    entry.processVirtualAttributesOnDemand();
     return entry;
   }
 
@@ -18,6 +18,8 @@ package org.opends.server.backends.pluggable;
 import static org.opends.messages.UtilityMessages.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -38,13 +40,28 @@ import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.Entry;
 import org.opends.server.types.LDIFImportConfig;
 import org.opends.server.types.ObjectClass;
+import org.opends.server.util.Base64;
 import org.opends.server.util.LDIFException;
 import org.opends.server.util.LDIFReader;
+import org.opends.server.util.StaticUtils;
 
 /** This class specializes the LDIFReader for imports. */
 final class ImportLDIFReader extends LDIFReader
 {
-  private final ConcurrentHashMap<DN, CountDownLatch> pendingMap = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<DN, PendingEntry> pendingMap = new ConcurrentHashMap<>();
+
+  /** An entry read but not imported yet, the import of its children must wait until it has been imported. */
+  private static final class PendingEntry
+  {
+    /** The position of the entry in the LDIF data, children only wait for parents appearing before them. */
+    private final long position;
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private PendingEntry(long position)
+    {
+      this.position = position;
+    }
+  }
 
   /**
    * A class holding the entry, its entryID as assigned by the LDIF reader and its suffix as
@@ -114,6 +131,10 @@ final class ImportLDIFReader extends LDIFReader
    */
   public final EntryInformation readEntry(Map<DN, EntryContainer> suffixesMap) throws IOException, LDIFException
   {
+    if (importConfig.isBinaryFormat())
+    {
+      return readEntryFromRecords(suffixesMap);
+    }
     final boolean checkSchema = importConfig.validateSchema();
     while (true)
     {
@@ -151,48 +172,393 @@ final class ImportLDIFReader extends LDIFReader
           // read and return the next entry.
           continue;
         }
-        if (!importConfig.includeEntry(entryDN))
+        entryContainer = getIncludedEntryContainer(entryDN, lines, suffixesMap);
+        if (entryContainer == null)
         {
-          logger.trace("Skipping entry %s because the DN is not one that "
-              + "should be included based on the include and exclude branches.", entryDN);
-          entriesRead.incrementAndGet();
-          logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
           continue;
         }
-        entryContainer = getEntryContainer(entryDN, suffixesMap);
+        entriesRead.incrementAndGet();
+        entryID = rootContainer.getNextEntryID();
+
+        if (!addPending(entryDN))
+        {
+          skipDuplicateEntry(entryDN, lines);
+          continue;
+        }
+      }
+
+      final Entry entry = createIncludedEntry(lines, entryDN, checkSchema);
+      if (entry == null)
+      {
+        removePending(entryDN);
+        continue;
+      }
+      return new EntryInformation(entry, entryID, entryContainer);
+    }
+  }
+
+  /** Reads the next entry from the binary entry records, which do not need to be parsed. */
+  private EntryInformation readEntryFromRecords(Map<DN, EntryContainer> suffixesMap) throws IOException
+  {
+    final boolean checkSchema = importConfig.validateSchema();
+    while (true)
+    {
+      final Entry entry;
+      final List<StringBuilder> lines;
+      final EntryID entryID;
+      final EntryContainer entryContainer;
+      synchronized (this)
+      {
+        try
+        {
+          entry = readEntryRecord();
+        }
+        catch (LDIFException e)
+        {
+          logger.traceException(e);
+          continue;
+        }
+        if (entry == null)
+        {
+          return null;
+        }
+        lines = linesOf(entry);
+        lastEntryBodyLines = lines;
+        lastEntryHeaderLines = new LinkedList<>();
+
+        entryContainer = getIncludedEntryContainer(entry.getName(), lines, suffixesMap);
         if (entryContainer == null)
         {
-          logger.trace("Skipping entry %s because the DN is not one that "
-              + "should be included based on a suffix match check.", entryDN);
-          entriesRead.incrementAndGet();
-          logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
           continue;
         }
         entriesRead.incrementAndGet();
         entryID = rootContainer.getNextEntryID();
 
-        if (!addPending(entryDN))
+        if (!addPending(entry.getName()))
         {
-          logger.trace("Skipping entry %s because the DN already exists.", entryDN);
-          logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+          skipDuplicateEntry(entry.getName(), lines);
           continue;
         }
       }
 
-      // Create the entry and see if it is one that should be included in the import
-      final Entry entry = createEntry(lines, entryDN, checkSchema);
-      if (entry == null
-          || !isIncludedInImport(entry, lines)
-          || !invokeImportPlugins(entry, lines)
-          || (checkSchema && !isValidAgainstSchema(entry, lines)))
+      if (!isIncluded(entry, lines, checkSchema))
       {
-        removePending(entryDN);
+        removePending(entry.getName());
         continue;
       }
       return new EntryInformation(entry, entryID, entryContainer);
     }
   }
 
+  /**
+   * Returns the entry container where the entry with the provided DN must be imported, logging the entry as skipped
+   * if it is excluded from the import.
+   */
+  private EntryContainer getIncludedEntryContainer(DN entryDN, List<StringBuilder> lines,
+      Map<DN, EntryContainer> suffixesMap)
+  {
+    if (!importConfig.includeEntry(entryDN))
+    {
+      logger.trace("Skipping entry %s because the DN is not one that "
+          + "should be included based on the include and exclude branches.", entryDN);
+      entriesRead.incrementAndGet();
+      logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+      return null;
+    }
+    final EntryContainer entryContainer = getEntryContainer(entryDN, suffixesMap);
+    if (entryContainer == null)
+    {
+      logger.trace("Skipping entry %s because the DN is not one that "
+          + "should be included based on a suffix match check.", entryDN);
+      entriesRead.incrementAndGet();
+      logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+    }
+    return entryContainer;
+  }
+
+  private void skipDuplicateEntry(DN entryDN, List<StringBuilder> lines)
+  {
+    logger.trace("Skipping entry %s because the DN already exists.", entryDN);
+    logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+  }
+
+  /** Creates the entry and returns it if it is one that should be included in the import, null otherwise. */
+  private Entry createIncludedEntry(LinkedList<StringBuilder> lines, DN entryDN, boolean checkSchema)
+  {
+    final Entry entry = createEntry(lines, entryDN, checkSchema);
+    return entry != null && isIncluded(entry, lines, checkSchema) ? entry : null;
+  }
+
+  /** Returns whether the entry is one that should be included in the import. */
+  private boolean isIncluded(Entry entry, List<StringBuilder> lines, boolean checkSchema)
+  {
+    return isIncludedInImport(entry, lines)
+        && invokeImportPlugins(entry, lines)
+        && (!checkSchema || isValidAgainstSchema(entry, lines));
+  }
+
+  /**
+   * Returns a new reader of the entries of a range of the LDIF data.
+   *
+   * @param range
+   *          The range of the LDIF data to read.
+   * @return A new reader of the entries of the range.
+   */
+  RangeReader newRangeReader(LDIFRange range)
+  {
+    return new RangeReader(range);
+  }
+
+  /**
+   * Reads the entries of a range of the LDIF data, independently of the other ranges.
+   * <p>
+   * Before reading its entries, a range reader must {@link #registerEntries(Map) register} them in the pending map, so
+   * that children read by the readers of the following ranges wait until their parent has been imported. Entry IDs are
+   * allocated once the parent of the entry has been imported, so that parents always have lower IDs than their
+   * children.
+   */
+  final class RangeReader implements Closeable
+  {
+    private final LDIFRange range;
+    /** The entries registered in the pending map by this range reader. */
+    private final Map<DN, PendingEntry> registeredEntries = new HashMap<>();
+    private BufferedReader reader;
+    private long lineNumber;
+    private int nbEntries;
+
+    private RangeReader(LDIFRange range)
+    {
+      this.range = range;
+    }
+
+    /**
+     * Registers the entries of the range in the pending map, then waits until the entries of the previous ranges have
+     * been registered too.
+     *
+     * @param suffixesMap
+     *          A map of entry containers instances.
+     * @throws IOException
+     *           If an I/O problem occurs while reading from the file.
+     * @throws LDIFException
+     *           If the information read is not valid LDIF.
+     * @throws InterruptedException
+     *           If interrupted while waiting for the previous ranges.
+     */
+    void registerEntries(Map<DN, EntryContainer> suffixesMap)
+        throws IOException, LDIFException, InterruptedException
+    {
+      try (BufferedReader scanner = range.openReader(importConfig.getBufferSize()))
+      {
+        LinkedList<StringBuilder> lines;
+        while ((lines = readEntryLines(scanner, true)) != null)
+        {
+          final DN entryDN = scanDN(lines);
+          final PendingEntry pending = new PendingEntry(range.getEntryPosition(nbEntries++));
+          if (entryDN != null
+              && importConfig.includeEntry(entryDN)
+              && getEntryContainer(entryDN, suffixesMap) != null
+              && addPending(entryDN, pending))
+          {
+            registeredEntries.put(entryDN, pending);
+          }
+        }
+      }
+      finally
+      {
+        range.registered(lineNumber);
+      }
+      lineNumber = range.getFirstLineNumber() - 1;
+      nbEntries = 0;
+      reader = range.openReader(importConfig.getBufferSize());
+    }
+
+    /**
+     * Reads the next entry of the range, once its parent has been imported.
+     *
+     * @param suffixesMap
+     *          A map of entry containers instances.
+     * @return The next entry information read from the range, or <CODE>null</CODE> if the end of the range is reached.
+     * @throws IOException
+     *           If an I/O problem occurs while reading from the file.
+     * @throws LDIFException
+     *           If the information read cannot be parsed as an LDIF entry.
+     * @throws InterruptedException
+     *           If interrupted while waiting for the parent of the entry.
+     */
+    EntryInformation readEntry(Map<DN, EntryContainer> suffixesMap)
+        throws IOException, LDIFException, InterruptedException
+    {
+      final boolean checkSchema = importConfig.validateSchema();
+      LinkedList<StringBuilder> lines;
+      while ((lines = readEntryLines(reader, false)) != null)
+      {
+        final long position = range.getEntryPosition(nbEntries++);
+        final DN entryDN;
+        try
+        {
+          entryDN = readDN(lines, new LinkedList<StringBuilder>());
+        }
+        catch (LDIFException e)
+        {
+          logger.traceException(e);
+          continue;
+        }
+        if (entryDN == null)
+        {
+          continue;
+        }
+        final EntryContainer entryContainer = getIncludedEntryContainer(entryDN, lines, suffixesMap);
+        if (entryContainer == null)
+        {
+          continue;
+        }
+        entriesRead.incrementAndGet();
+
+        final PendingEntry pending = pendingMap.get(entryDN);
+        if (pending == null || pending.position != position)
+        {
+          skipDuplicateEntry(entryDN, lines);
+          continue;
+        }
+        final Entry entry = createIncludedEntry(lines, entryDN, checkSchema);
+        if (entry == null)
+        {
+          removePending(entryDN);
+          continue;
+        }
+        final DN parentDN = entryContainer.getParentWithinBase(entryDN);
+        if (parentDN != null)
+        {
+          waitIfPending(parentDN, position);
+        }
+        return new EntryInformation(entry, rootContainer.getNextEntryID(), entryContainer);
+      }
+      return null;
+    }
+
+    /**
+     * Reads the lines of the next entry of the range. When scanning, only the first two lines of the entry are kept,
+     * which is enough to read its DN.
+     */
+    private LinkedList<StringBuilder> readEntryLines(BufferedReader lineReader, boolean isScan)
+        throws IOException, LDIFException
+    {
+      final LinkedList<StringBuilder> lines = new LinkedList<>();
+      int nbLines = 0;
+      boolean isLastLineKept = false;
+      String line;
+      while ((line = lineReader.readLine()) != null)
+      {
+        lineNumber++;
+        if (line.length() > 0 && line.charAt(0) == '\uFEFF')
+        {
+          // This is a UTF-8 BOM that Java doesn't skip. We will skip it here.
+          line = line.substring(1);
+        }
+
+        if (line.length() == 0)
+        {
+          if (nbLines > 0)
+          {
+            return lines;
+          }
+        }
+        else if (line.charAt(0) == '#')
+        {
+          // This is a comment. Ignore it.
+        }
+        else if (line.charAt(0) == ' ' || line.charAt(0) == '\t')
+        {
+          if (isLastLineKept)
+          {
+            lines.getLast().append(line.substring(1));
+          }
+          else if (nbLines == 0 && !isScan)
+          {
+            LocalizableMessage message = ERR_LDIF_INVALID_LEADING_SPACE.get(lineNumber, line);
+            logToRejectWriter(lines, message);
+            throw new LDIFException(message, lineNumber, false);
+          }
+        }
+        else
+        {
+          if (nbLines == 0 && !isScan)
+          {
+            // Best effort: the line number is shared with the other readers to build the error messages
+            lastEntryLineNumber = lineNumber;
+          }
+          nbLines++;
+          isLastLineKept = !isScan || nbLines <= 2;
+          if (isLastLineKept)
+          {
+            lines.add(new StringBuilder(line));
+          }
+        }
+      }
+      return nbLines > 0 ? lines : null;
+    }
+
+    /** Returns the DN of an entry scanned by this reader, or null if it cannot be decoded. */
+    private DN scanDN(LinkedList<StringBuilder> lines)
+    {
+      StringBuilder line = lines.getFirst();
+      if (startsWithIgnoreCase(line, "version:"))
+      {
+        if (lines.size() < 2)
+        {
+          return null;
+        }
+        line = lines.get(1);
+      }
+      if (!startsWithIgnoreCase(line, "dn:"))
+      {
+        return null;
+      }
+      try
+      {
+        if (line.length() > 3 && line.charAt(3) == ':')
+        {
+          return DN.valueOf(new String(Base64.decode(skipSpaces(line, 4)), "UTF-8"));
+        }
+        return DN.valueOf(skipSpaces(line, 3));
+      }
+      catch (Exception e)
+      {
+        // The entry will be rejected when it is read
+        logger.traceException(e);
+        return null;
+      }
+    }
+
+    private boolean startsWithIgnoreCase(StringBuilder line, String prefix)
+    {
+      return line.length() >= prefix.length() && prefix.equalsIgnoreCase(line.substring(0, prefix.length()));
+    }
+
+    private String skipSpaces(StringBuilder line, int startPos)
+    {
+      int pos = startPos;
+      while (pos < line.length() && line.charAt(pos) == ' ')
+      {
+        pos++;
+      }
+      return line.substring(pos);
+    }
+
+    /** Closes the range and releases the children of the entries which have not been imported. */
+    @Override
+    public void close()
+    {
+      StaticUtils.close(reader);
+      for (Map.Entry<DN, PendingEntry> registered : registeredEntries.entrySet())
+      {
+        final PendingEntry pending = registered.getValue();
+        pendingMap.remove(registered.getKey(), pending);
+        pending.latch.countDown();
+      }
+    }
+  }
+
   private Entry createEntry(List<StringBuilder> lines, DN entryDN, boolean checkSchema)
   {
     // Read the set of attributes from the entry.
@@ -222,7 +588,7 @@ final class ImportLDIFReader extends LDIFReader
     return entry;
   }
 
-  private boolean isIncludedInImport(Entry entry, LinkedList<StringBuilder> entryLines)
+  private boolean isIncludedInImport(Entry entry, List<StringBuilder> entryLines)
   {
     final DN entryDN = entry.getName();
     try
@@ -244,7 +610,7 @@ final class ImportLDIFReader extends LDIFReader
     }
   }
 
-  private boolean invokeImportPlugins(final Entry entry, LinkedList<StringBuilder> lines)
+  private boolean invokeImportPlugins(final Entry entry, List<StringBuilder> lines)
   {
     if (importConfig.invokeImportPlugins())
     {
@@ -270,7 +636,7 @@ final class ImportLDIFReader extends LDIFReader
     return true;
   }
 
-  private boolean isValidAgainstSchema(Entry entry, LinkedList<StringBuilder> lines)
+  private boolean isValidAgainstSchema(Entry entry, List<StringBuilder> lines)
   {
     final DN entryDN = entry.getName();
     addRDNAttributesIfNecessary(entryDN, entry.getUserAttributes(), entry.getOperationalAttributes());
@@ -318,10 +684,21 @@ final class ImportLDIFReader extends LDIFReader
    */
   void waitIfPending(DN parentDN)  throws InterruptedException
   {
-    final CountDownLatch l = pendingMap.get(parentDN);
-    if (l != null)
+    waitIfPending(parentDN, Long.MAX_VALUE);
+  }
+
+  /**
+   * Make sure the specified parent DN is not in the pending map, unless it appears after the child in the LDIF data.
+   *
+   * @param parentDN The DN of the parent.
+   * @param position The position of the child in the LDIF data.
+   */
+  private void waitIfPending(DN parentDN, long position) throws InterruptedException
+  {
+    final PendingEntry pending = pendingMap.get(parentDN);
+    if (pending != null && pending.position < position)
     {
-      l.await();
+      pending.latch.await();
     }
   }
 
@@ -333,7 +710,37 @@ final class ImportLDIFReader extends LDIFReader
    */
   private boolean addPending(DN dn)
   {
-    return pendingMap.putIfAbsent(dn, new CountDownLatch(1)) == null;
+    return pendingMap.putIfAbsent(dn, new PendingEntry(Long.MIN_VALUE)) == null;
+  }
+
+  /**
+   * Add the specified DN to the pending map, unless an entry with the same DN appearing before it in the LDIF data is
+   * already pending.
+   *
+   * @param dn The DN to add to the map.
+   * @param pending The pending entry to add.
+   * @return true if the DN was added, false if an entry with the same DN appearing before it is already present.
+   */
+  private boolean addPending(DN dn, PendingEntry pending)
+  {
+    while (true)
+    {
+      final PendingEntry existing = pendingMap.putIfAbsent(dn, pending);
+      if (existing == null)
+      {
+        return true;
+      }
+      else if (existing.position < pending.position)
+      {
+        return false;
+      }
+      else if (pendingMap.replace(dn, existing, pending))
+      {
+        // Ranges register their entries before any of the following ranges is read
+        existing.latch.countDown();
+        return true;
+      }
+    }
   }
 
   /**
@@ -344,10 +751,10 @@ final class ImportLDIFReader extends LDIFReader
    */
   void removePending(DN dn)
   {
-    CountDownLatch l = pendingMap.remove(dn);
-    if(l != null)
+    PendingEntry pending = pendingMap.remove(dn);
+    if(pending != null)
     {
-      l.countDown();
+      pending.latch.countDown();
     }
   }
 }
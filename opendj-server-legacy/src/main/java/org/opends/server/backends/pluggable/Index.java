@@ -37,8 +37,12 @@ interface Index extends Tree
 
   Cursor<ByteString, EntryIDSet> openCursor(ReadableTransaction txn);
 
+  Cursor<ByteString, EntryIDSet> openSegmentedCursor(ReadableTransaction txn);
+
   boolean setIndexEntryLimit(int indexEntryLimit);
 
+  boolean setBigIndexKeysEnabled(boolean enabled);
+
   void setTrusted(WriteableTransaction txn, boolean trusted);
 
   void update(WriteableTransaction txn, ByteString key, EntryIDSet deletedIDs, EntryIDSet addedIDs);
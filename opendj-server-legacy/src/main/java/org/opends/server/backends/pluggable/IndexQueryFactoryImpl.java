@@ -181,7 +181,7 @@ final class IndexQueryFactoryImpl implements IndexQueryFactory<IndexQuery>
             return createMatchAllQuery().evaluate(debugMessage, indexNameOut);
           }
 
-          final EntryIDSet entrySet = index.get(txn, key);
+          final EntryIDSet entrySet = readKey(index, key);
           updateStatsForUndefinedResults(debugMessage, entrySet, index);
           return entrySet;
         }
@@ -229,7 +229,8 @@ final class IndexQueryFactoryImpl implements IndexQueryFactory<IndexQuery>
           // Total number of IDs found so far.
           int totalIDCount = 0;
           ArrayList<EntryIDSet> sets = new ArrayList<>();
-          Cursor<ByteString, EntryIDSet> cursor = index.openCursor(txn);
+          // Stream the segments of the big keys, so that they are not read past the limit
+          Cursor<ByteString, EntryIDSet> cursor = index.openSegmentedCursor(txn);
           try
           {
             boolean success;
@@ -316,6 +317,38 @@ final class IndexQueryFactoryImpl implements IndexQueryFactory<IndexQuery>
       };
   }
 
+  /**
+   * Reads the entry IDs of the provided key. The segments of a big key are streamed and merged, giving up once more
+   * entry IDs than the cursor entry limit have been read.
+   */
+  private EntryIDSet readKey(Index index, ByteSequence key)
+  {
+    try (Cursor<ByteString, EntryIDSet> cursor = index.openSegmentedCursor(txn))
+    {
+      if (!cursor.positionToKey(key))
+      {
+        return index.isTrusted() ? newDefinedSet() : newUndefinedSet();
+      }
+      final EntryIDSet entryIDs = cursor.getValue();
+      final int limit = Math.max(CURSOR_ENTRY_LIMIT, index.getIndexEntryLimit());
+      while (entryIDs.isDefined() && cursor.next() && cursor.getKey().equals(key))
+      {
+        entryIDs.addAll(cursor.getValue());
+        if (entryIDs.size() > limit)
+        {
+          // Use the key to have debugsearchindex return LIMIT-EXCEEDED instead of NOT-INDEXED.
+          return newUndefinedSetWithKey(cursor.getKey());
+        }
+      }
+      return entryIDs;
+    }
+    catch (StorageRuntimeException e)
+    {
+      logger.traceException(e);
+      return newUndefinedSet();
+    }
+  }
+
   @Override
   public IndexQuery createIntersectionQuery(Collection<IndexQuery> subqueries)
   {
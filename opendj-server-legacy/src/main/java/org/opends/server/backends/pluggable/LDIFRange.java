@@ -0,0 +1,263 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A range of bytes of an LDIF file, starting and ending at entry boundaries, which can be read
+ * independently of the other ranges of the file.
+ * <p>
+ * Ranges are ordered: the entries of a range appear in the LDIF data after the entries of the
+ * previous range. Before reading its entries, each range registers them as pending entries, then
+ * waits until the entries of the previous ranges have been registered too. This ensures an entry
+ * whose parent has not been imported yet always finds its parent in the pending entries.
+ */
+final class LDIFRange
+{
+  /** The minimum size of a range, small LDIF files are read as a single range. */
+  static final long MIN_RANGE_SIZE = 64 * 1024;
+  /** The maximum size of a range, bounding the number of pending entries registered by a range. */
+  static final long MAX_RANGE_SIZE = 8 * 1024 * 1024;
+  /** The number of ranges per thread, so that the threads keep busy until the end of the import. */
+  private static final int RANGES_PER_THREAD = 8;
+  /** The size of the buffer used to look for entry boundaries. */
+  private static final int BOUNDARY_BUFFER_SIZE = 8192;
+
+  private final int index;
+  private final String path;
+  private final long start;
+  private final long end;
+  private final LDIFRange previous;
+  private final CountDownLatch registered = new CountDownLatch(1);
+  /** Written before counting down {@link #registered}, read after waiting for it. */
+  private long firstLineNumber = 1;
+  private long lineCount;
+
+  private LDIFRange(int index, String path, long start, long end, LDIFRange previous)
+  {
+    this.index = index;
+    this.path = path;
+    this.start = start;
+    this.end = end;
+    this.previous = previous;
+  }
+
+  /**
+   * Splits the provided LDIF files into ranges starting and ending at entry boundaries.
+   *
+   * @param ldifFiles
+   *          the paths of the LDIF files to split, in import order
+   * @param nbThreads
+   *          the number of threads which will read the ranges
+   * @return the ranges of the LDIF files, in import order
+   * @throws IOException
+   *           if a problem occurs while reading the LDIF files
+   */
+  static List<LDIFRange> split(List<String> ldifFiles, int nbThreads) throws IOException
+  {
+    long totalSize = 0;
+    for (String ldifFile : ldifFiles)
+    {
+      totalSize += Paths.get(ldifFile).toFile().length();
+    }
+    final long rangeSize =
+        Math.max(MIN_RANGE_SIZE, Math.min(MAX_RANGE_SIZE, totalSize / (nbThreads * RANGES_PER_THREAD)));
+
+    final List<LDIFRange> ranges = new ArrayList<>();
+    LDIFRange previous = null;
+    for (String ldifFile : ldifFiles)
+    {
+      try (FileChannel channel = FileChannel.open(Paths.get(ldifFile), StandardOpenOption.READ))
+      {
+        final long fileSize = channel.size();
+        long rangeStart = 0;
+        while (rangeStart < fileSize)
+        {
+          final long rangeEnd =
+              rangeStart + rangeSize < fileSize ? nextEntryBoundary(channel, rangeStart + rangeSize) : fileSize;
+          previous = new LDIFRange(ranges.size(), ldifFile, rangeStart, rangeEnd, previous);
+          ranges.add(previous);
+          rangeStart = rangeEnd;
+        }
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Returns the position of the first line following a blank line, at or after the provided
+   * position, or the size of the file if there is none.
+   */
+  static long nextEntryBoundary(FileChannel channel, long position) throws IOException
+  {
+    // Look back at the previous bytes in case the provided position is right after a blank line
+    long bufferPosition = Math.max(0, position - 3);
+    final ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_BUFFER_SIZE);
+    // The number of consecutive line ends, not counting carriage returns
+    int nbLineEnds = 0;
+    while (true)
+    {
+      buffer.clear();
+      final int nbRead = channel.read(buffer, bufferPosition);
+      if (nbRead <= 0)
+      {
+        return channel.size();
+      }
+      for (int i = 0; i < nbRead; i++)
+      {
+        final byte b = buffer.get(i);
+        if (nbLineEnds >= 2 && bufferPosition + i >= position)
+        {
+          return bufferPosition + i;
+        }
+        if (b == '\n')
+        {
+          nbLineEnds++;
+        }
+        else if (b != '\r')
+        {
+          nbLineEnds = 0;
+        }
+      }
+      bufferPosition += nbRead;
+    }
+  }
+
+  /**
+   * Returns the position of an entry of this range, ordering the entries of all the ranges by
+   * their order in the LDIF data.
+   *
+   * @param entryIndex
+   *          the index of the entry in this range
+   * @return the position of the entry in the LDIF data
+   */
+  long getEntryPosition(int entryIndex)
+  {
+    return ((long) index << 32) | entryIndex;
+  }
+
+  /**
+   * Opens a reader over the bytes of this range.
+   *
+   * @param bufferSize
+   *          the size of the buffer of the reader
+   * @return a new reader over the bytes of this range
+   * @throws IOException
+   *           if a problem occurs while opening the LDIF file
+   */
+  BufferedReader openReader(int bufferSize) throws IOException
+  {
+    final FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    return new BufferedReader(new InputStreamReader(new RangeInputStream(channel, start, end)), bufferSize);
+  }
+
+  /**
+   * Indicates the entries of this range have been registered, then waits until the entries of the
+   * previous ranges have been registered too.
+   *
+   * @param lineCount
+   *          the number of lines of this range
+   * @throws InterruptedException
+   *           if interrupted while waiting for the previous ranges
+   */
+  void registered(long lineCount) throws InterruptedException
+  {
+    try
+    {
+      this.lineCount = lineCount;
+      if (previous != null)
+      {
+        previous.registered.await();
+        firstLineNumber = previous.firstLineNumber + previous.lineCount;
+      }
+    }
+    finally
+    {
+      registered.countDown();
+    }
+  }
+
+  /**
+   * Returns the number of the first line of this range in the LDIF data, starting with 1. Only
+   * valid once the entries of this range have been {@link #registered(long) registered}.
+   *
+   * @return the number of the first line of this range
+   */
+  long getFirstLineNumber()
+  {
+    return firstLineNumber;
+  }
+
+  @Override
+  public String toString()
+  {
+    return path + "[" + start + ", " + end + "[";
+  }
+
+  /** Reads the bytes of a range with positional reads on a file channel. */
+  private static final class RangeInputStream extends InputStream
+  {
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    private RangeInputStream(FileChannel channel, long start, long end)
+    {
+      this.channel = channel;
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      if (position >= end)
+      {
+        return -1;
+      }
+      final int nbRead = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+      if (nbRead > 0)
+      {
+        position += nbRead;
+      }
+      return nbRead;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      channel.close();
+    }
+  }
+}
@@ -88,7 +88,6 @@ import org.forgerock.util.promise.PromiseImpl;
 import org.opends.server.admin.std.meta.BackendIndexCfgDefn.IndexType;
 import org.opends.server.admin.std.server.BackendIndexCfg;
 import org.opends.server.admin.std.server.PluggableBackendCfg;
-import org.opends.server.api.CompressedSchema;
 import org.opends.server.backends.RebuildConfig;
 import org.opends.server.backends.pluggable.AttributeIndex.MatchingRuleIndex;
 import org.opends.server.backends.pluggable.CursorTransformer.SequentialCursorAdapter;
@@ -572,6 +571,8 @@ final class OnDiskMergeImporter
     @Override
     public void processAllEntries(final EntryProcessor entryProcessor) throws Exception
     {
+      final List<LDIFRange> ranges = splitIntoRanges();
+      final AtomicInteger nextRange = new AtomicInteger();
       final ScheduledExecutorService scheduler =
           Executors.newSingleThreadScheduledExecutor(newThreadFactory(null, PHASE1_REPORTER_THREAD_NAME, true));
       scheduler.scheduleAtFixedRate(new PhaseOneProgressReporter(), 10, 10, TimeUnit.SECONDS);
@@ -585,34 +586,26 @@ final class OnDiskMergeImporter
             @Override
             public Void call() throws Exception
             {
+              if (ranges != null)
+              {
+                int rangeIndex;
+                while (!importConfig.isCancelled() && (rangeIndex = nextRange.getAndIncrement()) < ranges.size())
+                {
+                  importRange(ranges.get(rangeIndex), entryProcessor);
+                }
+                return null;
+              }
+
               EntryInformation entryInfo;
               while ((entryInfo = reader.readEntry(entryContainers)) != null && !importConfig.isCancelled())
               {
                 final EntryContainer entryContainer = entryInfo.getEntryContainer();
-                final Entry entry = entryInfo.getEntry();
-                final DN entryDN = entry.getName();
-                final DN parentDN = entryContainer.getParentWithinBase(entryDN);
-
+                final DN parentDN = entryContainer.getParentWithinBase(entryInfo.getEntry().getName());
                 if (parentDN != null)
                 {
                   reader.waitIfPending(parentDN);
                 }
-                try
-                {
-                  entryProcessor.processEntry(entryContainer, entryInfo.getEntryID(), entry);
-                }
-                catch (DirectoryException e)
-                {
-                  reader.rejectEntry(entry, e.getMessageObject());
-                }
-                catch (Exception e)
-                {
-                  reader.rejectEntry(entry, ERR_EXECUTION_ERROR.get(e));
-                }
-                finally
-                {
-                  reader.removePending(entry.getName());
-                }
+                importEntry(entryInfo, entryProcessor);
               }
               return null;
             }
@@ -627,6 +620,55 @@ final class OnDiskMergeImporter
       }
     }
 
+    /**
+     * Returns the ranges of the LDIF files which can be read in parallel, or null if the LDIF data can only be read
+     * sequentially.
+     */
+    private List<LDIFRange> splitIntoRanges() throws IOException
+    {
+      final List<String> ldifFiles = importConfig.getLDIFFiles();
+      if (ldifFiles == null || importConfig.isBinaryFormat() || importConfig.isCompressed()
+          || importConfig.isEncrypted())
+      {
+        return null;
+      }
+      return LDIFRange.split(ldifFiles, nbThreads);
+    }
+
+    private void importRange(LDIFRange range, EntryProcessor entryProcessor) throws Exception
+    {
+      try (ImportLDIFReader.RangeReader rangeReader = reader.newRangeReader(range))
+      {
+        rangeReader.registerEntries(entryContainers);
+        EntryInformation entryInfo;
+        while ((entryInfo = rangeReader.readEntry(entryContainers)) != null && !importConfig.isCancelled())
+        {
+          importEntry(entryInfo, entryProcessor);
+        }
+      }
+    }
+
+    private void importEntry(EntryInformation entryInfo, EntryProcessor entryProcessor)
+    {
+      final Entry entry = entryInfo.getEntry();
+      try
+      {
+        entryProcessor.processEntry(entryInfo.getEntryContainer(), entryInfo.getEntryID(), entry);
+      }
+      catch (DirectoryException e)
+      {
+        reader.rejectEntry(entry, e.getMessageObject());
+      }
+      catch (Exception e)
+      {
+        reader.rejectEntry(entry, ERR_EXECUTION_ERROR.get(e));
+      }
+      finally
+      {
+        reader.removePending(entry.getName());
+      }
+    }
+
     long getEntriesRead()
     {
       return reader.getEntriesRead();
@@ -691,7 +733,6 @@ final class OnDiskMergeImporter
     private static final String PHASE1_REPORTER_THREAD_NAME = "REPORTER-%d";
 
     private final EntryContainer entryContainer;
-    private final CompressedSchema schema;
     private final Importer importer;
     private final ExecutorService executor;
     private final long nbTotalEntries;
@@ -704,7 +745,6 @@ final class OnDiskMergeImporter
       this.nbTotalEntries = nbTotalEntries;
       this.entryContainer = entryContainer;
       this.importer = importer;
-      this.schema = entryContainer.getRootContainer().getCompressedSchema();
       // by default (unfortunately) the ThreadPoolExecutor will throw an exception when queue is full.
       this.executor =
           new ThreadPoolExecutor(nbThread, nbThread, 0, TimeUnit.SECONDS,
@@ -749,7 +789,7 @@ final class OnDiskMergeImporter
               try
               {
                 entryProcessor.processEntry(entryContainer,
-                    new EntryID(key), ID2Entry.entryFromDatabase(value, schema));
+                    new EntryID(key), entryContainer.getID2Entry().decodeEntry(value));
                 nbEntriesProcessed.incrementAndGet();
               }
               catch (Exception e)
@@ -991,6 +1031,11 @@ final class OnDiskMergeImporter
     final Callable<Void> newChunkCopierTask(TreeName treeName, final Chunk source,
         PhaseTwoProgressReporter progressReporter)
     {
+      final DefaultIndex index = getIndex(entryContainers.get(treeName.getBaseDN()), treeName);
+      if (index != null && index.isBigIndexKeysEnabled())
+      {
+        return new IndexImporterTask(progressReporter, source, index, importer);
+      }
       return new ChunkCopierTask(progressReporter, source, treeName, importer);
     }
 
@@ -2230,6 +2275,37 @@ final class OnDiskMergeImporter
     }
   }
 
+  /** Task to copy an index chunk into a database tree, splitting the keys exceeding the index entry limit. */
+  private static final class IndexImporterTask implements Callable<Void>
+  {
+    private final PhaseTwoProgressReporter reporter;
+    private final DefaultIndex index;
+    private final Importer destination;
+    private final Chunk source;
+
+    IndexImporterTask(PhaseTwoProgressReporter reporter, Chunk source, DefaultIndex index, Importer destination)
+    {
+      this.source = source;
+      this.index = index;
+      this.destination = destination;
+      this.reporter = reporter;
+    }
+
+    @Override
+    public Void call()
+    {
+      final WriteableTransaction txn = asWriteableTransaction(destination);
+      try (final SequentialCursor<ByteString, ByteString> sourceCursor = trackCursorProgress(reporter, source.flip()))
+      {
+        while (sourceCursor.next())
+        {
+          index.importKey(txn, sourceCursor.getKey(), sourceCursor.getValue());
+        }
+      }
+      return null;
+    }
+  }
+
   /** Task to copy VLV's counter chunks into a database tree. */
   private static final class VLVIndexImporterTask implements Callable<Void>
   {
@@ -3028,7 +3104,8 @@ final class OnDiskMergeImporter
       // key conflicts == sum values
       return ID2ChildrenCount.getSumLongCollectorInstance();
     }
-    else if (isDN2ID(treeName) || isDN2URI(treeName) || isVLVIndex(entryContainer, treeName))
+    else if (isDN2ID(treeName) || isDN2URI(treeName) || isVLVIndex(entryContainer, treeName)
+        || isID2EntryDictionaries(treeName))
     {
       // key conflicts == exception
       return UniqueValueCollector.getInstance();
@@ -3063,6 +3140,11 @@ final class OnDiskMergeImporter
     return SuffixContainer.ID2ENTRY_INDEX_NAME.equals(treeName.getIndexId());
   }
 
+  private static boolean isID2EntryDictionaries(TreeName treeName)
+  {
+    return (SuffixContainer.ID2ENTRY_INDEX_NAME + ID2Entry.DICTIONARIES_TREE_SUFFIX).equals(treeName.getIndexId());
+  }
+
   private static boolean isID2ChildrenCount(TreeName treeName)
   {
     return SuffixContainer.ID2CHILDREN_COUNT_NAME.equals(treeName.getIndexId());
@@ -3185,7 +3267,7 @@ final class OnDiskMergeImporter
     EntryIDsCollector(DefaultIndex index)
     {
       this.index = index;
-      this.indexLimit = index.getIndexEntryLimit();
+      this.indexLimit = index.getKeyEntryLimit();
     }
 
     @Override
@@ -3259,7 +3341,7 @@ final class OnDiskMergeImporter
     EntryIDSetsCollector(DefaultIndex index)
     {
       this.index = index;
-      this.indexLimit = index.getIndexEntryLimit();
+      this.indexLimit = index.getKeyEntryLimit();
     }
 
     @Override
@@ -42,6 +42,8 @@ import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.StorageStatus;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.TreePreloadStats;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
 import org.opends.server.core.DirectoryServer;
@@ -71,6 +73,8 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
   private final PluggableBackendCfg config;
   /** The monitor for this backend. */
   private BackendMonitor monitor;
+  /** The statistics of the trees loaded by the last preload of the tree cache. */
+  private volatile List<TreePreloadStats> preloadStats = Collections.emptyList();
 
   /** The base DNs contained in this root container. */
   private final ConcurrentMap<DN, EntryContainer> entryContainers = new ConcurrentHashMap<>();
@@ -141,6 +145,13 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
           openAndRegisterEntryContainers(txn, config.getBaseDN(), accessMode);
         }
       });
+      if (accessMode.isWriteable())
+      {
+        for (EntryContainer ec : entryContainers.values())
+        {
+          ec.trainCompressionDictionaryIfNeeded();
+        }
+      }
     }
     catch(StorageRuntimeException e)
     {
@@ -298,11 +309,41 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
       // Sort the list in order of priority.
       Collections.sort(trees, new TreePreloadComparator());
+      final List<TreeName> treeNames = new ArrayList<>(trees.size());
+      for (Tree tree : trees)
+      {
+        treeNames.add(tree.getName());
+      }
 
       // Preload each tree until we reach the time limit or the cache is filled.
       try
       {
-        throw new UnsupportedOperationException("Not implemented exception");
+        logger.info(NOTE_CACHE_PRELOAD_STARTED, backendId);
+        final long startTime = System.currentTimeMillis();
+        preloadStats = storage.preload(treeNames, timeLimit);
+        final long duration = System.currentTimeMillis() - startTime;
+
+        long recordCount = 0;
+        long byteCount = 0;
+        boolean isComplete = preloadStats.size() == treeNames.size();
+        for (TreePreloadStats stats : preloadStats)
+        {
+          recordCount += stats.getRecordCount();
+          byteCount += stats.getByteCount();
+          isComplete &= stats.isComplete();
+        }
+        if (isComplete)
+        {
+          logger.info(NOTE_CACHE_PRELOAD_DONE, backendId, recordCount, byteCount, duration);
+        }
+        else if (duration >= timeLimit)
+        {
+          logger.info(NOTE_CACHE_PRELOAD_INTERRUPTED_BY_TIME, backendId, recordCount, byteCount, duration);
+        }
+        else
+        {
+          logger.info(NOTE_CACHE_PRELOAD_INTERRUPTED_BY_SIZE, backendId, recordCount, byteCount, duration);
+        }
       }
       catch (StorageRuntimeException e)
       {
@@ -312,6 +353,16 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     }
   }
 
+  /**
+   * Returns the statistics of the trees loaded by the last preload of the tree cache.
+   *
+   * @return the statistics of the preloaded trees, in the order they were preloaded
+   */
+  List<TreePreloadStats> getPreloadStats()
+  {
+    return preloadStats;
+  }
+
   /**
    * Closes this root container.
    *
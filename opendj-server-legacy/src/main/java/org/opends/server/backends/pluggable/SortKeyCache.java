@@ -0,0 +1,168 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.types.SortOrder;
+
+/**
+ * Cache of the VLV keys of entries, encoded for a given sort order and keyed by entry ID. It is used for sorting
+ * search results which cannot be served by a VLV index.
+ * <p>
+ * Keys must be invalidated once the changes to the corresponding entries have been committed. In order to avoid
+ * caching keys computed from entries read before an invalidation, callers must retrieve the
+ * {@link #getInvalidationCount() invalidation count} before reading an entry and provide it when caching its key.
+ * <p>
+ * The cache is bounded: new keys are not cached any more once it holds the maximum number of keys.
+ */
+final class SortKeyCache
+{
+  private final ConcurrentMap<SortOrder, ConcurrentMap<Long, ByteString>> keysBySortOrder = new ConcurrentHashMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong invalidationCount = new AtomicLong();
+  private volatile int maxSize;
+
+  SortKeyCache(int maxSize)
+  {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Sets the maximum number of keys held by this cache. The cache is cleared if the maximum number of keys is
+   * decreased.
+   *
+   * @param maxSize
+   *          the maximum number of keys, zero disables the cache
+   */
+  void setMaxSize(int maxSize)
+  {
+    final int oldMaxSize = this.maxSize;
+    this.maxSize = maxSize;
+    if (maxSize < oldMaxSize)
+    {
+      invalidationCount.incrementAndGet();
+      keysBySortOrder.clear();
+      size.set(0);
+    }
+  }
+
+  boolean isEnabled()
+  {
+    return maxSize > 0;
+  }
+
+  /**
+   * Returns the number of invalidations performed so far. It must be read before reading the entry whose key is to
+   * be cached.
+   *
+   * @return the number of invalidations performed so far
+   */
+  long getInvalidationCount()
+  {
+    return invalidationCount.get();
+  }
+
+  /**
+   * Returns the cached key of the provided entry for the provided sort order.
+   *
+   * @param sortOrder
+   *          the sort order used to encode the key
+   * @param entryID
+   *          the entry ID
+   * @return the cached key, or {@code null} if it is not cached
+   */
+  ByteString get(SortOrder sortOrder, long entryID)
+  {
+    if (!isEnabled())
+    {
+      return null;
+    }
+    final ConcurrentMap<Long, ByteString> keys = keysBySortOrder.get(sortOrder);
+    return keys != null ? keys.get(entryID) : null;
+  }
+
+  /**
+   * Caches the key of the provided entry for the provided sort order, unless an invalidation happened since the
+   * entry was read or the cache is full.
+   *
+   * @param sortOrder
+   *          the sort order used to encode the key
+   * @param entryID
+   *          the entry ID
+   * @param key
+   *          the encoded key
+   * @param invalidationCountBeforeRead
+   *          the {@link #getInvalidationCount() invalidation count} read before reading the entry
+   */
+  void put(SortOrder sortOrder, long entryID, ByteString key, long invalidationCountBeforeRead)
+  {
+    if (size.get() >= maxSize || invalidationCount.get() != invalidationCountBeforeRead)
+    {
+      return;
+    }
+
+    ConcurrentMap<Long, ByteString> keys = keysBySortOrder.get(sortOrder);
+    if (keys == null)
+    {
+      final ConcurrentMap<Long, ByteString> newKeys = new ConcurrentHashMap<>();
+      keys = keysBySortOrder.putIfAbsent(sortOrder, newKeys);
+      if (keys == null)
+      {
+        keys = newKeys;
+      }
+    }
+    if (keys.putIfAbsent(entryID, key) == null)
+    {
+      size.incrementAndGet();
+      if (invalidationCount.get() != invalidationCountBeforeRead && keys.remove(entryID, key))
+      {
+        // Raced with an invalidation
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Invalidates the cached keys of the provided entries.
+   *
+   * @param entryIDs
+   *          the IDs of the entries which have been modified, renamed or deleted
+   */
+  void invalidate(Collection<Long> entryIDs)
+  {
+    if (entryIDs.isEmpty() || !isEnabled())
+    {
+      return;
+    }
+    invalidationCount.incrementAndGet();
+    for (ConcurrentMap<Long, ByteString> keys : keysBySortOrder.values())
+    {
+      for (Long entryID : entryIDs)
+      {
+        if (keys.remove(entryID) != null)
+        {
+          size.decrementAndGet();
+        }
+      }
+    }
+  }
+}
@@ -40,11 +40,11 @@ import org.opends.server.util.StaticUtils;
 class State extends AbstractTree
 {
   /**
-   * Use COMPACTED serialization for new indexes.
-   * @see {@link EntryIDSet.EntryIDSetCodecV2}
+   * Use COMPACTED and BITMAP serialization for new indexes.
+   * @see {@link EntryIDSet.EntryIDSetCodecV3}
    */
   private static final Collection<IndexFlag> DEFAULT_FLAGS = Collections.unmodifiableCollection(Arrays
-      .asList(IndexFlag.COMPACTED));
+      .asList(IndexFlag.COMPACTED, IndexFlag.BITMAP));
 
   /**
    * Bit-field containing possible flags that an index can have
@@ -55,7 +55,13 @@ class State extends AbstractTree
     TRUSTED(0x01),
 
     /** Use compact encoding for indexes' ID storage. */
-    COMPACTED(0x02);
+    COMPACTED(0x02),
+
+    /** Use compressed bitmap encoding for indexes' ID storage, takes precedence over {@link #COMPACTED}. */
+    BITMAP(0x04),
+
+    /** Some keys of the index exceeded the index entry limit and are split into segments stored in a companion tree. */
+    BIG_KEYS(0x08);
 
     static final EnumSet<IndexFlag> ALL_FLAGS = EnumSet.allOf(IndexFlag.class);
 
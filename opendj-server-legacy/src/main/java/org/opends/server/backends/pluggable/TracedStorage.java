@@ -15,6 +15,7 @@
  */
 package org.opends.server.backends.pluggable;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -32,6 +33,7 @@ import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.StorageStatus;
 import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.TreePreloadStats;
 import org.opends.server.backends.pluggable.spi.UpdateFunction;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
@@ -570,6 +572,15 @@ final class TracedStorage implements Storage
     return results;
   }
 
+  @Override
+  public List<TreePreloadStats> preload(List<TreeName> treeNames, long timeLimit) throws StorageRuntimeException
+  {
+    traceEnter("preload", "treeNames", treeNames, "timeLimit", timeLimit);
+    final List<TreePreloadStats> results = storage.preload(treeNames, timeLimit);
+    traceLeave("preload", "treeNames", treeNames, "timeLimit", timeLimit, "results", results);
+    return results;
+  }
+
   private static String hex(final ByteSequence bytes)
   {
     return bytes != null ? bytes.toByteString().toASCIIString() : null;
@@ -803,7 +803,7 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
    * The RFC states that the lowest value of a multi-valued attribute should be used,
    * regardless of the sort order.
    */
-  private static ByteString getLowestAttributeValue(final Entry entry, final SortKey sortKey)
+  static ByteString getLowestAttributeValue(final Entry entry, final SortKey sortKey)
   {
     final AttributeType attributeType = sortKey.getAttributeType();
     final MatchingRule matchingRule = sortKey.getEffectiveOrderingRule();
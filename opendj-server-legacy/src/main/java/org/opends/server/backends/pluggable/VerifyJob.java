@@ -16,6 +16,7 @@
  */
 package org.opends.server.backends.pluggable;
 
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.DnKeyFormat.*;
 import static org.opends.server.backends.pluggable.SuffixContainer.*;
@@ -25,19 +26,29 @@ import static org.opends.server.util.StaticUtils.*;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteSequence;
 import org.forgerock.opendj.ldap.ByteString;
@@ -50,6 +61,7 @@ import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.SequentialCursor;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.backends.pluggable.spi.TreeName;
 import org.opends.server.core.DirectoryServer;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.DirectoryException;
@@ -57,11 +69,25 @@ import org.opends.server.types.Entry;
 import org.opends.server.util.ServerConstants;
 import org.opends.server.util.StaticUtils;
 
-/** This class is used to run an index verification process on the backend. */
+/**
+ * This class is used to run an index verification process on the backend.
+ * <p>
+ * When several threads are requested, the completeness of the indexes is verified by splitting
+ * id2entry into ranges of entry IDs which are verified concurrently, each in its own read
+ * transaction, and the cleanliness of an attribute index is verified by iterating its matching
+ * rule indexes concurrently. The records to verify can also be sampled to quickly estimate the
+ * consistency of the indexes.
+ */
 class VerifyJob
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  private static final String VERIFIER_THREAD_NAME = "VERIFIER-%d";
+  /** The number of ranges of entry IDs per thread, so that threads finishing early can verify other ranges. */
+  private static final int RANGES_PER_THREAD = 4;
+  /** The maximum number of errors reported as examples for each tree in the final report. */
+  private static final int MAX_ERROR_EXAMPLES = 5;
+
   /** The verify configuration. */
   private final VerifyConfig verifyConfig;
   /** The root container used for the verify job. */
@@ -69,10 +95,16 @@ class VerifyJob
 
   /** The number of milliseconds between job progress reports. */
   private final long progressInterval = 10000;
+  /** The number of threads verifying the backend. */
+  private int threadCount;
   /** The number of index keys processed. */
-  private long keyCount;
+  private final AtomicLong keyCount = new AtomicLong();
+  /** The number of index keys which have been verified, which is lower than the keys processed when sampling. */
+  private final AtomicLong sampledCount = new AtomicLong();
   /** The number of errors found. */
-  private long errorCount;
+  private final AtomicLong errorCount = new AtomicLong();
+  /** The errors found in each tree, in the order the trees were first found in error. */
+  private final Map<TreeName, ErrorReport> errorReports = new LinkedHashMap<>();
   /** The number of records that have exceeded the entry limit. */
   private long entryLimitExceededCount;
   /** The number of records that reference more than one entry. */
@@ -234,6 +266,9 @@ class VerifyJob
       dn2id = entryContainer.getDN2ID();
       id2childrenCount = entryContainer.getID2ChildrenCount();
 
+      threadCount = verifyConfig.getThreadCount() == 0 ? Runtime.getRuntime().availableProcessors()
+                                                       : verifyConfig.getThreadCount();
+
       // Make a note of the time we started.
       long startTime = System.currentTimeMillis();
 
@@ -249,6 +284,10 @@ class VerifyJob
         {
           iterateIndex(txn);
         }
+        else if (threadCount > 1)
+        {
+          iterateID2EntryInParallel(txn);
+        }
         else
         {
           iterateID2Entry(txn);
@@ -271,19 +310,20 @@ class VerifyJob
       float rate = 0;
       if (totalTime > 0)
       {
-        rate = 1000f*keyCount / totalTime;
+        rate = 1000f*keyCount.get() / totalTime;
       }
 
       if (cleanMode)
       {
-        logger.info(NOTE_VERIFY_CLEAN_FINAL_STATUS, keyCount, errorCount, totalTime/1000, rate);
+        logger.info(NOTE_VERIFY_CLEAN_FINAL_STATUS, keyCount.get(), errorCount.get(), totalTime/1000, rate);
+        logErrorReports();
 
         if (multiReferenceCount > 0)
         {
           float averageEntryReferences = 0;
-          if (keyCount > 0)
+          if (keyCount.get() > 0)
           {
-            averageEntryReferences = entryReferencesCount/keyCount;
+            averageEntryReferences = entryReferencesCount/keyCount.get();
           }
 
           if (logger.isDebugEnabled())
@@ -297,7 +337,8 @@ class VerifyJob
       }
       else
       {
-        logger.info(NOTE_VERIFY_FINAL_STATUS, keyCount, errorCount, totalTime/1000, rate);
+        logger.info(NOTE_VERIFY_FINAL_STATUS, keyCount.get(), errorCount.get(), totalTime/1000, rate);
+        logErrorReports();
         if (!entryLimitMap.isEmpty())
         {
           logger.debug(INFO_VERIFY_ENTRY_LIMIT_STATS_HEADER);
@@ -331,7 +372,125 @@ class VerifyJob
     {
       entryContainer.sharedLock.unlock();
     }
-    return errorCount;
+    return errorCount.get();
+  }
+
+  /** Logs the number of errors found in each tree with a few examples, and the estimated errors when sampling. */
+  private void logErrorReports()
+  {
+    synchronized (errorReports)
+    {
+      for (Map.Entry<TreeName, ErrorReport> mapEntry : errorReports.entrySet())
+      {
+        final ErrorReport report = mapEntry.getValue();
+        logger.info(NOTE_VERIFY_TREE_ERRORS, report.count, mapEntry.getKey());
+        for (LocalizableMessage example : report.examples)
+        {
+          logger.info(NOTE_VERIFY_TREE_ERROR_EXAMPLE, example);
+        }
+      }
+    }
+
+    final int samplingPercentage = verifyConfig.getSamplingPercentage();
+    final long sampled = sampledCount.get();
+    if (samplingPercentage < 100 && sampled > 0)
+    {
+      final long estimatedErrorCount = errorCount.get() * keyCount.get() / sampled;
+      logger.info(NOTE_VERIFY_SAMPLED_STATUS, sampled, keyCount.get(), samplingPercentage, errorCount.get(),
+          estimatedErrorCount);
+    }
+  }
+
+  /**
+   * Records an error found in the provided tree.
+   *
+   * @param tree The tree containing the error.
+   * @param message The message describing the error which is logged and may be reported as an example,
+   *                or {@code null} if the error has already been traced.
+   */
+  private void error(Tree tree, LocalizableMessage message)
+  {
+    errorCount.incrementAndGet();
+    if (message != null)
+    {
+      logger.error(message);
+    }
+    synchronized (errorReports)
+    {
+      ErrorReport report = errorReports.get(tree.getName());
+      if (report == null)
+      {
+        report = new ErrorReport();
+        errorReports.put(tree.getName(), report);
+      }
+      report.count++;
+      if (message != null && report.examples.size() < MAX_ERROR_EXAMPLES)
+      {
+        report.examples.add(message);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the next record must be verified according to the sampling percentage, and
+   * counts the sampled records.
+   */
+  private boolean isSampled()
+  {
+    final int samplingPercentage = verifyConfig.getSamplingPercentage();
+    if (samplingPercentage >= 100 || ThreadLocalRandom.current().nextInt(100) < samplingPercentage)
+    {
+      sampledCount.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Runs the provided tasks on a pool of threads, each task reading the storage in its own read
+   * transaction.
+   */
+  private void invokeAll(List<? extends ReadOperation<Void>> tasks) throws StorageRuntimeException
+  {
+    final List<Callable<Void>> callables = new ArrayList<>(tasks.size());
+    for (final ReadOperation<Void> task : tasks)
+    {
+      callables.add(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          return rootContainer.getStorage().read(task);
+        }
+      });
+    }
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threadCount, newThreadFactory(null, VERIFIER_THREAD_NAME, true));
+    try
+    {
+      for (Future<Void> future : executor.invokeAll(callables))
+      {
+        future.get();
+      }
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof StorageRuntimeException)
+      {
+        throw (StorageRuntimeException) e.getCause();
+      }
+      throw new StorageRuntimeException(e.getCause());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new StorageRuntimeException(e);
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
   }
 
   /**
@@ -342,14 +501,74 @@ class VerifyJob
    * @throws StorageRuntimeException If an error occurs in the storage.
    */
   private void iterateID2Entry(ReadableTransaction txn) throws StorageRuntimeException
+  {
+    long storedEntryCount = id2entry.getRecordCount(txn);
+    iterateID2Entry(txn, 0, Long.MAX_VALUE);
+    verifyEntryCount(storedEntryCount);
+  }
+
+  /**
+   * Splits id2entry into ranges of entry IDs and iterates through the ranges concurrently to
+   * perform a check for index completeness.
+   *
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void iterateID2EntryInParallel(ReadableTransaction txn) throws StorageRuntimeException
+  {
+    long storedEntryCount = id2entry.getRecordCount(txn);
+    final int nbRanges = threadCount * RANGES_PER_THREAD;
+    final long rangeSize = getLastEntryID(txn) / nbRanges + 1;
+    final List<ReadOperation<Void>> tasks = new ArrayList<>(nbRanges);
+    for (int i = 0; i < nbRanges; i++)
+    {
+      final long lowID = i * rangeSize;
+      final long highID = i == nbRanges - 1 ? Long.MAX_VALUE : lowID + rangeSize;
+      tasks.add(new ReadOperation<Void>()
+      {
+        @Override
+        public Void run(ReadableTransaction txn) throws Exception
+        {
+          iterateID2Entry(txn, lowID, highID);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+    verifyEntryCount(storedEntryCount);
+  }
+
+  private long getLastEntryID(ReadableTransaction txn)
+  {
+    try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(id2entry.getName()))
+    {
+      return cursor.positionToLastKey() && cursor.getKey().length() == 8 ? cursor.getKey().toLong() : 0;
+    }
+  }
+
+  private void verifyEntryCount(long storedEntryCount)
+  {
+    if (keyCount.get() != storedEntryCount)
+    {
+      error(id2entry, ERR_VERIFY_WRONG_ENTRY_COUNT.get(storedEntryCount, keyCount.get()));
+    }
+  }
+
+  /**
+   * Iterate through the entries of a range of entry IDs in id2entry to perform a check for index
+   * completeness.
+   *
+   * @param lowID The first entry ID of the range.
+   * @param highID The entry ID following the last entry ID of the range.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void iterateID2Entry(ReadableTransaction txn, long lowID, long highID) throws StorageRuntimeException
   {
     try(final Cursor<ByteString, ByteString> cursor = txn.openCursor(id2entry.getName()))
     {
-      long storedEntryCount = id2entry.getRecordCount(txn);
-      while (cursor.next())
+      boolean found = lowID > 0 ? cursor.positionToKeyOrNext(ByteString.valueOfLong(lowID)) : cursor.next();
+      for (; found; found = cursor.next())
       {
         ByteString key = cursor.getKey();
-        ByteString value = cursor.getValue();
 
         EntryID entryID;
         try
@@ -358,7 +577,7 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          error(id2entry, null);
           if (logger.isTraceEnabled())
           {
             logger.traceException(e);
@@ -368,16 +587,26 @@ class VerifyJob
           continue;
         }
 
-        keyCount++;
+        if (entryID.longValue() >= highID)
+        {
+          break;
+        }
+
+        keyCount.incrementAndGet();
+        if (!isSampled())
+        {
+          continue;
+        }
 
+        ByteString value = cursor.getValue();
         Entry entry;
         try
         {
-          entry = ID2Entry.entryFromDatabase(value, rootContainer.getCompressedSchema());
+          entry = id2entry.decodeEntry(value);
         }
         catch (Exception e)
         {
-          errorCount++;
+          error(id2entry, null);
           if (logger.isTraceEnabled())
           {
             logger.traceException(e);
@@ -389,11 +618,6 @@ class VerifyJob
 
         verifyEntry(txn, entryID, entry);
       }
-      if (keyCount != storedEntryCount)
-      {
-        errorCount++;
-        logger.error(ERR_VERIFY_WRONG_ENTRY_COUNT, storedEntryCount, keyCount);
-      }
     }
   }
 
@@ -418,9 +642,16 @@ class VerifyJob
     else if (!attrIndexList.isEmpty())
     {
       AttributeIndex attrIndex = attrIndexList.get(0);
-      for (MatchingRuleIndex index : attrIndex.getNameToIndexes().values())
+      if (threadCount > 1)
       {
-        iterateAttrIndex(txn, index);
+        iterateAttrIndexesInParallel(attrIndex.getNameToIndexes().values());
+      }
+      else
+      {
+        for (MatchingRuleIndex index : attrIndex.getNameToIndexes().values())
+        {
+          iterateAttrIndex(txn, index);
+        }
       }
     }
     else if (!vlvIndexList.isEmpty())
@@ -429,6 +660,30 @@ class VerifyJob
     }
   }
 
+  /**
+   * Iterate through the matching rule indexes of an attribute index concurrently to perform a
+   * check for index cleanliness.
+   *
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void iterateAttrIndexesInParallel(Collection<MatchingRuleIndex> indexes) throws StorageRuntimeException
+  {
+    final List<ReadOperation<Void>> tasks = new ArrayList<>(indexes.size());
+    for (final MatchingRuleIndex index : indexes)
+    {
+      tasks.add(new ReadOperation<Void>()
+      {
+        @Override
+        public Void run(ReadableTransaction txn) throws Exception
+        {
+          iterateAttrIndex(txn, index);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+  }
+
   /**
    * Iterate through the entries in DN2ID to perform a check for
    * index cleanliness.
@@ -444,7 +699,7 @@ class VerifyJob
     {
       while (cursor.next())
       {
-        keyCount++;
+        keyCount.incrementAndGet();
 
         final ByteString key = cursor.getKey();
         final EntryID entryID;
@@ -454,12 +709,16 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          error(dn2id, null);
           logger.trace("File dn2id has malformed ID for DN <%s>", key, e);
           continue;
         }
 
         currentNode = verifyID2ChildrenCount(txn, childrenCounters, key, entryID);
+        if (!isSampled())
+        {
+          continue;
+        }
 
         final Entry entry;
         try
@@ -468,20 +727,18 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          error(dn2id, null);
           logger.traceException(e);
           continue;
         }
 
         if (entry == null)
         {
-          errorCount++;
-          logger.error(ERR_VERIFY_DN2ID_UNKNOWN_ID, key, entryID.longValue());
+          error(dn2id, ERR_VERIFY_DN2ID_UNKNOWN_ID.get(key, entryID.longValue()));
         }
         else if (!key.equals(dnToDNKey(entry.getName(), verifyConfig.getBaseDN().size())))
         {
-          errorCount++;
-          logger.error(ERR_VERIFY_DN2ID_WRONG_ENTRY, key, entry.getName());
+          error(dn2id, ERR_VERIFY_DN2ID_WRONG_ENTRY.get(key, entry.getName()));
         }
       }
 
@@ -516,8 +773,7 @@ class VerifyJob
     final long currentValue = id2childrenCount.getCount(txn, parent.entryID);
     if (expected != currentValue)
     {
-      errorCount++;
-      logger.error(ERR_VERIFY_ID2COUNT_WRONG_COUNT, parent.baseDN, currentValue, expected);
+      error(id2childrenCount, ERR_VERIFY_ID2COUNT_WRONG_COUNT.get(parent.baseDN, currentValue, expected));
     }
   }
 
@@ -528,10 +784,9 @@ class VerifyJob
       while (cursor.next())
       {
         final EntryID entryID = cursor.getKey();
-        if (!id2entry.containsEntryID(txn, entryID))
+        if (isSampled() && !id2entry.containsEntryID(txn, entryID))
         {
-          logger.error(ERR_VERIFY_ID2COUNT_WRONG_ID, entryID.longValue());
-          errorCount++;
+          error(id2childrenCount, ERR_VERIFY_ID2COUNT_WRONG_ID.get(entryID.longValue()));
         }
       }
     }
@@ -545,7 +800,7 @@ class VerifyJob
    * @param index The index containing the key.
    * @param key A key that has exceeded the entry limit.
    */
-  private void incrEntryLimitStats(Index index, ByteString key)
+  private synchronized void incrEntryLimitStats(Index index, ByteString key)
   {
     HashMap<ByteString,Long> hashMap = entryLimitMap.get(index);
     if (hashMap == null)
@@ -570,7 +825,7 @@ class VerifyJob
    *
    * @param entryIDSet The set of entry IDs for the index record.
    */
-  private void updateIndexStats(EntryIDSet entryIDSet)
+  private synchronized void updateIndexStats(EntryIDSet entryIDSet)
   {
     if (!entryIDSet.isDefined())
     {
@@ -609,6 +864,12 @@ class VerifyJob
     {
       while (cursor.next())
       {
+        keyCount.incrementAndGet();
+        if (!isSampled())
+        {
+          continue;
+        }
+
         ByteString key = cursor.getKey();
         EntryID id = new EntryID(decodeEntryIDFromVLVKey(key));
         Entry entry;
@@ -619,22 +880,20 @@ class VerifyJob
         catch (Exception e)
         {
           logger.traceException(e);
-          errorCount++;
+          error(vlvIndex, null);
           continue;
         }
 
         if (entry == null)
         {
-          errorCount++;
-          logger.error(ERR_VERIFY_UNKNOWN_ID, id, keyDump(vlvIndex, key));
+          error(vlvIndex, ERR_VERIFY_UNKNOWN_ID.get(id, keyDump(vlvIndex, key)));
           continue;
         }
 
         ByteString expectedKey = vlvIndex.toKey(entry, id);
         if (expectedKey.compareTo(key) != 0)
         {
-          errorCount++;
-          logger.error(ERR_VERIFY_ENTRY_NON_MATCHING_KEY, id, keyDump(vlvIndex, expectedKey));
+          error(vlvIndex, ERR_VERIFY_ENTRY_NON_MATCHING_KEY.get(id, keyDump(vlvIndex, expectedKey)));
         }
       }
     }
@@ -657,7 +916,11 @@ class VerifyJob
     {
       while (cursor.next())
       {
-        keyCount++;
+        keyCount.incrementAndGet();
+        if (!isSampled())
+        {
+          continue;
+        }
 
         final ByteString key = cursor.getKey();
 
@@ -667,13 +930,12 @@ class VerifyJob
           entryIDSet = cursor.getValue();
           if (entryIDSet.size() == 0)
           {
-            errorCount++;
-            logger.error(ERR_VERIFY_EMPTY_IDSET, keyDump(index, key));
+            error(index, ERR_VERIFY_EMPTY_IDSET.get(keyDump(index, key)));
           }
         }
         catch (Exception e)
         {
-          errorCount++;
+          error(index, null);
           logger.traceException(e);
           logger.trace("Malformed ID list: %n%s", keyDump(index, key));
           continue;
@@ -701,14 +963,13 @@ class VerifyJob
             catch (Exception e)
             {
               logger.traceException(e);
-              errorCount++;
+              error(index, null);
               continue;
             }
 
             if (entry == null)
             {
-              errorCount++;
-              logger.error(ERR_VERIFY_UNKNOWN_REFERENCE, id.longValue(), keyDump(index, key));
+              error(index, ERR_VERIFY_UNKNOWN_REFERENCE.get(id.longValue(), keyDump(index, key)));
               continue;
             }
 
@@ -756,8 +1017,7 @@ class VerifyJob
 
             if (!foundMatchingKey.get())
             {
-              errorCount++;
-              logger.error(ERR_VERIFY_UNEXPECTED_REFERENCE, entry.getName(), keyDump(index, key));
+              error(index, ERR_VERIFY_UNEXPECTED_REFERENCE.get(entry.getName(), keyDump(index, key)));
             }
           }
         }
@@ -796,13 +1056,11 @@ class VerifyJob
       EntryID id = dn2id.get(txn, dn);
       if (id == null)
       {
-        logger.error(ERR_VERIFY_DN2ID_MISSING_KEY, dn);
-        errorCount++;
+        error(dn2id, ERR_VERIFY_DN2ID_MISSING_KEY.get(dn));
       }
       else if (!id.equals(entryID))
       {
-        logger.error(ERR_VERIFY_DN2ID_WRONG_ID, id.longValue(), entryID.longValue(), dn);
-        errorCount++;
+        error(dn2id, ERR_VERIFY_DN2ID_WRONG_ID.get(id.longValue(), entryID.longValue(), dn));
       }
     }
     catch (Exception e)
@@ -812,7 +1070,7 @@ class VerifyJob
         logger.traceException(e);
         logger.trace("File dn2id has error reading key %s: %s.%n", dn, e.getMessage());
       }
-      errorCount++;
+      error(dn2id, null);
     }
 
     // Check the parent DN is in dn2id.
@@ -824,8 +1082,7 @@ class VerifyJob
         EntryID id = dn2id.get(txn, parentDN);
         if (id == null)
         {
-          logger.error(ERR_VERIFY_DN2ID_MISSING_KEY, parentDN);
-          errorCount++;
+          error(dn2id, ERR_VERIFY_DN2ID_MISSING_KEY.get(parentDN));
         }
       }
       catch (Exception e)
@@ -835,7 +1092,7 @@ class VerifyJob
           logger.traceException(e);
           logger.trace("File dn2id has error reading key %s: %s.%n", parentDN, e.getMessage());
         }
-        errorCount++;
+        error(dn2id, null);
       }
     }
   }
@@ -879,8 +1136,7 @@ class VerifyJob
       {
         if (vlvIndex.verifyEntry(txn, entryID, entry))
         {
-          logger.error(ERR_VERIFY_MISSING_ENTRY_VLV, entry.getName(), vlvIndex.getName());
-          errorCount++;
+          error(vlvIndex, ERR_VERIFY_MISSING_ENTRY_VLV.get(entry.getName(), vlvIndex.getName()));
         }
       }
       catch (DirectoryException e)
@@ -891,7 +1147,7 @@ class VerifyJob
           logger.trace("Error checking entry %s against filter or base DN for VLV index %s: %s",
                      entry.getName(), vlvIndex.getName(), e.getMessageObject());
         }
-        errorCount++;
+        error(vlvIndex, null);
       }
       catch (StorageRuntimeException e)
       {
@@ -901,7 +1157,7 @@ class VerifyJob
           logger.trace("Error reading VLV index %s for entry %s: %s",
               vlvIndex.getName(), entry.getName(), StaticUtils.getBacktrace(e));
         }
-        errorCount++;
+        error(vlvIndex, null);
       }
     }
   }
@@ -926,8 +1182,7 @@ class VerifyJob
       ConditionResult cr = indexContainsID(index, txn, key, entryID);
       if (cr == ConditionResult.FALSE)
       {
-        logger.error(ERR_VERIFY_MISSING_ID, entryID.longValue(), keyDump(index, key));
-        errorCount++;
+        error(index, ERR_VERIFY_MISSING_ID.get(entryID.longValue(), keyDump(index, key)));
       }
       else if (cr == ConditionResult.UNDEFINED)
       {
@@ -942,7 +1197,7 @@ class VerifyJob
 
         logger.trace("Error reading tree: %s%n%s", e.getMessage(), keyDump(index, key));
       }
-      errorCount++;
+      error(index, null);
     }
   }
 
@@ -983,6 +1238,13 @@ class VerifyJob
     }
   }
 
+  /** The number of errors found in a tree, with a few examples. */
+  private static final class ErrorReport
+  {
+    private long count;
+    private final List<LocalizableMessage> examples = new ArrayList<>(MAX_ERROR_EXAMPLES);
+  }
+
   /** This class reports progress of the verify job at fixed intervals. */
   private final class ProgressTask extends TimerTask
   {
@@ -1046,7 +1308,7 @@ class VerifyJob
     @Override
     public void run()
     {
-      long latestCount = keyCount;
+      long latestCount = keyCount.get();
       long deltaCount = latestCount - previousCount;
       long latestTime = System.currentTimeMillis();
       long deltaTime = latestTime - previousTime;
@@ -1058,7 +1320,7 @@ class VerifyJob
 
       float rate = 1000f*deltaCount / deltaTime;
 
-      logger.info(NOTE_VERIFY_PROGRESS_REPORT, latestCount, totalCount, errorCount, rate);
+      logger.info(NOTE_VERIFY_PROGRESS_REPORT, latestCount, totalCount, errorCount.get(), rate);
 
       try
       {
@@ -16,6 +16,7 @@
 package org.opends.server.backends.pluggable.spi;
 
 import java.io.Closeable;
+import java.util.List;
 import java.util.Set;
 
 import org.forgerock.opendj.config.server.ConfigException;
@@ -141,6 +142,20 @@ public interface Storage extends Closeable
    */
   Set<TreeName> listTrees();
 
+  /**
+   * Preloads the provided trees into the cache of this storage, until all the trees have been
+   * loaded, the time limit is reached or the cache is full.
+   *
+   * @param treeNames
+   *          the names of the trees to preload, in order of priority
+   * @param timeLimit
+   *          the time limit for the preload, in milliseconds
+   * @return the statistics of the trees which have been preloaded, in order of priority
+   * @throws StorageRuntimeException
+   *           if a problem occurs with the underlying storage engine
+   */
+  List<TreePreloadStats> preload(List<TreeName> treeNames, long timeLimit) throws StorageRuntimeException;
+
   @Override
   void close();
 }
@@ -0,0 +1,217 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable.spi;
+
+import static org.forgerock.util.Utils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.opendj.ldap.ByteString;
+
+/**
+ * Loads the trees of a {@link Storage} into its cache by reading all their records with cursors.
+ * <p>
+ * Trees are loaded in the order they are provided, several trees at a time, until all the trees
+ * have been loaded, the time limit is reached or the cache is full. Records are read by small
+ * batches in separate read transactions, so that preloading never holds a long running
+ * transaction.
+ */
+public abstract class StoragePreloader
+{
+  private static final String PRELOADER_THREAD_NAME = "STORAGE-PRELOADER-%d";
+  /** The number of records read in each read transaction, between checks of the time limit and of the cache. */
+  private static final int RECORDS_PER_READ = 1000;
+  /** The ratio of the cache capacity above which the cache is considered full. */
+  private static final double FULL_CACHE_RATIO = 0.95;
+
+  private final Storage storage;
+  private final AtomicBoolean isStopped = new AtomicBoolean();
+  private long endTime;
+
+  /**
+   * Creates a new preloader.
+   *
+   * @param storage
+   *          the storage whose trees must be preloaded
+   */
+  protected StoragePreloader(Storage storage)
+  {
+    this.storage = storage;
+  }
+
+  /**
+   * Indicates whether the cache of the storage is full, in which case preloading more records would
+   * evict the records already preloaded.
+   *
+   * @return {@code true} if the cache of the storage is full
+   */
+  protected abstract boolean isCacheFull();
+
+  /**
+   * Indicates whether a cache should be considered full, leaving some room for the records loaded
+   * by the operations processed while preloading.
+   *
+   * @param usedCapacity
+   *          the used capacity of the cache
+   * @param capacity
+   *          the total capacity of the cache, in the same unit as {@code usedCapacity}
+   * @return {@code true} if the cache should be considered full
+   */
+  protected static boolean isFull(long usedCapacity, long capacity)
+  {
+    return usedCapacity >= capacity * FULL_CACHE_RATIO;
+  }
+
+  /**
+   * Loads the provided trees into the cache of the storage.
+   *
+   * @param treeNames
+   *          the names of the trees to preload, in order of priority
+   * @param timeLimit
+   *          the time limit for the preload, in milliseconds
+   * @return the statistics of the trees which have been preloaded, in order of priority
+   * @throws StorageRuntimeException
+   *           if a problem occurs with the underlying storage engine
+   */
+  public final List<TreePreloadStats> preload(final List<TreeName> treeNames, long timeLimit)
+      throws StorageRuntimeException
+  {
+    endTime = System.currentTimeMillis() + timeLimit;
+    final TreePreloadStats[] allStats = new TreePreloadStats[treeNames.size()];
+    final AtomicInteger nextTree = new AtomicInteger();
+    final int threadCount = Math.max(1, Math.min(treeNames.size(), Runtime.getRuntime().availableProcessors()));
+
+    final List<Callable<Void>> callables = new ArrayList<>(threadCount);
+    for (int i = 0; i < threadCount; i++)
+    {
+      callables.add(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          int treeIndex;
+          while (!isStopped.get() && (treeIndex = nextTree.getAndIncrement()) < treeNames.size())
+          {
+            allStats[treeIndex] = new TreePreloadStats(treeNames.get(treeIndex));
+            preloadTree(allStats[treeIndex]);
+          }
+          return null;
+        }
+      });
+    }
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threadCount, newThreadFactory(null, PRELOADER_THREAD_NAME, true));
+    try
+    {
+      for (Future<Void> future : executor.invokeAll(callables))
+      {
+        future.get();
+      }
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof StorageRuntimeException)
+      {
+        throw (StorageRuntimeException) e.getCause();
+      }
+      throw new StorageRuntimeException(e.getCause());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new StorageRuntimeException(e);
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    final List<TreePreloadStats> results = new ArrayList<>(allStats.length);
+    for (TreePreloadStats stats : allStats)
+    {
+      if (stats != null)
+      {
+        results.add(stats);
+      }
+    }
+    return results;
+  }
+
+  private void preloadTree(TreePreloadStats stats) throws Exception
+  {
+    final TreeLoader loader = new TreeLoader(stats);
+    boolean hasMoreRecords = true;
+    while (hasMoreRecords)
+    {
+      if (isStopped.get() || System.currentTimeMillis() >= endTime || isCacheFull())
+      {
+        isStopped.set(true);
+        break;
+      }
+      hasMoreRecords = storage.read(loader);
+    }
+    stats.setComplete(!hasMoreRecords);
+  }
+
+  /** Reads the next batch of records of a tree, returns whether the tree has more records. */
+  private static final class TreeLoader implements ReadOperation<Boolean>
+  {
+    private final TreePreloadStats stats;
+    private ByteString lastKey;
+
+    private TreeLoader(TreePreloadStats stats)
+    {
+      this.stats = stats;
+    }
+
+    @Override
+    public Boolean run(ReadableTransaction txn) throws Exception
+    {
+      try (Cursor<ByteString, ByteString> cursor = txn.openCursor(stats.getTreeName()))
+      {
+        boolean isDefined = lastKey == null ? cursor.next() : positionAfter(cursor, lastKey);
+        ByteString key = lastKey;
+        long records = 0;
+        long bytes = 0;
+        while (isDefined && records < RECORDS_PER_READ)
+        {
+          key = cursor.getKey();
+          records++;
+          bytes += key.length() + cursor.getValue().length();
+          isDefined = cursor.next();
+        }
+        // Read operations may be retried: only account for the records once they have all been read
+        lastKey = key;
+        stats.recordsLoaded(records, bytes);
+        return isDefined;
+      }
+    }
+
+    private static boolean positionAfter(Cursor<ByteString, ByteString> cursor, ByteString key)
+    {
+      return cursor.positionToKeyOrNext(key) && (!cursor.getKey().equals(key) || cursor.next());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable.spi;
+
+/** Statistics about the preload of a tree into the cache of a {@link Storage}. */
+public final class TreePreloadStats
+{
+  private final TreeName treeName;
+  private volatile long recordCount;
+  private volatile long byteCount;
+  private volatile boolean isComplete;
+
+  /**
+   * Creates new preload statistics for a tree.
+   *
+   * @param treeName
+   *          the name of the preloaded tree
+   */
+  TreePreloadStats(TreeName treeName)
+  {
+    this.treeName = treeName;
+  }
+
+  /**
+   * Returns the name of the preloaded tree.
+   *
+   * @return the name of the preloaded tree
+   */
+  public TreeName getTreeName()
+  {
+    return treeName;
+  }
+
+  /**
+   * Returns the number of records of the tree loaded into the cache.
+   *
+   * @return the number of records loaded into the cache
+   */
+  public long getRecordCount()
+  {
+    return recordCount;
+  }
+
+  /**
+   * Returns the number of bytes of keys and values of the tree loaded into the cache.
+   *
+   * @return the number of bytes loaded into the cache
+   */
+  public long getByteCount()
+  {
+    return byteCount;
+  }
+
+  /**
+   * Indicates whether the whole tree has been loaded into the cache.
+   *
+   * @return {@code true} if the whole tree has been loaded, {@code false} if the preload was
+   *         interrupted before reaching the end of the tree
+   */
+  public boolean isComplete()
+  {
+    return isComplete;
+  }
+
+  void recordsLoaded(long records, long bytes)
+  {
+    recordCount += records;
+    byteCount += bytes;
+  }
+
+  void setComplete(boolean isComplete)
+  {
+    this.isComplete = isComplete;
+  }
+
+  @Override
+  public String toString()
+  {
+    return treeName + " records:" + recordCount + " bytes:" + byteCount + " complete:" + isComplete;
+  }
+}
@@ -4144,6 +4144,20 @@ public final class ConfigConstants
   public static final String ATTR_TASK_EXPORT_WRAP_COLUMN =
        NAME_PREFIX_TASK + "export-wrap-column";
 
+  /**
+   * The name of the attribute in an export task definition that specifies
+   * the number of threads used to export the entries.
+   */
+  public static final String ATTR_TASK_EXPORT_THREAD_COUNT =
+       NAME_PREFIX_TASK + "export-thread-count";
+
+  /**
+   * The name of the attribute in an export task definition that specifies
+   * the number of LDIF files to which the entries are written.
+   */
+  public static final String ATTR_TASK_EXPORT_SHARD_COUNT =
+       NAME_PREFIX_TASK + "export-shard-count";
+
   /**
    * The name of the attribute in an export task definition that specifies
    * that operational attributes have to be included.
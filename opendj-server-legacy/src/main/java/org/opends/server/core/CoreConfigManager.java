@@ -146,6 +146,9 @@ public class CoreConfigManager
     setUseNanoTime(globalConfig.getEtimeResolution() == GlobalCfgDefn.EtimeResolution.NANOSECONDS);
     setMaxAllowedConnections(globalConfig.getMaxAllowedClientConnections());
     setMaxPersistentSearchLimit(globalConfig.getMaxPsearches());
+    setMaxPersistentSearchQueueSize(globalConfig.getMaxPsearchQueueSize());
+    setDisconnectOnPersistentSearchQueueOverflow(
+        globalConfig.getPsearchQueueOverflowBehavior() == GlobalCfgDefn.PsearchQueueOverflowBehavior.DISCONNECT);
     setMaxInternalBufferSize((int) globalConfig.getMaxInternalBufferSize());
 
     // For tools, common audit may not be available
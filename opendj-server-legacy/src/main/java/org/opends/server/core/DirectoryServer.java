@@ -517,6 +517,12 @@ public final class DirectoryServer
   /** The maximum number of concurrent persistent searches. */
   private int maxPSearches;
 
+  /** The maximum number of change notifications queued for each persistent search. */
+  private int maxPSearchQueueSize = 1000;
+
+  /** Whether to disconnect the clients of persistent searches whose queue is full. */
+  private boolean disconnectOnPSearchQueueOverflow;
+
   /** Whether to use collect operation processing times in nanosecond resolution. */
   private boolean useNanoTime;
 
@@ -664,7 +670,8 @@ public final class DirectoryServer
   private DiskSpaceMonitor diskSpaceMonitor;
 
   /** The lock manager which will be used for coordinating access to LDAP entries. */
-  private final LockManager lockManager = new LockManager();
+  private final LockManager lockManager =
+      new LockManager(Boolean.getBoolean(PROPERTY_LOCK_MANAGER_STRIPED_SUBTREE_LOCKS));
 
   /** The maximum size that internal buffers will be allowed to grow to until they are trimmed. */
   private int maxInternalBufferSize = DEFAULT_MAX_INTERNAL_BUFFER_SIZE;
@@ -2963,6 +2970,18 @@ public final class DirectoryServer
     return ruleList;
   }
 
+  /**
+   * Retrieves the virtual attribute rules registered with the Directory Server,
+   * indexed by the attribute type they provide values for.
+   *
+   * @return  The virtual attribute rules registered with the Directory Server
+   *          indexed by attribute type, which must not be modified.
+   */
+  public static Map<AttributeType, List<VirtualAttributeRule>> getVirtualAttributesByType()
+  {
+    return directoryServer.virtualAttributeConfigManager.getVirtualAttributesByType();
+  }
+
   /**
    * Registers the provided virtual attribute rule with the Directory Server.
    *
@@ -6504,6 +6523,58 @@ public final class DirectoryServer
     directoryServer.maxPSearches = maxPSearches;
   }
 
+  /**
+   * Specifies the maximum number of change notifications which can be queued
+   * for each persistent search.
+   *
+   * @param maxPSearchQueueSize
+   *          The maximum number of change notifications queued for each
+   *          persistent search.
+   */
+  public static void setMaxPersistentSearchQueueSize(int maxPSearchQueueSize)
+  {
+    directoryServer.maxPSearchQueueSize = maxPSearchQueueSize;
+  }
+
+  /**
+   * Retrieves the maximum number of change notifications which can be queued
+   * for each persistent search.
+   *
+   * @return The maximum number of change notifications queued for each
+   *         persistent search.
+   */
+  public static int getMaxPersistentSearchQueueSize()
+  {
+    return directoryServer.maxPSearchQueueSize;
+  }
+
+  /**
+   * Specifies whether the clients of persistent searches whose queue of change
+   * notifications is full should be disconnected, rather than the change
+   * notifications dropped.
+   *
+   * @param disconnect
+   *          {@code true} to disconnect the clients, {@code false} to drop the
+   *          change notifications
+   */
+  public static void setDisconnectOnPersistentSearchQueueOverflow(boolean disconnect)
+  {
+    directoryServer.disconnectOnPSearchQueueOverflow = disconnect;
+  }
+
+  /**
+   * Indicates whether the clients of persistent searches whose queue of change
+   * notifications is full should be disconnected, rather than the change
+   * notifications dropped.
+   *
+   * @return {@code true} to disconnect the clients, {@code false} to drop the
+   *         change notifications
+   */
+  public static boolean isDisconnectOnPersistentSearchQueueOverflow()
+  {
+    return directoryServer.disconnectOnPSearchQueueOverflow;
+  }
+
   /**
    *  Registers a new persistent search by increasing the count
    *  of active persistent searches. After receiving a persistent
@@ -24,9 +24,14 @@ import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -64,6 +69,7 @@ import org.opends.server.protocols.internal.SearchRequest;
 import org.opends.server.protocols.ldap.LDAPControl;
 import org.opends.server.types.Control;
 import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DN.CompactDn;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
@@ -119,6 +125,26 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private DITCacheMap<Group<?>> groupInstances;
 
+  /**
+   * Reverse membership index: maps the DN of each explicitly listed member to
+   * the DNs of the groups listing it. Only contains groups which provide their
+   * explicit member list.
+   */
+  private final Map<CompactDn, Set<DN>> groupsByMember = new HashMap<>();
+
+  /**
+   * The DNs of the group instances which do not list their members explicitly
+   * (e.g. dynamic groups). Membership in those must be evaluated per entry.
+   */
+  private final Set<DN> nonIndexedGroups = new HashSet<>();
+
+  /**
+   * Cache of the transitive closure of nested groups: maps a group DN to the
+   * DNs of all the groups containing it, directly or through nested groups.
+   * It is cleared whenever a group is (de)registered or nested in another one.
+   */
+  private final ConcurrentMap<DN, Set<DN>> nestingGroupsCache = new ConcurrentHashMap<>();
+
   /** Lock to protect internal data structures. */
   private final ReadWriteLock lock;
 
@@ -297,15 +323,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
       lock.writeLock().lock();
       try
       {
-        Iterator<Group<?>> iterator = groupInstances.values().iterator();
-        while (iterator.hasNext())
-        {
-          Group<?> g = iterator.next();
-          if (g.getClass().getName().equals(group.getClass().getName()))
-          {
-            iterator.remove();
-          }
-        }
+        deregisterGroupInstances(group.getClass());
       }
       finally
       {
@@ -364,15 +382,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           lock.writeLock().lock();
           try
           {
-            Iterator<Group<?>> iterator = groupInstances.values().iterator();
-            while (iterator.hasNext())
-            {
-              Group<?> g = iterator.next();
-              if (g.getClass().getName().equals(group.getClass().getName()))
-              {
-                iterator.remove();
-              }
-            }
+            deregisterGroupInstances(group.getClass());
           }
           finally
           {
@@ -566,6 +576,300 @@ public class GroupManager extends InternalDirectoryServerPlugin
 
 
 
+  /**
+   * Retrieves the DNs of all the groups the provided entry is a member of,
+   * either directly or through nested groups.
+   * <p>
+   * Groups listing their members explicitly are looked up in the reverse
+   * membership index, so that the cost of this method is proportional to the
+   * number of groups the entry belongs to rather than to the total number of
+   * groups. Other groups (e.g. dynamic groups) are evaluated against the entry.
+   *
+   * @param  entry  The entry for which to retrieve the groups.
+   *
+   * @return  The DNs of all the groups the provided entry is a member of,
+   *          which may be empty but never {@code null}.
+   */
+  public Set<DN> getGroupDNsForMember(Entry entry)
+  {
+    final Set<DN> groupDNs = new LinkedHashSet<>();
+    final List<Group<?>> groupsToEvaluate;
+    lock.readLock().lock();
+    try
+    {
+      final Set<DN> directGroupDNs = groupsByMember.get(entry.getName().compact());
+      if (directGroupDNs != null)
+      {
+        for (DN groupDN : directGroupDNs)
+        {
+          addGroupAndNestingGroups(groupDN, groupDNs);
+        }
+      }
+
+      if (nonIndexedGroups.isEmpty())
+      {
+        return groupDNs;
+      }
+      groupsToEvaluate = new ArrayList<>(nonIndexedGroups.size());
+      for (DN groupDN : nonIndexedGroups)
+      {
+        if (!groupDNs.contains(groupDN))
+        {
+          groupsToEvaluate.add(groupInstances.get(groupDN));
+        }
+      }
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+
+    // Evaluating non indexed groups may require internal operations,
+    // so do not hold the lock while doing so.
+    for (Group<?> group : groupsToEvaluate)
+    {
+      try
+      {
+        if (group.isMember(entry))
+        {
+          lock.readLock().lock();
+          try
+          {
+            addGroupAndNestingGroups(group.getGroupDN(), groupDNs);
+          }
+          finally
+          {
+            lock.readLock().unlock();
+          }
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+      }
+    }
+    return groupDNs;
+  }
+
+
+
+  /**
+   * Adds the provided group DN and the DNs of all the groups in which it is
+   * nested to the provided set. The caller must hold the lock.
+   */
+  private void addGroupAndNestingGroups(DN groupDN, Set<DN> groupDNs)
+  {
+    if (groupDNs.add(groupDN))
+    {
+      groupDNs.addAll(getNestingGroupDNs(groupDN));
+    }
+  }
+
+
+
+  /**
+   * Returns the DNs of all the groups containing the provided group, directly
+   * or through nested groups. The caller must hold the lock.
+   */
+  private Set<DN> getNestingGroupDNs(DN groupDN)
+  {
+    Set<DN> nestingGroupDNs = nestingGroupsCache.get(groupDN);
+    if (nestingGroupDNs != null)
+    {
+      return nestingGroupDNs;
+    }
+
+    nestingGroupDNs = new HashSet<>();
+    final Deque<DN> toVisit = new ArrayDeque<>();
+    toVisit.add(groupDN);
+    while (!toVisit.isEmpty())
+    {
+      final Set<DN> parentDNs = groupsByMember.get(toVisit.poll().compact());
+      if (parentDNs != null)
+      {
+        for (DN parentDN : parentDNs)
+        {
+          // Nested group loops are tolerated, as in Group.isMember()
+          if (nestingGroupDNs.add(parentDN))
+          {
+            toVisit.add(parentDN);
+          }
+        }
+      }
+    }
+    nestingGroupDNs = Collections.unmodifiableSet(nestingGroupDNs);
+    nestingGroupsCache.put(groupDN, nestingGroupDNs);
+    return nestingGroupDNs;
+  }
+
+
+
+  /**
+   * Notifies this group manager that a member has been explicitly added to a
+   * registered group, so that the reverse membership index can be updated.
+   * Group implementations providing their explicit member list must call this
+   * method whenever they add a member.
+   *
+   * @param  groupDN   The DN of the group to which the member has been added.
+   * @param  memberDN  The DN of the added member.
+   */
+  public void memberAdded(DN groupDN, CompactDn memberDN)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      if (groupInstances.containsKey(groupDN) && !nonIndexedGroups.contains(groupDN))
+      {
+        indexMember(groupDN, memberDN);
+        invalidateNestingGroupsCache(memberDN);
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  /**
+   * Notifies this group manager that a member has been explicitly removed from
+   * a registered group, so that the reverse membership index can be updated.
+   * Group implementations providing their explicit member list must call this
+   * method whenever they remove a member.
+   *
+   * @param  groupDN   The DN of the group from which the member has been
+   *                   removed.
+   * @param  memberDN  The DN of the removed member.
+   */
+  public void memberRemoved(DN groupDN, CompactDn memberDN)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      unindexMember(groupDN, memberDN);
+      invalidateNestingGroupsCache(memberDN);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  /**
+   * Registers the provided group instance and indexes its members, replacing
+   * any group instance previously registered with the same DN. The caller must
+   * hold the write lock.
+   */
+  private void registerGroupInstance(DN groupDN, Group<?> group)
+  {
+    final Group<?> previousGroup = groupInstances.put(groupDN, group);
+    if (previousGroup != null)
+    {
+      unindexGroup(groupDN, previousGroup);
+    }
+
+    final Iterable<CompactDn> memberDNs = group.getExplicitMemberDNs();
+    if (memberDNs != null)
+    {
+      for (CompactDn memberDN : memberDNs)
+      {
+        indexMember(groupDN, memberDN);
+      }
+    }
+    else
+    {
+      nonIndexedGroups.add(groupDN);
+    }
+    nestingGroupsCache.clear();
+  }
+
+
+
+  /**
+   * Removes the members of the provided group instance, which has already been
+   * removed from the registered group instances, from the reverse membership
+   * index. The caller must hold the write lock.
+   */
+  private void unindexGroup(DN groupDN, Group<?> group)
+  {
+    if (!nonIndexedGroups.remove(groupDN))
+    {
+      final Iterable<CompactDn> memberDNs = group.getExplicitMemberDNs();
+      if (memberDNs != null)
+      {
+        for (CompactDn memberDN : memberDNs)
+        {
+          unindexMember(groupDN, memberDN);
+        }
+      }
+    }
+    nestingGroupsCache.clear();
+  }
+
+
+
+  /**
+   * Deregisters all the group instances created by the provided group
+   * implementation class.
+   */
+  private void deregisterGroupInstances(Class<?> groupImplementationClass)
+  {
+    Iterator<Map.Entry<DN, Group<?>>> iterator = groupInstances.entrySet().iterator();
+    while (iterator.hasNext())
+    {
+      Map.Entry<DN, Group<?>> mapEntry = iterator.next();
+      if (mapEntry.getValue().getClass().getName().equals(groupImplementationClass.getName()))
+      {
+        iterator.remove();
+        unindexGroup(mapEntry.getKey(), mapEntry.getValue());
+      }
+    }
+  }
+
+
+
+  private void indexMember(DN groupDN, CompactDn memberDN)
+  {
+    Set<DN> groupDNs = groupsByMember.get(memberDN);
+    if (groupDNs == null)
+    {
+      // Most entries only belong to a handful of groups
+      groupDNs = new HashSet<>(4);
+      groupsByMember.put(memberDN, groupDNs);
+    }
+    groupDNs.add(groupDN);
+  }
+
+
+
+  private void unindexMember(DN groupDN, CompactDn memberDN)
+  {
+    final Set<DN> groupDNs = groupsByMember.get(memberDN);
+    if (groupDNs != null && groupDNs.remove(groupDN) && groupDNs.isEmpty())
+    {
+      groupsByMember.remove(memberDN);
+    }
+  }
+
+
+
+  /**
+   * Clears the nested groups cache if the provided member is a group.
+   * The caller must hold the write lock.
+   */
+  private void invalidateNestingGroupsCache(CompactDn memberDN)
+  {
+    if (!nestingGroupsCache.isEmpty() && groupInstances.containsKey(memberDN.toDn()))
+    {
+      nestingGroupsCache.clear();
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}  In this case, the server will search the backend to find
    * all group instances that it may contain and register them with this group
@@ -638,7 +942,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
             try
             {
               Group<?> groupInstance = groupImplementation.newInstance(null, entry);
-              groupInstances.put(entry.getName(), groupInstance);
+              registerGroupInstance(entry.getName(), groupInstance);
               refreshToken++;
             }
             catch (DirectoryException e)
@@ -676,6 +980,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
         if (backend.handlesEntry(groupEntryDN))
         {
           iterator.remove();
+          unindexGroup(groupEntryDN, mapEntry.getValue());
         }
       }
     }
@@ -745,8 +1050,13 @@ public class GroupManager extends InternalDirectoryServerPlugin
     lock.writeLock().lock();
     try
     {
-      if (groupInstances.removeSubtree(entry.getName(), null))
+      Set<Group<?>> groupSet = new HashSet<>();
+      if (groupInstances.removeSubtree(entry.getName(), groupSet))
       {
+        for (Group<?> group : groupSet)
+        {
+          unindexGroup(group.getGroupDN(), group);
+        }
         refreshToken++;
       }
     }
@@ -821,6 +1131,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
             || updatesObjectClass(modifications))
         {
           groupInstances.remove(oldEntry.getName());
+          unindexGroup(oldEntry.getName(), group);
           // This updates the refreshToken
           createAndRegisterGroup(newEntry);
         }
@@ -868,8 +1179,9 @@ public class GroupManager extends InternalDirectoryServerPlugin
       {
         final DN groupDN = group.getGroupDN();
         final DN renamedGroupDN = groupDN.rename(oldDN, newDN);
+        unindexGroup(groupDN, group);
         group.setGroupDN(renamedGroupDN);
-        groupInstances.put(renamedGroupDN, group);
+        registerGroupInstance(renamedGroupDN, group);
       }
       if (!groupSet.isEmpty())
       {
@@ -1025,7 +1337,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           lock.writeLock().lock();
           try
           {
-            groupInstances.put(entry.getName(), groupInstance);
+            registerGroupInstance(entry.getName(), groupInstance);
             refreshToken++;
           }
           finally
@@ -1054,6 +1366,9 @@ public class GroupManager extends InternalDirectoryServerPlugin
     try
     {
       groupInstances.clear();
+      groupsByMember.clear();
+      nonIndexedGroups.clear();
+      nestingGroupsCache.clear();
     }
     finally
     {
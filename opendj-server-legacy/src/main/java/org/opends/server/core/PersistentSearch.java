@@ -18,19 +18,28 @@ package org.opends.server.core;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.opends.server.controls.EntryChangeNotificationControl;
 import org.opends.server.controls.PersistentSearchChangeType;
+import org.opends.server.core.PersistentSearchDispatcher.ChangeNotification;
 import org.opends.server.types.CancelResult;
 import org.opends.server.types.Control;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.DirectoryException;
+import org.opends.server.types.DisconnectReason;
 import org.opends.server.types.Entry;
 
+import static org.opends.messages.CoreMessages.*;
 import static org.opends.server.controls.PersistentSearchChangeType.*;
 
 /**
@@ -63,6 +72,12 @@ import static org.opends.server.controls.PersistentSearchChangeType.*;
  * Work flow element implementations should {@link #cancel()} active
  * persistent searches when the work flow element fails or is shut
  * down.
+ * <p>
+ * Changes dispatched by a {@link PersistentSearchDispatcher} are queued
+ * and sent to the client asynchronously. The number of queued change
+ * notifications is bounded: when the queue is full, change notifications
+ * are either dropped or the client is disconnected, depending on the
+ * server configuration.
  */
 public final class PersistentSearch
 {
@@ -87,6 +102,12 @@ public final class PersistentSearch
   }
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * The maximum number of queued change notifications sent by a dispatcher
+   * thread before it moves on to other persistent searches.
+   */
+  private static final int MAX_NOTIFICATIONS_PER_RUN = 100;
+
 
 
   /** Cancel a persistent search. */
@@ -95,6 +116,7 @@ public final class PersistentSearch
     if (!psearch.isCancelled)
     {
       psearch.isCancelled = true;
+      psearch.pendingNotifications.clear();
 
       // The persistent search can no longer be cancelled.
       psearch.searchOperation.getClientConnection().deregisterPersistentSearch(psearch);
@@ -123,7 +145,16 @@ public final class PersistentSearch
   private final Set<PersistentSearchChangeType> changeTypes;
 
   /** Indicates whether or not this persistent search has already been aborted. */
-  private boolean isCancelled;
+  private volatile boolean isCancelled;
+
+  /** The change notifications waiting to be sent to the client. */
+  private final Queue<ChangeNotification> pendingNotifications = new ConcurrentLinkedQueue<>();
+  /** The number of change notifications waiting to be sent to the client. */
+  private final AtomicInteger nbPendingNotifications = new AtomicInteger();
+  /** Indicates whether a dispatcher thread is sending the pending change notifications. */
+  private final AtomicBoolean isSending = new AtomicBoolean();
+  /** Indicates whether the queue has overflowed since it was last emptied. */
+  private volatile boolean isOverflowing;
 
   /**
    * Indicates whether entries returned should include the entry change
@@ -428,6 +459,101 @@ public final class PersistentSearch
 
 
 
+  /**
+   * Queues a change notification for this persistent search. The change
+   * notification will be evaluated and sent to the client by a thread of the
+   * provided executor, unless the queue is full.
+   *
+   * @param notification
+   *          The change notification to queue.
+   * @param executor
+   *          The executor whose threads send the change notifications.
+   */
+  void enqueue(ChangeNotification notification, Executor executor)
+  {
+    if (isCancelled)
+    {
+      return;
+    }
+
+    final int maxQueueSize = DirectoryServer.getMaxPersistentSearchQueueSize();
+    if (nbPendingNotifications.incrementAndGet() > maxQueueSize)
+    {
+      nbPendingNotifications.decrementAndGet();
+      queueOverflowed(maxQueueSize, executor);
+      return;
+    }
+    pendingNotifications.add(notification);
+    scheduleSending(executor);
+  }
+
+  private void queueOverflowed(int maxQueueSize, Executor executor)
+  {
+    if (isOverflowing)
+    {
+      return;
+    }
+    isOverflowing = true;
+
+    if (!DirectoryServer.isDisconnectOnPersistentSearchQueueOverflow())
+    {
+      logger.error(ERR_PSEARCH_QUEUE_FULL_DROPPED.get(this, maxQueueSize));
+      return;
+    }
+
+    final LocalizableMessage message = ERR_PSEARCH_QUEUE_FULL_DISCONNECTED.get(this, maxQueueSize);
+    logger.error(message);
+    // Disconnecting may block on the client connection: do not do it in the writer thread.
+    executor.execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        cancel();
+        searchOperation.getClientConnection().disconnect(DisconnectReason.ADMIN_LIMIT_EXCEEDED, true, message);
+      }
+    });
+  }
+
+  private void scheduleSending(final Executor executor)
+  {
+    if (isSending.compareAndSet(false, true))
+    {
+      executor.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          sendPendingNotifications(executor);
+        }
+      });
+    }
+  }
+
+  private void sendPendingNotifications(Executor executor)
+  {
+    for (int i = 0; i < MAX_NOTIFICATIONS_PER_RUN && !isCancelled; i++)
+    {
+      final ChangeNotification notification = pendingNotifications.poll();
+      if (notification == null)
+      {
+        isOverflowing = false;
+        break;
+      }
+      nbPendingNotifications.decrementAndGet();
+      notification.process(this);
+    }
+    isSending.set(false);
+
+    // Notifications may have been queued after the loop ended
+    if (!isCancelled && !pendingNotifications.isEmpty())
+    {
+      scheduleSending(executor);
+    }
+  }
+
+
+
   /**
    * Registers a cancellation callback with this persistent search.
    * The cancellation callback will be notified when this persistent
@@ -0,0 +1,407 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.core;
+
+import static org.forgerock.util.Utils.*;
+import static org.opends.server.controls.PersistentSearchChangeType.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.schema.AttributeType;
+import org.opends.server.controls.PersistentSearchChangeType;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchFilter;
+
+/**
+ * Dispatches the changes made to the entries of a backend to the persistent searches registered
+ * with this backend.
+ * <p>
+ * Persistent searches are indexed by base DN, then by the attribute types which their filter
+ * requires entries to contain, so that a change is only evaluated against the persistent searches
+ * which may return it. The change notifications are queued for each candidate persistent search,
+ * then evaluated and sent to its client by dispatcher threads: neither the number of persistent
+ * searches nor slow clients delay the write operations.
+ */
+public final class PersistentSearchDispatcher
+{
+  /** The name template of the threads sending change notifications to persistent search clients. */
+  private static final String DISPATCHER_THREAD_NAME = "PSEARCH-DISPATCHER-%d";
+
+  /**
+   * The threads sending change notifications to persistent search clients, shared by all backends.
+   * Sending to a slow client blocks its thread, until the client reads or the blocked write time
+   * limit is exceeded. Threads are created on demand, so that slow clients only delay their own
+   * persistent searches, whose queues overflow, rather than all the others. The change
+   * notifications of a persistent search are only sent by one thread at a time, so the number of
+   * threads grows with the number of persistent searches, not with the number of changes.
+   */
+  private static final Executor DISPATCHER_EXECUTOR =
+      Executors.newCachedThreadPool(newThreadFactory(null, DISPATCHER_THREAD_NAME, true));
+
+  /** A change made to an entry, waiting to be sent to the client of a persistent search. */
+  static final class ChangeNotification
+  {
+    private final PersistentSearchChangeType changeType;
+    /** The entry after the change, or the deleted entry. */
+    private final Entry entry;
+    /** The entry before it was modified, only for modify changes. */
+    private final Entry oldEntry;
+    /** The DN of the entry before it was renamed, only for modify DN changes. */
+    private final DN oldDN;
+
+    private ChangeNotification(PersistentSearchChangeType changeType, Entry entry, Entry oldEntry, DN oldDN)
+    {
+      this.changeType = changeType;
+      this.entry = entry;
+      this.oldEntry = oldEntry;
+      this.oldDN = oldDN;
+    }
+
+    /**
+     * Sends this change to the client of the provided persistent search if the changed entry
+     * matches its scope and filter.
+     *
+     * @param psearch
+     *          The persistent search to notify.
+     */
+    void process(PersistentSearch psearch)
+    {
+      switch (changeType)
+      {
+      case ADD:
+        psearch.processAdd(entry);
+        break;
+      case DELETE:
+        psearch.processDelete(entry);
+        break;
+      case MODIFY:
+        psearch.processModify(entry, oldEntry);
+        break;
+      case MODIFY_DN:
+        psearch.processModifyDN(entry, oldDN);
+        break;
+      }
+    }
+  }
+
+  /** The persistent searches having the same base DN. */
+  private static final class BaseDNSearches
+  {
+    /** The persistent searches indexed by the attribute types one of which their filter requires. */
+    private final Map<AttributeType, List<PersistentSearch>> byAttributeType = new HashMap<>();
+    /** The persistent searches whose filter may match entries regardless of their attribute types. */
+    private final List<PersistentSearch> unindexed = new ArrayList<>();
+  }
+
+  /** The persistent searches registered with this dispatcher. */
+  private final List<PersistentSearch> persistentSearches = new ArrayList<>();
+
+  /**
+   * The registered persistent searches indexed by base DN. The index is rebuilt when persistent
+   * searches are registered or deregistered, which is much less frequent than changes.
+   */
+  private volatile Map<DN, BaseDNSearches> index = Collections.emptyMap();
+
+  /**
+   * Registers a persistent search with this dispatcher.
+   *
+   * @param psearch
+   *          The persistent search to register.
+   */
+  public synchronized void register(PersistentSearch psearch)
+  {
+    persistentSearches.add(psearch);
+    index = buildIndex(persistentSearches);
+  }
+
+  /**
+   * Deregisters a persistent search from this dispatcher.
+   *
+   * @param psearch
+   *          The persistent search to deregister.
+   */
+  public synchronized void deregister(PersistentSearch psearch)
+  {
+    if (persistentSearches.remove(psearch))
+    {
+      index = buildIndex(persistentSearches);
+    }
+  }
+
+  private static Map<DN, BaseDNSearches> buildIndex(List<PersistentSearch> persistentSearches)
+  {
+    final Map<DN, BaseDNSearches> newIndex = new HashMap<>();
+    for (PersistentSearch psearch : persistentSearches)
+    {
+      final SearchOperation searchOperation = psearch.getSearchOperation();
+      BaseDNSearches searches = newIndex.get(searchOperation.getBaseDN());
+      if (searches == null)
+      {
+        searches = new BaseDNSearches();
+        newIndex.put(searchOperation.getBaseDN(), searches);
+      }
+
+      final Set<AttributeType> requiredTypes = getRequiredAttributeTypes(searchOperation.getFilter());
+      if (requiredTypes == null)
+      {
+        searches.unindexed.add(psearch);
+        continue;
+      }
+      for (AttributeType type : requiredTypes)
+      {
+        List<PersistentSearch> typeSearches = searches.byAttributeType.get(type);
+        if (typeSearches == null)
+        {
+          typeSearches = new ArrayList<>();
+          searches.byAttributeType.put(type, typeSearches);
+        }
+        typeSearches.add(psearch);
+      }
+    }
+    return newIndex;
+  }
+
+  /**
+   * Returns the attribute types, one of which entries must contain in order to match the provided
+   * filter.
+   *
+   * @param filter
+   *          The filter of a persistent search.
+   * @return the attribute types required by the filter, or {@code null} if the filter may match
+   *         entries regardless of the attribute types they contain
+   */
+  static Set<AttributeType> getRequiredAttributeTypes(SearchFilter filter)
+  {
+    switch (filter.getFilterType())
+    {
+    case AND:
+      // Any component will do: the fewer the attribute types, the fewer the candidate entries.
+      Set<AttributeType> requiredTypes = null;
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        final Set<AttributeType> componentTypes = getRequiredAttributeTypes(component);
+        if (componentTypes != null && (requiredTypes == null || componentTypes.size() < requiredTypes.size()))
+        {
+          requiredTypes = componentTypes;
+        }
+      }
+      return requiredTypes;
+
+    case OR:
+      final Set<AttributeType> anyTypes = new HashSet<>();
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        final Set<AttributeType> componentTypes = getRequiredAttributeTypes(component);
+        if (componentTypes == null)
+        {
+          return null;
+        }
+        anyTypes.addAll(componentTypes);
+      }
+      return !anyTypes.isEmpty() ? anyTypes : null;
+
+    case NOT:
+      return null;
+
+    case EXTENSIBLE_MATCH:
+      if (filter.getDNAttributes())
+      {
+        // The filter also matches the attribute values of the entry DN
+        return null;
+      }
+      // fall through
+
+    default:
+      // Object classes are not stored with the other attributes and collective attributes are
+      // inherited from subentries: entries can match filters on them without containing them.
+      final AttributeType type = filter.getAttributeType();
+      if (type == null || type.isObjectClass() || type.isCollective())
+      {
+        return null;
+      }
+      return Collections.singleton(type);
+    }
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been added.
+   *
+   * @param entry
+   *          The entry that was added.
+   */
+  public void processAdd(Entry entry)
+  {
+    dispatch(new ChangeNotification(ADD, entry, null, null), entry.getName(), null, entry, null);
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been deleted.
+   *
+   * @param entry
+   *          The entry that was deleted.
+   */
+  public void processDelete(Entry entry)
+  {
+    dispatch(new ChangeNotification(DELETE, entry, null, null), entry.getName(), null, entry, null);
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been modified.
+   *
+   * @param entry
+   *          The entry after it was modified.
+   * @param oldEntry
+   *          The entry before it was modified.
+   */
+  public void processModify(Entry entry, Entry oldEntry)
+  {
+    dispatch(new ChangeNotification(MODIFY, entry, oldEntry, null), oldEntry.getName(), null, entry, oldEntry);
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been renamed.
+   *
+   * @param entry
+   *          The entry after it was renamed.
+   * @param oldDN
+   *          The DN of the entry before it was renamed.
+   */
+  public void processModifyDN(Entry entry, DN oldDN)
+  {
+    dispatch(new ChangeNotification(MODIFY_DN, entry, null, oldDN), oldDN, entry.getName(), entry, null);
+  }
+
+  private void dispatch(ChangeNotification notification, DN dn, DN otherDN, Entry entry, Entry otherEntry)
+  {
+    for (PersistentSearch psearch : getCandidates(dn, otherDN, entry, otherEntry))
+    {
+      psearch.enqueue(notification, DISPATCHER_EXECUTOR);
+    }
+  }
+
+  /**
+   * Returns the persistent searches which may return changes made to the provided entries.
+   *
+   * @param dn
+   *          The DN of the changed entry.
+   * @param otherDN
+   *          The other DN of the changed entry, if it has been renamed, may be {@code null}.
+   * @param entry
+   *          The changed entry.
+   * @param otherEntry
+   *          The other version of the changed entry, if it has been modified, may be {@code null}.
+   * @return the candidate persistent searches, whose scope and filter must still be checked
+   */
+  Collection<PersistentSearch> getCandidates(DN dn, DN otherDN, Entry entry, Entry otherEntry)
+  {
+    final Map<DN, BaseDNSearches> currentIndex = index;
+    if (currentIndex.isEmpty())
+    {
+      return Collections.emptySet();
+    }
+
+    final List<BaseDNSearches> inScope = new ArrayList<>();
+    addInScope(currentIndex, dn, inScope);
+    if (otherDN != null && !otherDN.equals(dn))
+    {
+      addInScope(currentIndex, otherDN, inScope);
+    }
+    if (inScope.isEmpty())
+    {
+      return Collections.emptySet();
+    }
+
+    final Set<AttributeType> entryTypes = new HashSet<>();
+    addAttributeTypes(entry, entryTypes);
+    if (otherEntry != null)
+    {
+      addAttributeTypes(otherEntry, entryTypes);
+    }
+    // Virtual attributes are not stored with the entries, but filters can match them.
+    entryTypes.addAll(DirectoryServer.getVirtualAttributesByType().keySet());
+
+    final Set<PersistentSearch> candidates = new LinkedHashSet<>();
+    for (BaseDNSearches searches : inScope)
+    {
+      candidates.addAll(searches.unindexed);
+      if (searches.byAttributeType.size() < entryTypes.size())
+      {
+        for (Map.Entry<AttributeType, List<PersistentSearch>> typeSearches : searches.byAttributeType.entrySet())
+        {
+          if (entryTypes.contains(typeSearches.getKey()))
+          {
+            candidates.addAll(typeSearches.getValue());
+          }
+        }
+      }
+      else
+      {
+        for (AttributeType type : entryTypes)
+        {
+          final List<PersistentSearch> typeSearches = searches.byAttributeType.get(type);
+          if (typeSearches != null)
+          {
+            candidates.addAll(typeSearches);
+          }
+        }
+      }
+    }
+    return candidates;
+  }
+
+  /** Adds the persistent searches whose base DN is the provided DN or one of its ancestors. */
+  private static void addInScope(Map<DN, BaseDNSearches> index, DN dn, List<BaseDNSearches> inScope)
+  {
+    for (DN baseDN = dn; baseDN != null; baseDN = baseDN.parent())
+    {
+      final BaseDNSearches searches = index.get(baseDN);
+      if (searches != null)
+      {
+        inScope.add(searches);
+      }
+    }
+  }
+
+  /** Adds the attribute types of the entry, and their superior types which filters can also target. */
+  private static void addAttributeTypes(Entry entry, Set<AttributeType> entryTypes)
+  {
+    addWithSuperiorTypes(entry.getUserAttributes().keySet(), entryTypes);
+    addWithSuperiorTypes(entry.getOperationalAttributes().keySet(), entryTypes);
+  }
+
+  private static void addWithSuperiorTypes(Set<AttributeType> types, Set<AttributeType> entryTypes)
+  {
+    for (AttributeType type : types)
+    {
+      AttributeType t = type;
+      while (t != null && entryTypes.add(t))
+      {
+        t = t.getSuperiorType();
+      }
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.opendj.ldap.SearchScope;
+import org.forgerock.opendj.ldap.schema.AttributeType;
 import org.opends.server.api.Backend;
 import org.opends.server.api.BackendInitializationListener;
 import org.opends.server.api.ClientConnection;
@@ -47,6 +49,7 @@ import org.opends.server.controls.SubentriesControl;
 import org.opends.server.protocols.internal.InternalClientConnection;
 import org.opends.server.protocols.internal.InternalSearchOperation;
 import org.opends.server.protocols.internal.SearchRequest;
+import org.opends.server.types.Attribute;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
 import org.opends.server.types.Privilege;
@@ -97,6 +100,11 @@ public class SubentryManager extends InternalDirectoryServerPlugin
   private final Map<DN, List<SubEntry>> dn2SubEntry = new HashMap<>();
   /** A mapping between the DNs and applicable collective subentries. */
   private final Map<DN, List<SubEntry>> dn2CollectiveSubEntry = new HashMap<>();
+  /**
+   * The types of the attributes defined by the collective subentries, or null
+   * if they must be computed again.
+   */
+  private volatile Set<AttributeType> collectiveAttributeTypes;
   /** A mapping between subentry DNs and subentry objects. */
   private final DITCacheMap<SubEntry> dit2SubEntry = new DITCacheMap<>();
   /** Internal search all operational attributes. */
@@ -193,6 +201,7 @@ public class SubentryManager extends InternalDirectoryServerPlugin
       }
       dit2SubEntry.put(entry.getName(), subEntry);
       subList.add(subEntry);
+      collectiveAttributeTypes = null;
     }
     finally
     {
@@ -220,6 +229,7 @@ public class SubentryManager extends InternalDirectoryServerPlugin
       {
         removeSubEntry(dn2CollectiveSubEntry, entry);
       }
+      collectiveAttributeTypes = null;
     }
     finally
     {
@@ -528,6 +538,43 @@ public class SubentryManager extends InternalDirectoryServerPlugin
     return getSubentries(dn2CollectiveSubEntry, entry);
   }
 
+  /**
+   * Return the types of the attributes defined by all the collective
+   * subentries, i.e. the types of the attributes which collective
+   * attribute processing may add to an entry.
+   * @return the types of the collective attributes, which must not
+   *         be modified.
+   */
+  public Set<AttributeType> getCollectiveAttributeTypes()
+  {
+    Set<AttributeType> types = collectiveAttributeTypes;
+    if (types == null)
+    {
+      lock.readLock().lock();
+      try
+      {
+        types = new HashSet<>();
+        for (List<SubEntry> subEntries : dn2CollectiveSubEntry.values())
+        {
+          for (SubEntry subEntry : subEntries)
+          {
+            for (Attribute attribute : subEntry.getCollectiveAttributes())
+            {
+              types.add(attribute.getAttributeDescription().getAttributeType());
+            }
+          }
+        }
+        // Published while holding the lock so that it cannot overwrite an invalidation
+        collectiveAttributeTypes = types;
+      }
+      finally
+      {
+        lock.readLock().unlock();
+      }
+    }
+    return types;
+  }
+
   /**
    * {@inheritDoc}  In this case, the server will de-register
    * all subentries associated with the provided backend.
@@ -540,6 +587,7 @@ public class SubentryManager extends InternalDirectoryServerPlugin
     {
       performBackendPostFinalizationProcessing(dn2SubEntry, backend);
       performBackendPostFinalizationProcessing(dn2CollectiveSubEntry, backend);
+      collectiveAttributeTypes = null;
     }
     finally
     {
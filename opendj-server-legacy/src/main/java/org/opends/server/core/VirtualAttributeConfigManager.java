@@ -22,6 +22,8 @@ import static org.opends.server.util.StaticUtils.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -37,6 +39,7 @@ import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.schema.AttributeType;
 import org.forgerock.util.Utils;
 import org.opends.server.admin.ClassPropertyDefinition;
 import org.opends.server.admin.server.ConfigurationAddListener;
@@ -72,6 +75,12 @@ public class VirtualAttributeConfigManager
    */
   private final ConcurrentMap<DN, VirtualAttributeRule> rules = new ConcurrentHashMap<>();
 
+  /**
+   * The registered virtual attribute rules indexed by attribute type, rebuilt
+   * whenever the registered rules change.
+   */
+  private volatile Map<AttributeType, List<VirtualAttributeRule>> rulesByType = Collections.emptyMap();
+
   private final ServerContext serverContext;
 
   /**
@@ -157,7 +166,7 @@ public class VirtualAttributeConfigManager
           }
 
           VirtualAttributeRule rule = createRule(cfg, provider, filters);
-          rules.put(cfg.dn(), rule);
+          putRule(cfg.dn(), rule);
         }
         catch (InitializationException ie)
         {
@@ -273,7 +282,7 @@ public class VirtualAttributeConfigManager
     if (ccr.getResultCode() == ResultCode.SUCCESS)
     {
       VirtualAttributeRule rule = createRule(configuration, provider, filters);
-      rules.put(configuration.dn(), rule);
+      putRule(configuration.dn(), rule);
     }
 
     return ccr;
@@ -296,7 +305,7 @@ public class VirtualAttributeConfigManager
   {
     final ConfigChangeResult ccr = new ConfigChangeResult();
 
-    VirtualAttributeRule rule = rules.remove(configuration.dn());
+    VirtualAttributeRule rule = removeRule(configuration.dn());
     if (rule != null)
     {
       rule.getProvider().finalizeVirtualAttributeProvider();
@@ -364,7 +373,7 @@ public class VirtualAttributeConfigManager
     {
       if (existingRule != null)
       {
-        rules.remove(configuration.dn());
+        removeRule(configuration.dn());
         existingRule.getProvider().finalizeVirtualAttributeProvider();
       }
 
@@ -402,7 +411,7 @@ public class VirtualAttributeConfigManager
     if (ccr.getResultCode() == ResultCode.SUCCESS)
     {
       VirtualAttributeRule rule = createRule(configuration, provider, filters);
-      rules.put(configuration.dn(), rule);
+      putRule(configuration.dn(), rule);
       if (existingRule != null)
       {
         existingRule.getProvider().finalizeVirtualAttributeProvider();
@@ -483,6 +492,18 @@ public class VirtualAttributeConfigManager
     return this.rules.values();
   }
 
+  /**
+   * Retrieves the registered virtual attribute rules indexed by the attribute
+   * type they provide values for.
+   *
+   * @return The registered virtual attribute rules indexed by attribute type,
+   *         which must not be modified.
+   */
+  public Map<AttributeType, List<VirtualAttributeRule>> getVirtualAttributesByType()
+  {
+    return rulesByType;
+  }
+
   /**
    * Registers the provided virtual attribute rule.
    *
@@ -491,7 +512,7 @@ public class VirtualAttributeConfigManager
    */
   public void register(VirtualAttributeRule rule)
   {
-    rules.put(getDummyDN(rule), rule);
+    putRule(getDummyDN(rule), rule);
   }
 
   /**
@@ -502,7 +523,36 @@ public class VirtualAttributeConfigManager
    */
   public void deregister(VirtualAttributeRule rule)
   {
-    rules.remove(getDummyDN(rule));
+    removeRule(getDummyDN(rule));
+  }
+
+  private void putRule(DN dn, VirtualAttributeRule rule)
+  {
+    rules.put(dn, rule);
+    indexRulesByType();
+  }
+
+  private VirtualAttributeRule removeRule(DN dn)
+  {
+    final VirtualAttributeRule rule = rules.remove(dn);
+    indexRulesByType();
+    return rule;
+  }
+
+  private synchronized void indexRulesByType()
+  {
+    final Map<AttributeType, List<VirtualAttributeRule>> index = new HashMap<>();
+    for (VirtualAttributeRule rule : rules.values())
+    {
+      List<VirtualAttributeRule> typeRules = index.get(rule.getAttributeType());
+      if (typeRules == null)
+      {
+        typeRules = new ArrayList<>(1);
+        index.put(rule.getAttributeType(), typeRules);
+      }
+      typeRules.add(rule);
+    }
+    rulesByType = index;
   }
 
   private DN getDummyDN(VirtualAttributeRule rule)
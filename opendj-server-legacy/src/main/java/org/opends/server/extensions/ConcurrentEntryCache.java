@@ -0,0 +1,844 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.ConcurrentEntryCacheCfg;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.api.MonitorData;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.CacheEntry;
+import org.opends.server.types.Entry;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache which splits the cached entries into segments, based on the hash
+ * code of their DN, so that they can be read and updated concurrently.
+ * <p>
+ * Reading an entry from the cache does not take any lock: each segment keeps its entries in a concurrent hash map, and
+ * the entries are also indexed by backend and entry ID in concurrent hash maps. Adding or removing an entry only locks
+ * the segment which the entry belongs to. In contrast to the FIFO entry cache, adding an entry therefore never has to
+ * wait for a global lock, and is never skipped because such a lock could not be acquired in time.
+ * <p>
+ * Each segment purges its entries using the CLOCK algorithm: the segment keeps its entries in insertion order, and
+ * reading an entry marks it as referenced. When the segment is full, the oldest entry is purged unless it is
+ * referenced, in which case it is unmarked and moved to the end of the queue.
+ * <p>
+ * Cache sizing is based on an estimate of the memory used by each cached entry, rather than on the memory used by the
+ * whole JVM. The maximum memory and the maximum number of entries of the cache are shared evenly between the segments,
+ * so that each segment can enforce them on its own: the limits are therefore only approximately enforced. The number
+ * of segments is chosen when the cache is initialized, based on the number of processors and on the maximum number of
+ * entries.
+ */
+public class ConcurrentEntryCache
+       extends EntryCache<ConcurrentEntryCacheCfg>
+       implements ConfigurationChangeListener<ConcurrentEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The maximum number of segments of the cache. */
+  private static final int MAX_SEGMENTS = 256;
+  /** The minimum number of entries which each segment should be able to hold. */
+  private static final int MIN_ENTRIES_PER_SEGMENT = 16;
+
+  /** The estimated memory used by an entry and its cache structures, regardless of its attributes. */
+  private static final int ENTRY_OVERHEAD = 256;
+  /** The estimated memory used by an attribute, regardless of its values. */
+  private static final int ATTRIBUTE_OVERHEAD = 64;
+  /** The estimated memory used by an attribute value, regardless of its length. */
+  private static final int VALUE_OVERHEAD = 32;
+
+  /** The segments of the cache, whose number is a power of 2. */
+  private Segment[] segments;
+
+  /** The mapping between entry backends/IDs and cached entries. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, CachedEntry>> idMap = new ConcurrentHashMap<>();
+
+  /**
+   * The maximum amount of memory in bytes that the cached entries are allowed to use.
+   */
+  private volatile long maxAllowedMemory;
+
+  /** The maximum number of entries that may be held in the cache. */
+  private volatile long maxEntries;
+
+  /** Currently registered configuration object. */
+  private ConcurrentEntryCacheCfg registeredConfiguration;
+
+  /** An entry held in the cache. */
+  private static final class CachedEntry
+  {
+    private final CacheEntry cacheEntry;
+    /** The estimated memory used by the entry. */
+    private final long size;
+    /** Whether the entry has been read since the CLOCK hand last examined it. */
+    private volatile boolean referenced;
+    /** Whether the entry has been removed from its segment. */
+    private volatile boolean removed;
+
+    private CachedEntry(CacheEntry cacheEntry, long size)
+    {
+      this.cacheEntry = cacheEntry;
+      this.size = size;
+    }
+
+    private DN getDN()
+    {
+      return cacheEntry.getDN();
+    }
+
+    private void markReferenced()
+    {
+      // Avoid writing to the shared cache line when the entry is already referenced.
+      if (!referenced)
+      {
+        referenced = true;
+      }
+    }
+  }
+
+  /**
+   * A segment of the cache. The segment map can be read without holding the segment lock, all the other fields are
+   * guarded by the segment lock.
+   */
+  private final class Segment extends ReentrantLock
+  {
+    private static final long serialVersionUID = 1L;
+
+    /** The mapping between DNs and the cached entries of this segment. */
+    private final ConcurrentMap<DN, CachedEntry> dnMap = new ConcurrentHashMap<>();
+    /**
+     * The cached entries in insertion order, the head being the next entry examined by the CLOCK hand. May contain
+     * entries which have been removed: they are dropped when reaching the head, or when there are too many of them.
+     */
+    private final ArrayDeque<CachedEntry> clock = new ArrayDeque<>();
+    /** The number of entries of the clock which have been removed. */
+    private int removedInClock;
+    /** The number of entries held in this segment. */
+    private int count;
+    /** The estimated memory used by the entries held in this segment. */
+    private long size;
+
+    private boolean put(CachedEntry cachedEntry, boolean onlyIfAbsent)
+    {
+      lock();
+      try
+      {
+        final CachedEntry previous = dnMap.get(cachedEntry.getDN());
+        if (previous != null)
+        {
+          if (onlyIfAbsent)
+          {
+            return false;
+          }
+          unlink(previous, true);
+        }
+
+        final long maxSegmentMemory = maxAllowedMemory / segments.length;
+        if (cachedEntry.size > maxSegmentMemory)
+        {
+          // The entry would not fit in this segment: don't cache it.
+          return true;
+        }
+
+        dnMap.put(cachedEntry.getDN(), cachedEntry);
+        clock.addLast(cachedEntry);
+        count++;
+        size += cachedEntry.size;
+        getBackendMap(cachedEntry.cacheEntry.getBackendID()).put(cachedEntry.cacheEntry.getEntryID(), cachedEntry);
+
+        evict(maxSegmentMemory, getMaxSegmentEntries());
+        return true;
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    private void remove(CachedEntry cachedEntry)
+    {
+      lock();
+      try
+      {
+        if (!cachedEntry.removed)
+        {
+          unlink(cachedEntry, true);
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    private void remove(DN entryDN)
+    {
+      lock();
+      try
+      {
+        final CachedEntry cachedEntry = dnMap.get(entryDN);
+        if (cachedEntry != null)
+        {
+          unlink(cachedEntry, true);
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    private void clear()
+    {
+      lock();
+      try
+      {
+        for (CachedEntry cachedEntry : dnMap.values())
+        {
+          cachedEntry.removed = true;
+        }
+        dnMap.clear();
+        clock.clear();
+        removedInClock = 0;
+        count = 0;
+        size = 0;
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    /**
+     * Purges the entries of this segment using the CLOCK algorithm until both limits are met. The caller must hold the
+     * segment lock.
+     */
+    private void evict(long maxSegmentMemory, long maxSegmentEntries)
+    {
+      while (size > maxSegmentMemory || count > maxSegmentEntries)
+      {
+        final CachedEntry cachedEntry = clock.pollFirst();
+        if (cachedEntry == null)
+        {
+          return;
+        }
+        if (cachedEntry.removed)
+        {
+          removedInClock--;
+        }
+        else if (cachedEntry.referenced)
+        {
+          // Second chance.
+          cachedEntry.referenced = false;
+          clock.addLast(cachedEntry);
+        }
+        else
+        {
+          // The entry was already polled from the clock.
+          unlink(cachedEntry, false);
+        }
+      }
+    }
+
+    /**
+     * Purges the provided number of entries from this segment.
+     *
+     * @param numToDrop
+     *          The number of entries to purge.
+     */
+    private void evict(int numToDrop)
+    {
+      lock();
+      try
+      {
+        evict(Long.MAX_VALUE, Math.max(count - numToDrop, 0));
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    /**
+     * Removes the provided entry from this segment. The caller must hold the segment lock.
+     *
+     * @param cachedEntry
+     *          The entry to remove.
+     * @param inClock
+     *          Whether the entry is still in the clock, where it is left to be purged later.
+     */
+    private void unlink(CachedEntry cachedEntry, boolean inClock)
+    {
+      dnMap.remove(cachedEntry.getDN(), cachedEntry);
+      cachedEntry.removed = true;
+      count--;
+      size -= cachedEntry.size;
+
+      final Map<Long, CachedEntry> backendMap = idMap.get(cachedEntry.cacheEntry.getBackendID());
+      if (backendMap != null)
+      {
+        // The entry ID may have been cached again for a renamed entry.
+        backendMap.remove(cachedEntry.cacheEntry.getEntryID(), cachedEntry);
+      }
+
+      // Don't let removed entries pile up in the clock when entries are removed faster than they are purged.
+      if (inClock && ++removedInClock > count + MIN_ENTRIES_PER_SEGMENT)
+      {
+        for (Iterator<CachedEntry> it = clock.iterator(); it.hasNext();)
+        {
+          if (it.next().removed)
+          {
+            it.remove();
+          }
+        }
+        removedInClock = 0;
+      }
+    }
+  }
+
+  /** Creates a new instance of this concurrent entry cache. */
+  public ConcurrentEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  @Override
+  public void initializeEntryCache(ConcurrentEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addConcurrentChangeListener(this);
+
+    // Initialize the cache structures.
+    segments = new Segment[getNumberOfSegments(configuration.getMaxEntries())];
+    for (int i = 0; i < segments.length; i++)
+    {
+      segments[i] = new Segment();
+    }
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_CONCURRENTCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /**
+   * Returns the number of segments to use for the cache, so that there are enough segments to avoid contention
+   * between the processors, but not so many that each segment could only hold a handful of entries.
+   */
+  private static int getNumberOfSegments(long maxEntries)
+  {
+    final int maxSegments = Math.min(4 * Runtime.getRuntime().availableProcessors(), MAX_SEGMENTS);
+    int numberOfSegments = 1;
+    while (numberOfSegments < maxSegments
+        && (maxEntries == 0 || maxEntries / (2 * numberOfSegments) >= MIN_ENTRIES_PER_SEGMENT))
+    {
+      numberOfSegments <<= 1;
+    }
+    return numberOfSegments;
+  }
+
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeConcurrentChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    clear();
+  }
+
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && segmentFor(entryDN).dnMap.containsKey(entryDN);
+  }
+
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    final CachedEntry cachedEntry = segmentFor(entryDN).dnMap.get(entryDN);
+    if (cachedEntry == null) {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    cachedEntry.markReferenced();
+    return cachedEntry.cacheEntry.getEntry();
+  }
+
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    final CachedEntry cachedEntry = segmentFor(entryDN).dnMap.get(entryDN);
+    if (cachedEntry == null)
+    {
+      return -1;
+    }
+    cachedEntry.markReferenced();
+    return cachedEntry.cacheEntry.getEntryID();
+  }
+
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    // Locate specific backend map and return the entry DN by ID.
+    final Map<Long, CachedEntry> backendMap = idMap.get(backendID);
+    if (backendMap != null)
+    {
+      final CachedEntry cachedEntry = backendMap.get(entryID);
+      if (cachedEntry != null && !cachedEntry.removed)
+      {
+        cachedEntry.markReferenced();
+        return cachedEntry.getDN();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    try
+    {
+      final CachedEntry cachedEntry = newCachedEntry(entry, backendID, entryID);
+      segmentFor(entry.getName()).put(cachedEntry, false);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+    }
+  }
+
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    try
+    {
+      // We'll always return true if the entry is absent, even if we didn't
+      // actually add the entry due to memory constraints.
+      final CachedEntry cachedEntry = newCachedEntry(entry, backendID, entryID);
+      return segmentFor(entry.getName()).put(cachedEntry, true);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // We can't be sure there wasn't a conflict, so return false.
+      return false;
+    }
+  }
+
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    segmentFor(entryDN).remove(entryDN);
+  }
+
+  @Override
+  public void clear()
+  {
+    for (Segment segment : segments)
+    {
+      segment.clear();
+    }
+    idMap.clear();
+  }
+
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    final Map<Long, CachedEntry> backendMap = idMap.remove(backendID);
+    if (backendMap == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    for (CachedEntry cachedEntry : backendMap.values())
+    {
+      segmentFor(cachedEntry.getDN()).remove(cachedEntry);
+    }
+  }
+
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.
+    final Map<Long, CachedEntry> backendMap = idMap.get(backend.getBackendID());
+    if (backendMap != null)
+    {
+      for (CachedEntry cachedEntry : backendMap.values())
+      {
+        if (cachedEntry.getDN().isSubordinateOrEqualTo(baseDN))
+        {
+          segmentFor(cachedEntry.getDN()).remove(cachedEntry);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isSubordinateOrEqualTo(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void handleLowMemory()
+  {
+    // See how many entries are in the cache.  If there are less than 1000,
+    // then we'll dump all of them.  Otherwise, we'll dump 10% of the entries
+    // of each segment.
+    if (getCacheCount() < 1000)
+    {
+      clear();
+      return;
+    }
+    for (Segment segment : segments)
+    {
+      segment.evict(segment.count / 10);
+    }
+  }
+
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    ConcurrentEntryCacheCfg config = (ConcurrentEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      ConcurrentEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons
+      )
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(ConcurrentEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      ConcurrentEntryCacheCfg             configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxEntries  = configuration.getMaxEntries();
+
+    // Maximum memory the cached entries can use.
+    int newMaxMemoryPercent  = configuration.getMaxMemoryPercent();
+    long maxJvmHeapSize      = Runtime.getRuntime().maxMemory();
+    long newMaxAllowedMemory = (maxJvmHeapSize / 100) * newMaxMemoryPercent;
+
+    // Get include and exclude filters.
+    Set<SearchFilter> newIncludeFilters = EntryCacheCommon.getFilters (
+        configuration.getIncludeFilter(),
+        ERR_CACHE_INVALID_INCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+    Set<SearchFilter> newExcludeFilters = EntryCacheCommon.getFilters (
+        configuration.getExcludeFilter(),
+        ERR_CACHE_INVALID_EXCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      maxEntries       = newMaxEntries;
+      maxAllowedMemory = newMaxAllowedMemory;
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    try {
+      return EntryCacheCommon.getGenericMonitorData(
+        cacheHits.longValue(),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        getCacheSize(),
+        maxAllowedMemory,
+        getCacheCount(),
+        Long.valueOf(
+            (maxEntries != Integer.MAX_VALUE && maxEntries != Long.MAX_VALUE) ? maxEntries : 0)
+        );
+    } catch (Exception e) {
+      logger.traceException(e);
+      return new MonitorData(0);
+    }
+  }
+
+  @Override
+  public Long getCacheCount()
+  {
+    long count = 0;
+    for (Segment segment : segments)
+    {
+      count += segment.dnMap.size();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the estimated memory used by the entries held in the cache.
+   *
+   * @return The estimated memory used by the entries held in the cache.
+   */
+  private long getCacheSize()
+  {
+    long size = 0;
+    for (Segment segment : segments)
+    {
+      segment.lock();
+      try
+      {
+        size += segment.size;
+      }
+      finally
+      {
+        segment.unlock();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // Check the segments first.
+    for (Segment segment : segments)
+    {
+      for (CachedEntry cachedEntry : segment.dnMap.values())
+      {
+        sb.append(cachedEntry.getDN());
+        sb.append(":");
+        sb.append(cachedEntry.cacheEntry.getEntryID());
+        sb.append(":");
+        sb.append(cachedEntry.cacheEntry.getBackendID());
+        sb.append(ServerConstants.EOL);
+      }
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // the segments in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, CachedEntry>> backendCache : idMap.entrySet())
+    {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, CachedEntry> entry : backendCache.getValue().entrySet())
+      {
+        final CachedEntry cachedEntry = entry.getValue();
+        if (!segmentFor(cachedEntry.getDN()).dnMap.containsKey(cachedEntry.getDN()))
+        {
+          sb.append(cachedEntry.getDN());
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+
+  private Segment segmentFor(DN entryDN)
+  {
+    // Spread the hash code bits, since only the lowest bits select the segment.
+    int h = entryDN.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return segments[h & (segments.length - 1)];
+  }
+
+  private long getMaxSegmentEntries()
+  {
+    final long max = maxEntries;
+    return max > 0 ? Math.max(max / segments.length, 1) : Long.MAX_VALUE;
+  }
+
+  private ConcurrentMap<Long, CachedEntry> getBackendMap(String backendID)
+  {
+    ConcurrentMap<Long, CachedEntry> backendMap = idMap.get(backendID);
+    if (backendMap == null)
+    {
+      final ConcurrentMap<Long, CachedEntry> newBackendMap = new ConcurrentHashMap<>();
+      backendMap = idMap.putIfAbsent(backendID, newBackendMap);
+      if (backendMap == null)
+      {
+        backendMap = newBackendMap;
+      }
+    }
+    return backendMap;
+  }
+
+  private static CachedEntry newCachedEntry(Entry entry, String backendID, long entryID)
+  {
+    return new CachedEntry(new CacheEntry(entry, backendID, entryID), estimateSize(entry));
+  }
+
+  /**
+   * Estimates the memory used by the provided entry once cached, based on the length of its DN and of its attribute
+   * values.
+   *
+   * @param entry
+   *          The entry whose memory usage must be estimated.
+   * @return The estimated memory used by the entry, in bytes.
+   */
+  static long estimateSize(Entry entry)
+  {
+    long size = ENTRY_OVERHEAD + 2L * entry.getName().toString().length();
+    size += (long) VALUE_OVERHEAD * entry.getObjectClasses().size();
+    size += estimateSize(entry.getUserAttributes());
+    size += estimateSize(entry.getOperationalAttributes());
+    return size;
+  }
+
+  private static long estimateSize(Map<?, List<Attribute>> attributes)
+  {
+    long size = 0;
+    for (List<Attribute> attributeList : attributes.values())
+    {
+      for (Attribute attribute : attributeList)
+      {
+        size += ATTRIBUTE_OVERHEAD;
+        for (ByteString value : attribute)
+        {
+          size += VALUE_OVERHEAD + value.length();
+        }
+      }
+    }
+    return size;
+  }
+}
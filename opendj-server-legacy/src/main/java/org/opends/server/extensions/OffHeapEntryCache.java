@@ -0,0 +1,1164 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.admin.std.server.OffHeapEntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.api.MonitorData;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache which keeps the cached entries in their encoded form outside of
+ * the JVM heap, so that the size of the cache does not impact the duration of garbage collections, and so that the
+ * cache is not wiped out under memory pressure like soft references are.
+ * <p>
+ * The entries are encoded using the same entry encoding as the backends, and stored in direct memory managed by a slab
+ * allocator: the memory is allocated in slabs of 1 MB, and each slab is divided into chunks of one of the size
+ * classes of the allocator. Each entry is stored in a chunk of the smallest size class which can hold it. Entries are
+ * decoded straight from the direct memory each time they are read from the cache.
+ * <p>
+ * Like the concurrent entry cache, the cache is split into segments based on the hash code of the DNs: reading an
+ * entry does not take any lock, while adding or removing an entry locks the segment which the entry belongs to. Each
+ * segment has its own slabs. When a segment has no free chunk of the required size class and cannot allocate more
+ * slabs, the entries of this size class are purged using the CLOCK algorithm. If the segment holds no entries of this
+ * size class, a slab is taken from another size class.
+ * <p>
+ * Readers pin the chunk they decode, so that a chunk whose entry is removed while being decoded is only reused once
+ * the last reader has released it.
+ */
+public class OffHeapEntryCache
+       extends EntryCache<OffHeapEntryCacheCfg>
+       implements ConfigurationChangeListener<OffHeapEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The name of the monitor attribute providing the amount of direct memory allocated by the cache. */
+  private static final String ATTR_OFF_HEAP_ALLOCATED = "offHeapBytesAllocated";
+  /** The name of the monitor attribute providing the amount of direct memory used by the cached entries. */
+  private static final String ATTR_OFF_HEAP_USED = "offHeapBytesUsed";
+  /** The name of the monitor attribute providing the percentage of allocated direct memory not used by entries. */
+  private static final String ATTR_OFF_HEAP_FRAGMENTATION = "offHeapFragmentation";
+
+  /** The size of the slabs, which is also the maximum size of a cached entry. */
+  static final int SLAB_SIZE = 1 << 20;
+  /** The size of the smallest size class. */
+  private static final int MIN_CHUNK_SIZE = 64;
+  /** The ratio between the sizes of two consecutive size classes. */
+  private static final double CHUNK_SIZE_GROWTH_FACTOR = 1.25;
+  /** The sizes of the chunks of each size class, in increasing order. */
+  private static final int[] CHUNK_SIZES = getChunkSizes();
+  /** The number of bits of a chunk ID used for the chunk number within its slab. */
+  private static final int CHUNK_NUMBER_BITS = 16;
+
+  /** The maximum number of segments of the cache. */
+  private static final int MAX_SEGMENTS = 256;
+  /** The minimum number of slabs which each segment should be able to allocate. */
+  private static final int MIN_SLABS_PER_SEGMENT = 16;
+
+  /** The capacity above which the thread local buffers are truncated after use. */
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+  /** The initial capacity of the thread local buffers. */
+  private static final int BUFFER_INIT_SIZE = 512;
+
+  /** The buffers used to encode and decode the entries. */
+  private static final ThreadLocal<ByteStringBuilder> BUFFERS = new ThreadLocal<ByteStringBuilder>()
+  {
+    @Override
+    protected ByteStringBuilder initialValue()
+    {
+      return new ByteStringBuilder(BUFFER_INIT_SIZE);
+    }
+  };
+
+  /** The segments of the cache, whose number is a power of 2. */
+  private Segment[] segments;
+
+  /** The mapping between entry backends/IDs and cached entries. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, CachedEntry>> idMap = new ConcurrentHashMap<>();
+
+  /** The maximum amount of direct memory in bytes that the cache is allowed to allocate. */
+  private long maxOffHeapSize;
+
+  /** Currently registered configuration object. */
+  private OffHeapEntryCacheCfg registeredConfiguration;
+
+  /** An entry held in the cache, whose encoded form is stored in a chunk of a slab. */
+  private static final class CachedEntry
+  {
+    private static final AtomicIntegerFieldUpdater<CachedEntry> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(CachedEntry.class, "state");
+    /** Flag set in the state once the entry has been removed from its segment. */
+    private static final int RETIRED = 1 << 30;
+    /** State of an entry whose chunk has been released. */
+    private static final int FREED = -1;
+
+    private final DN dn;
+    private final String backendID;
+    private final long entryID;
+    private final Slab slab;
+    private final int chunkNumber;
+    private final int length;
+    /** The number of readers currently decoding the entry, possibly combined with the {@link #RETIRED} flag. */
+    private volatile int state;
+    /** Whether the entry has been read since the CLOCK hand last examined it. */
+    private volatile boolean referenced;
+
+    private CachedEntry(DN dn, String backendID, long entryID, Slab slab, int chunkNumber, int length)
+    {
+      this.dn = dn;
+      this.backendID = backendID;
+      this.entryID = entryID;
+      this.slab = slab;
+      this.chunkNumber = chunkNumber;
+      this.length = length;
+    }
+
+    private int getOffset()
+    {
+      return chunkNumber * CHUNK_SIZES[slab.sizeClass];
+    }
+
+    /** Prevents the chunk from being reused, returns false if the entry has already been removed. */
+    private boolean pin()
+    {
+      while (true)
+      {
+        final int s = state;
+        if (s < 0 || (s & RETIRED) != 0)
+        {
+          return false;
+        }
+        if (STATE.compareAndSet(this, s, s + 1))
+        {
+          return true;
+        }
+      }
+    }
+
+    /** Releases a pin, returns true if the caller must release the chunk. */
+    private boolean unpin()
+    {
+      return STATE.decrementAndGet(this) == RETIRED && STATE.compareAndSet(this, RETIRED, FREED);
+    }
+
+    /** Marks the entry as removed, returns true if the caller must release the chunk. */
+    private boolean retire()
+    {
+      return STATE.addAndGet(this, RETIRED) == RETIRED && STATE.compareAndSet(this, RETIRED, FREED);
+    }
+
+    private boolean isRetired()
+    {
+      final int s = state;
+      return s < 0 || (s & RETIRED) != 0;
+    }
+
+    private void markReferenced()
+    {
+      // Avoid writing to the shared cache line when the entry is already referenced.
+      if (!referenced)
+      {
+        referenced = true;
+      }
+    }
+  }
+
+  /** A slab of direct memory, divided into chunks of a single size class. Guarded by the segment lock. */
+  private static final class Slab
+  {
+    private final int index;
+    private final ByteBuffer buffer;
+    private int sizeClass = -1;
+    /** The entries stored in the chunks of this slab, indexed by chunk number. */
+    private CachedEntry[] chunks;
+
+    private Slab(int index, ByteBuffer buffer)
+    {
+      this.index = index;
+      this.buffer = buffer;
+    }
+  }
+
+  /** A stack of chunk IDs, each made of the slab index and of the chunk number within the slab. */
+  private static final class ChunkStack
+  {
+    private int[] chunkIDs = new int[16];
+    private int size;
+
+    private void push(int chunkID)
+    {
+      if (size == chunkIDs.length)
+      {
+        chunkIDs = Arrays.copyOf(chunkIDs, size * 2);
+      }
+      chunkIDs[size++] = chunkID;
+    }
+
+    private int pop()
+    {
+      return chunkIDs[--size];
+    }
+
+    private boolean isEmpty()
+    {
+      return size == 0;
+    }
+
+    private void removeSlab(int slabIndex)
+    {
+      int newSize = 0;
+      for (int i = 0; i < size; i++)
+      {
+        if (chunkIDs[i] >>> CHUNK_NUMBER_BITS != slabIndex)
+        {
+          chunkIDs[newSize++] = chunkIDs[i];
+        }
+      }
+      size = newSize;
+    }
+
+    private void clear()
+    {
+      size = 0;
+    }
+  }
+
+  /**
+   * A segment of the cache. The segment map can be read without holding the segment lock, all the other fields are
+   * guarded by the segment lock.
+   */
+  private final class Segment extends ReentrantLock
+  {
+    private static final long serialVersionUID = 1L;
+
+    /** The mapping between DNs and the cached entries of this segment. */
+    private final ConcurrentMap<DN, CachedEntry> dnMap = new ConcurrentHashMap<>();
+    /** The slabs allocated by this segment. */
+    private final List<Slab> slabs = new ArrayList<>();
+    /** The maximum number of slabs this segment may allocate. */
+    private int maxSlabs;
+    /** The free chunks of each size class. */
+    private final ChunkStack[] freeChunks = new ChunkStack[CHUNK_SIZES.length];
+    /**
+     * The cached entries of each size class in insertion order, the head being the next entry examined by the CLOCK
+     * hand. May contain entries which have been removed: they are dropped when reaching the head, or when there are
+     * too many of them.
+     */
+    private final ArrayDeque<CachedEntry>[] clocks;
+    /** The number of entries of each clock which have been removed. */
+    private final int[] removedInClocks = new int[CHUNK_SIZES.length];
+    /** The number of entries of each size class held in this segment. */
+    private final int[] counts = new int[CHUNK_SIZES.length];
+    /** The number of bytes used by the encoded entries held in this segment. */
+    private long usedBytes;
+    /** The index of the next slab to examine when a slab must be taken from another size class. */
+    private int nextVictimSlab;
+
+    @SuppressWarnings("unchecked")
+    private Segment(int maxSlabs)
+    {
+      this.maxSlabs = maxSlabs;
+      this.clocks = new ArrayDeque[CHUNK_SIZES.length];
+      for (int i = 0; i < CHUNK_SIZES.length; i++)
+      {
+        freeChunks[i] = new ChunkStack();
+        clocks[i] = new ArrayDeque<>();
+      }
+    }
+
+    private boolean put(DN dn, String backendID, long entryID, ByteStringBuilder encodedEntry, boolean onlyIfAbsent)
+    {
+      lock();
+      try
+      {
+        final CachedEntry previous = dnMap.get(dn);
+        if (previous != null)
+        {
+          if (onlyIfAbsent)
+          {
+            return false;
+          }
+          unlink(previous);
+        }
+
+        final int sizeClass = getSizeClass(encodedEntry.length());
+        final int chunkID = sizeClass < CHUNK_SIZES.length ? allocateChunk(sizeClass) : -1;
+        if (chunkID == -1)
+        {
+          // The entry is too big, or the memory is held by entries being decoded: don't cache it.
+          return true;
+        }
+
+        final Slab slab = slabs.get(chunkID >>> CHUNK_NUMBER_BITS);
+        final int chunkNumber = chunkID & ((1 << CHUNK_NUMBER_BITS) - 1);
+        final CachedEntry cachedEntry =
+            new CachedEntry(dn, backendID, entryID, slab, chunkNumber, encodedEntry.length());
+        final ByteBuffer chunk = slab.buffer.duplicate();
+        chunk.position(cachedEntry.getOffset());
+        encodedEntry.copyTo(chunk);
+
+        slab.chunks[chunkNumber] = cachedEntry;
+        clocks[sizeClass].addLast(cachedEntry);
+        counts[sizeClass]++;
+        usedBytes += cachedEntry.length;
+        // Publishing the entry in the concurrent maps makes the chunk content visible to the readers.
+        dnMap.put(dn, cachedEntry);
+        getBackendMap(backendID).put(entryID, cachedEntry);
+        return true;
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    /**
+     * Returns the ID of a free chunk of the provided size class, purging entries if needed, or -1 if no chunk could
+     * be freed. The caller must hold the segment lock.
+     */
+    private int allocateChunk(int sizeClass)
+    {
+      while (true)
+      {
+        if (!freeChunks[sizeClass].isEmpty())
+        {
+          return freeChunks[sizeClass].pop();
+        }
+        if (slabs.size() < maxSlabs && allocateSlab(sizeClass))
+        {
+          continue;
+        }
+        if (!evict(sizeClass))
+        {
+          break;
+        }
+      }
+      return takeSlab(sizeClass) ? freeChunks[sizeClass].pop() : -1;
+    }
+
+    private boolean allocateSlab(int sizeClass)
+    {
+      final ByteBuffer buffer;
+      try
+      {
+        buffer = ByteBuffer.allocateDirect(SLAB_SIZE);
+      }
+      catch (OutOfMemoryError e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_OFFHEAPCACHE_CANNOT_ALLOCATE_SLAB, (long) slabs.size() * SLAB_SIZE, e.getMessage());
+        maxSlabs = slabs.size();
+        return false;
+      }
+      final Slab slab = new Slab(slabs.size(), buffer);
+      slabs.add(slab);
+      assignSlab(slab, sizeClass);
+      return true;
+    }
+
+    private void assignSlab(Slab slab, int sizeClass)
+    {
+      final int numberOfChunks = SLAB_SIZE / CHUNK_SIZES[sizeClass];
+      slab.sizeClass = sizeClass;
+      slab.chunks = new CachedEntry[numberOfChunks];
+      // Push the chunks in reverse order, so that they are allocated in increasing addresses.
+      for (int i = numberOfChunks - 1; i >= 0; i--)
+      {
+        freeChunks[sizeClass].push(slab.index << CHUNK_NUMBER_BITS | i);
+      }
+    }
+
+    /**
+     * Purges all the entries of a slab of another size class, and assigns it to the provided size class. Returns false
+     * if no slab could be entirely freed.
+     */
+    private boolean takeSlab(int sizeClass)
+    {
+      for (int attempts = slabs.size(); attempts > 0; attempts--)
+      {
+        final Slab victim = slabs.get(nextVictimSlab);
+        nextVictimSlab = (nextVictimSlab + 1) % slabs.size();
+        if (victim.sizeClass == sizeClass)
+        {
+          continue;
+        }
+
+        boolean isFree = true;
+        for (CachedEntry cachedEntry : victim.chunks)
+        {
+          if (cachedEntry != null)
+          {
+            if (!cachedEntry.isRetired())
+            {
+              unlink(cachedEntry);
+            }
+            // Entries still being decoded prevent the slab from being reused.
+            isFree &= victim.chunks[cachedEntry.chunkNumber] == null;
+          }
+        }
+        if (isFree)
+        {
+          freeChunks[victim.sizeClass].removeSlab(victim.index);
+          assignSlab(victim, sizeClass);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Purges the next entry of the provided size class selected by the CLOCK algorithm. Returns false if the segment
+     * holds no entries of this size class.
+     */
+    private boolean evict(int sizeClass)
+    {
+      final ArrayDeque<CachedEntry> clock = clocks[sizeClass];
+      while (true)
+      {
+        final CachedEntry cachedEntry = clock.pollFirst();
+        if (cachedEntry == null)
+        {
+          return false;
+        }
+        if (cachedEntry.isRetired())
+        {
+          removedInClocks[sizeClass]--;
+        }
+        else if (cachedEntry.referenced)
+        {
+          // Second chance.
+          cachedEntry.referenced = false;
+          clock.addLast(cachedEntry);
+        }
+        else
+        {
+          unlink(cachedEntry);
+          // The entry was already polled from the clock.
+          removedInClocks[sizeClass]--;
+          return true;
+        }
+      }
+    }
+
+    private void remove(CachedEntry cachedEntry)
+    {
+      lock();
+      try
+      {
+        if (!cachedEntry.isRetired())
+        {
+          unlink(cachedEntry);
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    private void remove(DN entryDN)
+    {
+      lock();
+      try
+      {
+        final CachedEntry cachedEntry = dnMap.get(entryDN);
+        if (cachedEntry != null)
+        {
+          unlink(cachedEntry);
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    /**
+     * Purges the provided number of entries from this segment.
+     *
+     * @param numToDrop
+     *          The number of entries to purge.
+     */
+    private void evict(int numToDrop)
+    {
+      lock();
+      try
+      {
+        for (int sizeClass = 0; sizeClass < CHUNK_SIZES.length && numToDrop > 0; sizeClass++)
+        {
+          for (int i = counts[sizeClass] / 10; i > 0 && numToDrop > 0 && evict(sizeClass); i--)
+          {
+            numToDrop--;
+          }
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    private void clear()
+    {
+      lock();
+      try
+      {
+        for (CachedEntry cachedEntry : dnMap.values())
+        {
+          unlink(cachedEntry);
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    /** Releases the slabs of this segment, which must not hold any entry. */
+    private void releaseSlabs()
+    {
+      lock();
+      try
+      {
+        slabs.clear();
+        for (int i = 0; i < CHUNK_SIZES.length; i++)
+        {
+          freeChunks[i].clear();
+          clocks[i].clear();
+          removedInClocks[i] = 0;
+        }
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+
+    /** Removes the provided entry from this segment. The caller must hold the segment lock. */
+    private void unlink(CachedEntry cachedEntry)
+    {
+      dnMap.remove(cachedEntry.dn, cachedEntry);
+      final Map<Long, CachedEntry> backendMap = idMap.get(cachedEntry.backendID);
+      if (backendMap != null)
+      {
+        // The entry ID may have been cached again for a renamed entry.
+        backendMap.remove(cachedEntry.entryID, cachedEntry);
+      }
+
+      final int sizeClass = cachedEntry.slab.sizeClass;
+      counts[sizeClass]--;
+      usedBytes -= cachedEntry.length;
+      if (cachedEntry.retire())
+      {
+        freeChunk(cachedEntry);
+      }
+
+      // Don't let removed entries pile up in the clock when entries are removed faster than they are purged.
+      if (++removedInClocks[sizeClass] > counts[sizeClass] + MIN_SLABS_PER_SEGMENT)
+      {
+        for (Iterator<CachedEntry> it = clocks[sizeClass].iterator(); it.hasNext();)
+        {
+          if (it.next().isRetired())
+          {
+            it.remove();
+          }
+        }
+        removedInClocks[sizeClass] = 0;
+      }
+    }
+
+    /** Makes the chunk of a removed entry available again. The caller must hold the segment lock. */
+    private void freeChunk(CachedEntry cachedEntry)
+    {
+      final Slab slab = cachedEntry.slab;
+      if (slab.chunks[cachedEntry.chunkNumber] == cachedEntry)
+      {
+        slab.chunks[cachedEntry.chunkNumber] = null;
+        freeChunks[slab.sizeClass].push(slab.index << CHUNK_NUMBER_BITS | cachedEntry.chunkNumber);
+      }
+    }
+
+    /** Makes the chunk of a removed entry available again once its last reader has released it. */
+    private void freeChunkLater(CachedEntry cachedEntry)
+    {
+      lock();
+      try
+      {
+        freeChunk(cachedEntry);
+      }
+      finally
+      {
+        unlock();
+      }
+    }
+  }
+
+  /** Creates a new instance of this off heap entry cache. */
+  public OffHeapEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  @Override
+  public void initializeEntryCache(OffHeapEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addOffHeapChangeListener(this);
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_OFFHEAPCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+
+    // Initialize the cache structures. The slabs are allocated on demand.
+    maxOffHeapSize = configuration.getMaxOffHeapSize();
+    final long maxSlabs = Math.max(maxOffHeapSize / SLAB_SIZE, 1);
+    segments = new Segment[getNumberOfSegments(maxSlabs)];
+    for (int i = 0; i < segments.length; i++)
+    {
+      segments[i] = new Segment((int) Math.min(maxSlabs / segments.length, 1 << (31 - CHUNK_NUMBER_BITS)));
+    }
+  }
+
+  /**
+   * Returns the number of segments to use for the cache, so that there are enough segments to avoid contention
+   * between the processors, but not so many that each segment could only allocate a handful of slabs.
+   */
+  private static int getNumberOfSegments(long maxSlabs)
+  {
+    final int maxSegments = Math.min(4 * Runtime.getRuntime().availableProcessors(), MAX_SEGMENTS);
+    int numberOfSegments = 1;
+    while (numberOfSegments < maxSegments && maxSlabs / (2 * numberOfSegments) >= MIN_SLABS_PER_SEGMENT)
+    {
+      numberOfSegments <<= 1;
+    }
+    return numberOfSegments;
+  }
+
+  private static int[] getChunkSizes()
+  {
+    final List<Integer> sizes = new ArrayList<>();
+    int size = MIN_CHUNK_SIZE;
+    while (size < SLAB_SIZE)
+    {
+      sizes.add(size);
+      // Keep the chunks 8 bytes aligned.
+      size = ((int) (size * CHUNK_SIZE_GROWTH_FACTOR) + 7) & ~7;
+    }
+    sizes.add(SLAB_SIZE);
+
+    final int[] chunkSizes = new int[sizes.size()];
+    for (int i = 0; i < chunkSizes.length; i++)
+    {
+      chunkSizes[i] = sizes.get(i);
+    }
+    return chunkSizes;
+  }
+
+  /**
+   * Returns the smallest size class whose chunks can hold the provided number of bytes, or the number of size classes
+   * if the bytes do not fit in a slab.
+   */
+  private static int getSizeClass(int length)
+  {
+    final int i = Arrays.binarySearch(CHUNK_SIZES, length);
+    return i >= 0 ? i : -i - 1;
+  }
+
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeOffHeapChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    clear();
+    for (Segment segment : segments)
+    {
+      segment.releaseSlabs();
+    }
+  }
+
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && segmentFor(entryDN).dnMap.containsKey(entryDN);
+  }
+
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    final CachedEntry cachedEntry = segmentFor(entryDN).dnMap.get(entryDN);
+    final Entry entry = cachedEntry != null ? decode(cachedEntry) : null;
+    if (entry == null) {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    cachedEntry.markReferenced();
+    return entry;
+  }
+
+  /**
+   * Decodes the provided cached entry from its chunk, or returns null if it has been removed from the cache in the
+   * meantime.
+   */
+  private Entry decode(CachedEntry cachedEntry)
+  {
+    if (!cachedEntry.pin())
+    {
+      return null;
+    }
+    final ByteStringBuilder buffer = BUFFERS.get();
+    try
+    {
+      final ByteBuffer chunk = cachedEntry.slab.buffer.duplicate();
+      chunk.position(cachedEntry.getOffset());
+      buffer.appendBytes(chunk, cachedEntry.length);
+      // The decoded attribute values do not refer back to the buffer.
+      return Entry.decode(buffer.asReader());
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+    finally
+    {
+      buffer.clearAndTruncate(MAX_BUFFER_SIZE, BUFFER_INIT_SIZE);
+      if (cachedEntry.unpin())
+      {
+        segmentFor(cachedEntry.dn).freeChunkLater(cachedEntry);
+      }
+    }
+  }
+
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    final CachedEntry cachedEntry = segmentFor(entryDN).dnMap.get(entryDN);
+    if (cachedEntry == null)
+    {
+      return -1;
+    }
+    cachedEntry.markReferenced();
+    return cachedEntry.entryID;
+  }
+
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    // Locate specific backend map and return the entry DN by ID.
+    final Map<Long, CachedEntry> backendMap = idMap.get(backendID);
+    if (backendMap != null)
+    {
+      final CachedEntry cachedEntry = backendMap.get(entryID);
+      if (cachedEntry != null && !cachedEntry.isRetired())
+      {
+        cachedEntry.markReferenced();
+        return cachedEntry.dn;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    put(entry, backendID, entryID, false);
+  }
+
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    // We'll always return true if the entry is absent, even if we didn't
+    // actually add the entry due to memory constraints.
+    return put(entry, backendID, entryID, true);
+  }
+
+  private boolean put(Entry entry, String backendID, long entryID, boolean onlyIfAbsent)
+  {
+    final ByteStringBuilder buffer = BUFFERS.get();
+    try
+    {
+      // Encode the entry before locking the segment.
+      entry.encode(buffer, EntryEncodeConfig.DEFAULT_CONFIG);
+      return segmentFor(entry.getName()).put(entry.getName(), backendID, entryID, buffer, onlyIfAbsent);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // We can't be sure there wasn't a conflict, so return false.
+      return false;
+    }
+    finally
+    {
+      buffer.clearAndTruncate(MAX_BUFFER_SIZE, BUFFER_INIT_SIZE);
+    }
+  }
+
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    segmentFor(entryDN).remove(entryDN);
+  }
+
+  @Override
+  public void clear()
+  {
+    for (Segment segment : segments)
+    {
+      segment.clear();
+    }
+    idMap.clear();
+  }
+
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    final Map<Long, CachedEntry> backendMap = idMap.remove(backendID);
+    if (backendMap == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    for (CachedEntry cachedEntry : backendMap.values())
+    {
+      segmentFor(cachedEntry.dn).remove(cachedEntry);
+    }
+  }
+
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.
+    final Map<Long, CachedEntry> backendMap = idMap.get(backend.getBackendID());
+    if (backendMap != null)
+    {
+      for (CachedEntry cachedEntry : backendMap.values())
+      {
+        if (cachedEntry.dn.isSubordinateOrEqualTo(baseDN))
+        {
+          segmentFor(cachedEntry.dn).remove(cachedEntry);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isSubordinateOrEqualTo(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void handleLowMemory()
+  {
+    // The entries are not held in the JVM heap, but their DNs and the cache
+    // structures are. If there are less than 1000 entries, then we'll dump
+    // all of them.  Otherwise, we'll dump 10% of the entries of each segment.
+    if (getCacheCount() < 1000)
+    {
+      clear();
+      return;
+    }
+    for (Segment segment : segments)
+    {
+      segment.evict(segment.dnMap.size() / 10);
+    }
+  }
+
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    OffHeapEntryCacheCfg config = (OffHeapEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      OffHeapEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons
+      )
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(OffHeapEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    // The slabs are only sized when the cache is initialized.
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired()
+        || configuration.getMaxOffHeapSize() != maxOffHeapSize);
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      OffHeapEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Get include and exclude filters.
+    DN newConfigEntryDN = configuration.dn();
+    Set<SearchFilter> newIncludeFilters = EntryCacheCommon.getFilters (
+        configuration.getIncludeFilter(),
+        ERR_CACHE_INVALID_INCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+    Set<SearchFilter> newExcludeFilters = EntryCacheCommon.getFilters (
+        configuration.getExcludeFilter(),
+        ERR_CACHE_INVALID_EXCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    try {
+      long allocatedBytes = 0;
+      long usedBytes = 0;
+      for (Segment segment : segments)
+      {
+        segment.lock();
+        try
+        {
+          allocatedBytes += (long) segment.slabs.size() * SLAB_SIZE;
+          usedBytes += segment.usedBytes;
+        }
+        finally
+        {
+          segment.unlock();
+        }
+      }
+
+      final MonitorData monitorData = EntryCacheCommon.getGenericMonitorData(
+        cacheHits.longValue(),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        usedBytes,
+        maxOffHeapSize,
+        getCacheCount(),
+        null
+        );
+      monitorData.add(ATTR_OFF_HEAP_ALLOCATED, allocatedBytes);
+      monitorData.add(ATTR_OFF_HEAP_USED, usedBytes);
+      monitorData.add(ATTR_OFF_HEAP_FRAGMENTATION,
+          allocatedBytes > 0 ? 100.0 * (allocatedBytes - usedBytes) / allocatedBytes : 0.0);
+      return monitorData;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return new MonitorData(0);
+    }
+  }
+
+  @Override
+  public Long getCacheCount()
+  {
+    long count = 0;
+    for (Segment segment : segments)
+    {
+      count += segment.dnMap.size();
+    }
+    return count;
+  }
+
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // Check the segments first.
+    for (Segment segment : segments)
+    {
+      for (CachedEntry cachedEntry : segment.dnMap.values())
+      {
+        sb.append(cachedEntry.dn);
+        sb.append(":");
+        sb.append(cachedEntry.entryID);
+        sb.append(":");
+        sb.append(cachedEntry.backendID);
+        sb.append(ServerConstants.EOL);
+      }
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // the segments in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, CachedEntry>> backendCache : idMap.entrySet())
+    {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, CachedEntry> entry : backendCache.getValue().entrySet())
+      {
+        final CachedEntry cachedEntry = entry.getValue();
+        if (!segmentFor(cachedEntry.dn).dnMap.containsKey(cachedEntry.dn))
+        {
+          sb.append(cachedEntry.dn);
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+
+  private Segment segmentFor(DN entryDN)
+  {
+    // Spread the hash code bits, since only the lowest bits select the segment.
+    int h = entryDN.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return segments[h & (segments.length - 1)];
+  }
+
+  private ConcurrentMap<Long, CachedEntry> getBackendMap(String backendID)
+  {
+    ConcurrentMap<Long, CachedEntry> backendMap = idMap.get(backendID);
+    if (backendMap == null)
+    {
+      final ConcurrentMap<Long, CachedEntry> newBackendMap = new ConcurrentHashMap<>();
+      backendMap = idMap.putIfAbsent(backendID, newBackendMap);
+      if (backendMap == null)
+      {
+        backendMap = newBackendMap;
+      }
+    }
+    return backendMap;
+  }
+}
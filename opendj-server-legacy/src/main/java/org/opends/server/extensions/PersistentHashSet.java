@@ -0,0 +1,452 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.forgerock.util.Reject;
+
+/**
+ * An immutable set backed by a hash array mapped trie.
+ * <p>
+ * Updates never modify an existing set: {@link #with(Object)} and {@link #without(Object)} return a new set sharing
+ * all the unmodified nodes of the trie with the original one. A single element update therefore costs
+ * O(log<sub>32</sub> n) in both time and memory, and readers may look up or iterate over a set without any
+ * synchronization while it is being replaced by a writer.
+ * <p>
+ * This set does not preserve insertion order and does not accept {@code null} elements. Since it is immutable,
+ * all the mutating methods inherited from {@link java.util.Set} throw an {@link UnsupportedOperationException}.
+ *
+ * @param <E>
+ *          The type of elements held by this set
+ */
+final class PersistentHashSet<E> extends AbstractSet<E>
+{
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  /** Inner node of the trie, whose slots hold either elements or child nodes. */
+  private static final class BitmapNode
+  {
+    private final int bitmap;
+    private final Object[] slots;
+
+    private BitmapNode(int bitmap, Object[] slots)
+    {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+  }
+
+  /** Leaf node holding elements whose hash codes are all equal. */
+  private static final class CollisionNode
+  {
+    private final int hash;
+    private final Object[] elements;
+
+    private CollisionNode(int hash, Object[] elements)
+    {
+      this.hash = hash;
+      this.elements = elements;
+    }
+
+    private int indexOf(Object element)
+    {
+      for (int i = 0; i < elements.length; i++)
+      {
+        if (elements[i].equals(element))
+        {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static final PersistentHashSet<?> EMPTY = new PersistentHashSet<>(new BitmapNode(0, new Object[0]), 0);
+
+  private final BitmapNode root;
+  private final int size;
+
+  private PersistentHashSet(BitmapNode root, int size)
+  {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Returns the empty set.
+   *
+   * @param <E>
+   *          The type of elements held by the set
+   * @return the empty set
+   */
+  @SuppressWarnings("unchecked")
+  static <E> PersistentHashSet<E> empty()
+  {
+    return (PersistentHashSet<E>) EMPTY;
+  }
+
+  /**
+   * Returns a set containing all the provided elements.
+   *
+   * @param <E>
+   *          The type of elements held by the set
+   * @param elements
+   *          The elements to add to the set
+   * @return a set containing all the provided elements
+   */
+  static <E> PersistentHashSet<E> of(Iterable<? extends E> elements)
+  {
+    PersistentHashSet<E> set = empty();
+    for (E element : elements)
+    {
+      set = set.with(element);
+    }
+    return set;
+  }
+
+  /**
+   * Returns a set containing all the elements of this set plus the provided element.
+   *
+   * @param element
+   *          The element to add
+   * @return a new set containing the provided element, or this set if it already contained the element
+   */
+  PersistentHashSet<E> with(E element)
+  {
+    Reject.ifNull(element);
+    final BitmapNode newRoot = (BitmapNode) add(root, element, element.hashCode(), 0);
+    return newRoot != root ? new PersistentHashSet<E>(newRoot, size + 1) : this;
+  }
+
+  /**
+   * Returns a set containing all the elements of this set except the provided element.
+   *
+   * @param element
+   *          The element to remove
+   * @return a new set not containing the provided element, or this set if it did not contain the element
+   */
+  PersistentHashSet<E> without(Object element)
+  {
+    if (element == null)
+    {
+      return this;
+    }
+    final Object newRoot = remove(root, element, element.hashCode(), 0);
+    if (newRoot == root)
+    {
+      return this;
+    }
+    else if (size == 1)
+    {
+      return empty();
+    }
+    return new PersistentHashSet<E>(asRoot(newRoot), size - 1);
+  }
+
+  @Override
+  public boolean contains(Object element)
+  {
+    if (element == null)
+    {
+      return false;
+    }
+    final int hash = element.hashCode();
+    Object node = root;
+    for (int shift = 0;; shift += BITS)
+    {
+      if (node instanceof CollisionNode)
+      {
+        return ((CollisionNode) node).indexOf(element) >= 0;
+      }
+      final BitmapNode bitmapNode = (BitmapNode) node;
+      final int bit = bit(hash, shift);
+      if ((bitmapNode.bitmap & bit) == 0)
+      {
+        return false;
+      }
+      final Object slot = bitmapNode.slots[index(bitmapNode.bitmap, bit)];
+      if (!isNode(slot))
+      {
+        return slot.equals(element);
+      }
+      node = slot;
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public Iterator<E> iterator()
+  {
+    return new TrieIterator<>(root);
+  }
+
+  private static Object add(Object node, Object element, int hash, int shift)
+  {
+    if (node instanceof CollisionNode)
+    {
+      final CollisionNode collisionNode = (CollisionNode) node;
+      if (collisionNode.hash == hash)
+      {
+        if (collisionNode.indexOf(element) >= 0)
+        {
+          return collisionNode;
+        }
+        final Object[] elements = Arrays.copyOf(collisionNode.elements, collisionNode.elements.length + 1);
+        elements[elements.length - 1] = element;
+        return new CollisionNode(hash, elements);
+      }
+      // Push the collision node one level down so that both hashes can be told apart
+      final BitmapNode wrapper = new BitmapNode(bit(collisionNode.hash, shift), new Object[] { collisionNode });
+      return add(wrapper, element, hash, shift);
+    }
+
+    final BitmapNode bitmapNode = (BitmapNode) node;
+    final int bit = bit(hash, shift);
+    final int index = index(bitmapNode.bitmap, bit);
+    if ((bitmapNode.bitmap & bit) == 0)
+    {
+      final Object[] slots = new Object[bitmapNode.slots.length + 1];
+      System.arraycopy(bitmapNode.slots, 0, slots, 0, index);
+      slots[index] = element;
+      System.arraycopy(bitmapNode.slots, index, slots, index + 1, bitmapNode.slots.length - index);
+      return new BitmapNode(bitmapNode.bitmap | bit, slots);
+    }
+
+    final Object slot = bitmapNode.slots[index];
+    final Object newSlot;
+    if (isNode(slot))
+    {
+      newSlot = add(slot, element, hash, shift + BITS);
+    }
+    else if (slot.equals(element))
+    {
+      return bitmapNode;
+    }
+    else
+    {
+      newSlot = createNode(slot, slot.hashCode(), element, hash, shift + BITS);
+    }
+    return newSlot != slot ? replaceSlot(bitmapNode, index, newSlot) : bitmapNode;
+  }
+
+  private static Object createNode(Object element1, int hash1, Object element2, int hash2, int shift)
+  {
+    if (hash1 == hash2)
+    {
+      return new CollisionNode(hash1, new Object[] { element1, element2 });
+    }
+    final int bit1 = bit(hash1, shift);
+    final int bit2 = bit(hash2, shift);
+    if (bit1 == bit2)
+    {
+      return new BitmapNode(bit1, new Object[] { createNode(element1, hash1, element2, hash2, shift + BITS) });
+    }
+    // Slots are ordered by bit position
+    final Object[] slots = ((hash1 >>> shift) & MASK) < ((hash2 >>> shift) & MASK)
+        ? new Object[] { element1, element2 }
+        : new Object[] { element2, element1 };
+    return new BitmapNode(bit1 | bit2, slots);
+  }
+
+  /**
+   * Removes the provided element from the provided node. Returns the same node if the element was not found,
+   * {@code null} if the resulting node is empty, or else the resulting node, which may be reduced to a single
+   * element when it can be inlined in its parent.
+   */
+  private static Object remove(Object node, Object element, int hash, int shift)
+  {
+    if (node instanceof CollisionNode)
+    {
+      final CollisionNode collisionNode = (CollisionNode) node;
+      final int index = collisionNode.indexOf(element);
+      if (index < 0)
+      {
+        return collisionNode;
+      }
+      else if (collisionNode.elements.length == 2)
+      {
+        return collisionNode.elements[1 - index];
+      }
+      return new CollisionNode(collisionNode.hash, removeFromArray(collisionNode.elements, index));
+    }
+
+    final BitmapNode bitmapNode = (BitmapNode) node;
+    final int bit = bit(hash, shift);
+    if ((bitmapNode.bitmap & bit) == 0)
+    {
+      return bitmapNode;
+    }
+    final int index = index(bitmapNode.bitmap, bit);
+    final Object slot = bitmapNode.slots[index];
+    final Object newSlot;
+    if (isNode(slot))
+    {
+      newSlot = remove(slot, element, hash, shift + BITS);
+      if (newSlot == slot)
+      {
+        return bitmapNode;
+      }
+    }
+    else if (slot.equals(element))
+    {
+      newSlot = null;
+    }
+    else
+    {
+      return bitmapNode;
+    }
+
+    if (newSlot != null)
+    {
+      if (!isNode(newSlot) && bitmapNode.slots.length == 1 && shift > 0)
+      {
+        // Only one element left in this node: let the parent inline it
+        return newSlot;
+      }
+      return replaceSlot(bitmapNode, index, newSlot);
+    }
+    else if (bitmapNode.slots.length == 1)
+    {
+      return null;
+    }
+    else if (bitmapNode.slots.length == 2 && shift > 0 && !isNode(bitmapNode.slots[1 - index]))
+    {
+      return bitmapNode.slots[1 - index];
+    }
+    return new BitmapNode(bitmapNode.bitmap & ~bit, removeFromArray(bitmapNode.slots, index));
+  }
+
+  private static BitmapNode asRoot(Object node)
+  {
+    return node != null ? (BitmapNode) node : new BitmapNode(0, new Object[0]);
+  }
+
+  private static BitmapNode replaceSlot(BitmapNode node, int index, Object newSlot)
+  {
+    final Object[] slots = node.slots.clone();
+    slots[index] = newSlot;
+    return new BitmapNode(node.bitmap, slots);
+  }
+
+  private static Object[] removeFromArray(Object[] array, int index)
+  {
+    final Object[] result = new Object[array.length - 1];
+    System.arraycopy(array, 0, result, 0, index);
+    System.arraycopy(array, index + 1, result, index, result.length - index);
+    return result;
+  }
+
+  private static boolean isNode(Object slot)
+  {
+    return slot instanceof BitmapNode || slot instanceof CollisionNode;
+  }
+
+  private static int bit(int hash, int shift)
+  {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static int index(int bitmap, int bit)
+  {
+    return Integer.bitCount(bitmap & (bit - 1));
+  }
+
+  /** Depth-first iterator over the elements of an immutable trie. */
+  private static final class TrieIterator<E> implements Iterator<E>
+  {
+    private final Deque<Object[]> slotsStack = new ArrayDeque<>();
+    private final Deque<int[]> positionStack = new ArrayDeque<>();
+    private E next;
+
+    private TrieIterator(BitmapNode root)
+    {
+      push(root.slots);
+      next = computeNext();
+    }
+
+    private void push(Object[] slots)
+    {
+      slotsStack.push(slots);
+      positionStack.push(new int[1]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E computeNext()
+    {
+      while (!slotsStack.isEmpty())
+      {
+        final Object[] slots = slotsStack.peek();
+        final int[] position = positionStack.peek();
+        if (position[0] == slots.length)
+        {
+          slotsStack.pop();
+          positionStack.pop();
+          continue;
+        }
+        final Object slot = slots[position[0]++];
+        if (slot instanceof BitmapNode)
+        {
+          push(((BitmapNode) slot).slots);
+        }
+        else if (slot instanceof CollisionNode)
+        {
+          push(((CollisionNode) slot).elements);
+        }
+        else
+        {
+          return (E) slot;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return next != null;
+    }
+
+    @Override
+    public E next()
+    {
+      if (next == null)
+      {
+        throw new NoSuchElementException();
+      }
+      final E result = next;
+      next = computeNext();
+      return result;
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
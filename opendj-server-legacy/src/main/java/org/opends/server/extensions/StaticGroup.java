@@ -17,12 +17,12 @@
 package org.opends.server.extensions;
 
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.LocalizedIllegalArgumentException;
@@ -86,17 +86,20 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   /** The DN of the entry that holds the definition for this group. */
   private DN groupEntryDN;
 
-  /** The set of the DNs of the members for this group. */
-  private LinkedHashSet<CompactDn> memberDNs;
+  /**
+   * The set of the DNs of the members for this group. The set is immutable and
+   * replaced on each update, so that readers do not need to hold the lock.
+   */
+  private volatile PersistentHashSet<CompactDn> memberDNs;
 
   /** The list of nested group DNs for this group. */
-  private LinkedList<DN> nestedGroups = new LinkedList<>();
+  private final List<DN> nestedGroups = new CopyOnWriteArrayList<>();
 
   /** Passed to the group manager to see if the nested group list needs to be refreshed. */
   private long nestedGroupRefreshToken = DirectoryServer.getGroupManager().refreshToken();
 
-  /** Read/write lock protecting memberDNs and nestedGroups. */
-  private ReadWriteLock lock = new ReentrantReadWriteLock();
+  /** Lock serializing the updates of memberDNs and nestedGroups. */
+  private final Lock lock = new ReentrantLock();
 
   private ServerContext serverContext;
 
@@ -120,7 +123,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
    *                              group.
    */
   private StaticGroup(ServerContext serverContext, DN groupEntryDN, AttributeType memberAttributeType,
-      LinkedHashSet<CompactDn> memberDNs)
+      PersistentHashSet<CompactDn> memberDNs)
   {
     super();
     Reject.ifNull(groupEntryDN, memberAttributeType, memberDNs);
@@ -191,19 +194,14 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     }
 
     List<Attribute> memberAttrList = groupEntry.getAttribute(someMemberAttributeType);
-    int membersCount = 0;
-    for (Attribute a : memberAttrList)
-    {
-      membersCount += a.size();
-    }
-    LinkedHashSet<CompactDn> someMemberDNs = new LinkedHashSet<>(membersCount);
+    PersistentHashSet<CompactDn> someMemberDNs = PersistentHashSet.empty();
     for (Attribute a : memberAttrList)
     {
       for (ByteString v : a)
       {
         try
         {
-          someMemberDNs.add(DN.valueOf(v.toString()).compact());
+          someMemberDNs = someMemberDNs.with(DN.valueOf(v.toString()).compact());
         }
         catch (LocalizedIllegalArgumentException e)
         {
@@ -297,15 +295,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     {
       return Collections.<DN>emptyList();
     }
-    lock.readLock().lock();
-    try
-    {
-      return nestedGroups;
-    }
-    finally
-    {
-      lock.readLock().unlock();
-    }
+    return nestedGroups;
   }
 
   /** {@inheritDoc} */
@@ -315,7 +305,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   {
     Reject.ifNull(nestedGroupDN);
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       if (nestedGroups.contains(nestedGroupDN))
@@ -333,18 +323,15 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         throw new DirectoryException(modifyOperation.getResultCode(), msg);
       }
 
-      LinkedList<DN> newNestedGroups = new LinkedList<>(nestedGroups);
-      newNestedGroups.add(nestedGroupDN);
-      nestedGroups = newNestedGroups;
+      nestedGroups.add(nestedGroupDN);
       //Add it to the member DN list.
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.add(toCompactDn(nestedGroupDN));
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.with(toCompactDn(nestedGroupDN));
     }
     finally
     {
-      lock.writeLock().unlock();
+      lock.unlock();
     }
+    getGroupManager().memberAdded(groupEntryDN, toCompactDn(nestedGroupDN));
   }
 
   /** {@inheritDoc} */
@@ -354,7 +341,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   {
     Reject.ifNull(nestedGroupDN);
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       if (! nestedGroups.contains(nestedGroupDN))
@@ -372,18 +359,15 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         throw new DirectoryException(modifyOperation.getResultCode(), message);
       }
 
-      LinkedList<DN> newNestedGroups = new LinkedList<>(nestedGroups);
-      newNestedGroups.remove(nestedGroupDN);
-      nestedGroups = newNestedGroups;
+      nestedGroups.remove(nestedGroupDN);
       //Remove it from the member DN list.
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.remove(toCompactDn(nestedGroupDN));
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.without(toCompactDn(nestedGroupDN));
     }
     finally
     {
-      lock.writeLock().unlock();
+      lock.unlock();
     }
+    getGroupManager().memberRemoved(groupEntryDN, toCompactDn(nestedGroupDN));
   }
 
   /** {@inheritDoc} */
@@ -391,33 +375,22 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   public boolean isMember(DN userDN, Set<DN> examinedGroups) throws DirectoryException
   {
     reloadIfNeeded();
-    CompactDn compactUserDN = toCompactDn(userDN);
-    lock.readLock().lock();
-    try
+    // memberDNs is immutable and nestedGroups is copy-on-write: no lock needed
+    if (memberDNs.contains(toCompactDn(userDN)))
     {
-      if (memberDNs.contains(compactUserDN))
+      return true;
+    }
+    else if (!examinedGroups.add(getGroupDN()))
+    {
+      return false;
+    }
+    for (DN nestedGroupDN : nestedGroups)
+    {
+      Group<? extends GroupImplementationCfg> group = getGroupManager().getGroupInstance(nestedGroupDN);
+      if (group != null && group.isMember(userDN, examinedGroups))
       {
         return true;
       }
-      else if (!examinedGroups.add(getGroupDN()))
-      {
-        return false;
-      }
-      else
-      {
-        for (DN nestedGroupDN : nestedGroups)
-        {
-          Group<? extends GroupImplementationCfg> group = getGroupManager().getGroupInstance(nestedGroupDN);
-          if (group != null && group.isMember(userDN, examinedGroups))
-          {
-            return true;
-          }
-        }
-      }
-    }
-    finally
-    {
-      lock.readLock().unlock();
     }
     return false;
   }
@@ -440,7 +413,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     //the current token.
     if (DirectoryServer.getGroupManager().hasInstancesChanged(nestedGroupRefreshToken))
     {
-      lock.writeLock().lock();
+      lock.lock();
       try
       {
         Group<?> thisGroup = DirectoryServer.getGroupManager().getGroupInstance(groupEntryDN);
@@ -452,13 +425,13 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         }
         else if (thisGroup != this)
         {
-          LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>();
+          PersistentHashSet<CompactDn> newMemberDNs = PersistentHashSet.empty();
           MemberList memberList = thisGroup.getMembers();
           while (memberList.hasMoreMembers())
           {
             try
             {
-              newMemberDNs.add(toCompactDn(memberList.nextMemberDN()));
+              newMemberDNs = newMemberDNs.with(toCompactDn(memberList.nextMemberDN()));
             }
             catch (MembershipException ex)
             {
@@ -467,21 +440,23 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
           }
           memberDNs = newMemberDNs;
         }
-        nestedGroups.clear();
+        List<DN> newNestedGroups = new LinkedList<>();
         for (CompactDn compactDn : memberDNs)
         {
           DN dn = fromCompactDn(compactDn);
           Group<?> group = DirectoryServer.getGroupManager().getGroupInstance(dn);
           if (group != null)
           {
-            nestedGroups.add(group.getGroupDN());
+            newNestedGroups.add(group.getGroupDN());
           }
         }
+        nestedGroups.clear();
+        nestedGroups.addAll(newNestedGroups);
         nestedGroupRefreshToken = DirectoryServer.getGroupManager().refreshToken();
       }
       finally
       {
-        lock.writeLock().unlock();
+        lock.unlock();
       }
     }
   }
@@ -491,15 +466,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   public MemberList getMembers() throws DirectoryException
   {
     reloadIfNeeded();
-    lock.readLock().lock();
-    try
-    {
-      return new SimpleStaticGroupMemberList(groupEntryDN, memberDNs);
-    }
-    finally
-    {
-      lock.readLock().unlock();
-    }
+    // Iterates over an immutable snapshot of the member DNs
+    return new SimpleStaticGroupMemberList(groupEntryDN, memberDNs);
   }
 
   /** {@inheritDoc} */
@@ -507,19 +475,20 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   public MemberList getMembers(DN baseDN, SearchScope scope, SearchFilter filter) throws DirectoryException
   {
     reloadIfNeeded();
-    lock.readLock().lock();
-    try
-    {
-      if (baseDN == null && filter == null)
-      {
-        return new SimpleStaticGroupMemberList(groupEntryDN, memberDNs);
-      }
-      return new FilteredStaticGroupMemberList(groupEntryDN, memberDNs, baseDN, scope, filter);
-    }
-    finally
+    // Iterates over an immutable snapshot of the member DNs
+    final Set<CompactDn> snapshot = memberDNs;
+    if (baseDN == null && filter == null)
     {
-      lock.readLock().unlock();
+      return new SimpleStaticGroupMemberList(groupEntryDN, snapshot);
     }
+    return new FilteredStaticGroupMemberList(groupEntryDN, snapshot, baseDN, scope, filter);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterable<CompactDn> getExplicitMemberDNs()
+  {
+    return memberDNs;
   }
 
   /** {@inheritDoc} */
@@ -538,7 +507,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     Reject.ifNull(nestedGroups);
 
     reloadIfNeeded();
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       for (Modification mod : modifications)
@@ -551,41 +520,35 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             case ADD:
               for (ByteString v : attribute)
               {
-                DN member = DN.valueOf(v);
-                memberDNs.add(toCompactDn(member));
-                if (DirectoryServer.getGroupManager().getGroupInstance(member) != null)
-                {
-                  nestedGroups.add(member);
-                }
+                addMemberDN(DN.valueOf(v));
               }
               break;
             case DELETE:
               if (attribute.isEmpty())
               {
-                memberDNs.clear();
-                nestedGroups.clear();
+                removeAllMemberDNs();
               }
               else
               {
                 for (ByteString v : attribute)
                 {
                   DN member = DN.valueOf(v);
-                  memberDNs.remove(toCompactDn(member));
+                  CompactDn compactMember = toCompactDn(member);
+                  PersistentHashSet<CompactDn> newMemberDNs = memberDNs.without(compactMember);
+                  if (newMemberDNs != memberDNs)
+                  {
+                    memberDNs = newMemberDNs;
+                    getGroupManager().memberRemoved(groupEntryDN, compactMember);
+                  }
                   nestedGroups.remove(member);
                 }
               }
               break;
             case REPLACE:
-              memberDNs.clear();
-              nestedGroups.clear();
+              removeAllMemberDNs();
               for (ByteString v : attribute)
               {
-                DN member = DN.valueOf(v);
-                memberDNs.add(toCompactDn(member));
-                if (DirectoryServer.getGroupManager().getGroupInstance(member) != null)
-                {
-                  nestedGroups.add(member);
-                }
+                addMemberDN(DN.valueOf(v));
               }
               break;
           }
@@ -593,7 +556,35 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       }
     }
     finally {
-      lock.writeLock().unlock();
+      lock.unlock();
+    }
+  }
+
+  /** Adds a member while processing {@link #updateMembers(List)}. */
+  private void addMemberDN(DN member)
+  {
+    CompactDn compactMember = toCompactDn(member);
+    PersistentHashSet<CompactDn> newMemberDNs = memberDNs.with(compactMember);
+    if (newMemberDNs != memberDNs)
+    {
+      memberDNs = newMemberDNs;
+      getGroupManager().memberAdded(groupEntryDN, compactMember);
+    }
+    if (getGroupManager().getGroupInstance(member) != null)
+    {
+      nestedGroups.add(member);
+    }
+  }
+
+  /** Removes all the members while processing {@link #updateMembers(List)}. */
+  private void removeAllMemberDNs()
+  {
+    final PersistentHashSet<CompactDn> oldMemberDNs = memberDNs;
+    memberDNs = PersistentHashSet.empty();
+    nestedGroups.clear();
+    for (CompactDn compactMember : oldMemberDNs)
+    {
+      getGroupManager().memberRemoved(groupEntryDN, compactMember);
     }
   }
 
@@ -603,7 +594,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   {
     Reject.ifNull(userEntry);
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       DN userDN = userEntry.getName();
@@ -623,14 +614,13 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             ERR_STATICGROUP_ADD_MEMBER_UPDATE_FAILED.get(userDN, groupEntryDN, modifyOperation.getErrorMessage()));
       }
 
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<CompactDn>(memberDNs);
-      newMemberDNs.add(compactUserDN);
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.with(compactUserDN);
     }
     finally
     {
-      lock.writeLock().unlock();
+      lock.unlock();
     }
+    getGroupManager().memberAdded(groupEntryDN, toCompactDn(userEntry.getName()));
   }
 
   /** {@inheritDoc} */
@@ -640,7 +630,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     Reject.ifNull(userDN);
 
     CompactDn compactUserDN = toCompactDn(userDN);
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       if (! memberDNs.contains(compactUserDN))
@@ -657,21 +647,15 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             ERR_STATICGROUP_REMOVE_MEMBER_UPDATE_FAILED.get(userDN, groupEntryDN, modifyOperation.getErrorMessage()));
       }
 
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.remove(compactUserDN);
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.without(compactUserDN);
       //If it is in the nested group list remove it.
-      if (nestedGroups.contains(userDN))
-      {
-        LinkedList<DN> newNestedGroups = new LinkedList<>(nestedGroups);
-        newNestedGroups.remove(userDN);
-        nestedGroups = newNestedGroups;
-      }
+      nestedGroups.remove(userDN);
     }
     finally
     {
-      lock.writeLock().unlock();
+      lock.unlock();
     }
+    getGroupManager().memberRemoved(groupEntryDN, compactUserDN);
   }
 
   private ModifyOperation newModifyOperation(ModificationType modType, DN userDN)
@@ -0,0 +1,659 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.WorkStealingWorkQueueCfg;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.WorkStealingWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * A work queue made of one shard of pending operations per worker thread, created when the work queue is initialized.
+ * <p>
+ * Operations are submitted to the shard selected by their connection ID, so that the operations of a connection tend
+ * to be processed by the same worker thread. Each worker thread takes operations from its home shard first, and steals
+ * operations from the other shards when its home shard is empty. Contrary to the {@link TraditionalWorkQueue}, worker
+ * threads and submitters therefore do not contend on a single queue.
+ * <p>
+ * The maximum capacity of the work queue is shared by all the shards: a permit is acquired when an operation is
+ * submitted and released when a worker thread takes it.
+ */
+public class WorkStealingWorkQueue extends WorkQueue<WorkStealingWorkQueueCfg>
+    implements ConfigurationChangeListener<WorkStealingWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The maximum time during which an idle worker thread waits for new operations before checking for shutdown. */
+  private static final long IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  /** A queue of pending operations, along with the worker threads waiting for operations to be submitted to it. */
+  private static final class Shard
+  {
+    private final Queue<Operation> operations = new ConcurrentLinkedQueue<>();
+    /** Kept separately because {@link ConcurrentLinkedQueue#size()} is not a constant-time operation. */
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Queue<WorkStealingWorkerThread> idleWorkers = new ConcurrentLinkedQueue<>();
+
+    private void offer(Operation operation)
+    {
+      operations.offer(operation);
+      depth.incrementAndGet();
+    }
+
+    private Operation poll()
+    {
+      final Operation operation = operations.poll();
+      if (operation != null)
+      {
+        depth.decrementAndGet();
+      }
+      return operation;
+    }
+
+    private boolean remove(Operation operation)
+    {
+      if (operations.remove(operation))
+      {
+        depth.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /** Semaphore whose number of permits can be reduced when the maximum capacity is decreased. */
+  private static final class CapacitySemaphore extends Semaphore
+  {
+    private static final long serialVersionUID = 1L;
+
+    private CapacitySemaphore(int permits)
+    {
+      super(permits);
+    }
+
+    @Override
+    protected void reducePermits(int reduction)
+    {
+      super.reducePermits(reduction);
+    }
+  }
+
+  /** The set of worker threads that will be used to process this work queue. */
+  private final List<WorkStealingWorkerThread> workerThreads = new ArrayList<>();
+
+  /** The shards holding the pending operations. */
+  private Shard[] shards;
+
+  /**
+   * The idle worker threads of all the shards, most recently idle first. Each idle worker thread is registered both
+   * here and in its home shard, and is only woken up through the first of them.
+   */
+  private final Deque<WorkStealingWorkerThread> idleWorkers = new ConcurrentLinkedDeque<>();
+
+  /** The permits representing the available capacity of the work queue. */
+  private CapacitySemaphore capacity;
+
+  /** The number of operations that have been submitted to the work queue for processing. */
+  private final AtomicLong opsSubmitted = new AtomicLong();
+
+  /** The number of times that an attempt to submit a new request has been rejected because the work queue was full. */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+
+  /** The number of operations which have been taken by a worker thread from a shard other than its home shard. */
+  private final AtomicLong opsStolen = new AtomicLong();
+
+  /** Indicates whether one or more of the worker threads needs to be killed at the next convenient opportunity. */
+  private volatile boolean killThreads;
+
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /** The thread number used for the last worker thread that was created. */
+  private int lastThreadNumber;
+
+  /** The maximum number of pending requests that this work queue will allow before it will start rejecting them. */
+  private volatile int maxCapacity;
+
+  /**
+   * The number of worker threads that should be active (or will be shortly if a configuration change has not been
+   * completely applied).
+   */
+  private volatile int numWorkerThreads;
+
+  /**
+   * The queue overflow policy: true indicates that operations will be blocked until the queue has available capacity,
+   * otherwise operations will be rejected. This is hard-coded to true, as for the {@link TraditionalWorkQueue}.
+   */
+  private final boolean isBlocking = true;
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be performed in the
+   * <CODE>initializeWorkQueue</CODE> method.
+   */
+  public WorkStealingWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+  @Override
+  public void initializeWorkQueue(WorkStealingWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    shutdownRequested = false;
+    killThreads = false;
+
+    configuration.addWorkStealingChangeListener(this);
+
+    numWorkerThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    maxCapacity = configuration.getMaxWorkQueueCapacity();
+    capacity = new CapacitySemaphore(maxCapacity);
+
+    shards = new Shard[numWorkerThreads];
+    for (int i = 0; i < shards.length; i++)
+    {
+      shards[i] = new Shard();
+    }
+
+    synchronized (workerThreads)
+    {
+      for (lastThreadNumber = 0; lastThreadNumber < numWorkerThreads; lastThreadNumber++)
+      {
+        startWorkerThread(lastThreadNumber);
+      }
+    }
+
+    try
+    {
+      WorkStealingWorkQueueMonitor monitor = new WorkStealingWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, WorkStealingWorkQueueMonitor.class, e);
+    }
+  }
+
+  /** Must be called while holding the lock on the worker threads. */
+  private void startWorkerThread(int threadNumber)
+  {
+    WorkStealingWorkerThread t = new WorkStealingWorkerThread(this, threadNumber, threadNumber % shards.length);
+    workerThreads.add(t);
+    t.start();
+  }
+
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // From now on no more operations can be enqueued or dequeued.
+
+    // Send responses to any operations in the pending queue to indicate that
+    // they won't be processed because the server is shutting down.
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    for (Shard shard : shards)
+    {
+      Operation o;
+      while ((o = shard.poll()) != null)
+      {
+        try
+        {
+          // The operation has no chance of responding to the cancel
+          // request so avoid waiting for a cancel response.
+          if (o.getCancelResult() == null)
+          {
+            o.abort(cancelRequest);
+          }
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+          logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+        }
+      }
+    }
+
+    // Notify all the worker threads of the shutdown.
+    List<WorkStealingWorkerThread> threads;
+    synchronized (workerThreads)
+    {
+      threads = new ArrayList<>(workerThreads);
+    }
+    for (WorkStealingWorkerThread t : threads)
+    {
+      try
+      {
+        t.shutDown();
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_NOTIFY_THREAD, t.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Indicates whether this work queue has received a request to shut down.
+   *
+   * @return <CODE>true</CODE> if the work queue has received a request to shut down, or <CODE>false</CODE> if not.
+   */
+  public boolean shutdownRequested()
+  {
+    return shutdownRequested;
+  }
+
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, isBlocking);
+  }
+
+  @Override
+  public boolean trySubmitOperation(Operation operation) throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation, boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    checkNotShutdown();
+    acquireCapacity(blockEnqueuingWhenFull);
+
+    final int shardIndex = getShardIndex(operation.getConnectionID());
+    final Shard shard = shards[shardIndex];
+    shard.offer(operation);
+    if (shutdownRequested && shard.remove(operation))
+    {
+      // Raced with the shutdown which may already have cancelled the pending operations
+      capacity.release();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, WARN_OP_REJECTED_BY_SHUTDOWN.get());
+    }
+    opsSubmitted.incrementAndGet();
+    wakeUpIdleWorker(shardIndex);
+  }
+
+  private void checkNotShutdown() throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      throw new DirectoryException(ResultCode.UNAVAILABLE, WARN_OP_REJECTED_BY_SHUTDOWN.get());
+    }
+  }
+
+  private void acquireCapacity(boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    if (blockEnqueuingWhenFull)
+    {
+      try
+      {
+        // Periodically check for shutdown, since the worker threads stop taking operations once it is requested
+        while (!capacity.tryAcquire(1, TimeUnit.SECONDS))
+        {
+          checkNotShutdown();
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // We cannot handle the interruption here. Reject the request and re-interrupt this thread.
+        Thread.currentThread().interrupt();
+        queueFullRejects.incrementAndGet();
+        throw new DirectoryException(ResultCode.BUSY, WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get());
+      }
+    }
+    else if (!capacity.tryAcquire())
+    {
+      queueFullRejects.incrementAndGet();
+      throw new DirectoryException(ResultCode.BUSY, WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity));
+    }
+  }
+
+  /** Consecutive connection IDs are spread over consecutive shards. */
+  private int getShardIndex(long connectionID)
+  {
+    return (int) ((connectionID & Long.MAX_VALUE) % shards.length);
+  }
+
+  /**
+   * Wakes up a worker thread of the provided shard if one is idle, or the most recently idle worker thread otherwise,
+   * which will steal the operation. This does not depend on the number of shards.
+   */
+  private void wakeUpIdleWorker(int shardIndex)
+  {
+    if (!wakeUpIdleWorker(shards[shardIndex].idleWorkers))
+    {
+      wakeUpIdleWorker(idleWorkers);
+    }
+  }
+
+  private static boolean wakeUpIdleWorker(Queue<WorkStealingWorkerThread> workers)
+  {
+    WorkStealingWorkerThread worker;
+    while ((worker = workers.poll()) != null)
+    {
+      if (worker.wakeUp())
+      {
+        return true;
+      }
+      // Otherwise this worker thread has already been woken up through its other registration
+    }
+    return false;
+  }
+
+  /**
+   * Retrieves the next operation that should be processed by the provided worker thread, blocking if necessary until a
+   * new request arrives. This method should only be called by a worker thread associated with this work queue.
+   *
+   * @param workerThread
+   *          The worker thread that is requesting the operation.
+   * @return The next operation that should be processed, or <CODE>null</CODE> if the server is shutting down or if
+   *         the worker thread must exit because the number of worker threads has been reduced.
+   */
+  Operation nextOperation(WorkStealingWorkerThread workerThread)
+  {
+    final Shard homeShard = shards[workerThread.getHomeShard()];
+    boolean hasBeenIdle = false;
+    while (true)
+    {
+      if (shutdownRequested || (killThreads && tryKillThisWorkerThread(workerThread)))
+      {
+        return null;
+      }
+
+      Operation operation = pollOperation(workerThread);
+      if (operation != null)
+      {
+        if (hasBeenIdle)
+        {
+          passOnWakeUp(workerThread);
+        }
+        return operation;
+      }
+
+      // Register as idle before checking the shards again, so that an operation submitted in between wakes us up
+      workerThread.setIdle();
+      homeShard.idleWorkers.offer(workerThread);
+      idleWorkers.push(workerThread);
+      operation = pollOperation(workerThread);
+      if (operation == null)
+      {
+        LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+      }
+      workerThread.clearIdle();
+      homeShard.idleWorkers.remove(workerThread);
+      idleWorkers.remove(workerThread);
+      if (operation != null)
+      {
+        passOnWakeUp(workerThread);
+        return operation;
+      }
+      hasBeenIdle = true;
+      // Interrupts are used to notify a shutdown, which is checked at the top of the loop
+      Thread.interrupted();
+    }
+  }
+
+  /**
+   * Wakes up another idle worker thread if operations are still pending once an idle worker thread took one. The
+   * operation taken may not be the one this worker thread was woken up for, and the worker thread which was signalled
+   * for the operation taken may have found no operation left: passing on the wake-up makes sure that no pending
+   * operation waits for an idle worker thread to time out.
+   */
+  private void passOnWakeUp(WorkStealingWorkerThread workerThread)
+  {
+    final int homeShard = workerThread.getHomeShard();
+    for (int i = 0; i < shards.length; i++)
+    {
+      final int shardIndex = (homeShard + i) % shards.length;
+      if (shards[shardIndex].depth.get() > 0)
+      {
+        wakeUpIdleWorker(shardIndex);
+        return;
+      }
+    }
+  }
+
+  private Operation pollOperation(WorkStealingWorkerThread workerThread)
+  {
+    final int homeShard = workerThread.getHomeShard();
+    for (int i = 0; i < shards.length; i++)
+    {
+      final Operation operation = shards[(homeShard + i) % shards.length].poll();
+      if (operation != null)
+      {
+        capacity.release();
+        if (i != 0)
+        {
+          opsStolen.incrementAndGet();
+        }
+        return operation;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Kills this worker thread if needed.
+   *
+   * @param workerThread
+   *          The worker thread associated with this thread.
+   * @return {@code true} if this thread was killed.
+   */
+  private boolean tryKillThisWorkerThread(WorkStealingWorkerThread workerThread)
+  {
+    synchronized (workerThreads)
+    {
+      int currentThreads = workerThreads.size();
+      if (currentThreads > numWorkerThreads)
+      {
+        if (workerThreads.remove(workerThread))
+        {
+          currentThreads--;
+        }
+        if (currentThreads <= numWorkerThreads)
+        {
+          killThreads = false;
+        }
+        workerThread.setStoppedByReducedThreadNumber();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Retrieves the total number of operations that have been successfully submitted to this work queue for processing
+   * since server startup. This does not include operations that have been rejected for some reason like the queue
+   * already at its maximum capacity.
+   *
+   * @return The total number of operations that have been successfully submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    return opsSubmitted.get();
+  }
+
+  /**
+   * Retrieves the total number of operations that have been rejected because the work queue was already at its
+   * maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the work queue was already at its maximum
+   *         capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.get();
+  }
+
+  /**
+   * Retrieves the total number of operations that have been processed by a worker thread other than the one
+   * associated with the shard they were submitted to.
+   *
+   * @return The total number of operations that have been stolen by a worker thread since startup.
+   */
+  public long getOpsStolen()
+  {
+    return opsStolen.get();
+  }
+
+  /**
+   * Retrieves the number of pending operations in the queue that have not yet been picked up for processing.
+   *
+   * @return The number of pending operations in the queue that have not yet been picked up for processing.
+   */
+  public int size()
+  {
+    int size = 0;
+    for (Shard shard : shards)
+    {
+      size += shard.depth.get();
+    }
+    return size;
+  }
+
+  /**
+   * Retrieves the number of pending operations in each shard of the queue.
+   *
+   * @return The number of pending operations in each shard of the queue, indexed by shard.
+   */
+  public int[] getShardSizes()
+  {
+    final int[] sizes = new int[shards.length];
+    for (int i = 0; i < shards.length; i++)
+    {
+      sizes[i] = shards[i].depth.get();
+    }
+    return sizes;
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(WorkStealingWorkQueueCfg configuration,
+      List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(WorkStealingWorkQueueCfg configuration)
+  {
+    int newNumThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    int newMaxCapacity = configuration.getMaxWorkQueueCapacity();
+
+    // Apply a change to the number of worker threads if appropriate.
+    // The number of shards is not changed: the home shards of the worker threads wrap around the existing shards.
+    synchronized (workerThreads)
+    {
+      int threadsToAdd = newNumThreads - workerThreads.size();
+      if (threadsToAdd > 0)
+      {
+        for (int i = 0; i < threadsToAdd; i++)
+        {
+          startWorkerThread(lastThreadNumber++);
+        }
+        killThreads = false;
+      }
+      else if (threadsToAdd < 0)
+      {
+        killThreads = true;
+        // Let idle worker threads notice they must exit
+        while (wakeUpIdleWorker(idleWorkers))
+        {
+          // Wake up all of them
+        }
+      }
+      numWorkerThreads = newNumThreads;
+
+      // Apply a change to the maximum capacity if appropriate. Operations which are already pending are kept even if
+      // they exceed the new capacity, new operations will be accepted once enough of them have been processed.
+      if (newMaxCapacity > maxCapacity)
+      {
+        capacity.release(newMaxCapacity - maxCapacity);
+      }
+      else if (newMaxCapacity < maxCapacity)
+      {
+        capacity.reducePermits(maxCapacity - newMaxCapacity);
+      }
+      maxCapacity = newMaxCapacity;
+    }
+
+    return new ConfigChangeResult();
+  }
+
+  @Override
+  public boolean isIdle()
+  {
+    if (size() != 0)
+    {
+      return false;
+    }
+    synchronized (workerThreads)
+    {
+      for (WorkStealingWorkerThread t : workerThreads)
+      {
+        if (t.isActive())
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return numWorkerThreads;
+  }
+}
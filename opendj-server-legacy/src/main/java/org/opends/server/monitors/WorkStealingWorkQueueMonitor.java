@@ -0,0 +1,131 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.monitors;
+
+import static org.opends.server.monitors.TraditionalWorkQueueMonitor.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.api.MonitorData;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.extensions.WorkStealingWorkQueue;
+import org.opends.server.types.InitializationException;
+
+/**
+ * This class defines a Directory Server monitor that can be used to provide information about the state of the work
+ * stealing work queue. In addition to the attributes provided for the traditional work queue, it provides the backlog
+ * of each shard and the number of operations stolen by worker threads from shards other than their home shard.
+ */
+public class WorkStealingWorkQueueMonitor extends MonitorProvider<MonitorProviderCfg> implements Runnable
+{
+  /**
+   * The name to use for the monitor attribute that provides the current request backlog of each shard. Each value is
+   * made of the index of the shard and of its backlog, separated by a colon, since equal backlogs would otherwise be
+   * collapsed into a single attribute value.
+   */
+  public static final String ATTR_SHARD_BACKLOG = "shardRequestBacklog";
+  /** The name to use for the monitor attribute that provides the total number of operations stolen. */
+  public static final String ATTR_OPS_STOLEN = "requestsStolen";
+
+  /** The maximum backlog observed by polling the queue. */
+  private int maxBacklog;
+  /** The total number of times the backlog has been polled. */
+  private long numPolls;
+  /** The total backlog observed from periodic polling. */
+  private long totalBacklog;
+  /** The work queue instance with which this monitor is associated. */
+  private final WorkStealingWorkQueue workQueue;
+
+  /**
+   * Initializes this monitor provider. Note that no initialization should be done here, since it should be performed
+   * in the <CODE>initializeMonitorProvider</CODE> class.
+   *
+   * @param workQueue
+   *          The work queue with which this monitor is associated.
+   */
+  public WorkStealingWorkQueueMonitor(WorkStealingWorkQueue workQueue)
+  {
+    this.workQueue = workQueue;
+  }
+
+  @Override
+  public void initializeMonitorProvider(MonitorProviderCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    maxBacklog = 0;
+    totalBacklog = 0;
+    numPolls = 0;
+    scheduleUpdate(this, 0, 10, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return "Work Queue";
+  }
+
+  @Override
+  public void run()
+  {
+    updateBacklog(workQueue.size());
+  }
+
+  private synchronized void updateBacklog(int backlog)
+  {
+    totalBacklog += backlog;
+    numPolls++;
+    if (backlog > maxBacklog)
+    {
+      maxBacklog = backlog;
+    }
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    final int[] shardBacklogs = workQueue.getShardSizes();
+    final List<String> shardBacklogValues = new ArrayList<>(shardBacklogs.length);
+    int backlog = 0;
+    for (int i = 0; i < shardBacklogs.length; i++)
+    {
+      shardBacklogValues.add(i + ":" + shardBacklogs[i]);
+      backlog += shardBacklogs[i];
+    }
+
+    final long averageBacklog;
+    final int currentMaxBacklog;
+    synchronized (this)
+    {
+      updateBacklog(backlog);
+      averageBacklog = (long) (1.0 * totalBacklog / numPolls);
+      currentMaxBacklog = maxBacklog;
+    }
+
+    final MonitorData monitorAttrs = new MonitorData(7);
+    monitorAttrs.add(ATTR_CURRENT_BACKLOG, backlog);
+    monitorAttrs.add(ATTR_AVERAGE_BACKLOG, averageBacklog);
+    monitorAttrs.add(ATTR_MAX_BACKLOG, currentMaxBacklog);
+    monitorAttrs.add(ATTR_OPS_SUBMITTED, workQueue.getOpsSubmitted());
+    monitorAttrs.add(ATTR_OPS_REJECTED_QUEUE_FULL, workQueue.getOpsRejectedDueToQueueFull());
+    monitorAttrs.add(ATTR_SHARD_BACKLOG, shardBacklogValues);
+    monitorAttrs.add(ATTR_OPS_STOLEN, workQueue.getOpsStolen());
+    return monitorAttrs;
+  }
+}
@@ -439,6 +439,22 @@ public final class LDAPClientConnection extends ClientConnection implements
   private volatile ConnectionSecurityProvider saslPendingProvider;
   private volatile ConnectionSecurityProvider tlsPendingProvider;
 
+  /**
+   * The size of the buffer used to batch search results, or zero if search
+   * results are written as soon as they are sent.
+   */
+  private final int searchResultBatchSize;
+
+  /**
+   * Buffer holding the search results which have been batched but not yet
+   * written to the client. It is lazily allocated and guarded by
+   * {@code batchLock}.
+   */
+  private ByteBuffer batchBuffer;
+
+  /** Lock ordering the writes of batched and non batched messages. */
+  private final Lock batchLock = new ReentrantLock();
+
 
   /**
    * Creates a new LDAP client connection with the provided information.
@@ -484,6 +500,7 @@ public final class LDAPClientConnection extends ClientConnection implements
     }
 
     bufferSize = connectionHandler.getBufferSize();
+    searchResultBatchSize = connectionHandler.getSearchResultBatchSize();
 
     tlsChannel =
         RedirectingByteChannel.getRedirectingByteChannel(
@@ -711,7 +728,8 @@ public final class LDAPClientConnection extends ClientConnection implements
     // if operation processing encounters a run-time exception after sending the
     // response: the worker thread exception handling code will attempt to send
     // an error result to the client indicating that a problem occurred.
-    if (removeOperationInProgress(operation.getMessageID()))
+    // Batched search results will be written with the response
+    if (removeOperation(operation.getMessageID()) != null)
     {
       LDAPMessage message = operationToResponseLDAPMessage(operation);
       if (message != null)
@@ -878,7 +896,8 @@ public final class LDAPClientConnection extends ClientConnection implements
         new SearchResultEntryProtocolOp(searchEntry, ldapVersion);
 
     sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchEntry.getControls()));
+        protocolOp, searchEntry.getControls()),
+        isBatchable(searchOperation));
   }
 
 
@@ -915,12 +934,27 @@ public final class LDAPClientConnection extends ClientConnection implements
         new SearchResultReferenceProtocolOp(searchReference);
 
     sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchReference.getControls()));
+        protocolOp, searchReference.getControls()),
+        isBatchable(searchOperation));
     return true;
   }
 
 
 
+  /**
+   * Indicates whether the search results of the provided operation may be
+   * batched. Persistent searches never send a search result done message, so
+   * their results, including the initial ones, are always written immediately:
+   * the persistent search is enabled, and stops sending a response, before the
+   * initial search starts.
+   */
+  private boolean isBatchable(SearchOperation searchOperation)
+  {
+    return searchResultBatchSize > 0 && searchOperation.isSendResponse();
+  }
+
+
+
   /**
    * Sends the provided intermediate response message to the client.
    *
@@ -958,13 +992,37 @@ public final class LDAPClientConnection extends ClientConnection implements
    *          The LDAP message to send to the client.
    */
   private void sendLDAPMessage(LDAPMessage message)
+  {
+    sendLDAPMessage(message, false);
+  }
+
+
+
+  /**
+   * Sends the provided LDAP message to the client, possibly batching it with
+   * other search results.
+   *
+   * @param message
+   *          The LDAP message to send to the client.
+   * @param batch
+   *          Indicates whether the message may be held in the batch buffer
+   *          instead of being written immediately.
+   */
+  private void sendLDAPMessage(LDAPMessage message, boolean batch)
   {
     // Use a thread local writer.
     final ASN1WriterHolder holder = getASN1Writer();
     try
     {
       message.write(holder.writer);
-      holder.buffer.copyTo(saslChannel);
+      if (searchResultBatchSize > 0)
+      {
+        writeBatched(holder.buffer, batch);
+      }
+      else
+      {
+        holder.buffer.copyTo(saslChannel);
+      }
 
       if (logger.isTraceEnabled())
       {
@@ -1001,6 +1059,165 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
 
+  /**
+   * Appends the provided encoded search result to the batch buffer, and writes
+   * the batch buffer to the client if it is full. Messages which must not be
+   * batched are written directly to the client, after the pending search
+   * results. The connection handler is notified when the batch buffer starts
+   * holding search results, so that it writes them if they are still held
+   * after a short delay.
+   */
+  private void writeBatched(ByteStringBuilder encodedMessage, boolean batch)
+      throws IOException
+  {
+    batchLock.lock();
+    try
+    {
+      if (!batch)
+      {
+        flushBatchBuffer();
+        encodedMessage.copyTo(saslChannel);
+        return;
+      }
+      if (batchBuffer == null)
+      {
+        batchBuffer = ByteBuffer.allocateDirect(searchResultBatchSize);
+      }
+
+      if (encodedMessage.length() > batchBuffer.remaining())
+      {
+        flushBatchBuffer();
+      }
+      if (encodedMessage.length() > batchBuffer.remaining())
+      {
+        // Too big to ever fit in the batch buffer
+        encodedMessage.copyTo(saslChannel);
+        return;
+      }
+
+      if (batchBuffer.position() == 0)
+      {
+        connectionHandler.registerBatchedSearchResults(this);
+      }
+      encodedMessage.copyTo(batchBuffer);
+      if (!batchBuffer.hasRemaining())
+      {
+        flushBatchBuffer();
+      }
+    }
+    finally
+    {
+      batchLock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Writes the content of the batch buffer to the client. The caller must hold
+   * the batch lock.
+   */
+  private void flushBatchBuffer() throws IOException
+  {
+    if (batchBuffer == null || batchBuffer.position() == 0)
+    {
+      return;
+    }
+
+    final int flushedBytes = batchBuffer.position();
+    batchBuffer.flip();
+    try
+    {
+      while (batchBuffer.hasRemaining())
+      {
+        saslChannel.write(batchBuffer);
+      }
+    }
+    finally
+    {
+      batchBuffer.clear();
+    }
+    if (keepStats)
+    {
+      statTracker.updateSearchResultFlush(flushedBytes);
+    }
+  }
+
+
+
+  /**
+   * Writes any batched search results to the client. This is called when an
+   * operation completes without sending a response, e.g. when it has been
+   * abandoned, and before disconnecting the client.
+   */
+  private void flushBatchedSearchResults()
+  {
+    batchLock.lock();
+    try
+    {
+      flushBatchBufferOrDisconnect();
+    }
+    finally
+    {
+      batchLock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Writes any batched search results to the client, unless a worker thread is
+   * currently writing to the client. In the latter case, the connection is
+   * registered again with the connection handler, so that the search results
+   * are written at its next run if the worker thread has not written them
+   * meanwhile. This is called periodically by the connection handler, so that
+   * the results of slow searches are not held indefinitely.
+   */
+  void flushBatchedSearchResultsIfNotWriting()
+  {
+    if (!batchLock.tryLock())
+    {
+      connectionHandler.registerBatchedSearchResults(this);
+      return;
+    }
+    try
+    {
+      flushBatchBufferOrDisconnect();
+    }
+    finally
+    {
+      batchLock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Writes the content of the batch buffer to the client, disconnecting it if
+   * this fails. The caller must hold the batch lock.
+   */
+  private void flushBatchBufferOrDisconnect()
+  {
+    try
+    {
+      flushBatchBuffer();
+    }
+    catch (ClosedChannelException e)
+    {
+      logger.traceException(e);
+      disconnect(DisconnectReason.IO_ERROR, false,
+          ERR_IO_ERROR_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      disconnect(DisconnectReason.SERVER_ERROR, false,
+          ERR_UNEXPECTED_EXCEPTION_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
+    }
+  }
+
+
+
   /**
    * Closes the connection to the client, optionally sending it a
    * message indicating the reason for the closure. Note that the
@@ -1064,6 +1281,11 @@ public final class LDAPClientConnection extends ClientConnection implements
       cancelAllOperations(new CancelRequest(true, disconnectReason
           .getClosureMessage()));
     }
+    if (searchResultBatchSize > 0 && disconnectReason != DisconnectReason.IO_ERROR)
+    {
+      // Do not drop the search results sent before the disconnection.
+      flushBatchedSearchResults();
+    }
     finalizeConnectionInternal();
 
     // If there is a write selector for this connection, then close it.
@@ -1279,12 +1501,42 @@ public final class LDAPClientConnection extends ClientConnection implements
   @Override
   public boolean removeOperationInProgress(int messageID)
   {
-    Operation operation = operationsInProgress.remove(messageID);
+    Operation operation = removeOperation(messageID);
     if (operation == null)
     {
       return false;
     }
 
+    if (searchResultBatchSize > 0
+        && operation.getOperationType() == OperationType.SEARCH)
+    {
+      // The search may have completed without sending a response
+      // (e.g. it was abandoned): do not hold its results any longer.
+      flushBatchedSearchResults();
+    }
+    return true;
+  }
+
+
+
+  /**
+   * Removes the provided operation from the set of operations in
+   * progress.
+   *
+   * @param messageID
+   *          The message ID of the operation to remove from the set of
+   *          operations in progress.
+   * @return The removed operation, or {@code null} if it was not in
+   *         progress.
+   */
+  private Operation removeOperation(int messageID)
+  {
+    Operation operation = operationsInProgress.remove(messageID);
+    if (operation == null)
+    {
+      return null;
+    }
+
     if (operation.getOperationType() == OperationType.ABANDON
         && keepStats
         && operation.getResultCode() == ResultCode.CANCELLED)
@@ -1293,7 +1545,7 @@ public final class LDAPClientConnection extends ClientConnection implements
     }
 
     lastCompletionTime.set(TimeThread.getTime());
-    return true;
+    return operation;
   }
 
 
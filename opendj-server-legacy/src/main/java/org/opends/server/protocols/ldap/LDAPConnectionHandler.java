@@ -26,6 +26,7 @@ import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -102,6 +103,18 @@ public final class LDAPConnectionHandler extends
 
     }
   }
+
+  /**
+   * Task run periodically by the search result flusher.
+   */
+  private final class SearchResultFlusherRunnable implements Runnable
+  {
+    @Override
+    public void run()
+    {
+      flushBatchedSearchResults();
+    }
+  }
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
   /**
@@ -109,6 +122,13 @@ public final class LDAPConnectionHandler extends
    */
   private static final String DEFAULT_FRIENDLY_NAME = "LDAP Connection Handler";
 
+  /**
+   * The interval in milliseconds at which the search results batched by the
+   * client connections are written, when their batch buffer is not full and
+   * their search is still in progress.
+   */
+  private static final long SEARCH_RESULT_FLUSH_INTERVAL_MS = 50;
+
   /** SSL instance name used in context creation. */
   private static final String SSL_CONTEXT_INSTANCE_NAME = "TLS";
 
@@ -227,6 +247,19 @@ public final class LDAPConnectionHandler extends
   private List<Runnable> connectionFinalizerActiveJobQueue;
   private List<Runnable> connectionFinalizerPendingJobQueue;
 
+  /**
+   * Search result flusher thread.
+   * <p>
+   * This thread periodically writes the search results batched by the client
+   * connections, so that the results of slow searches are not held until their
+   * batch buffer is full or their search completes.
+   */
+  private ScheduledExecutorService searchResultFlusher;
+
+  /** The client connections which may hold batched search results. */
+  private final Set<LDAPClientConnection> connectionsWithBatchedSearchResults =
+      Collections.newSetFromMap(new ConcurrentHashMap<LDAPClientConnection, Boolean>());
+
 
 
   /**
@@ -409,6 +442,8 @@ public final class LDAPConnectionHandler extends
       r.run(); // Flush active queue.
       r.run(); // Flush pending queue.
     }
+
+    searchResultFlusher.shutdown();
   }
 
 
@@ -577,6 +612,20 @@ public final class LDAPConnectionHandler extends
 
 
 
+  /**
+   * Retrieves the size in bytes of the buffer used by client connections to
+   * batch search results before writing them.
+   *
+   * @return The size in bytes of the buffer used to batch search results, or
+   *         zero if search results should not be batched.
+   */
+  public int getSearchResultBatchSize()
+  {
+    return (int) currentConfig.getSearchResultBatchSize();
+  }
+
+
+
   /**
    * Retrieves the size in bytes of the LDAP response message write buffer
    * defined for this connection handler.
@@ -725,6 +774,15 @@ public final class LDAPConnectionHandler extends
     connectionFinalizer.scheduleWithFixedDelay(
         new ConnectionFinalizerRunnable(), 100, 100, TimeUnit.MILLISECONDS);
 
+    // Create and start a search result flusher thread for this
+    // connection handler.
+    searchResultFlusher = Executors
+        .newSingleThreadScheduledExecutor(new DirectoryThread.Factory(
+            "LDAP Search Result Flusher for connection handler " + toString()));
+    searchResultFlusher.scheduleWithFixedDelay(
+        new SearchResultFlusherRunnable(), SEARCH_RESULT_FLUSH_INTERVAL_MS,
+        SEARCH_RESULT_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
     // Create and start the request handlers.
     requestHandlers = new LDAPRequestHandler[numRequestHandlers];
     for (int i = 0; i < numRequestHandlers; i++)
@@ -1484,4 +1542,38 @@ public final class LDAPConnectionHandler extends
     }
   }
 
+
+
+  /**
+   * Registers a client connection which has started to batch search results,
+   * so that they are written by the search result flusher if they are still
+   * batched at its next run.
+   *
+   * @param connection
+   *          The client connection holding batched search results.
+   */
+  void registerBatchedSearchResults(LDAPClientConnection connection)
+  {
+    connectionsWithBatchedSearchResults.add(connection);
+  }
+
+
+
+  /**
+   * Writes the search results batched by the registered client connections.
+   * A connection is registered again when it cannot be flushed because a
+   * worker thread is writing to it.
+   */
+  void flushBatchedSearchResults()
+  {
+    final Iterator<LDAPClientConnection> it =
+        connectionsWithBatchedSearchResults.iterator();
+    while (it.hasNext())
+    {
+      final LDAPClientConnection connection = it.next();
+      it.remove();
+      connection.flushBatchedSearchResultsIfNotWriting();
+    }
+  }
+
 }
@@ -46,6 +46,7 @@ import org.opends.server.types.OperationType;
  * broken down by message type.</LI>
  * <LI>The total number of bytes read from LDAP clients.</LI>
  * <LI>The total number of bytes written to LDAP clients.</LI>
+ * <LI>The number and size of the batched search result writes.</LI>
  * </UL>
  * <BR>
  * <BR>
@@ -89,6 +90,8 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
   private AtomicLong searchResultReferences = new AtomicLong(0);
   private AtomicLong searchResultsDone = new AtomicLong(0);
   private AtomicLong unbindRequests = new AtomicLong(0);
+  private AtomicLong searchResultFlushes = new AtomicLong(0);
+  private AtomicLong searchResultFlushedBytes = new AtomicLong(0);
 
 
   /** The instance name for this monitor provider instance. */
@@ -175,7 +178,7 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
      *        and associated with their objectclass
      *        OC_MONITOR_CONNHANDLERSTATS
      */
-    final MonitorData attrs = new MonitorData(31 + 10 * 2);
+    final MonitorData attrs = new MonitorData(33 + 10 * 2);
     attrs.add("connectionsEstablished", connectionsEstablished);
     attrs.add("connectionsClosed", connectionsClosed);
     attrs.add("bytesRead", bytesRead);
@@ -207,6 +210,9 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
     attrs.add("searchResultReferences", searchResultReferences);
     attrs.add("searchResultsDone", searchResultsDone);
     attrs.add("unbindRequests", unbindRequests);
+    final long flushes = searchResultFlushes.get();
+    attrs.add("searchResultFlushes", flushes);
+    attrs.add("averageSearchResultFlushSize", flushes > 0 ? searchResultFlushedBytes.get() / flushes : 0L);
 
     // adds
     attrs.add("ds-mon-add-operations-total-count", addOperationCount);
@@ -288,6 +294,8 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
       searchResultReferences.set(0);
       searchResultsDone.set(0);
       unbindRequests.set(0);
+      searchResultFlushes.set(0);
+      searchResultFlushedBytes.set(0);
 
       addOperationCount.set(0);
       addOperationTime.set(0);
@@ -364,6 +372,21 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
 
 
 
+  /**
+   * Updates the appropriate set of counters to indicate that a batch
+   * of search results has been flushed to the client.
+   *
+   * @param flushedBytes
+   *          The number of bytes flushed to the client.
+   */
+  public void updateSearchResultFlush(int flushedBytes)
+  {
+     searchResultFlushes.getAndIncrement();
+     searchResultFlushedBytes.getAndAdd(flushedBytes);
+  }
+
+
+
   /**
    * Updates the appropriate set of counters based on the provided
    * message that has been read from the client.
@@ -876,6 +899,34 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
 
 
 
+  /**
+   * Retrieves the number of batches of search results that have been
+   * flushed to the client.
+   *
+   * @return The number of batches of search results that have been
+   *         flushed to the client.
+   */
+  public long getSearchResultFlushes()
+  {
+      return searchResultFlushes.get();
+  }
+
+
+
+  /**
+   * Retrieves the number of bytes of the batches of search results that
+   * have been flushed to the client.
+   *
+   * @return The number of bytes of the batches of search results that
+   *         have been flushed to the client.
+   */
+  public long getSearchResultFlushedBytes()
+  {
+      return searchResultFlushedBytes.get();
+  }
+
+
+
   /**
    * Retrieves the number of unbind requests that have been received.
    *
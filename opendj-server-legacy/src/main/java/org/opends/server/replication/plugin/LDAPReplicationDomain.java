@@ -30,6 +30,7 @@ import static org.opends.server.util.StaticUtils.*;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -48,7 +49,6 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -292,10 +292,10 @@ public final class LDAPReplicationDomain extends ReplicationDomain
 
   private final DSRSShutdownSync dsrsShutdownSync;
   /**
-   * The update to replay message queue where the listener thread is going to
+   * The lanes of updates to replay where the listener thread is going to
    * push incoming update messages.
    */
-  private final BlockingQueue<UpdateToReplay> updateToReplayQueue;
+  private final ReplayLanes replayLanes;
   /** The number of naming conflicts successfully resolved. */
   private final AtomicInteger numResolvedNamingConflicts = new AtomicInteger();
   /** The number of modify conflicts successfully resolved. */
@@ -530,17 +530,17 @@ public final class LDAPReplicationDomain extends ReplicationDomain
    * Creates a new ReplicationDomain using configuration from configEntry.
    *
    * @param configuration    The configuration of this ReplicationDomain.
-   * @param updateToReplayQueue The queue for update messages to replay.
+   * @param replayLanes The lanes for update messages to replay.
    * @param dsrsShutdownSync Synchronization object for shutdown of combined DS/RS instances.
    * @throws ConfigException In case of invalid configuration.
    */
   LDAPReplicationDomain(ReplicationDomainCfg configuration,
-      BlockingQueue<UpdateToReplay> updateToReplayQueue,
+      ReplayLanes replayLanes,
       DSRSShutdownSync dsrsShutdownSync) throws ConfigException
   {
     super(configuration, -1);
 
-    this.updateToReplayQueue = updateToReplayQueue;
+    this.replayLanes = replayLanes;
     this.dsrsShutdownSync = dsrsShutdownSync;
 
     // Get assured configuration
@@ -2256,15 +2256,6 @@ public final class LDAPReplicationDomain extends ReplicationDomain
     }
   }
 
-  /**
-   * Marks the specified message as the one currently processed by a replay thread.
-   * @param msg the message being processed
-   */
-  void markInProgress(LDAPUpdateMsg msg)
-  {
-    remotePendingChanges.markInProgress(msg);
-  }
-
   /**
    * Create and replay a synchronized Operation from an UpdateMsg.
    *
@@ -3356,6 +3347,12 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     exportBackend(output, false);
   }
 
+  @Override
+  protected boolean supportsBinaryEntryExport()
+  {
+    return getBackend().supports(BackendOperation.BINARY_ENTRY_EXPORT);
+  }
+
   /**
    * Export the entries from the backend and/or compute the generation ID.
    * The ieContext must have been set before calling.
@@ -3433,6 +3430,10 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
       }
       exportConfig.setIncludeAttributes(includeAttributes);
     }
+    else
+    {
+      exportConfig.setBinaryFormat(getImportExportContext().isBinaryEntryFormat());
+    }
 
     //  Launch the export.
     long genID = 0;
@@ -3543,7 +3544,17 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
         return;
       }
 
-      importConfig = new LDIFImportConfig(input);
+      // Receive the first bytes, from which the format of the entries is
+      // detected, before configuring the import
+      final PushbackInputStream pushbackInput = new PushbackInputStream(input);
+      final byte[] firstByte = new byte[1];
+      if (pushbackInput.read(firstByte, 0, 1) == 1)
+      {
+        pushbackInput.unread(firstByte);
+      }
+
+      importConfig = new LDIFImportConfig(pushbackInput);
+      importConfig.setBinaryFormat(ieCtx.isBinaryEntryFormat());
       importConfig.setIncludeBranches(newLinkedHashSet(getBaseDN()));
       importConfig.setSkipDNValidation(true);
       // We should not validate schema for replication
@@ -4253,15 +4264,20 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
         return true;
       }
 
-      // Put update message into the replay queue
-      // (block until some place in the queue is available)
+      // Mark the update as in progress before any replay thread can see it:
+      // updates are received in order, so the dependencies of an update on
+      // the updates received before it are always detected, whatever their lane.
+      remotePendingChanges.markInProgress(msg);
+
+      // Put update message into the replay lane of its entry
+      // (block until some place in the lanes is available)
       final UpdateToReplay updateToReplay = new UpdateToReplay(msg, this);
       while (!isListenerShuttingDown())
       {
         // loop until we can offer to the queue or shutdown was initiated
         try
         {
-          if (updateToReplayQueue.offer(updateToReplay, 1, TimeUnit.SECONDS))
+          if (replayLanes.offer(updateToReplay, 1, TimeUnit.SECONDS))
           {
             // successful offer to the queue, let's exit the loop
             break;
@@ -29,9 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
@@ -97,12 +95,12 @@ public class MultimasterReplication
   private ReplicationServerListener replicationServerListener;
   private static final Map<DN, LDAPReplicationDomain> domains = new ConcurrentHashMap<>(4);
   private static final DSRSShutdownSync dsrsShutdownSync = new DSRSShutdownSync();
-  /** The queue of received update messages, to be treated by the ReplayThread threads. */
-  private static final BlockingQueue<UpdateToReplay> updateToReplayQueue = new LinkedBlockingQueue<>(10000);
-  /** The list of ReplayThread threads. */
-  private static final List<ReplayThread> replayThreads = new ArrayList<>();
   /** The configurable number of replay threads. */
   private static int replayThreadNumber = 10;
+  /** The lanes of received update messages, each one treated by one of the ReplayThread threads. */
+  private static final ReplayLanes replayLanes = new ReplayLanes(replayThreadNumber);
+  /** The list of ReplayThread threads. */
+  private static final List<ReplayThread> replayThreads = new ArrayList<>();
 
   /** Enum that symbolizes the state of the multimaster replication. */
   private static enum State
@@ -114,6 +112,7 @@ public class MultimasterReplication
 
   /** The configurable connection/handshake timeout. */
   private static volatile int connectionTimeoutMS = 5000;
+  private static volatile boolean messageCompressionEnabled;
 
   /**
    * Finds the domain for a given DN.
@@ -192,7 +191,7 @@ public class MultimasterReplication
     try
     {
       final LDAPReplicationDomain domain = new LDAPReplicationDomain(
-          configuration, updateToReplayQueue, dsrsShutdownSync);
+          configuration, replayLanes, dsrsShutdownSync);
       if (domains.isEmpty())
       {
         // Create the threads that will process incoming update messages
@@ -228,7 +227,7 @@ public class MultimasterReplication
       throws ConfigException
   {
     final LDAPReplicationDomain domain =
-        new LDAPReplicationDomain(configuration, queue, dsrsShutdownSync);
+        new LDAPReplicationDomain(configuration, new ReplayLanes(queue), dsrsShutdownSync);
     domains.put(domain.getBaseDN(), domain);
     return domain;
   }
@@ -270,6 +269,7 @@ public class MultimasterReplication
 
     replayThreadNumber = getNumberOfReplayThreadsOrDefault(cfg);
     connectionTimeoutMS = (int) Math.min(cfg.getConnectionTimeout(), Integer.MAX_VALUE);
+    messageCompressionEnabled = cfg.isMessageCompressionEnabled();
 
     //  Create the list of domains that are already defined.
     for (String name : cfg.listReplicationDomains())
@@ -307,10 +307,11 @@ public class MultimasterReplication
   {
     replayThreads.clear();
 
-    ReentrantLock switchQueueLock = new ReentrantLock();
+    // The replay threads are stopped: updates waiting to be replayed can be moved to their new lane
+    replayLanes.setNumberOfLanes(replayThreadNumber);
     for (int i = 0; i < replayThreadNumber; i++)
     {
-      ReplayThread replayThread = new ReplayThread(updateToReplayQueue, switchQueueLock);
+      ReplayThread replayThread = new ReplayThread(replayLanes, i);
       replayThread.start();
       replayThreads.add(replayThread);
     }
@@ -792,6 +793,7 @@ public class MultimasterReplication
 
     connectionTimeoutMS = (int) Math.min(configuration.getConnectionTimeout(),
         Integer.MAX_VALUE);
+    messageCompressionEnabled = configuration.isMessageCompressionEnabled();
 
     return new ConfigChangeResult();
   }
@@ -912,4 +914,15 @@ public class MultimasterReplication
     return connectionTimeoutMS;
   }
 
+  /**
+   * Returns whether the replication messages sent to peers supporting it
+   * should be compressed.
+   *
+   * @return {@code true} if the replication messages should be compressed
+   */
+  public static boolean isMessageCompressionEnabled()
+  {
+    return messageCompressionEnabled;
+  }
+
 }
@@ -22,6 +22,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.jcip.annotations.GuardedBy;
+import org.forgerock.i18n.LocalizedIllegalArgumentException;
 import org.opends.server.core.AddOperation;
 import org.opends.server.core.DeleteOperation;
 import org.opends.server.core.ModifyDNOperationBasis;
@@ -30,6 +31,7 @@ import org.opends.server.replication.common.CSN;
 import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.protocol.*;
 import org.forgerock.opendj.ldap.DN;
+import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Operation;
 
 /**
@@ -60,6 +62,11 @@ final class RemotePendingChanges
    * on currently in progress changes.
    */
   private final ConcurrentSkipListSet<PendingChange> activeAndDependentChanges = new ConcurrentSkipListSet<>();
+  /**
+   * Indexes {@code activeAndDependentChanges}, which also contains the changes waiting to be
+   * replayed, so that checking the dependencies of a change does not scan all of them.
+   */
+  private final ActiveChangesIndex activeChangesIndex = new ActiveChangesIndex();
 
   private ReentrantReadWriteLock pendingChangesLock = new ReentrantReadWriteLock(true);
   private ReentrantReadWriteLock.ReadLock pendingChangesReadLock = pendingChangesLock.readLock();
@@ -167,6 +174,7 @@ final class RemotePendingChanges
       }
       curChange.setCommitted(true);
       activeAndDependentChanges.remove(curChange);
+      activeChangesIndex.remove(curChange);
 
       Iterator<Map.Entry<CSN, PendingChange>> it = pendingChanges.entrySet().iterator();
       while (it.hasNext())
@@ -195,7 +203,9 @@ final class RemotePendingChanges
     pendingChangesReadLock.lock();
     try
     {
-      activeAndDependentChanges.add(pendingChanges.get(msg.getCSN()));
+      final PendingChange change = pendingChanges.get(msg.getCSN());
+      activeAndDependentChanges.add(change);
+      activeChangesIndex.add(change);
     }
     finally
     {
@@ -290,7 +300,12 @@ final class RemotePendingChanges
       return false;
     }
 
-    for (PendingChange pendingChange : activeAndDependentChanges)
+    final List<DN> entryDNs = new ArrayList<>();
+    for (DN dn = targetDN; dn != null; dn = dn.parent())
+    {
+      entryDNs.add(dn);
+    }
+    for (PendingChange pendingChange : activeChangesIndex.getCandidates(entryDNs, false))
     {
       if (pendingChange.getCSN().isNewerThanOrEqualTo(csn))
       {
@@ -373,7 +388,7 @@ final class RemotePendingChanges
     }
 
     final DN targetDN = change.getLDAPUpdateMsg().getDN();
-    for (PendingChange pendingChange : activeAndDependentChanges)
+    for (PendingChange pendingChange : activeChangesIndex.getCandidates(Collections.singletonList(targetDN), false))
     {
       if (pendingChange.getCSN().isNewerThanOrEqualTo(csn))
       {
@@ -432,7 +447,7 @@ final class RemotePendingChanges
     }
 
     final DN targetDN = change.getLDAPUpdateMsg().getDN();
-    for (PendingChange pendingChange : activeAndDependentChanges)
+    for (PendingChange pendingChange : activeChangesIndex.getCandidates(getModifyDNEntryDNs(msg, targetDN), false))
     {
       if (pendingChange.getCSN().isNewerThanOrEqualTo(csn))
       {
@@ -481,6 +496,33 @@ final class RemotePendingChanges
     return hasDependencies;
   }
 
+  /** Returns the DNs of the entries whose changes a modify DN change may depend on. */
+  private static List<DN> getModifyDNEntryDNs(ModifyDNMsg msg, DN targetDN)
+  {
+    final List<DN> entryDNs = new ArrayList<>(3);
+    entryDNs.add(targetDN);
+    try
+    {
+      entryDNs.add(msg.computeNewDN());
+    }
+    catch (DirectoryException e)
+    {
+      // The new DN is not a correct DN: no change can depend on it
+    }
+    if (msg.getNewSuperior() != null)
+    {
+      try
+      {
+        entryDNs.add(DN.valueOf(msg.getNewSuperior()));
+      }
+      catch (LocalizedIllegalArgumentException e)
+      {
+        // The new superior is not a correct DN: no change can depend on it
+      }
+    }
+    return entryDNs;
+  }
+
   /**
    * Check if the given DeleteOperation has some dependencies on any
    * currently running previous operation.
@@ -509,7 +551,7 @@ final class RemotePendingChanges
       return false;
     }
 
-    for (PendingChange pendingChange : activeAndDependentChanges)
+    for (PendingChange pendingChange : activeChangesIndex.getCandidates(Collections.singletonList(targetDN), true))
     {
       if (pendingChange.getCSN().isNewerThanOrEqualTo(csn))
       {
@@ -593,4 +635,103 @@ final class RemotePendingChanges
       return true;  // unknown type of operation ?!
     }
   }
+
+  /**
+   * Indexes the changes marked in progress by the DN of the entry they target, so that the
+   * dependencies of a change are only checked against the changes targeting related entries.
+   * <p>
+   * Modify DN changes may relate to any entry through their new DN, so they are always candidates.
+   * They are much less frequent than the other changes.
+   */
+  private static final class ActiveChangesIndex
+  {
+    /** The changes indexed by the DN of their target entry. */
+    private final Map<DN, Set<PendingChange>> byEntryDN = new HashMap<>();
+    /** The changes indexed by the DNs of the superior entries of their target entry. */
+    private final Map<DN, Set<PendingChange>> bySuperiorDN = new HashMap<>();
+    private final Set<PendingChange> modifyDNChanges = new HashSet<>();
+    /** The DN each change was indexed with, since conflict resolution may change the DN of its message. */
+    private final Map<PendingChange, DN> indexedDNs = new HashMap<>();
+
+    synchronized void add(PendingChange change)
+    {
+      final DN entryDN = change.getLDAPUpdateMsg().getDN();
+      if (indexedDNs.containsKey(change))
+      {
+        return;
+      }
+      indexedDNs.put(change, entryDN);
+      put(byEntryDN, entryDN, change);
+      for (DN dn = entryDN.parent(); dn != null; dn = dn.parent())
+      {
+        put(bySuperiorDN, dn, change);
+      }
+      if (change.getLDAPUpdateMsg() instanceof ModifyDNMsg)
+      {
+        modifyDNChanges.add(change);
+      }
+    }
+
+    synchronized void remove(PendingChange change)
+    {
+      final DN entryDN = indexedDNs.remove(change);
+      if (entryDN == null)
+      {
+        return;
+      }
+      remove(byEntryDN, entryDN, change);
+      for (DN dn = entryDN.parent(); dn != null; dn = dn.parent())
+      {
+        remove(bySuperiorDN, dn, change);
+      }
+      modifyDNChanges.remove(change);
+    }
+
+    /**
+     * Returns the changes targeting the provided entries, optionally their subordinate entries, and
+     * the modify DN changes, sorted by CSN.
+     */
+    synchronized SortedSet<PendingChange> getCandidates(List<DN> entryDNs, boolean includeSubordinates)
+    {
+      final SortedSet<PendingChange> candidates = new TreeSet<>(modifyDNChanges);
+      for (DN entryDN : entryDNs)
+      {
+        addAll(byEntryDN, entryDN, candidates);
+        if (includeSubordinates)
+        {
+          addAll(bySuperiorDN, entryDN, candidates);
+        }
+      }
+      return candidates;
+    }
+
+    private static void put(Map<DN, Set<PendingChange>> index, DN dn, PendingChange change)
+    {
+      Set<PendingChange> changes = index.get(dn);
+      if (changes == null)
+      {
+        changes = new HashSet<>();
+        index.put(dn, changes);
+      }
+      changes.add(change);
+    }
+
+    private static void remove(Map<DN, Set<PendingChange>> index, DN dn, PendingChange change)
+    {
+      final Set<PendingChange> changes = index.get(dn);
+      if (changes != null && changes.remove(change) && changes.isEmpty())
+      {
+        index.remove(dn);
+      }
+    }
+
+    private static void addAll(Map<DN, Set<PendingChange>> index, DN dn, Set<PendingChange> candidates)
+    {
+      final Set<PendingChange> changes = index.get(dn);
+      if (changes != null)
+      {
+        candidates.addAll(changes);
+      }
+    }
+  }
 }
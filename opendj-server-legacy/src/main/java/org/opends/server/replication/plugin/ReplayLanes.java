@@ -0,0 +1,207 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.forgerock.opendj.ldap.DN;
+
+/**
+ * The queues of updates waiting to be replayed, partitioned by the DN of the entry targeted by the
+ * updates.
+ * <p>
+ * Each lane is drained by a single {@link ReplayThread}: updates targeting the same entry are
+ * always replayed in the order they were received, while updates targeting different entries are
+ * replayed in parallel. Dependencies between updates of different lanes (for example adding an
+ * entry below a parent added by a previous update) are still detected by the
+ * {@link RemotePendingChanges} of the replication domains.
+ * <p>
+ * The number of updates waiting in all the lanes is bounded, so that the replication domains
+ * stop reading updates from their replication server when the replay threads cannot keep up.
+ */
+final class ReplayLanes
+{
+  /** The maximum number of updates waiting to be replayed, across all the lanes. */
+  private static final int MAX_QUEUED_UPDATES = 10000;
+
+  private final Semaphore availableSlots = new Semaphore(MAX_QUEUED_UPDATES);
+  /** Prevents adding updates to the lanes while they are being redistributed. */
+  private final ReentrantReadWriteLock lanesLock = new ReentrantReadWriteLock();
+  private volatile List<BlockingQueue<UpdateToReplay>> lanes;
+
+  /**
+   * Creates new replay lanes.
+   *
+   * @param nbLanes
+   *          the number of lanes, which should be the number of replay threads
+   */
+  ReplayLanes(int nbLanes)
+  {
+    this.lanes = newLanes(nbLanes);
+  }
+
+  /**
+   * Creates replay lanes made of the provided single lane. Used for tests.
+   *
+   * @param lane
+   *          the queue receiving all the updates to replay
+   */
+  ReplayLanes(BlockingQueue<UpdateToReplay> lane)
+  {
+    this.lanes = Collections.singletonList(lane);
+  }
+
+  private static List<BlockingQueue<UpdateToReplay>> newLanes(int nbLanes)
+  {
+    final List<BlockingQueue<UpdateToReplay>> newLanes = new ArrayList<>(nbLanes);
+    for (int i = 0; i < nbLanes; i++)
+    {
+      newLanes.add(new LinkedBlockingQueue<UpdateToReplay>());
+    }
+    return newLanes;
+  }
+
+  /**
+   * Returns the number of lanes.
+   *
+   * @return the number of lanes
+   */
+  int getNumberOfLanes()
+  {
+    return lanes.size();
+  }
+
+  /**
+   * Changes the number of lanes, moving the updates waiting to be replayed to their new lanes.
+   * <p>
+   * The replay threads must be stopped while the number of lanes is changed.
+   *
+   * @param nbLanes
+   *          the new number of lanes
+   */
+  void setNumberOfLanes(int nbLanes)
+  {
+    lanesLock.writeLock().lock();
+    try
+    {
+      if (nbLanes == lanes.size())
+      {
+        return;
+      }
+      final List<BlockingQueue<UpdateToReplay>> newLanes = newLanes(nbLanes);
+      final List<UpdateToReplay> updates = new ArrayList<>();
+      for (BlockingQueue<UpdateToReplay> lane : lanes)
+      {
+        // Updates of the same entry are in the same lane, they keep their relative order
+        lane.drainTo(updates);
+        for (UpdateToReplay update : updates)
+        {
+          newLanes.get(getLaneIndex(update, nbLanes)).add(update);
+        }
+        updates.clear();
+      }
+      lanes = newLanes;
+    }
+    finally
+    {
+      lanesLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds an update to the lane of the entry it targets, waiting up to the specified time if too
+   * many updates are already waiting to be replayed.
+   *
+   * @param update
+   *          the update to replay
+   * @param timeout
+   *          how long to wait before giving up, in units of {@code unit}
+   * @param unit
+   *          the time unit of the {@code timeout} argument
+   * @return {@code true} if the update was added, {@code false} if the specified waiting time
+   *         elapsed
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  boolean offer(UpdateToReplay update, long timeout, TimeUnit unit) throws InterruptedException
+  {
+    if (!availableSlots.tryAcquire(timeout, unit))
+    {
+      return false;
+    }
+    lanesLock.readLock().lock();
+    try
+    {
+      final List<BlockingQueue<UpdateToReplay>> currentLanes = lanes;
+      currentLanes.get(getLaneIndex(update, currentLanes.size())).add(update);
+      return true;
+    }
+    finally
+    {
+      lanesLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves and removes the next update of a lane, waiting up to the specified time if the lane
+   * is empty.
+   *
+   * @param laneIndex
+   *          the index of the lane
+   * @param timeout
+   *          how long to wait before giving up, in units of {@code unit}
+   * @param unit
+   *          the time unit of the {@code timeout} argument
+   * @return the next update of the lane, or {@code null} if the specified waiting time elapsed
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  UpdateToReplay poll(int laneIndex, long timeout, TimeUnit unit) throws InterruptedException
+  {
+    final UpdateToReplay update = lanes.get(laneIndex).poll(timeout, unit);
+    if (update != null)
+    {
+      availableSlots.release();
+    }
+    return update;
+  }
+
+  private static int getLaneIndex(UpdateToReplay update, int nbLanes)
+  {
+    return getLaneIndex(update.getUpdateMessage().getDN(), nbLanes);
+  }
+
+  /**
+   * Returns the index of the lane of the updates targeting the provided entry.
+   *
+   * @param entryDN
+   *          the DN of the entry targeted by the updates
+   * @param nbLanes
+   *          the number of lanes
+   * @return the index of the lane
+   */
+  static int getLaneIndex(DN entryDN, int nbLanes)
+  {
+    return (entryDN.hashCode() & Integer.MAX_VALUE) % nbLanes;
+  }
+}
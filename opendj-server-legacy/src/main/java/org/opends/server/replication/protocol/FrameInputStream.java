@@ -0,0 +1,226 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.protocol;
+
+import static org.opends.server.replication.protocol.FrameOutputStream.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream reading the frames written to a replication session by a {@link FrameOutputStream},
+ * and returning the messages they contain.
+ * <p>
+ * This class is not thread safe.
+ */
+final class FrameInputStream extends InputStream
+{
+  private final InputStream in;
+  /** The inflater shared by all the compressed frames, created with the first compressed frame. */
+  private Inflater inflater;
+  private final byte[] header = new byte[HEADER_LENGTH + 4];
+  private byte[] frame = new byte[8192];
+  private byte[] compressedFrame;
+  private int frameLength;
+  private int position;
+  /** Guarded by this object, as is the use of the inflater. */
+  private boolean closed;
+
+  /**
+   * Creates a new frame input stream.
+   *
+   * @param in
+   *          The input stream of the replication session.
+   */
+  FrameInputStream(InputStream in)
+  {
+    this.in = in;
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    if (!ensureAvailable())
+    {
+      return -1;
+    }
+    return frame[position++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    if (len == 0)
+    {
+      return 0;
+    }
+    if (!ensureAvailable())
+    {
+      return -1;
+    }
+    final int read = Math.min(len, frameLength - position);
+    System.arraycopy(frame, position, b, off, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  public int available()
+  {
+    return frameLength - position;
+  }
+
+  /** Reads frames until some bytes are available, returns false if the end of the stream was reached. */
+  private boolean ensureAvailable() throws IOException
+  {
+    while (position == frameLength)
+    {
+      final int first = in.read();
+      if (first == -1)
+      {
+        return false;
+      }
+      header[0] = (byte) first;
+      readFully(header, 1, HEADER_LENGTH - 1);
+      final boolean isCompressed = (header[0] & COMPRESSED) != 0;
+      if (isCompressed)
+      {
+        readFully(header, HEADER_LENGTH, 4);
+      }
+      final int length = getInt(header, 1);
+      if (isCompressed)
+      {
+        readCompressedFrame(length, getInt(header, HEADER_LENGTH));
+      }
+      else
+      {
+        frame = ensureCapacity(frame, length);
+        readFully(frame, 0, length);
+        frameLength = length;
+      }
+      position = 0;
+    }
+    return true;
+  }
+
+  private void readCompressedFrame(int compressedLength, int uncompressedLength) throws IOException
+  {
+    compressedFrame = ensureCapacity(compressedFrame, compressedLength);
+    readFully(compressedFrame, 0, compressedLength);
+    // Leave room for one more byte, so that the inflater consumes the end of the flushed block
+    frame = ensureCapacity(frame, uncompressedLength + 1);
+    final int inflatedLength = inflate(compressedLength, uncompressedLength);
+    if (inflatedLength != uncompressedLength)
+    {
+      throw new IOException("Invalid compressed frame: expected " + uncompressedLength
+          + " bytes but got " + inflatedLength + " bytes");
+    }
+    frameLength = uncompressedLength;
+  }
+
+  /** Synchronized so that the inflater cannot be released while in use. */
+  private synchronized int inflate(int compressedLength, int uncompressedLength) throws IOException
+  {
+    if (closed)
+    {
+      throw new IOException("Frame input stream closed");
+    }
+    if (inflater == null)
+    {
+      inflater = new Inflater();
+    }
+    inflater.setInput(compressedFrame, 0, compressedLength);
+    int inflatedLength = 0;
+    try
+    {
+      while (!inflater.needsInput() && inflatedLength <= uncompressedLength)
+      {
+        final int inflated = inflater.inflate(frame, inflatedLength, frame.length - inflatedLength);
+        if (inflated == 0 && !inflater.needsInput())
+        {
+          // No progress: the frame is corrupted
+          break;
+        }
+        inflatedLength += inflated;
+      }
+    }
+    catch (DataFormatException e)
+    {
+      throw new IOException(e.getMessage(), e);
+    }
+    return inflatedLength;
+  }
+
+  /**
+   * Releases the native resources of the inflater. The input stream of the replication session is
+   * not closed, since it is closed with the socket of the session. This method can be called while
+   * another thread is reading from this stream.
+   */
+  @Override
+  public synchronized void close()
+  {
+    if (!closed)
+    {
+      closed = true;
+      if (inflater != null)
+      {
+        inflater.end();
+      }
+    }
+  }
+
+  private void readFully(byte[] b, int off, int len) throws IOException
+  {
+    int read = 0;
+    while (read < len)
+    {
+      final int n = in.read(b, off + read, len - read);
+      if (n == -1)
+      {
+        throw new EOFException("no more data");
+      }
+      read += n;
+    }
+  }
+
+  private static byte[] ensureCapacity(byte[] b, int length) throws IOException
+  {
+    if (length < 0)
+    {
+      throw new IOException("Invalid frame length " + length);
+    }
+    if (b != null && b.length >= length)
+    {
+      return b;
+    }
+    try
+    {
+      return new byte[Math.max(length, 8192)];
+    }
+    catch (final OutOfMemoryError e)
+    {
+      throw new IOException("Frame too large, can't allocate " + length + " bytes.");
+    }
+  }
+
+  private static int getInt(byte[] b, int off)
+  {
+    return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream buffering the messages published on a replication session, and writing them to
+ * the session as a single frame when flushed.
+ * <p>
+ * A frame is stored in the form:
+ * <pre>
+ * &lt;flags (1 byte)&gt;&lt;frame length (4 bytes)&gt;[&lt;uncompressed length (4 bytes)&gt;]&lt;frame&gt;
+ * </pre>
+ * When the frame is compressed, it is deflated with a deflater shared by all the frames of the
+ * session, so that each frame can reference the content of the previous compressed frames. Small
+ * frames are not worth compressing and are written as is.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @see FrameInputStream
+ */
+final class FrameOutputStream extends OutputStream
+{
+  /** Flag indicating that a frame is compressed. */
+  static final byte COMPRESSED = 0x01;
+  /** The length of the header of the frames, excluding the uncompressed length of compressed frames. */
+  static final int HEADER_LENGTH = 5;
+  /** Frames smaller than this are not worth compressing. */
+  private static final int MIN_COMPRESSED_LENGTH = 128;
+
+  private final OutputStream out;
+  /** The deflater shared by all the compressed frames, {@code null} if frames are not compressed. */
+  private final Deflater deflater;
+  private byte[] frame = new byte[8192];
+  private int frameLength;
+  private byte[] compressedFrame;
+  private boolean closed;
+
+  /** The number of bytes of the frames before compression. */
+  private volatile long uncompressedBytes;
+  /** The number of bytes of the frames written to the session. */
+  private volatile long writtenBytes;
+
+  /**
+   * Creates a new frame output stream.
+   *
+   * @param out
+   *          The output stream of the replication session.
+   * @param compress
+   *          Whether frames should be compressed.
+   */
+  FrameOutputStream(OutputStream out, boolean compress)
+  {
+    this.out = out;
+    this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    this.compressedFrame = compress ? new byte[8192] : null;
+  }
+
+  @Override
+  public void write(int b)
+  {
+    ensureCapacity(1);
+    frame[frameLength++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len)
+  {
+    ensureCapacity(len);
+    System.arraycopy(b, off, frame, frameLength, len);
+    frameLength += len;
+  }
+
+  private void ensureCapacity(int len)
+  {
+    if (frameLength + len > frame.length)
+    {
+      frame = Arrays.copyOf(frame, Math.max(frame.length * 2, frameLength + len));
+    }
+  }
+
+  /**
+   * Returns the number of bytes buffered since the last flush.
+   *
+   * @return the number of bytes of the current frame
+   */
+  int getFrameLength()
+  {
+    return frameLength;
+  }
+
+  /** Writes the buffered bytes as a frame to the session. */
+  @Override
+  public void flush() throws IOException
+  {
+    if (closed)
+    {
+      throw new IOException("Frame output stream closed");
+    }
+    if (frameLength == 0)
+    {
+      out.flush();
+      return;
+    }
+
+    if (deflater != null && frameLength >= MIN_COMPRESSED_LENGTH)
+    {
+      final int compressedLength = deflate();
+      final byte[] header = new byte[HEADER_LENGTH + 4];
+      header[0] = COMPRESSED;
+      putInt(header, 1, compressedLength);
+      putInt(header, HEADER_LENGTH, frameLength);
+      out.write(header);
+      out.write(compressedFrame, 0, compressedLength);
+      writtenBytes += header.length + compressedLength;
+    }
+    else
+    {
+      final byte[] header = new byte[HEADER_LENGTH];
+      putInt(header, 1, frameLength);
+      out.write(header);
+      out.write(frame, 0, frameLength);
+      writtenBytes += header.length + frameLength;
+    }
+    uncompressedBytes += frameLength;
+    frameLength = 0;
+    out.flush();
+  }
+
+  /** Deflates the current frame, flushing the deflater so that the frame can be inflated on its own. */
+  private int deflate()
+  {
+    deflater.setInput(frame, 0, frameLength);
+    int compressedLength = 0;
+    while (true)
+    {
+      if (compressedLength == compressedFrame.length)
+      {
+        compressedFrame = Arrays.copyOf(compressedFrame, compressedFrame.length * 2);
+      }
+      compressedLength += deflater.deflate(compressedFrame, compressedLength,
+          compressedFrame.length - compressedLength, Deflater.SYNC_FLUSH);
+      if (compressedLength < compressedFrame.length)
+      {
+        // The output buffer was not filled: the whole frame has been deflated and flushed.
+        return compressedLength;
+      }
+    }
+  }
+
+  /**
+   * Releases the native resources of the deflater. The output stream of the replication session is
+   * not closed, since it is closed with the socket of the session.
+   */
+  @Override
+  public void close()
+  {
+    if (!closed)
+    {
+      closed = true;
+      if (deflater != null)
+      {
+        deflater.end();
+      }
+    }
+  }
+
+  private static void putInt(byte[] b, int off, int value)
+  {
+    b[off] = (byte) (value >>> 24);
+    b[off + 1] = (byte) (value >>> 16);
+    b[off + 2] = (byte) (value >>> 8);
+    b[off + 3] = (byte) value;
+  }
+
+  /**
+   * Returns the ratio between the size of the frames before compression and the number of bytes
+   * written to the session.
+   *
+   * @return the compression ratio, which is 1 if nothing has been written yet
+   */
+  double getCompressionRatio()
+  {
+    final long written = writtenBytes;
+    return written != 0 ? (double) uncompressedBytes / written : 1;
+  }
+}
@@ -41,6 +41,12 @@ public class InitializeTargetMsg extends RoutableMsg
 
   private int initWindow;
 
+  /**
+   * Specifies whether the entries are sent as binary entry records rather
+   * than as LDIF. Since V10.
+   */
+  private boolean binaryEntryFormat;
+
   /**
    * Creates a InitializeTargetMsg.
    *
@@ -87,6 +93,10 @@ public class InitializeTargetMsg extends RoutableMsg
     {
       initWindow = scanner.nextIntUTF8();
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      binaryEntryFormat = scanner.nextBoolean();
+    }
   }
 
   /**
@@ -130,6 +140,17 @@ public class InitializeTargetMsg extends RoutableMsg
     return this.initWindow;
   }
 
+  /**
+   * Indicates whether the entries are sent as binary entry records rather
+   * than as LDIF.
+   *
+   * @return true if the entries are sent as binary entry records.
+   */
+  public boolean isBinaryEntryFormat()
+  {
+    return this.binaryEntryFormat;
+  }
+
   // ============
   // Msg encoding
   // ============
@@ -149,6 +170,10 @@ public class InitializeTargetMsg extends RoutableMsg
     {
       builder.appendIntUTF8(initWindow);
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      builder.appendBoolean(binaryEntryFormat);
+    }
     return builder.toByteArray();
   }
 
@@ -160,4 +185,15 @@ public class InitializeTargetMsg extends RoutableMsg
   {
     this.initWindow = initWindow;
   }
+
+  /**
+   * Set whether the entries are sent as binary entry records rather than as
+   * LDIF. The peers must support the V10 of the protocol.
+   * @param binaryEntryFormat true if the entries are sent as binary entry
+   *                          records.
+   */
+  public void setBinaryEntryFormat(boolean binaryEntryFormat)
+  {
+    this.binaryEntryFormat = binaryEntryFormat;
+  }
 }
@@ -94,10 +94,28 @@ public class ProtocolVersion
    */
   public static final short REPLICATION_PROTOCOL_V8 = 8;
 
+  /**
+   * The constant for the 9th version of the replication protocol.
+   * <ul>
+   * <li>Messages exchanged after the start messages are batched into frames,
+   * which can be compressed.</li>
+   * </ul>
+   */
+  public static final short REPLICATION_PROTOCOL_V9 = 9;
+
+  /**
+   * The constant for the 10th version of the replication protocol.
+   * <ul>
+   * <li>New binaryEntryFormat field in InitializeTargetMsg, the entries of a
+   * total update being sent as binary records rather than as LDIF.</li>
+   * </ul>
+   */
+  public static final short REPLICATION_PROTOCOL_V10 = 10;
+
   /**
    * The replication protocol version used by the instance of RS/DS in this VM.
    */
-  private static final short CURRENT_VERSION = REPLICATION_PROTOCOL_V8;
+  private static final short CURRENT_VERSION = REPLICATION_PROTOCOL_V10;
 
   /**
    * Gets the current version of the replication protocol.
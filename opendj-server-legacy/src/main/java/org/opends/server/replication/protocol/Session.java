@@ -25,7 +25,6 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.DataFormatException;
 
@@ -74,7 +73,7 @@ public final class Session extends DirectoryThread implements Closeable
    * Publish guarded by publishLock: use a full lock here so that we can
    * optionally publish StopMsg during close.
    */
-  private final Lock publishLock = new ReentrantLock();
+  private final ReentrantLock publishLock = new ReentrantLock();
 
   /**
    * These do not need synchronization because they are only modified during the
@@ -87,15 +86,40 @@ public final class Session extends DirectoryThread implements Closeable
   /**
    * Use a buffered input stream to avoid too many system calls.
    */
-  private BufferedInputStream input;
+  private InputStream input;
 
   /**
    * Use a buffered output stream in order to combine message length and content
    * into a single TCP packet if possible.
    */
-  private BufferedOutputStream output;
+  private OutputStream output;
+
+  /**
+   * The stream batching the messages into frames, null until batching is
+   * started. Only written and flushed while holding publishLock.
+   */
+  private volatile FrameOutputStream frameOutput;
+  /** The stream reading the frames, null until batching is started. */
+  private volatile FrameInputStream frameInput;
+  /**
+   * Whether a thread is receiving a message. The frame input stream is only
+   * released once the session is closed and no thread is receiving anymore.
+   */
+  private volatile boolean isReceiving;
+  /** The time in nanoseconds the first message of the current frame was sent. */
+  private long frameStartTime;
+
+  /** The number of messages sent on this session. */
+  private volatile long sentMsgCount;
+  /** The number of times messages were flushed to the socket. */
+  private volatile long flushCount;
 
   private final LinkedBlockingQueue<byte[]> sendQueue = new LinkedBlockingQueue<>(4000);
+
+  /** Frames are flushed when they reach this size in bytes. */
+  private static final int MAX_FRAME_LENGTH = 64 * 1024;
+  /** Frames are flushed when their first message was sent this long ago. */
+  private static final long MAX_FRAME_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(10);
   private AtomicBoolean isRunning = new AtomicBoolean(false);
   private final CountDownLatch latch = new CountDownLatch(1);
 
@@ -202,6 +226,22 @@ public final class Session extends DirectoryThread implements Closeable
     }
 
     StaticUtils.close(plainSocket, secureSocket);
+
+    // Release the compression resources of the frame streams, if any
+    publishLock.lock();
+    try
+    {
+      StaticUtils.close(frameOutput);
+    }
+    finally
+    {
+      publishLock.unlock();
+    }
+    // Otherwise the receiving thread releases it once it is done reading
+    if (!isReceiving)
+    {
+      StaticUtils.close(frameInput);
+    }
   }
 
 
@@ -335,7 +375,7 @@ public final class Session extends DirectoryThread implements Closeable
     }
     else
     {
-      send(buffer);
+      send(buffer, false);
     }
   }
 
@@ -343,9 +383,11 @@ public final class Session extends DirectoryThread implements Closeable
    *
    * @param buffer
    *          the encoded buffer
+   * @param moreToSend
+   *          whether more messages are waiting to be sent by the session thread
    * @throws IOException if the message could not be sent
    */
-  private void send(final byte[] buffer) throws IOException
+  private void send(final byte[] buffer, final boolean moreToSend) throws IOException
   {
     final String str = String.format("%08x", buffer.length);
     final byte[] sendLengthBuf = str.getBytes();
@@ -353,13 +395,22 @@ public final class Session extends DirectoryThread implements Closeable
     publishLock.lock();
     try
     {
+      if (frameOutput != null && frameOutput.getFrameLength() == 0)
+      {
+        frameStartTime = System.nanoTime();
+      }
       /*
        * The buffered output stream ensures that the message is usually sent as
        * a single TCP packet.
        */
       output.write(sendLengthBuf);
       output.write(buffer);
-      output.flush();
+      sentMsgCount++;
+      if (!isBatching(moreToSend))
+      {
+        output.flush();
+        flushCount++;
+      }
     } catch (final IOException e) {
       setSessionError(e);
       throw e;
@@ -374,6 +425,91 @@ public final class Session extends DirectoryThread implements Closeable
 
 
 
+  /**
+   * Returns whether the message just sent can be kept in the current frame,
+   * waiting for more messages to be sent with it. Frames are flushed when no
+   * more messages are waiting to be sent, so that batching does not delay
+   * messages when the load is low, or when the frame is large or old enough.
+   */
+  private boolean isBatching(final boolean moreToSend)
+  {
+    if (frameOutput == null)
+    {
+      return false;
+    }
+    // Threads waiting to publish will flush the current frame
+    final boolean morePending = moreToSend || publishLock.hasQueuedThreads();
+    return morePending
+        && frameOutput.getFrameLength() < MAX_FRAME_LENGTH
+        && System.nanoTime() - frameStartTime < MAX_FRAME_DELAY_NS;
+  }
+
+  /**
+   * Starts batching the messages sent on this session into frames, and
+   * compressing the frames if requested. This has no effect if the negotiated
+   * protocol version does not support it.
+   * <p>
+   * Both peers must call this method once the start messages have been
+   * exchanged and the security layer has been negotiated, before sending or
+   * receiving any other message.
+   *
+   * @param compress
+   *          Whether the messages sent to the remote peer should be
+   *          compressed. The remote peer can read compressed messages
+   *          regardless of its own configuration.
+   */
+  public void startBatching(final boolean compress)
+  {
+    if (protocolVersion < ProtocolVersion.REPLICATION_PROTOCOL_V9)
+    {
+      return;
+    }
+
+    publishLock.lock();
+    try
+    {
+      frameOutput = new FrameOutputStream(output, compress);
+      output = frameOutput;
+      frameInput = new FrameInputStream(input);
+      input = frameInput;
+    }
+    finally
+    {
+      publishLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the ratio between the size of the messages sent on this session
+   * and the number of bytes written to the socket.
+   *
+   * @return the compression ratio of the messages sent on this session, which
+   *         is 1 when messages are not compressed
+   */
+  public double getCompressionRatio()
+  {
+    final FrameOutputStream out = frameOutput;
+    return out != null ? round(out.getCompressionRatio()) : 1;
+  }
+
+  /**
+   * Returns the average number of messages sent each time messages were
+   * flushed to the socket.
+   *
+   * @return the average number of messages per flush, which is 1 when messages
+   *         are not batched
+   */
+  public double getMessagesPerFlush()
+  {
+    final long flushes = flushCount;
+    return flushes != 0 ? round((double) sentMsgCount / flushes) : 1;
+  }
+
+  private static double round(double value)
+  {
+    return Math.round(value * 100) / 100.0;
+  }
+
   /**
    * Attempt to receive a ReplicationMsg.
    * This method should block the calling thread until a
@@ -392,6 +528,7 @@ public final class Session extends DirectoryThread implements Closeable
   public ReplicationMsg receive() throws IOException,
       DataFormatException, NotSupportedOldVersionPDUException
   {
+    isReceiving = true;
     try
     {
       /*
@@ -427,6 +564,15 @@ public final class Session extends DirectoryThread implements Closeable
       setSessionError(e);
       throw e;
     }
+    finally
+    {
+      isReceiving = false;
+      if (closeInitiated)
+      {
+        // The session has been closed while receiving: release the frame input stream now that it is not read anymore
+        StaticUtils.close(frameInput);
+      }
+    }
   }
 
   private void read(byte[] buffer) throws IOException
@@ -547,7 +693,7 @@ public final class Session extends DirectoryThread implements Closeable
       }
       try
       {
-        send(buffer);
+        send(buffer, !sendQueue.isEmpty());
       }
       catch (IOException e)
       {
@@ -38,6 +38,7 @@ import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.common.ServerStatus;
 import org.opends.server.replication.common.StatusMachine;
 import org.opends.server.replication.common.StatusMachineEvent;
+import org.opends.server.replication.plugin.MultimasterReplication;
 import org.opends.server.replication.protocol.ChangeStatusMsg;
 import org.opends.server.replication.protocol.ProtocolVersion;
 import org.opends.server.replication.protocol.ReplServerStartDSMsg;
@@ -48,6 +49,8 @@ import org.opends.server.replication.protocol.StartMsg;
 import org.opends.server.replication.protocol.StartSessionMsg;
 import org.opends.server.replication.protocol.StopMsg;
 import org.opends.server.replication.protocol.TopologyMsg;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.UpdateRingBuffer.PublishedUpdate;
 import org.opends.server.types.DirectoryException;
 
 /**
@@ -287,6 +290,18 @@ public class DataServerHandler extends ServerHandler
     return true;
   }
 
+  @Override
+  protected UpdateMsg selectUpdate(PublishedUpdate update)
+  {
+    // Do not forward the change to the server that just sent it
+    if (update.getSourceHandler() == this
+        || replicationServerDomain.isUpdateMsgFiltered(update.getUpdateMsg(), this))
+    {
+      return null;
+    }
+    return update.getUpdateMsgFor(getServerId());
+  }
+
   /**
    * Process message of a remote server changing his status.
    * @param csMsg The message containing the new status
@@ -415,6 +430,7 @@ public class DataServerHandler extends ServerHandler
         {
           session.stopEncryption();
         }
+        session.startBatching(MultimasterReplication.isMessageCompressionEnabled());
 
         // wait and process StartSessionMsg from remote RS
         StartSessionMsg inStartSessionMsg =
@@ -31,6 +31,7 @@ import org.opends.server.core.DirectoryServer;
 import org.opends.server.replication.common.CSN;
 import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.UpdateRingBuffer.PublishedUpdate;
 import org.opends.server.replication.server.changelog.api.ChangelogException;
 import org.opends.server.replication.server.changelog.api.DBCursor;
 import org.forgerock.opendj.ldap.DN;
@@ -45,20 +46,18 @@ import org.opends.server.types.InitializationException;
  * current RS.
  *
  * MessageHandlers are registered into Replication server domains.
- * When an update message is received by a domain, the domain forwards
- * the message to the registered message handlers.
- * LocalizableMessage are buffered into a queue.
- * Consumers are expected to come and consume the UpdateMsg from the queue.
+ * When an update message is received by a domain, the domain publishes
+ * the message into its {@link UpdateRingBuffer}, shared by all the registered
+ * message handlers. Each message handler follows the ring buffer with its own
+ * sequence number, selecting the messages it must send to its server.
+ * When it falls off the end of the ring buffer, a message handler reads the
+ * messages from the changelog until it can follow the ring buffer again.
  */
 class MessageHandler extends MonitorProvider<MonitorProviderCfg>
 {
   /** The logger of this class. */
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
-  private static final int MINIMUM_TRESHOLD_MSG_QUEUE_SIZE = 5;
-
-  /** UpdateMsg queue. */
-  private final MsgQueue msgQueue = new MsgQueue();
   /**
    * Late queue. All access to the lateQueue in getNextMessage() is
    * single-threaded. However, reads from threads calling getOlderUpdateCN()
@@ -75,10 +74,13 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   private int inCount;
   /** Specifies the max queue size for this handler. */
   protected final int maxQueueSize;
-  /** Specifies the max queue size in bytes for this handler. */
-  private final int maxQueueBytesSize;
   /** Specifies whether the consumer is following the producer (is not late). */
-  private boolean following;
+  private volatile boolean following;
+  /**
+   * The sequence number of the next update to read from the ring buffer of
+   * the domain, only meaningful when following.
+   */
+  private volatile long nextSequence;
   /** Specifies the current serverState of this handler. */
   private ServerState serverState;
   /** Specifies the baseDN of the domain. */
@@ -101,52 +103,20 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   MessageHandler(int queueSize, ReplicationServer replicationServer)
   {
     this.maxQueueSize = queueSize;
-    this.maxQueueBytesSize = queueSize * 100;
     this.replicationServer = replicationServer;
   }
 
   /**
-   * Add an update to the list of updates that must be sent to the server
-   * managed by this Handler.
+   * Selects the update to send to the server managed by this handler among
+   * the updates published in the domain.
    *
-   * @param update The update that must be added to the list of updates of
-   * this handler.
+   * @param update The update published in the domain.
+   * @return The update message to send to the server, or {@code null} if the
+   *         update must not be sent to the server.
    */
-  void add(UpdateMsg update)
+  protected UpdateMsg selectUpdate(PublishedUpdate update)
   {
-    synchronized (msgQueue)
-    {
-      /*
-       * If queue was empty the writer thread was probably asleep
-       * waiting for some changes, wake it up
-       */
-      if (msgQueue.isEmpty())
-      {
-        msgQueue.notify();
-      }
-
-      msgQueue.add(update);
-
-      // TODO : size should be configurable and larger than max-receive-queue-size
-      while (isMsgQueueAboveThreshold())
-      {
-        following = false;
-        msgQueue.removeFirst();
-      }
-    }
-  }
-
-  private boolean isMsgQueueAboveThreshold()
-  {
-    final long count = msgQueue.count();
-    // ensure there is a minimum number of messages in queue to avoid wrong behavior
-    return count > maxQueueSize
-        || (count >= MINIMUM_TRESHOLD_MSG_QUEUE_SIZE && msgQueue.bytesCount() > maxQueueBytesSize);
-  }
-
-  private boolean isMsgQueueBelowThreshold()
-  {
-    return !isMsgQueueAboveThreshold();
+    return update.getUpdateMsg();
   }
 
   /**
@@ -198,10 +168,26 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   @Override
   public MonitorData getMonitorData()
   {
+    int queueSize = 0;
+    long queueBytesSize = 0;
+    if (following && replicationServerDomain != null)
+    {
+      final UpdateRingBuffer updates = replicationServerDomain.getUpdateRingBuffer();
+      final long tailSequence = updates.getTailSequence();
+      for (long seq = Math.max(nextSequence, updates.getHeadSequence()); seq < tailSequence; seq++)
+      {
+        final PublishedUpdate update = updates.getUpdate(seq);
+        if (update != null)
+        {
+          queueSize++;
+          queueBytesSize += update.getUpdateMsg().size();
+        }
+      }
+    }
     MonitorData attributes = new MonitorData(4);
     attributes.add("handler", getMonitorInstanceName());
-    attributes.add("queue-size", msgQueue.count());
-    attributes.add("queue-size-bytes", msgQueue.bytesCount());
+    attributes.add("queue-size", queueSize);
+    attributes.add("queue-size-bytes", queueBytesSize);
     attributes.add("following", following);
     return attributes;
   }
@@ -219,139 +205,120 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   }
 
   /**
-   * Get the next update that must be sent to the consumer from the message queue or from the database.
+   * Get the next update that must be sent to the consumer from the ring buffer of the domain or from the database.
    *
-   * @return The next update that must be sent to the consumer, or {@code null} when queue is empty
+   * @return The next update that must be sent to the consumer, or {@code null} when the consumer is not active
    * @throws ChangelogException
    *            If a problem occurs when reading the changelog
    */
   protected UpdateMsg getNextMessage() throws ChangelogException
   {
+    final UpdateRingBuffer updates = replicationServerDomain.getUpdateRingBuffer();
     while (activeConsumer)
     {
       if (!following)
       {
         /* this server is late with regard to some other masters
          * in the topology or just joined the topology.
-         * In such cases, we can't keep all changes in the queue
-         * without saturating the memory, we therefore use
-         * a lateQueue that is filled with a few changes from the changelogDB
-         * If this server is able to close the gap, it will start using again
-         * the regular msgQueue later.
+         * In such cases, the updates it misses are no longer in the ring
+         * buffer, we therefore use a lateQueue that is filled with a few
+         * changes from the changelogDB.
+         * If this server is able to close the gap, it will start following
+         * the ring buffer again later.
          */
         if (lateQueue.isEmpty())
         {
-          /*
-           * Start from the server State
-           * Loop until the queue high mark or until no more changes
-           *   for each known LDAP master
-           *      get the next CSN after this last one :
-           *         - try to get next from the file
-           *         - if not found in the file
-           *             - try to get the next from the queue
-           *   select the smallest of changes
-           *   check if it is in the memory tree
-           *     yes : lock memory tree.
-           *           check all changes from the list, remove the ones that
-           *           are already sent
-           *           unlock memory tree
-           *           restart as usual
-           *   load this change on the delayList
-           */
+          // Read the head first: the updates evicted meanwhile are checked too
+          final long headSequence = updates.getHeadSequence();
+          if (updates.canFollowFromHead(serverState))
+          {
+            // All the updates evicted from the ring buffer have been sent:
+            // the updates of the ring buffer already sent will be skipped
+            followFrom(headSequence);
+            continue;
+          }
+
+          // Updates published after this point are not missed by the changelog cursor
+          final long tailSequence = updates.getTailSequence();
           fillLateQueue();
           if (lateQueue.isEmpty())
           {
             // we could not find any messages in the changelog
             // so the remote server is not late anymore.
-            synchronized (msgQueue)
-            {
-              // Ensure we are below threshold so this server will follow the
-              // msgQueue without fearing the msgQueue gets trimmed
-              if (isMsgQueueBelowThreshold())
-              {
-                following = true;
-              }
-            }
-          }
-          else
-          {
-            /*
-             * if the first change in the lateQueue is also on the regular queue,
-             * we can resume the processing from the regular queue
-             * -> set following to true and empty the lateQueue.
-             */
-            UpdateMsg msg = lateQueue.first();
-            synchronized (msgQueue)
-            {
-              if (msgQueue.contains(msg))
-              {
-                /* we finally catch up with the regular queue */
-                following = true;
-                lateQueue.clear();
-                msgQueue.consumeUpTo(msg);
-                if (updateServerState(msg))
-                {
-                  return msg;
-                }
-              }
-            }
+            followFrom(tailSequence);
           }
+          continue;
         }
-        else
+
+        // get the next change from the lateQueue
+        UpdateMsg msg;
+        synchronized (lateQueue)
         {
-          // get the next change from the lateQueue
-          UpdateMsg msg;
-          synchronized (msgQueue) // TODO JNR why synchronize(msgQueue) here?
-          {
-            msg = lateQueue.removeFirst();
-          }
-          if (updateServerState(msg))
-          {
-            return msg;
-          }
-          continue;
+          msg = lateQueue.removeFirst();
+        }
+        if (updateServerState(msg))
+        {
+          return msg;
         }
+        continue;
       }
 
-      synchronized (msgQueue)
+      final long sequence = nextSequence;
+      final PublishedUpdate update;
+      try
       {
-        if (following)
+        update = updates.awaitUpdate(sequence, 500);
+      }
+      catch (InterruptedException e)
+      {
+        return null;
+      }
+      if (update == null)
+      {
+        if (updates.isEvicted(sequence))
         {
-          try
-          {
-            while (msgQueue.isEmpty() && following)
-            {
-              msgQueue.wait(500);
-              if (!activeConsumer)
-              {
-                return null;
-              }
-            }
-          } catch (InterruptedException e)
-          {
-            return null;
-          }
-          UpdateMsg msg = msgQueue.removeFirst();
-          if (updateServerState(msg))
-          {
-            /*
-             * Only push the message if it has not yet been seen
-             * by the other server.
-             * Otherwise just loop to select the next message.
-             */
-            return msg;
-          }
+          // this server fell off the end of the ring buffer
+          following = false;
         }
+        continue;
+      }
+
+      nextSequence = sequence + 1;
+      final UpdateMsg msg = selectUpdate(update);
+      if (msg != null && updateServerState(msg))
+      {
+        /*
+         * Only push the message if it has not yet been seen
+         * by the other server.
+         * Otherwise just loop to select the next message.
+         */
+        return msg;
       }
-      /*
-       * Need to loop because following flag may have gone to false between the
-       * first check at the beginning of this method and the second check just
-       * above.
-       */
     }
     return null;
   }
 
+  private void followFrom(long sequence)
+  {
+    nextSequence = sequence;
+    following = true;
+  }
+
+  /**
+   * Returns the number of updates of the ring buffer of the domain which have
+   * not been read yet by this handler, only meaningful when following. This
+   * includes the updates which will not be sent to the server, like its own
+   * updates.
+   */
+  private int getPendingUpdatesCount()
+  {
+    if (replicationServerDomain == null)
+    {
+      return 0;
+    }
+    return (int) replicationServerDomain.getUpdateRingBuffer().getUpdatesCountFrom(nextSequence);
+  }
+
   /**
    * Fills the late queue with the most recent changes, accepting only the
    * messages from provided replica ids.
@@ -379,35 +346,31 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   public CSN getOlderUpdateCSN()
   {
-    synchronized (msgQueue)
+    if (following)
     {
-      if (following)
+      if (replicationServerDomain == null)
       {
-        if (!msgQueue.isEmpty())
-        {
-          return msgQueue.first().getCSN();
-        }
+        return null;
       }
-      else
+      final PublishedUpdate update = replicationServerDomain.getUpdateRingBuffer().getOldestUpdateFrom(nextSequence);
+      return update != null ? update.getUpdateMsg().getCSN() : null;
+    }
+
+    synchronized (lateQueue)
+    {
+      if (!lateQueue.isEmpty())
       {
-        if (!lateQueue.isEmpty())
-        {
-          return lateQueue.first().getCSN();
-        }
-        else
-        {
-          /*
-          following is false AND lateQueue is empty
-          We may be at the very moment when the writer has emptied the
-          lateQueue when it sent the last update. The writer will fill again
-          the lateQueue when it will send the next update but we are not yet
-          there. So let's take the last change not sent directly from the db.
-          */
-          return findOldestCSNFromReplicaDBs();
-        }
+        return lateQueue.first().getCSN();
       }
     }
-    return null;
+    /*
+    following is false AND lateQueue is empty
+    We may be at the very moment when the writer has emptied the
+    lateQueue when it sent the last update. The writer will fill again
+    the lateQueue when it will send the next update but we are not yet
+    there. So let's take the last change not sent directly from the db.
+    */
+    return findOldestCSNFromReplicaDBs();
   }
 
   private CSN findOldestCSNFromReplicaDBs()
@@ -445,27 +408,25 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   public int getRcvMsgQueueSize()
   {
-    synchronized (msgQueue)
+    /*
+     * When the server is up to date or close to be up to date,
+     * the number of updates to be sent is the number of updates of the ring
+     * buffer which have not been read yet.
+     */
+    if (following)
     {
-      /*
-       * When the server is up to date or close to be up to date,
-       * the number of updates to be sent is the size of the receive queue.
-       */
-      if (following)
-      {
-        return msgQueue.count();
-      }
-
-      /*
-       * When the server is not able to follow, the msgQueue may become too
-       * large and therefore won't contain all the changes. Some changes may
-       * only be stored in the backing DB of the servers.
-       * The total size of the receive queue is calculated by doing the sum of
-       * the number of missing changes for every replicaDB.
-       */
-      ServerState latestState = replicationServerDomain.getLatestServerState();
-      return ServerState.diffChanges(latestState, serverState);
+      return getPendingUpdatesCount();
     }
+
+    /*
+     * When the server is not able to follow, the ring buffer does not contain
+     * all the changes. Some changes may only be stored in the backing DB of
+     * the servers.
+     * The total size of the receive queue is calculated by doing the sum of
+     * the number of missing changes for every replicaDB.
+     */
+    ServerState latestState = replicationServerDomain.getLatestServerState();
+    return ServerState.diffChanges(latestState, serverState);
   }
 
   /**
@@ -564,11 +525,9 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   /** Shutdown this handler. */
   public void shutdown()
   {
-    synchronized (msgQueue)
+    if (replicationServerDomain != null)
     {
-      msgQueue.clear();
-      msgQueue.notify();
-      msgQueue.notifyAll();
+      replicationServerDomain.getUpdateRingBuffer().wakeUpConsumers();
     }
 
     DirectoryServer.deregisterMonitorProvider(this);
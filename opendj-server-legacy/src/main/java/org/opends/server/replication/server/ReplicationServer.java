@@ -1047,6 +1047,16 @@ public class ReplicationServer
     return this.config.getAssuredTimeout();
   }
 
+  /**
+   * Get the maximum number of updates kept in memory for each domain.
+   *
+   * @return The maximum number of updates kept in memory for each domain.
+   */
+  public int getQueueSize()
+  {
+    return this.config.getQueueSize();
+  }
+
   /**
    * Get The replication server group id.
    * @return The replication server group id.
@@ -58,6 +58,7 @@ import org.opends.server.replication.protocol.ResetGenerationIdMsg;
 import org.opends.server.replication.protocol.RoutableMsg;
 import org.opends.server.replication.protocol.TopologyMsg;
 import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.UpdateRingBuffer.PublishedUpdate;
 import org.opends.server.replication.server.changelog.api.ChangelogException;
 import org.opends.server.replication.server.changelog.api.DBCursor;
 import org.opends.server.replication.server.changelog.api.DBCursor.CursorOptions;
@@ -110,21 +111,23 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
   private final ReplicationDomainMonitor domainMonitor = new ReplicationDomainMonitor(this);
 
   /**
-   * The following map contains one balanced tree for each replica ID to which
-   * we are currently publishing the first update in the balanced tree is the
-   * next change that we must push to this particular server.
+   * The following map contains one ServerHandler for each replica ID to which
+   * we are currently publishing updates.
    */
   private final Map<Integer, DataServerHandler> connectedDSs = new ConcurrentHashMap<>();
 
   /**
    * This map contains one ServerHandler for each replication servers with which
-   * we are connected (so normally all the replication servers) the first update
-   * in the balanced tree is the next change that we must push to this
-   * particular server.
+   * we are connected (so normally all the replication servers).
    */
   private final Map<Integer, ReplicationServerHandler> connectedRSs = new ConcurrentHashMap<>();
 
   private final ReplicationDomainDB domainDB;
+  /**
+   * The updates published in this domain, shared by all the connected servers
+   * which follow them instead of reading them from the changelog.
+   */
+  private final UpdateRingBuffer updates;
   /** The ReplicationServer that created the current instance. */
   private final ReplicationServer localReplicationServer;
 
@@ -284,6 +287,7 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
         + ") assured timer for domain \"" + baseDN + "\"", true);
     this.domainDB =
         localReplicationServer.getChangelogDB().getReplicationDomainDB();
+    this.updates = new UpdateRingBuffer(localReplicationServer.getQueueSize(), getLatestServerState());
     this.statusAnalyzer = new StatusAnalyzer(this);
     this.statusAnalyzer.start();
     DirectoryServer.registerMonitorProvider(this);
@@ -347,35 +351,31 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
     final NotAssuredUpdateMsg notAssuredUpdateMsg =
         preparedAssuredInfo != null ? new NotAssuredUpdateMsg(updateMsg) : null;
 
-    // Push the message to the replication servers
-    if (sourceHandler.isDataServer())
-    {
-      for (ReplicationServerHandler rsHandler : connectedRSs.values())
-      {
-        /**
-         * Ignore updates to RS with bad gen id
-         * (no system managed status for a RS)
-         */
-        if (!isDifferentGenerationId(rsHandler, updateMsg))
-        {
-          addUpdate(rsHandler, updateMsg, notAssuredUpdateMsg, assuredServers);
-        }
-      }
-    }
+    // Push the message to the replication servers and to the LDAP servers,
+    // each of them selecting the messages it must send
+    updates.publish(new PublishedUpdate(updateMsg, notAssuredUpdateMsg, assuredServers, sourceHandler));
+  }
 
-    // Push the message to the LDAP servers
-    for (DataServerHandler dsHandler : connectedDSs.values())
-    {
-      // Do not forward the change to the server that just sent it
-      if (dsHandler != sourceHandler
-          && !isUpdateMsgFiltered(updateMsg, dsHandler))
-      {
-        addUpdate(dsHandler, updateMsg, notAssuredUpdateMsg, assuredServers);
-      }
-    }
+  /**
+   * Returns the updates published in this domain.
+   *
+   * @return the updates published in this domain
+   */
+  UpdateRingBuffer getUpdateRingBuffer()
+  {
+    return updates;
   }
 
-  private boolean isDifferentGenerationId(ReplicationServerHandler rsHandler,
+  /**
+   * Ignore updates to RS with bad gen id (no system managed status for a RS).
+   *
+   * @param rsHandler
+   *          the handler of the replication server to which the update may be sent
+   * @param updateMsg
+   *          the update
+   * @return {@code true} if the replication server has a different generation id
+   */
+  boolean isDifferentGenerationId(ReplicationServerHandler rsHandler,
       UpdateMsg updateMsg)
   {
     final boolean isDifferent = isDifferentGenerationId(rsHandler.getGenerationId());
@@ -400,8 +400,14 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
    * if the updates are not necessary so this check to stop sending updates is
    * interesting anyway. Not taking the RSD lock allows to have better
    * performances in normal mode (most of the time).
+   *
+   * @param updateMsg
+   *          the update
+   * @param dsHandler
+   *          the handler of the directory server to which the update may be sent
+   * @return {@code true} if the update must not be sent to the directory server
    */
-  private boolean isUpdateMsgFiltered(UpdateMsg updateMsg, DataServerHandler dsHandler)
+  boolean isUpdateMsgFiltered(UpdateMsg updateMsg, DataServerHandler dsHandler)
   {
     final ServerStatus dsStatus = dsHandler.getStatus();
     if (dsStatus == ServerStatus.BAD_GEN_ID_STATUS)
@@ -535,22 +541,6 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
     }
   }
 
-  private void addUpdate(ServerHandler sHandler, UpdateMsg updateMsg,
-      NotAssuredUpdateMsg notAssuredUpdateMsg, List<Integer> assuredServers)
-  {
-    // Assured mode: post an assured or not assured matching update message
-    // according to what has been computed for the destination server
-    if (notAssuredUpdateMsg != null
-        && !assuredServers.contains(sHandler.getServerId()))
-    {
-      sHandler.add(notAssuredUpdateMsg);
-    }
-    else
-    {
-      sHandler.add(updateMsg);
-    }
-  }
-
   /**
    * Helper class to be the return type of a method that processes a just
    * received assured update message:
@@ -34,12 +34,15 @@ import org.opends.server.replication.common.DSInfo;
 import org.opends.server.replication.common.RSInfo;
 import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.common.ServerStatus;
+import org.opends.server.replication.plugin.MultimasterReplication;
 import org.opends.server.replication.protocol.ProtocolVersion;
 import org.opends.server.replication.protocol.ReplServerStartMsg;
 import org.opends.server.replication.protocol.ReplicationMsg;
 import org.opends.server.replication.protocol.Session;
 import org.opends.server.replication.protocol.StopMsg;
 import org.opends.server.replication.protocol.TopologyMsg;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.UpdateRingBuffer.PublishedUpdate;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.HostPort;
 
@@ -208,6 +211,7 @@ public class ReplicationServerHandler extends ServerHandler
       {
         session.stopEncryption();
       }
+      session.startBatching(MultimasterReplication.isMessageCompressionEnabled());
 
       if (getProtocolVersion() > ProtocolVersion.REPLICATION_PROTOCOL_V1)
       {
@@ -310,6 +314,7 @@ public class ReplicationServerHandler extends ServerHandler
       {
         session.stopEncryption();
       }
+      session.startBatching(MultimasterReplication.isMessageCompressionEnabled());
 
       TopologyMsg inTopoMsg = null;
       if (getProtocolVersion() > ProtocolVersion.REPLICATION_PROTOCOL_V1)
@@ -525,6 +530,19 @@ public class ReplicationServerHandler extends ServerHandler
     return false;
   }
 
+  @Override
+  protected UpdateMsg selectUpdate(PublishedUpdate update)
+  {
+    // Only forward the changes received from directory servers, and ignore
+    // updates to RS with bad gen id (no system managed status for a RS)
+    if (!update.getSourceHandler().isDataServer()
+        || replicationServerDomain.isDifferentGenerationId(this, update.getUpdateMsg()))
+    {
+      return null;
+    }
+    return update.getUpdateMsgFor(getServerId());
+  }
+
   /**
    * Add the DSinfos of the connected Directory Servers
    * to the List of DSInfo provided as a parameter.
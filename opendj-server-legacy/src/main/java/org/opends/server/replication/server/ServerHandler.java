@@ -523,6 +523,10 @@ public abstract class ServerHandler extends MessageHandler
     // Encryption
     attributes.add("ssl-encryption", session.isEncrypted());
 
+    // Transport
+    attributes.add("compression-ratio", session.getCompressionRatio());
+    attributes.add("messages-per-flush", session.getMessagesPerFlush());
+
     // Data generation
     attributes.add("generation-id", generationId);
 
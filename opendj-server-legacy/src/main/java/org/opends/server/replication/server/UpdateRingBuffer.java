@@ -0,0 +1,381 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opends.server.replication.common.ServerState;
+import org.opends.server.replication.protocol.UpdateMsg;
+
+/**
+ * A bounded ring buffer of the updates published in a replication server domain, shared by all
+ * the message handlers of the domain.
+ * <p>
+ * Each update is stored once, whatever the number of connected servers. Updates are numbered by
+ * sequence numbers in publication order, and each message handler follows the updates with its
+ * own sequence number, selecting the updates it must send. When publishing an update evicts
+ * updates a message handler has not read yet, this message handler falls off the end of the ring
+ * buffer and must read the missing updates from the changelog, until it can follow the ring buffer
+ * again.
+ * <p>
+ * Only publishing and evicting updates take the lock of the ring buffer. Message handlers read the
+ * published updates without locking, and park only when they have read all of them.
+ */
+@ThreadSafe
+final class UpdateRingBuffer
+{
+  /** The minimum number of updates kept in the ring buffer, whatever their size. */
+  private static final int MINIMUM_UPDATES = 5;
+  /** The average size of an update, used to bound the number of bytes of the ring buffer. */
+  private static final int AVERAGE_UPDATE_SIZE = 100;
+
+  /** An update published in a replication server domain, together with what is needed to select it. */
+  static final class PublishedUpdate
+  {
+    private final UpdateMsg updateMsg;
+    private final UpdateMsg notAssuredUpdateMsg;
+    private final List<Integer> assuredServers;
+    private final ServerHandler sourceHandler;
+
+    /**
+     * Creates a new published update.
+     *
+     * @param updateMsg
+     *          the update which has been received
+     * @param notAssuredUpdateMsg
+     *          the same update with the assured flag disabled, to be sent to the servers from which
+     *          no acknowledgment is expected, or {@code null} if the update is not assured
+     * @param assuredServers
+     *          the ids of the servers from which an acknowledgment is expected
+     * @param sourceHandler
+     *          the handler of the server from which the update was received
+     */
+    PublishedUpdate(UpdateMsg updateMsg, UpdateMsg notAssuredUpdateMsg, List<Integer> assuredServers,
+        ServerHandler sourceHandler)
+    {
+      this.updateMsg = updateMsg;
+      this.notAssuredUpdateMsg = notAssuredUpdateMsg;
+      this.assuredServers = assuredServers;
+      this.sourceHandler = sourceHandler;
+    }
+
+    /**
+     * Returns the update which has been received.
+     *
+     * @return the update which has been received
+     */
+    UpdateMsg getUpdateMsg()
+    {
+      return updateMsg;
+    }
+
+    /**
+     * Returns the handler of the server from which the update was received.
+     *
+     * @return the handler of the server from which the update was received
+     */
+    ServerHandler getSourceHandler()
+    {
+      return sourceHandler;
+    }
+
+    /**
+     * Returns the update to send to the provided server: assured if an acknowledgment is expected
+     * from this server, not assured otherwise.
+     *
+     * @param serverId
+     *          the id of the server to which the update will be sent
+     * @return the update to send to the provided server
+     */
+    UpdateMsg getUpdateMsgFor(int serverId)
+    {
+      if (notAssuredUpdateMsg != null && !assuredServers.contains(serverId))
+      {
+        return notAssuredUpdateMsg;
+      }
+      return updateMsg;
+    }
+
+    @Override
+    public String toString()
+    {
+      return updateMsg.toString();
+    }
+  }
+
+  /** A slot of the ring buffer, holding a published update together with its sequence number. */
+  private static final class Slot
+  {
+    private final long sequence;
+    private final PublishedUpdate update;
+
+    private Slot(long sequence, PublishedUpdate update)
+    {
+      this.sequence = sequence;
+      this.update = update;
+    }
+  }
+
+  private final AtomicReferenceArray<Slot> slots;
+  private final long maxBytesCount;
+  /**
+   * The sequence number of the oldest update of the ring buffer. Only modified while holding the lock
+   * of this ring buffer.
+   */
+  private volatile long head;
+  /**
+   * The sequence number of the next update to be published. Only modified while holding the lock of
+   * this ring buffer.
+   */
+  private volatile long tail;
+  /** The total number of bytes of the updates of the ring buffer, guarded by the lock of this ring buffer. */
+  private long bytesCount;
+  /**
+   * The most recent CSN of the evicted updates, and of the updates published before the creation of
+   * this ring buffer, for each replica. Guarded by the lock of this ring buffer.
+   */
+  private final ServerState evictedState = new ServerState();
+  /** The threads of the message handlers waiting for the next update to be published. */
+  private final Set<Thread> waitingConsumers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+  /**
+   * Creates a new ring buffer.
+   *
+   * @param capacity
+   *          the maximum number of updates kept in the ring buffer
+   * @param changelogState
+   *          the state of the updates already in the changelog, which are considered as evicted
+   *          since they can only be read from the changelog
+   */
+  UpdateRingBuffer(int capacity, ServerState changelogState)
+  {
+    this.slots = new AtomicReferenceArray<>(Math.max(capacity, MINIMUM_UPDATES));
+    this.maxBytesCount = (long) slots.length() * AVERAGE_UPDATE_SIZE;
+    this.evictedState.update(changelogState);
+  }
+
+  /**
+   * Publishes an update, evicting the oldest updates if the ring buffer is full, and wakes up the
+   * message handlers waiting for it.
+   * <p>
+   * Publishers are serialized by the lock of this ring buffer, which also guards the eviction
+   * bookkeeping. Message handlers read the published updates without taking this lock.
+   *
+   * @param update
+   *          the update to publish
+   */
+  void publish(PublishedUpdate update)
+  {
+    synchronized (this)
+    {
+      // Evict the update stored in the slot before reusing it
+      if (tail - head == slots.length())
+      {
+        evictHead();
+      }
+      slots.set(index(tail), new Slot(tail, update));
+      bytesCount += update.getUpdateMsg().size();
+      tail++;
+      while (tail - head > MINIMUM_UPDATES && bytesCount > maxBytesCount)
+      {
+        evictHead();
+      }
+    }
+
+    // A waiting message handler either sees the new tail before parking, or is unparked here
+    wakeUpConsumers();
+  }
+
+  private void evictHead()
+  {
+    final int index = index(head);
+    final UpdateMsg evicted = slots.get(index).update.getUpdateMsg();
+    slots.set(index, null);
+    bytesCount -= evicted.size();
+    evictedState.update(evicted.getCSN());
+    head++;
+  }
+
+  private int index(long sequence)
+  {
+    return (int) (sequence % slots.length());
+  }
+
+  /**
+   * Returns the sequence number of the oldest update of the ring buffer.
+   *
+   * @return the sequence number of the oldest update of the ring buffer
+   */
+  long getHeadSequence()
+  {
+    return head;
+  }
+
+  /**
+   * Returns the sequence number of the next update to be published.
+   *
+   * @return the sequence number of the next update to be published
+   */
+  long getTailSequence()
+  {
+    return tail;
+  }
+
+  /**
+   * Indicates whether the update with the provided sequence number has been evicted from the ring
+   * buffer.
+   *
+   * @param sequence
+   *          the sequence number of an update
+   * @return {@code true} if the update has been evicted from the ring buffer
+   */
+  boolean isEvicted(long sequence)
+  {
+    return sequence < head;
+  }
+
+  /**
+   * Indicates whether a message handler which has sent the updates of the provided state can
+   * follow the ring buffer from its oldest update, without missing any of the evicted updates.
+   *
+   * @param serverState
+   *          the state of the server handled by the message handler
+   * @return {@code true} if the provided state covers all the evicted updates
+   */
+  synchronized boolean canFollowFromHead(ServerState serverState)
+  {
+    return serverState.cover(evictedState);
+  }
+
+  /**
+   * Returns the update with the provided sequence number, without waiting for it to be published.
+   *
+   * @param sequence
+   *          the sequence number of the update
+   * @return the update, or {@code null} if it has not been published yet or if it has been evicted
+   *         from the ring buffer
+   */
+  PublishedUpdate getUpdate(long sequence)
+  {
+    if (sequence >= tail)
+    {
+      return null;
+    }
+    // The slot may have been reused for a more recent update since reading the tail
+    final Slot slot = slots.get(index(sequence));
+    return slot != null && slot.sequence == sequence ? slot.update : null;
+  }
+
+  /**
+   * Returns the update with the provided sequence number, waiting for it to be published if
+   * needed.
+   *
+   * @param sequence
+   *          the sequence number of the update
+   * @param timeout
+   *          the maximum time to wait for the update, in milliseconds
+   * @return the update, or {@code null} if it has not been published before the timeout or if it
+   *         has been evicted from the ring buffer
+   * @throws InterruptedException
+   *           if interrupted while waiting for the update
+   */
+  PublishedUpdate awaitUpdate(long sequence, long timeout) throws InterruptedException
+  {
+    if (sequence >= tail)
+    {
+      final Thread consumer = Thread.currentThread();
+      waitingConsumers.add(consumer);
+      try
+      {
+        if (sequence >= tail)
+        {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeout));
+        }
+      }
+      finally
+      {
+        waitingConsumers.remove(consumer);
+      }
+      if (Thread.interrupted())
+      {
+        throw new InterruptedException();
+      }
+    }
+    return getUpdate(sequence);
+  }
+
+  /**
+   * Returns the number of updates of the ring buffer from the provided sequence number.
+   *
+   * @param sequence
+   *          the sequence number of the first update to count
+   * @return the number of updates of the ring buffer from the provided sequence number
+   */
+  long getUpdatesCountFrom(long sequence)
+  {
+    final long tailSequence = tail;
+    return Math.max(0, tailSequence - Math.max(sequence, head));
+  }
+
+  /**
+   * Returns the oldest update of the ring buffer from the provided sequence number.
+   *
+   * @param sequence
+   *          the sequence number of the first update to consider
+   * @return the oldest update of the ring buffer from the provided sequence number, or {@code null}
+   *         if there is none
+   */
+  PublishedUpdate getOldestUpdateFrom(long sequence)
+  {
+    while (true)
+    {
+      final long from = Math.max(sequence, head);
+      if (from >= tail)
+      {
+        return null;
+      }
+      final PublishedUpdate update = getUpdate(from);
+      if (update != null)
+      {
+        return update;
+      }
+      // The update has just been evicted, retry from the new head
+    }
+  }
+
+  /** Wakes up the message handlers waiting for updates, for example when they are stopping. */
+  void wakeUpConsumers()
+  {
+    for (Thread consumer : waitingConsumers)
+    {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + " head=" + head + " tail=" + tail + " bytesCount=" + bytesCount;
+  }
+}
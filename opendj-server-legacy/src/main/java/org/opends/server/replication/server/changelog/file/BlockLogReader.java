@@ -162,6 +162,45 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     return Pair.of(false, null);
   }
 
+  /**
+   * Position the reader to the record corresponding to the provided key and
+   * matching and positioning strategies, using the sparse index of the provided
+   * summary of the log file rather than a binary search to find the block to
+   * read from. Returns the last record read.
+   *
+   * @param key
+   *          Key to use as a start position. Key must not be {@code null}.
+   * @param matchStrategy
+   *          The key matching strategy.
+   * @param positionStrategy
+   *          The positioning strategy.
+   * @param summary
+   *          The summary of the log file, or {@code null} if it is not
+   *          available, in which case the block is found by a binary search.
+   * @return The pair (key_found, last_record_read), as returned by
+   *         {@link #seekToRecord(Comparable, KeyMatchingStrategy, PositionStrategy)}
+   * @throws ChangelogException
+   *           If an error occurs when seeking the key.
+   */
+  public Pair<Boolean, Record<K,V>> seekToRecord(
+      final K key,
+      final KeyMatchingStrategy matchStrategy,
+      final PositionStrategy positionStrategy,
+      final LogFileSummary<K, V> summary)
+          throws ChangelogException
+  {
+    if (summary == null)
+    {
+      return seekToRecord(key, matchStrategy, positionStrategy);
+    }
+    Reject.ifNull(key);
+    if (summary.getNumberOfRecords() == 0)
+    {
+      return Pair.of(false, null);
+    }
+    return positionToKey(summary.getBlockStartToKey(key), key, matchStrategy, positionStrategy);
+  }
+
   /**
    * Position the reader to the provided file position.
    *
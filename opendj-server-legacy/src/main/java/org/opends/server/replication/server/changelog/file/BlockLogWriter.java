@@ -47,6 +47,12 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
 
   private final LogWriter writer;
 
+  /**
+   * The summary of the records written in the log file, or {@code null} if it is unknown because the log file was
+   * not empty when opened.
+   */
+  private volatile LogFileSummary<K, V> summary;
+
   /**
    * Creates a writer for the provided log writer and parser.
    *
@@ -106,6 +112,7 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
     this.writer = writer;
     this.parser = parser;
     this.blockSize = blockSize;
+    this.summary = writer.getBytesWritten() == 0 ? new LogFileSummary<K, V>() : null;
   }
 
   /**
@@ -120,8 +127,13 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
   {
     try
     {
+      final long recordPosition = writer.getBytesWritten();
       write(parser.encodeRecord(record));
       writer.flush();
+      if (summary != null)
+      {
+        summary.add(record, recordPosition - recordPosition % blockSize);
+      }
     }
     catch (IOException e)
     {
@@ -140,6 +152,29 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
     return writer.getBytesWritten();
   }
 
+  /**
+   * Returns the summary of the records written in the log file.
+   *
+   * @return the summary, or {@code null} if it is unknown because the log file
+   *         was not empty when this writer was created
+   */
+  LogFileSummary<K, V> getSummary()
+  {
+    return summary;
+  }
+
+  /**
+   * Sets the summary of the records already present in the log file, which
+   * must be up to date. This writer keeps it up to date from now on.
+   *
+   * @param summary
+   *          The summary of the records already present in the log file.
+   */
+  void setSummary(final LogFileSummary<K, V> summary)
+  {
+    this.summary = summary;
+  }
+
   /**
    * Synchronize all modifications to the log file to the underlying device.
    *
@@ -70,6 +70,10 @@ import org.opends.server.util.StaticUtils;
  * read-only file and a new empty head log file is opened. There is no limit on the
  * number of read-only files, but they can be purged.
  * <p>
+ * When rotating the head log file, the summary of the read-only file is written to
+ * a sidecar file, so that the read-only files need not be read to count their records,
+ * to retrieve their oldest and newest records or to find the block containing a key.
+ * <p>
  * A log is obtained using the {@code Log.openLog()} method and must always be
  * released using the {@code close()} method.
  * <p>
@@ -983,8 +987,10 @@ final class Log<K extends Comparable<K>, V> implements Closeable
 
     final LogFile<K, V> headLogFile = getHeadLogFile();
     final File readOnlyLogFile = new File(logPath, generateReadOnlyFileName(headLogFile));
+    final LogFileSummary<K, V> summary = headLogFile.getSummary();
     headLogFile.close();
     renameHeadLogFileTo(readOnlyLogFile);
+    LogFile.writeSummaryFile(readOnlyLogFile, summary, recordParser);
 
     openHeadLogFile();
     openReadOnlyLogFile(readOnlyLogFile);
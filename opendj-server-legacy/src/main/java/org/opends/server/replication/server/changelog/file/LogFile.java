@@ -59,6 +59,9 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
   /** The file containing the records. */
   private final File logfile;
 
+  /** The parser of records. */
+  private final RecordParser<K, V> parser;
+
   /** The pool to obtain a reader on the log. */
   private final LogReaderPool<K, V> readerPool;
 
@@ -79,6 +82,13 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
 
   private Record<K, V> newestRecord;
 
+  /**
+   * The summary of a read-only log file, which may be {@code null} until it is
+   * computed if the log file has no valid summary file. The summary of a
+   * write-enabled log file is maintained by its writer.
+   */
+  private volatile LogFileSummary<K, V> summary;
+
   /**
    * Creates a new log file.
    *
@@ -97,6 +107,7 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
   {
     Reject.ifNull(logFilePath, parser);
     this.logfile = logFilePath;
+    this.parser = parser;
     this.isWriteEnabled = isWriteEnabled;
 
     createLogFileIfNotExists();
@@ -108,6 +119,7 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     else
     {
       writer = null;
+      summary = readSummaryFile();
     }
     readerPool = new LogReaderPool<>(logfile, parser);
 
@@ -224,6 +236,113 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     }
   }
 
+  /** Reads the summary file of this read-only log file, returning {@code null} if it is missing or invalid. */
+  private LogFileSummary<K, V> readSummaryFile()
+  {
+    try
+    {
+      return LogFileSummary.readFrom(logfile, parser);
+    }
+    catch (IOException | ChangelogException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the provided summary to the summary file of the provided read-only
+   * log file. Failing to write it is not an error: the log file will be read to
+   * compute its summary again the next time it is needed.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param <V>
+   *          Type of the value of a record.
+   * @param logFilePath
+   *          Path of the read-only log file.
+   * @param summary
+   *          The summary of the log file.
+   * @param parser
+   *          Parser of records.
+   */
+  static <K extends Comparable<K>, V> void writeSummaryFile(final File logFilePath, final LogFileSummary<K, V> summary,
+      final RecordParser<K, V> parser)
+  {
+    try
+    {
+      summary.writeTo(logFilePath, parser);
+    }
+    catch (IOException e)
+    {
+      logger.warn(WARN_CHANGELOG_UNABLE_TO_WRITE_LOG_FILE_SUMMARY.get(
+          logFilePath.getPath(), StaticUtils.stackTraceToSingleLineString(e)));
+    }
+  }
+
+  /**
+   * Returns the summary of this log file, computing it by reading the whole log
+   * file if it is not known yet.
+   * <p>
+   * The summary of a write-enabled log file is updated on each append, so it
+   * must be read while holding the shared lock.
+   *
+   * @return the summary of this log file
+   * @throws ChangelogException
+   *           If an error occurs while reading the log file.
+   */
+  LogFileSummary<K, V> getSummary() throws ChangelogException
+  {
+    LogFileSummary<K, V> result = getSummaryIfKnown();
+    if (result == null)
+    {
+      exclusiveLock.lock();
+      try
+      {
+        result = getSummaryIfKnown();
+        if (result == null)
+        {
+          result = computeSummary();
+          if (isWriteEnabled)
+          {
+            writer.setSummary(result);
+          }
+          else
+          {
+            writeSummaryFile(logfile, result, parser);
+            summary = result;
+          }
+        }
+      }
+      finally
+      {
+        exclusiveLock.unlock();
+      }
+    }
+    return result;
+  }
+
+  /** Returns the summary of this log file, or {@code null} if it is not known yet. */
+  private LogFileSummary<K, V> getSummaryIfKnown()
+  {
+    return isWriteEnabled ? writer.getSummary() : summary;
+  }
+
+  private LogFileSummary<K, V> computeSummary() throws ChangelogException
+  {
+    final LogFileSummary<K, V> newSummary = new LogFileSummary<>();
+    try (final LogFileCursor<K, V> cursor = getCursor())
+    {
+      long recordPosition = cursor.getFilePosition();
+      while (cursor.next())
+      {
+        newSummary.add(cursor.getRecord(), recordPosition - recordPosition % BlockLogReader.BLOCK_SIZE);
+        recordPosition = cursor.getFilePosition();
+      }
+    }
+    return newSummary;
+  }
+
   /**
    * Add the provided record at the end of this log.
    * <p>
@@ -350,6 +469,19 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
    */
   Record<K, V> getOldestRecord() throws ChangelogException
   {
+    final LogFileSummary<K, V> knownSummary = getSummaryIfKnown();
+    if (knownSummary != null)
+    {
+      sharedLock.lock();
+      try
+      {
+        return knownSummary.getOldestRecord();
+      }
+      finally
+      {
+        sharedLock.unlock();
+      }
+    }
     try (final DBCursor<Record<K, V>> cursor = getCursor())
     {
       return cursor.next() ? cursor.getRecord() : null;
@@ -365,6 +497,10 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
    */
   Record<K, V> getNewestRecord() throws ChangelogException
   {
+    if (newestRecord == null && !isWriteEnabled && summary != null)
+    {
+      newestRecord = summary.getNewestRecord();
+    }
     if (newestRecord == null)
     {
       try (BlockLogReader<K, V> reader = getReader())
@@ -396,15 +532,15 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
    */
   long getNumberOfRecords() throws ChangelogException
   {
-    // TODO  : need a more efficient way to retrieve it
-    try (final DBCursor<Record<K, V>> cursor = getCursor())
+    final LogFileSummary<K, V> knownSummary = getSummary();
+    sharedLock.lock();
+    try
     {
-      long counter = 0L;
-      while (cursor.next())
-      {
-        counter++;
-      }
-      return counter;
+      return knownSummary.getNumberOfRecords();
+    }
+    finally
+    {
+      sharedLock.unlock();
     }
   }
 
@@ -444,6 +580,11 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
       {
         throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_DELETE_LOG_FILE.get(getPath()));
       }
+      final File summaryFile = LogFileSummary.getSummaryFile(logfile);
+      if (summaryFile.exists() && !summaryFile.delete())
+      {
+        throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_DELETE_LOG_FILE.get(summaryFile.getPath()));
+      }
     }
     finally
     {
@@ -604,7 +745,7 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
       logFile.sharedLock.lock();
       try
       {
-        result = reader.seekToRecord(key, match, pos);
+        result = reader.seekToRecord(key, match, pos, logFile.getSummaryIfKnown());
       }
       finally
       {
@@ -0,0 +1,312 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+import org.opends.server.util.StaticUtils;
+
+/**
+ * Summary of the content of a log file: its number of records, its oldest and newest records, and a sparse index
+ * from keys to the block starts of the log file.
+ * <p>
+ * The summary of a read-only log file is stored in a sidecar file next to it, so that counting its records or
+ * retrieving its oldest and newest records requires no reading of the log file. The sparse index allows to seek to a
+ * key by reading a few blocks only, instead of a binary search over the whole log file.
+ * <p>
+ * The sidecar file also contains the length of the log file it summarizes: it is ignored if the log file has been
+ * modified since it was written.
+ *
+ * @param <K>
+ *          Type of the key of a record, which must be comparable.
+ * @param <V>
+ *          Type of the value of a record.
+ */
+final class LogFileSummary<K extends Comparable<K>, V>
+{
+  /** The suffix of the sidecar files containing the summaries of read-only log files. */
+  static final String SUMMARY_FILE_SUFFIX = ".summary";
+
+  /** The minimal number of bytes between two block starts of the sparse index. */
+  static final int INDEX_INTERVAL = 16 * 1024;
+
+  /** Magic number starting and ending a summary file, ensuring it has been fully written. */
+  private static final int MAGIC_NUMBER = 0x4C4F4753;
+  private static final byte FORMAT_VERSION = 1;
+
+  private final int indexInterval;
+  private long numberOfRecords;
+  private Record<K, V> oldestRecord;
+  private Record<K, V> newestRecord;
+
+  /**
+   * The sparse index: the key of the first record starting at or after each indexed block start. Reading a record
+   * from an indexed block start returns this record or a previous one.
+   */
+  private final List<K> indexKeys = new ArrayList<>();
+  private long[] indexBlockStarts = new long[16];
+
+  /** Creates an empty summary. */
+  LogFileSummary()
+  {
+    this(INDEX_INTERVAL);
+  }
+
+  /**
+   * Creates an empty summary with the provided index interval.
+   * <p>
+   * This constructor is intended for tests only, to allow tuning of the index density.
+   *
+   * @param indexInterval
+   *          The minimal number of bytes between two block starts of the sparse index.
+   */
+  LogFileSummary(final int indexInterval)
+  {
+    this.indexInterval = indexInterval;
+  }
+
+  /**
+   * Returns the sidecar file containing the summary of the provided log file.
+   *
+   * @param logFile
+   *          The log file.
+   * @return the summary file
+   */
+  static File getSummaryFile(final File logFile)
+  {
+    return new File(logFile.getParentFile(), logFile.getName() + SUMMARY_FILE_SUFFIX);
+  }
+
+  /**
+   * Adds a record appended to the log file to this summary.
+   *
+   * @param record
+   *          The record appended to the log file.
+   * @param blockStartPosition
+   *          The position of the closest block start before or at the position of the record in the log file.
+   */
+  void add(final Record<K, V> record, final long blockStartPosition)
+  {
+    if (oldestRecord == null)
+    {
+      oldestRecord = record;
+    }
+    newestRecord = record;
+    numberOfRecords++;
+
+    final int size = indexKeys.size();
+    if (size == 0 || blockStartPosition >= indexBlockStarts[size - 1] + indexInterval)
+    {
+      if (size == indexBlockStarts.length)
+      {
+        indexBlockStarts = Arrays.copyOf(indexBlockStarts, size * 2);
+      }
+      indexBlockStarts[size] = blockStartPosition;
+      indexKeys.add(record.getKey());
+    }
+  }
+
+  /**
+   * Returns the number of records in the log file.
+   *
+   * @return the number of records
+   */
+  long getNumberOfRecords()
+  {
+    return numberOfRecords;
+  }
+
+  /**
+   * Returns the oldest (first) record of the log file.
+   *
+   * @return the oldest record, or {@code null} if the log file is empty
+   */
+  Record<K, V> getOldestRecord()
+  {
+    return oldestRecord;
+  }
+
+  /**
+   * Returns the newest (last) record of the log file.
+   *
+   * @return the newest record, or {@code null} if the log file is empty
+   */
+  Record<K, V> getNewestRecord()
+  {
+    return newestRecord;
+  }
+
+  /**
+   * Returns the block start from which the log file must be read to find the provided key. The first record read
+   * from the returned block start has a key lower than or equal to the provided key, unless it is the oldest record.
+   *
+   * @param key
+   *          The key to find.
+   * @return the file position of the block start to read from
+   */
+  long getBlockStartToKey(final K key)
+  {
+    int low = 0;
+    int high = indexKeys.size() - 1;
+    long blockStart = 0;
+    while (low <= high)
+    {
+      final int middle = (low + high) >>> 1;
+      if (indexKeys.get(middle).compareTo(key) <= 0)
+      {
+        blockStart = indexBlockStarts[middle];
+        low = middle + 1;
+      }
+      else
+      {
+        high = middle - 1;
+      }
+    }
+    return blockStart;
+  }
+
+  /**
+   * Writes this summary to the sidecar file of the provided log file. The summary is first written to a temporary
+   * file, which is renamed once complete.
+   *
+   * @param logFile
+   *          The log file summarized by this summary, which must not be modified anymore.
+   * @param parser
+   *          The parser to encode the records and keys.
+   * @throws IOException
+   *           If the summary file cannot be written.
+   */
+  void writeTo(final File logFile, final RecordParser<K, V> parser) throws IOException
+  {
+    final File summaryFile = getSummaryFile(logFile);
+    final File tempFile = new File(summaryFile.getPath() + ".tmp");
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+    {
+      output.writeInt(MAGIC_NUMBER);
+      output.writeByte(FORMAT_VERSION);
+      output.writeLong(logFile.length());
+      output.writeLong(numberOfRecords);
+      writeRecord(output, oldestRecord, parser);
+      writeRecord(output, newestRecord, parser);
+      output.writeInt(indexKeys.size());
+      for (int i = 0; i < indexKeys.size(); i++)
+      {
+        output.writeLong(indexBlockStarts[i]);
+        output.writeUTF(parser.encodeKeyToString(indexKeys.get(i)));
+      }
+      output.writeInt(MAGIC_NUMBER);
+    }
+    StaticUtils.renameFile(tempFile, summaryFile);
+  }
+
+  private void writeRecord(final DataOutputStream output, final Record<K, V> record, final RecordParser<K, V> parser)
+      throws IOException
+  {
+    if (record == null)
+    {
+      output.writeInt(-1);
+      return;
+    }
+    final ByteString data = parser.encodeRecord(record);
+    output.writeInt(data.length());
+    data.copyTo(output);
+  }
+
+  /**
+   * Reads the summary of the provided log file from its sidecar file.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param <V>
+   *          Type of the value of a record.
+   * @param logFile
+   *          The log file.
+   * @param parser
+   *          The parser to decode the records and keys.
+   * @return the summary of the log file, or {@code null} if there is no sidecar file or if it does not match the
+   *         current content of the log file
+   * @throws IOException
+   *           If the summary file cannot be read.
+   * @throws ChangelogException
+   *           If the summary file cannot be decoded.
+   */
+  static <K extends Comparable<K>, V> LogFileSummary<K, V> readFrom(final File logFile,
+      final RecordParser<K, V> parser) throws IOException, ChangelogException
+  {
+    final File summaryFile = getSummaryFile(logFile);
+    if (!summaryFile.isFile())
+    {
+      return null;
+    }
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(summaryFile))))
+    {
+      if (input.readInt() != MAGIC_NUMBER || input.readByte() != FORMAT_VERSION
+          || input.readLong() != logFile.length())
+      {
+        return null;
+      }
+      final LogFileSummary<K, V> summary = new LogFileSummary<>();
+      summary.numberOfRecords = input.readLong();
+      summary.oldestRecord = readRecord(input, parser);
+      summary.newestRecord = readRecord(input, parser);
+      if (summary.numberOfRecords > 0 && (summary.oldestRecord == null || summary.newestRecord == null))
+      {
+        return null;
+      }
+      final int indexSize = input.readInt();
+      summary.indexBlockStarts = new long[Math.max(indexSize, 1)];
+      for (int i = 0; i < indexSize; i++)
+      {
+        summary.indexBlockStarts[i] = input.readLong();
+        summary.indexKeys.add(parser.decodeKeyFromString(input.readUTF()));
+      }
+      return input.readInt() == MAGIC_NUMBER ? summary : null;
+    }
+  }
+
+  private static <K extends Comparable<K>, V> Record<K, V> readRecord(final DataInputStream input,
+      final RecordParser<K, V> parser) throws IOException, ChangelogException
+  {
+    final int length = input.readInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    final byte[] data = new byte[length];
+    input.readFully(data);
+    return parser.decodeRecord(ByteString.wrap(data));
+  }
+
+  @Override
+  public String toString()
+  {
+    return "LogFileSummary [numberOfRecords=" + numberOfRecords + ", oldestRecord=" + oldestRecord
+        + ", newestRecord=" + newestRecord + ", indexSize=" + indexKeys.size() + "]";
+  }
+}
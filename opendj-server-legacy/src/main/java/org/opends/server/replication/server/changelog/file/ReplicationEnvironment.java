@@ -86,6 +86,9 @@ import static org.opends.messages.ReplicationMessages.*;
  * <li>The "head.log" file, which is the more recent log file where records are appended.</li>
  * <li>Zero to many read-only log files named after the lowest key
  * and highest key present in the log file (they all end with the ".log" suffix.</li>
+ * <li>One summary file per read-only log file, named after the log file with the ".summary"
+ *  suffix appended, which contains its number of records, oldest and newest records and a sparse index
+ *  of its keys.</li>
  * <li>Optionally, a "offline.state" file that indicates that this particular server id
  *  of the domain is offline. This file contains the offline CSN, encoded as a String on a single line.</li>
  * </ul>
@@ -1115,6 +1115,7 @@ public class ReplicationBroker
       {
         newSession.stopEncryption();
       }
+      newSession.startBatching(MultimasterReplication.isMessageCompressionEnabled());
 
       hasConnected = true;
 
@@ -2826,6 +2827,26 @@ public class ReplicationBroker
     return session != null ? session.isEncrypted() : false;
   }
 
+  /**
+   * Returns the compression ratio of the messages sent to the replication server.
+   * @return the compression ratio of the messages sent to the replication server.
+   */
+  public double getSessionCompressionRatio()
+  {
+    final Session session = connectedRS.get().session;
+    return session != null ? session.getCompressionRatio() : 1;
+  }
+
+  /**
+   * Returns the average number of messages sent to the replication server per flush.
+   * @return the average number of messages sent to the replication server per flush.
+   */
+  public double getSessionMessagesPerFlush()
+  {
+    final Session session = connectedRS.get().session;
+    return session != null ? session.getMessagesPerFlush() : 1;
+  }
+
   /**
    * Signals the RS we just entered a new status.
    * @param newStatus The status the local DS just entered
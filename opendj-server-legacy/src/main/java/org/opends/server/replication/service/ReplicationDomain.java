@@ -1162,6 +1162,17 @@ public abstract class ReplicationDomain
 
     private short exporterProtocolVersion = -1;
 
+    /** Whether the entries are sent as binary records rather than as LDIF. */
+    private boolean binaryEntryFormat;
+    /** Whether the format of the entries has been detected from the received bytes. */
+    private boolean entryFormatDetected;
+    /** The number of bytes of the length of the current binary record counted so far. */
+    private int recordLengthBytes;
+    /** The length of the current binary record, as counted so far. */
+    private int recordLength;
+    /** The number of bytes of the current binary record which have not been counted yet. */
+    private int recordBytesLeft;
+
     /** Window used during this initialization. */
     private int initWindow;
 
@@ -1227,6 +1238,10 @@ public abstract class ReplicationDomain
     {
       entryCount = total;
       entryLeftCount = total;
+      recordLengthBytes = 0;
+      recordLength = 0;
+      recordBytesLeft = 0;
+      entryFormatDetected = false;
 
       if (initializeTask instanceof InitializeTask)
       {
@@ -1268,6 +1283,87 @@ public abstract class ReplicationDomain
       }
     }
 
+    /**
+     * Counts the number of entries ending in the provided bytes, which are the
+     * next bytes of the entries exchanged during the initialization.
+     *
+     * @param bytes  the array containing the bytes of the entries.
+     * @param pos    the position of the first byte in the array.
+     * @param length the number of bytes.
+     * @return the number of entries ending in the provided bytes.
+     */
+    private int countEntries(byte[] bytes, int pos, int length)
+    {
+      if (!binaryEntryFormat)
+      {
+        return countEntryLimits(bytes, pos, length);
+      }
+
+      // Binary records may span several messages: remember where we stopped
+      int nbEntries = 0;
+      int i = pos;
+      final int end = pos + length;
+      while (i < end)
+      {
+        if (recordBytesLeft > 0)
+        {
+          final int nbBytes = Math.min(recordBytesLeft, end - i);
+          recordBytesLeft -= nbBytes;
+          i += nbBytes;
+          if (recordBytesLeft == 0)
+          {
+            nbEntries++;
+          }
+        }
+        else
+        {
+          recordLength = (recordLength << 8) | (bytes[i++] & 0xFF);
+          if (++recordLengthBytes == 4)
+          {
+            recordBytesLeft = recordLength;
+            recordLengthBytes = 0;
+            recordLength = 0;
+          }
+        }
+      }
+      return nbEntries;
+    }
+
+    /**
+     * Detects the format of the entries from the first bytes received during
+     * an import. The binaryEntryFormat flag of the InitializeTargetMsg cannot
+     * be relied upon: it is lost when the entries are routed through a
+     * replication server which does not support the protocol V10.
+     * <p>
+     * The first byte of a binary record is the most significant byte of its
+     * length, which is a control character for any entry smaller than 160MB,
+     * while LDIF data starts with a printable character or a line separator.
+     *
+     * @param bytes the first bytes received during the import.
+     */
+    private void detectEntryFormat(byte[] bytes)
+    {
+      if (!entryFormatDetected && bytes.length > 0)
+      {
+        entryFormatDetected = true;
+        final byte firstByte = bytes[0];
+        binaryEntryFormat = 0 <= firstByte && firstByte < ' '
+            && firstByte != '\n' && firstByte != '\r';
+      }
+    }
+
+    /**
+     * Returns whether the entries are sent as binary records rather than as
+     * LDIF during this initialization.
+     *
+     * @return whether the entries are sent as binary records rather than as
+     *         LDIF.
+     */
+    public boolean isBinaryEntryFormat()
+    {
+      return binaryEntryFormat;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString()
@@ -1512,11 +1608,13 @@ public abstract class ReplicationDomain
         ieCtx.msgCnt = 0;
         ieCtx.initNumLostConnections = broker.getNumLostConnections();
         ieCtx.initWindow = initWindow;
+        ieCtx.binaryEntryFormat = canSendBinaryEntries(ieCtx.startList);
 
         // Send start message to the peer
         InitializeTargetMsg initTargetMsg = new InitializeTargetMsg(
             getBaseDN(), getServerId(), serverToInitialize,
             serverRunningTheTask, ieCtx.entryCount, initWindow);
+        initTargetMsg.setBinaryEntryFormat(ieCtx.binaryEntryFormat);
 
         broker.publish(initTargetMsg);
 
@@ -1921,7 +2019,8 @@ public abstract class ReplicationDomain
         {
           EntryMsg entryMsg = (EntryMsg)msg;
           byte[] entryBytes = entryMsg.getEntryBytes();
-          ieCtx.updateCounters(countEntryLimits(entryBytes));
+          ieCtx.detectEntryFormat(entryBytes);
+          ieCtx.updateCounters(ieCtx.countEntries(entryBytes, 0, entryBytes.length));
 
           if (ieCtx.exporterProtocolVersion >=
             ProtocolVersion.REPLICATION_PROTOCOL_V4)
@@ -1998,19 +2097,6 @@ public abstract class ReplicationDomain
     }
   }
 
-  /**
-   * Count the number of entries in the provided byte[].
-   * This is based on the hypothesis that the entries are separated
-   * by a "\n\n" String.
-   *
-   * @param   entryBytes the set of bytes containing one or more entries.
-   * @return  The number of entries in the provided byte[].
-   */
-  private int countEntryLimits(byte[] entryBytes)
-  {
-    return countEntryLimits(entryBytes, 0, entryBytes.length);
-  }
-
   /**
    * Count the number of entries in the provided byte[].
    * This is based on the hypothesis that the entries are separated
@@ -2146,7 +2232,7 @@ public abstract class ReplicationDomain
     // publish succeeded
     try
     {
-      ieCtx.updateCounters(countEntryLimits(lDIFEntry, pos, length));
+      ieCtx.updateCounters(ieCtx.countEntries(lDIFEntry, pos, length));
     }
     catch (DirectoryException de)
     {
@@ -2289,6 +2375,7 @@ public abstract class ReplicationDomain
       ieCtx.initializeCounters(initTargetMsgReceived.getEntryCount());
       ieCtx.initWindow = initTargetMsgReceived.getInitWindow();
       ieCtx.exporterProtocolVersion = getProtocolVersion(source);
+      ieCtx.binaryEntryFormat = initTargetMsgReceived.isBinaryEntryFormat();
       initFromTask = (InitializeTask) ieCtx.initializeTask;
 
       // Launch the import
@@ -2408,6 +2495,30 @@ public abstract class ReplicationDomain
     } // finally
   }
 
+  /**
+   * Returns whether the entries of a total update can be sent as binary
+   * records to the provided servers, which requires the backend to support it,
+   * and the replication server and all the servers to support the replication
+   * protocol V10.
+   */
+  private boolean canSendBinaryEntries(Set<Integer> targetServerIds)
+  {
+    if (!supportsBinaryEntryExport()
+        || broker.getProtocolVersion() < ProtocolVersion.REPLICATION_PROTOCOL_V10
+        || targetServerIds.isEmpty())
+    {
+      return false;
+    }
+    for (int serverId : targetServerIds)
+    {
+      if (getProtocolVersion(serverId) < ProtocolVersion.REPLICATION_PROTOCOL_V10)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Return the protocol version of the DS related to the provided serverId.
    * Returns -1 when the protocol version is not known.
@@ -2690,6 +2801,24 @@ public abstract class ReplicationDomain
     return broker != null && broker.isSessionEncrypted();
   }
 
+  /**
+   * Returns the compression ratio of the messages sent to the replication server.
+   * @return the compression ratio of the messages sent to the replication server.
+   */
+  double getSessionCompressionRatio()
+  {
+    return broker != null ? broker.getSessionCompressionRatio() : 1;
+  }
+
+  /**
+   * Returns the average number of messages sent to the replication server per flush.
+   * @return the average number of messages sent to the replication server per flush.
+   */
+  double getSessionMessagesPerFlush()
+  {
+    return broker != null ? broker.getSessionMessagesPerFlush() : 1;
+  }
+
   /**
    * Check if the domain is connected to a ReplicationServer.
    *
@@ -3139,6 +3268,22 @@ public abstract class ReplicationDomain
   protected abstract void exportBackend(OutputStream output)
            throws DirectoryException;
 
+  /**
+   * Indicates whether the replicated data can be exported as binary entry
+   * records rather than as LDIF, in which case {@link #exportBackend} must
+   * produce binary records when the {@link ImportExportContext} of the export
+   * {@link ImportExportContext#isBinaryEntryFormat() requires it}, and
+   * {@link #importBackend} must read binary records when the context of the
+   * import requires it.
+   *
+   * @return {@code true} if the replicated data can be exported as binary
+   *         entry records, {@code false} otherwise.
+   */
+  protected boolean supportsBinaryEntryExport()
+  {
+    return false;
+  }
+
   /**
    * This method should trigger an import of the replicated data.
    *
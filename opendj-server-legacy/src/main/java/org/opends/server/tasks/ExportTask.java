@@ -79,11 +79,15 @@ public class ExportTask extends Task
     argDisplayMap.put(ATTR_TASK_EXPORT_INCLUDE_BRANCH, INFO_EXPORT_ARG_INCL_BRANCH.get());
     argDisplayMap.put(ATTR_TASK_EXPORT_EXCLUDE_BRANCH, INFO_EXPORT_ARG_EXCL_BRANCH.get());
     argDisplayMap.put(ATTR_TASK_EXPORT_WRAP_COLUMN, INFO_EXPORT_ARG_WRAP_COLUMN.get());
+    argDisplayMap.put(ATTR_TASK_EXPORT_THREAD_COUNT, INFO_EXPORT_ARG_THREAD_COUNT.get());
+    argDisplayMap.put(ATTR_TASK_EXPORT_SHARD_COUNT, INFO_EXPORT_ARG_SHARD_COUNT.get());
   }
 
   private String  ldifFile;
   private String  backendID;
   private int     wrapColumn;
+  private int     threadCount;
+  private int     shardCount;
   private boolean appendToLDIF;
   private boolean compressLDIF;
   private boolean encryptLDIF;
@@ -161,6 +165,8 @@ public class ExportTask extends Task
 
     List<Attribute> attrList = taskEntry.getAttribute(typeWrapColumn);
     wrapColumn = TaskUtils.getSingleValueInteger(attrList, 0);
+    threadCount = toInt(taskEntry, 1, ATTR_TASK_EXPORT_THREAD_COUNT);
+    shardCount = toInt(taskEntry, 1, ATTR_TASK_EXPORT_SHARD_COUNT);
 
     includeOperationalAttributes = toBoolean(taskEntry, true, ATTR_TASK_EXPORT_INCLUDE_OPERATIONAL_ATTRIBUTES);
   }
@@ -172,6 +178,13 @@ public class ExportTask extends Task
     return TaskUtils.getBoolean(attrs, defaultValue);
   }
 
+  private int toInt(Entry entry, int defaultValue, String attrName)
+  {
+    final AttributeType attrType = getAttributeType(attrName);
+    final List<Attribute> attrs = entry.getAttribute(attrType);
+    return TaskUtils.getSingleValueInteger(attrs, defaultValue);
+  }
+
   private ArrayList<String> toListOfString(Entry entry, String attrName)
   {
     final AttributeType attrType = getAttributeType(attrName);
@@ -366,6 +379,8 @@ public class ExportTask extends Task
     exportConfig.setIncludeFilters(includeFilters);
     exportConfig.setSignHash(signHash);
     exportConfig.setWrapColumn(wrapColumn);
+    exportConfig.setThreadCount(threadCount);
+    exportConfig.setShardCount(shardCount);
     exportConfig.setIncludeOperationalAttributes(includeOperationalAttributes);
 
     // FIXME -- Should this be conditional?
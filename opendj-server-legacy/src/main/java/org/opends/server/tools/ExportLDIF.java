@@ -135,6 +135,8 @@ public class ExportLDIF extends TaskTool {
   private BooleanArgument excludeOperationalAttrs;
   private BooleanArgument signHash;
   private IntegerArgument wrapColumn;
+  private IntegerArgument threadCount;
+  private IntegerArgument shardCount;
   private StringArgument  backendID;
   private StringArgument  configClass;
   private StringArgument  configFile;
@@ -254,6 +256,20 @@ public class ExportLDIF extends TaskTool {
                       .defaultValue(0)
                       .valuePlaceholder(INFO_WRAP_COLUMN_PLACEHOLDER.get())
                       .buildAndAddToParser(argParser);
+      threadCount =
+              IntegerArgument.builder("threadCount")
+                      .description(INFO_LDIFEXPORT_DESCRIPTION_THREAD_COUNT.get())
+                      .lowerBound(0)
+                      .defaultValue(1)
+                      .valuePlaceholder(INFO_LDIFIMPORT_THREAD_COUNT_PLACEHOLDER.get())
+                      .buildAndAddToParser(argParser);
+      shardCount =
+              IntegerArgument.builder("shardCount")
+                      .description(INFO_LDIFEXPORT_DESCRIPTION_SHARD_COUNT.get())
+                      .lowerBound(1)
+                      .defaultValue(1)
+                      .valuePlaceholder(INFO_LDIFIMPORT_THREAD_COUNT_PLACEHOLDER.get())
+                      .buildAndAddToParser(argParser);
       compressLDIF =
               BooleanArgument.builder(OPTION_LONG_COMPRESS)
                       .shortIdentifier(OPTION_SHORT_COMPRESS)
@@ -346,6 +362,8 @@ public class ExportLDIF extends TaskTool {
     addAttribute(attributes, ATTR_TASK_EXPORT_INCLUDE_BRANCH, includeBranchStrings.getValues());
     addAttribute(attributes, ATTR_TASK_EXPORT_EXCLUDE_BRANCH, excludeBranchStrings.getValues());
     addAttribute(attributes, ATTR_TASK_EXPORT_WRAP_COLUMN, wrapColumn);
+    addAttribute(attributes, ATTR_TASK_EXPORT_THREAD_COUNT, threadCount);
+    addAttribute(attributes, ATTR_TASK_EXPORT_SHARD_COUNT, shardCount);
 
     if (excludeOperationalAttrs.isPresent())
     {
@@ -713,6 +731,26 @@ public class ExportLDIF extends TaskTool {
       return 1;
     }
 
+    try
+    {
+      exportConfig.setThreadCount(threadCount.getIntValue());
+    }
+    catch (ArgumentException ae)
+    {
+      logger.error(ERR_LDIFEXPORT_CANNOT_PARSE_THREAD_COUNT, threadCount.getValue(), ae.getMessage());
+      return 1;
+    }
+
+    try
+    {
+      exportConfig.setShardCount(shardCount.getIntValue());
+    }
+    catch (ArgumentException ae)
+    {
+      logger.error(ERR_LDIFEXPORT_CANNOT_PARSE_SHARD_COUNT, shardCount.getValue(), ae.getMessage());
+      return 1;
+    }
+
 
     // Get the set of base DNs for the backend as an array.
     DN[] baseDNs = new DN[baseDNList.size()];
@@ -49,6 +49,7 @@ import org.opends.server.util.BuildVersion;
 import com.forgerock.opendj.cli.ArgumentException;
 import com.forgerock.opendj.cli.ArgumentParser;
 import com.forgerock.opendj.cli.BooleanArgument;
+import com.forgerock.opendj.cli.IntegerArgument;
 import com.forgerock.opendj.cli.StringArgument;
 
 /**
@@ -101,6 +102,8 @@ public class VerifyIndex
     StringArgument  indexList               = null;
     BooleanArgument cleanMode               = null;
     BooleanArgument countErrors             = null;
+    IntegerArgument threadCount             = null;
+    IntegerArgument samplingPercentage      = null;
     BooleanArgument displayUsage            = null;
 
 
@@ -156,6 +159,20 @@ public class VerifyIndex
               BooleanArgument.builder("countErrors")
                       .description(INFO_VERIFYINDEX_DESCRIPTION_COUNT_ERRORS.get())
                       .buildAndAddToParser(argParser);
+      threadCount =
+              IntegerArgument.builder("threadCount")
+                      .description(INFO_VERIFYINDEX_DESCRIPTION_THREAD_COUNT.get())
+                      .lowerBound(0)
+                      .defaultValue(1)
+                      .valuePlaceholder(INFO_LDIFIMPORT_THREAD_COUNT_PLACEHOLDER.get())
+                      .buildAndAddToParser(argParser);
+      samplingPercentage =
+              IntegerArgument.builder("samplingPercentage")
+                      .description(INFO_VERIFYINDEX_DESCRIPTION_SAMPLING_PERCENTAGE.get())
+                      .lowerBound(1)
+                      .defaultValue(100)
+                      .valuePlaceholder(INFO_PERCENTAGE_PLACEHOLDER.get())
+                      .buildAndAddToParser(argParser);
 
       displayUsage = showUsageArgument();
       argParser.addArgument(displayUsage);
@@ -344,6 +361,16 @@ public class VerifyIndex
     // Initialize the verify configuration.
     VerifyConfig verifyConfig = new VerifyConfig();
     verifyConfig.setBaseDN(verifyBaseDN);
+    try
+    {
+      verifyConfig.setThreadCount(threadCount.getIntValue());
+      verifyConfig.setSamplingPercentage(samplingPercentage.getIntValue());
+    }
+    catch (ArgumentException ae)
+    {
+      argParser.displayMessageAndUsageReference(err, ERR_ERROR_PARSING_ARGS.get(ae.getMessage()));
+      return 1;
+    }
     if (cleanMode.isPresent())
     {
       for (String s : indexList.getValues())
@@ -108,6 +108,12 @@ public class Entry
    */
   private final Map<AttributeType, List<Attribute>> suppressedAttributes = new LinkedHashMap<>();
 
+  /**
+   * The virtual attribute processing deferred until the attributes are
+   * accessed, or {@code null} if there is none.
+   */
+  private DeferredVirtualAttributes deferredVirtualAttributes;
+
   /** The set of objectclasses for this entry. */
   private Map<ObjectClass,String> objectClasses;
 
@@ -158,6 +164,20 @@ public class Entry
     this.operationalAttributes = newMapIfNull(operationalAttributes);
   }
 
+  /**
+   * Creates a new entry sharing the DN, object classes and attributes of the
+   * provided entry, including the virtual attribute processing deferred for
+   * them.
+   *
+   * @param entry
+   *          The entry whose content is shared with the new entry.
+   */
+  Entry(Entry entry)
+  {
+    this(entry.dn, entry.objectClasses, entry.userAttributes, entry.operationalAttributes);
+    deferredVirtualAttributes = entry.deferredVirtualAttributes;
+  }
+
   /**
    * Returns a new Map if the passed in Map is null.
    *
@@ -313,6 +333,7 @@ public class Entry
    */
   public List<Attribute> getAttributes()
   {
+    processDeferredVirtualAttributes();
     // Estimate the size.
     int size = userAttributes.size() + operationalAttributes.size();
 
@@ -338,6 +359,7 @@ public class Entry
    */
   public Map<AttributeType,List<Attribute>> getUserAttributes()
   {
+    processDeferredVirtualAttributes();
     return userAttributes;
   }
 
@@ -353,6 +375,7 @@ public class Entry
    */
   public Map<AttributeType,List<Attribute>> getOperationalAttributes()
   {
+    processDeferredVirtualAttributes();
     return operationalAttributes;
   }
 
@@ -459,6 +482,7 @@ public class Entry
       return !objectClasses.isEmpty() && !attributeDescription.hasOptions();
     }
 
+    processDeferredVirtualAttributes(attributeType, includeSubordinates);
     if (!includeSubordinates)
     {
       // It's possible that there could be an attribute without any
@@ -596,6 +620,7 @@ public class Entry
   public List<Attribute> getAttribute(AttributeType attributeType,
                                       boolean includeSubordinates)
   {
+    processDeferredVirtualAttributes(attributeType, includeSubordinates);
     if (includeSubordinates && !attributeType.isObjectClass())
     {
       List<Attribute> attributes = new LinkedList<>();
@@ -669,6 +694,7 @@ public class Entry
    */
   public List<Attribute> getAttribute(String lowerName)
   {
+    processDeferredVirtualAttributes();
     for (AttributeType attr : userAttributes.keySet())
     {
       if (attr.hasNameOrOID(lowerName))
@@ -709,6 +735,7 @@ public class Entry
   public List<Attribute> getAttribute(AttributeDescription attributeDescription)
   {
     AttributeType attributeType = attributeDescription.getAttributeType();
+    processDeferredVirtualAttributes(attributeType, true);
     List<Attribute> attributes = new LinkedList<>();
     if (!attributeType.isObjectClass())
     {
@@ -782,6 +809,7 @@ public class Entry
    */
   public boolean hasUserAttribute(AttributeType attributeType)
   {
+    processDeferredVirtualAttributes(attributeType, true);
     return hasAttribute(userAttributes, attributeType);
   }
 
@@ -801,6 +829,7 @@ public class Entry
    */
   public List<Attribute> getUserAttribute(AttributeType attributeType)
   {
+    processDeferredVirtualAttributes(attributeType, true);
     return getAttribute(attributeType, userAttributes);
   }
 
@@ -888,6 +917,7 @@ public class Entry
    */
   public boolean hasOperationalAttribute(AttributeType attributeType)
   {
+    processDeferredVirtualAttributes(attributeType, true);
     return hasAttribute(operationalAttributes, attributeType);
   }
 
@@ -923,6 +953,7 @@ public class Entry
    */
   public List<Attribute> getOperationalAttribute(AttributeType attributeType)
   {
+    processDeferredVirtualAttributes(attributeType, true);
     return getAttribute(attributeType, operationalAttributes);
   }
 
@@ -943,6 +974,7 @@ public class Entry
    */
   public List<Attribute> getOperationalAttribute(AttributeDescription attributeDescription)
   {
+    processDeferredVirtualAttributes(attributeDescription.getAttributeType(), true);
     return getAttribute(attributeDescription, operationalAttributes);
   }
 
@@ -963,7 +995,7 @@ public class Entry
                            List<Attribute> attributeList)
   {
     attachment = null;
-
+    processDeferredVirtualAttributes(attributeType, false);
 
     // See if there is already a set of attributes with the specified
     // type.  If so, then overwrite it.
@@ -1138,6 +1170,7 @@ public class Entry
       objectClasses.clear();
       return true;
     }
+    processDeferredVirtualAttributes(attributeType, false);
     return userAttributes.remove(attributeType) != null
         || operationalAttributes.remove(attributeType) != null;
   }
@@ -1211,6 +1244,7 @@ public class Entry
       return allSuccessful;
     }
 
+    processDeferredVirtualAttributes(attrType, false);
     List<Attribute> attributes = getAttributes(attrType);
     if (attributes == null)
     {
@@ -1548,6 +1582,7 @@ public class Entry
                                   boolean validateStructureRules,
                                   LocalizableMessageBuilder invalidReason)
   {
+    processDeferredVirtualAttributes();
     // Get the structural objectclass for the entry.  If there isn't
     // one, or if there's more than one, then see if that's OK.
     AcceptRejectWarn structuralPolicy =
@@ -2511,6 +2546,7 @@ public class Entry
       }
       return false;
     }
+    processDeferredVirtualAttributes(attrType, false);
     return userAttributes.containsKey(attrType)
         || operationalAttributes.containsKey(attrType);
   }
@@ -2554,6 +2590,7 @@ public class Entry
       return null;
     }
 
+    processDeferredVirtualAttributes(referralType, false);
     List<Attribute> refAttrs = userAttributes.get(referralType);
     if (refAttrs == null)
     {
@@ -2615,6 +2652,7 @@ public class Entry
       return null;
     }
 
+    processDeferredVirtualAttributes(aliasType, false);
     List<Attribute> aliasAttrs = userAttributes.get(aliasType);
     if (aliasAttrs == null)
     {
@@ -3050,34 +3088,111 @@ public class Entry
    */
   public void processVirtualAttributes()
   {
+    deferredVirtualAttributes = null;
     for (VirtualAttributeRule rule : DirectoryServer.getVirtualAttributes(this))
     {
-      AttributeType attributeType = rule.getAttributeType();
-      List<Attribute> attrList = userAttributes.get(attributeType);
-      if (attrList == null || attrList.isEmpty())
+      processVirtualAttribute(rule);
+    }
+
+    // Collective attributes.
+    processCollectiveAttributes();
+  }
+
+  /**
+   * Performs virtual attribute processing for this entry on demand: the
+   * virtual attribute rules and collective attribute subentries are only
+   * evaluated when an attribute they may provide is first accessed, so that
+   * operations which neither filter on nor return virtual attributes do not
+   * pay for them. This should only be called at the time the entry is decoded
+   * within the backend.
+   * <p>
+   * Deferred processing modifies the entry when it is read, so it must be
+   * completed with {@link #processDeferredVirtualAttributes()} before the
+   * entry is shared with other threads.
+   */
+  public void processVirtualAttributesOnDemand()
+  {
+    deferredVirtualAttributes = new DeferredVirtualAttributes(this, DirectoryServer.getVirtualAttributesByType());
+  }
+
+  /**
+   * Performs any virtual attribute processing for this entry which has been
+   * deferred by {@link #processVirtualAttributesOnDemand()}.
+   */
+  public void processDeferredVirtualAttributes()
+  {
+    if (deferredVirtualAttributes != null)
+    {
+      deferredVirtualAttributes.processAll();
+    }
+  }
+
+  /**
+   * Performs any deferred virtual attribute processing for the user attribute
+   * types.
+   */
+  private void processDeferredVirtualUserAttributes()
+  {
+    if (deferredVirtualAttributes != null)
+    {
+      deferredVirtualAttributes.processUserAttributes();
+    }
+  }
+
+  /**
+   * Performs any deferred virtual attribute processing for the provided
+   * attribute type.
+   *
+   * @param attributeType
+   *          the attribute type about to be accessed
+   * @param includeSubordinates
+   *          whether the subordinate attribute types are also accessed
+   */
+  private void processDeferredVirtualAttributes(AttributeType attributeType, boolean includeSubordinates)
+  {
+    if (deferredVirtualAttributes != null)
+    {
+      deferredVirtualAttributes.process(attributeType);
+      if (includeSubordinates)
       {
-        attrList = operationalAttributes.get(attributeType);
-        if (attrList == null || attrList.isEmpty())
+        for (AttributeType subType : schema.getSubTypes(attributeType))
         {
-          // There aren't any conflicts, so we can just add the attribute to the entry.
-          Attribute attr = new VirtualAttribute(attributeType, this, rule);
-          putAttributes(attributeType, newLinkedList(attr));
-        }
-        else
-        {
-          // There is a conflict with an existing operational attribute.
-          resolveVirtualConflict(rule, attrList, operationalAttributes, attributeType);
+          deferredVirtualAttributes.process(subType);
         }
       }
+    }
+  }
+
+  /**
+   * Adds the virtual attribute provided by a rule applicable to this entry.
+   *
+   * @param rule
+   *          the VirtualAttributeRule applicable to this entry
+   */
+  private void processVirtualAttribute(VirtualAttributeRule rule)
+  {
+    AttributeType attributeType = rule.getAttributeType();
+    List<Attribute> attrList = userAttributes.get(attributeType);
+    if (attrList == null || attrList.isEmpty())
+    {
+      attrList = operationalAttributes.get(attributeType);
+      if (attrList == null || attrList.isEmpty())
+      {
+        // There aren't any conflicts, so we can just add the attribute to the entry.
+        Attribute attr = new VirtualAttribute(attributeType, this, rule);
+        putAttributes(attributeType, newLinkedList(attr));
+      }
       else
       {
-        // There is a conflict with an existing user attribute.
-        resolveVirtualConflict(rule, attrList, userAttributes, attributeType);
+        // There is a conflict with an existing operational attribute.
+        resolveVirtualConflict(rule, attrList, operationalAttributes, attributeType);
       }
     }
-
-    // Collective attributes.
-    processCollectiveAttributes();
+    else
+    {
+      // There is a conflict with an existing user attribute.
+      resolveVirtualConflict(rule, attrList, userAttributes, attributeType);
+    }
   }
 
   /**
@@ -3273,6 +3388,11 @@ public class Entry
       {
         for (Attribute a : attrList)
         {
+          if (a.isVirtual() || a.isEmpty())
+          {
+            continue;
+          }
+
           byte[] nameBytes = getBytes(a.getNameWithOptions());
           buffer.appendBytes(nameBytes);
           buffer.appendByte(0x00);
@@ -3327,6 +3447,47 @@ public class Entry
   public static Entry decode(ByteSequenceReader entryBuffer,
                              CompressedSchema compressedSchema)
          throws DirectoryException
+  {
+    return decode(entryBuffer, compressedSchema, null);
+  }
+
+
+
+  /**
+   * Decodes the provided byte string as an entry, only decoding the
+   * headers of its attributes.
+   * <p>
+   * When the attribute descriptions of the entry are compressed, the
+   * values of each attribute are only decoded the first time the
+   * attributes of its type are accessed. Searches returning a few
+   * attributes of large entries thus only decode the attributes
+   * touched by the search filter, the access control evaluation and
+   * the requested attributes. Otherwise, the entry is fully decoded.
+   *
+   * @param  encodedEntry      The byte string containing the data to
+   *                           be decoded, which must not be modified
+   *                           as long as the entry is in use.
+   * @param  compressedSchema  The compressed schema manager to use
+   *                           when decoding tokenized schema
+   *                           elements.
+   *
+   * @return  The decoded entry.
+   *
+   * @throws  DirectoryException  If the provided byte string cannot be
+   *                              decoded as an entry.
+   */
+  public static Entry decodeLazily(ByteString encodedEntry,
+                                   CompressedSchema compressedSchema)
+         throws DirectoryException
+  {
+    return decode(encodedEntry.asReader(), compressedSchema, encodedEntry);
+  }
+
+
+
+  private static Entry decode(ByteSequenceReader entryBuffer,
+      CompressedSchema compressedSchema, ByteString lazyEncodedEntry)
+      throws DirectoryException
   {
     try
     {
@@ -3386,10 +3547,21 @@ public class Entry
 
       // Now, we should iterate through the user and operational attributes and
       // decode each one.
-      Map<AttributeType, List<Attribute>> userAttributes =
-          decodeAttributes(version, entryBuffer, config);
-      Map<AttributeType, List<Attribute>> operationalAttributes =
-          decodeAttributes(version, entryBuffer, config);
+      Map<AttributeType, List<Attribute>> userAttributes;
+      Map<AttributeType, List<Attribute>> operationalAttributes;
+      if (lazyEncodedEntry != null && config.compressAttributeDescriptions())
+      {
+        userAttributes = decodeAttributeHeaders(
+            version, entryBuffer, config, lazyEncodedEntry);
+        operationalAttributes = decodeAttributeHeaders(
+            version, entryBuffer, config, lazyEncodedEntry);
+      }
+      else
+      {
+        userAttributes = decodeAttributes(version, entryBuffer, config);
+        operationalAttributes =
+            decodeAttributes(version, entryBuffer, config);
+      }
 
 
       // We've got everything that we need, so create and return the entry.
@@ -3505,6 +3677,52 @@ public class Entry
     objectClasses.put(oc, ocName);
   }
 
+  /**
+   * Decode the headers of the compressed attributes of an encoded
+   * entry, skipping over their values.
+   *
+   * @param  ver The version of the entry encoding.
+   * @param  entryBuffer The byte sequence containing the encoded
+   *                     entry.
+   * @param  config  The configuration that may be used to control how
+   *                 the entry is encoded.
+   * @param  encodedEntry The encoded entry read by the entry buffer,
+   *                      from which the attributes will be decoded.
+   *
+   * @return  A map of the lazily decoded attributes.
+   * @throws  DirectoryException  If a problem occurs while attempting
+   *                              to decode the attribute headers.
+   */
+  private static Map<AttributeType, List<Attribute>>
+  decodeAttributeHeaders(byte ver, ByteSequenceReader entryBuffer,
+      EntryEncodeConfig config, ByteString encodedEntry)
+      throws DirectoryException
+  {
+    final CompressedSchema compressedSchema = config.getCompressedSchema();
+    int attrs = entryBuffer.readBERLength();
+    Map<AttributeType, List<Attribute>> attributes = new LinkedHashMap<>(attrs);
+    for (int i = 0; i < attrs; i++)
+    {
+      if (ver < 0x03)
+      {
+        // Version 2 includes a total attribute length
+        entryBuffer.readBERLength();
+      }
+      final int position = entryBuffer.position();
+      final AttributeType attrType =
+          compressedSchema.skipAttribute(entryBuffer).getAttributeType();
+      LazyAttributeList attrList =
+          (LazyAttributeList) attributes.get(attrType);
+      if (attrList == null)
+      {
+        attrList = new LazyAttributeList(encodedEntry, compressedSchema);
+        attributes.put(attrType, attrList);
+      }
+      attrList.addEncodedAttribute(position);
+    }
+    return attributes;
+  }
+
   /**
    * Decode the attributes of an encoded entry.
    *
@@ -3638,6 +3856,7 @@ public class Entry
    */
   public List<StringBuilder> toLDIF()
   {
+    processDeferredVirtualAttributes();
     List<StringBuilder> ldifLines = new LinkedList<>();
 
     // First, append the DN.
@@ -3706,42 +3925,45 @@ public class Entry
   public boolean toLDIF(LDIFExportConfig exportConfig)
          throws IOException, LDIFException
   {
-    // See if this entry should be included in the export at all.
-    try
-    {
-      if (! exportConfig.includeEntry(this))
-      {
-        if (logger.isTraceEnabled())
-        {
-          logger.trace("Skipping entry %s because of the export configuration.", dn);
-        }
-        return false;
-      }
-    }
-    catch (Exception e)
-    {
-      logger.traceException(e);
-      throw new LDIFException(ERR_LDIF_COULD_NOT_EVALUATE_FILTERS_FOR_EXPORT.get(dn, e), e);
-    }
+    return toLDIF(exportConfig, null);
+  }
 
 
-    // Invoke LDIF export plugins on the entry if appropriate.
-    if (exportConfig.invokeExportPlugins())
+  /**
+   * Writes this entry in LDIF form according to the provided
+   * configuration, to the provided writer rather than to the writer
+   * of the configuration.  This allows several threads to format
+   * entries of the same export.
+   *
+   * @param  exportConfig  The configuration that specifies how the
+   *                       entry should be written.
+   * @param  writer        The writer to which the entry should be
+   *                       written, or {@code null} to use the writer
+   *                       of the export configuration.
+   *
+   * @return  <CODE>true</CODE> if the entry is actually written, or
+   *          <CODE>false</CODE> if it is not for some reason.
+   *
+   * @throws  IOException  If a problem occurs while writing the
+   *                       information.
+   *
+   * @throws  LDIFException  If a problem occurs while trying to
+   *                         determine whether to write the entry.
+   */
+  public boolean toLDIF(LDIFExportConfig exportConfig, BufferedWriter writer)
+         throws IOException, LDIFException
+  {
+    if (! isIncludedInExport(exportConfig))
     {
-      PluginConfigManager pluginConfigManager =
-           DirectoryServer.getPluginConfigManager();
-      PluginResult.ImportLDIF pluginResult =
-           pluginConfigManager.invokeLDIFExportPlugins(exportConfig,
-                                                    this);
-      if (! pluginResult.continueProcessing())
-      {
-        return false;
-      }
+      return false;
     }
 
 
     // Get the information necessary to write the LDIF.
-    BufferedWriter writer     = exportConfig.getWriter();
+    if (writer == null)
+    {
+      writer = exportConfig.getWriter();
+    }
     int            wrapColumn = exportConfig.getWrapColumn();
     boolean        wrapLines  = wrapColumn > 1;
 
@@ -3827,6 +4049,99 @@ public class Entry
   }
 
 
+  /**
+   * Indicates whether this entry should be exported according to the
+   * provided configuration, invoking the LDIF export plugins if
+   * appropriate.
+   */
+  private boolean isIncludedInExport(LDIFExportConfig exportConfig)
+          throws LDIFException
+  {
+    processDeferredVirtualAttributes();
+    // See if this entry should be included in the export at all.
+    try
+    {
+      if (! exportConfig.includeEntry(this))
+      {
+        if (logger.isTraceEnabled())
+        {
+          logger.trace("Skipping entry %s because of the export configuration.", dn);
+        }
+        return false;
+      }
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      throw new LDIFException(ERR_LDIF_COULD_NOT_EVALUATE_FILTERS_FOR_EXPORT.get(dn, e), e);
+    }
+
+
+    // Invoke LDIF export plugins on the entry if appropriate.
+    if (exportConfig.invokeExportPlugins())
+    {
+      PluginConfigManager pluginConfigManager =
+           DirectoryServer.getPluginConfigManager();
+      PluginResult.ImportLDIF pluginResult =
+           pluginConfigManager.invokeLDIFExportPlugins(exportConfig,
+                                                    this);
+      if (! pluginResult.continueProcessing())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Appends this entry as a binary entry record to the provided
+   * buffer if it should be exported according to the provided
+   * configuration.  A binary entry record is made of the four bytes
+   * length of the entry encoded by {@link #encode} with the default
+   * configuration, followed by the encoded entry.  Unlike LDIF,
+   * binary entry records do not need to be parsed on import.
+   * <p>
+   * All the real attributes of the entry are written, regardless of
+   * the attributes included in or excluded from the export.
+   *
+   * @param  exportConfig  The configuration that specifies whether
+   *                       the entry should be exported.
+   * @param  buffer        The buffer to which the binary entry
+   *                       record should be appended.
+   *
+   * @return  <CODE>true</CODE> if the entry is actually written, or
+   *          <CODE>false</CODE> if it is not for some reason.
+   *
+   * @throws  LDIFException  If a problem occurs while trying to
+   *                         determine whether to write the entry, or
+   *                         while encoding the entry.
+   */
+  public boolean toBinaryRecord(LDIFExportConfig exportConfig,
+                                ByteStringBuilder buffer)
+         throws LDIFException
+  {
+    if (! isIncludedInExport(exportConfig))
+    {
+      return false;
+    }
+
+    try
+    {
+      final ByteStringBuilder encodedEntry = new ByteStringBuilder();
+      encode(encodedEntry, EntryEncodeConfig.DEFAULT_CONFIG);
+      buffer.appendInt(encodedEntry.length());
+      buffer.appendBytes(encodedEntry);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      throw new LDIFException(e.getMessageObject(), e);
+    }
+  }
+
+
   /**
    * Writes the provided List of attributes to LDIF using the provided
    * information.
@@ -3948,6 +4263,7 @@ public class Entry
   @Override
   public int hashCode()
   {
+    processDeferredVirtualAttributes();
     int hashCode = dn.hashCode();
     for (ObjectClass oc : objectClasses.keySet())
     {
@@ -4009,6 +4325,8 @@ public class Entry
     }
 
     Entry e = (Entry) o;
+    processDeferredVirtualAttributes();
+    e.processDeferredVirtualAttributes();
     return dn.equals(e.dn)
         && objectClasses.keySet().equals(e.objectClasses.keySet())
         && equals(userAttributes, e.userAttributes)
@@ -4133,6 +4451,7 @@ public class Entry
    */
   public void toSingleLineString(StringBuilder buffer)
   {
+    processDeferredVirtualAttributes();
     buffer.append("Entry(dn=\"");
     buffer.append(dn);
     buffer.append("\",objectClasses={");
@@ -4218,6 +4537,7 @@ public class Entry
    */
   public Attribute getExactAttribute(AttributeDescription attributeDescription)
   {
+    processDeferredVirtualAttributes(attributeDescription.getAttributeType(), false);
     List<Attribute> attributes = getAttributes(attributeDescription.getAttributeType());
     if (attributes != null)
     {
@@ -4293,6 +4613,7 @@ public class Entry
       return;
     }
 
+    processDeferredVirtualAttributes(attrType, false);
     List<Attribute> attributes = getAttributes(attrType);
     if (attributes == null)
     {
@@ -4386,6 +4707,7 @@ public class Entry
     if (attrNameList == null || attrNameList.isEmpty())
     {
       // Common case: return filtered user attributes.
+      processDeferredVirtualUserAttributes();
       userAttrsCopy = new LinkedHashMap<>(userAttributes.size());
       operationalAttrsCopy = new LinkedHashMap<>(0);
 
@@ -4437,6 +4759,7 @@ public class Entry
         {
           // This is a special placeholder indicating that all user
           // attributes should be returned.
+          processDeferredVirtualUserAttributes();
           if (!omitReal)
           {
             if (omitValues)
@@ -4465,6 +4788,7 @@ public class Entry
         {
           // This is a special placeholder indicating that all
           // operational attributes should be returned.
+          processDeferredVirtualAttributes();
           deepCopy(operationalAttributes, operationalAttrsCopy,
               omitValues, true, omitReal, omitVirtual, true);
           continue;
@@ -4499,6 +4823,7 @@ public class Entry
         if (attrType.isPlaceHolder())
         {
           // Unrecognized attribute type - do best effort search.
+          processDeferredVirtualAttributes();
           for (Map.Entry<AttributeType, List<Attribute>> e :
             userAttributes.entrySet())
           {
@@ -4717,4 +5042,133 @@ public class Entry
       }
     }
   }
+
+  /**
+   * The virtual and collective attribute processing of an entry, deferred
+   * until the attributes which may be virtual are accessed. It is shared by
+   * the entries sharing the attributes of the processed entry.
+   * <p>
+   * The virtual attribute rules are evaluated for one attribute type at a
+   * time, when this type is first accessed. Collective attributes are
+   * processed all at once, after all the virtual attribute rules, as soon as
+   * a type defined by any collective subentry is accessed. This preserves the
+   * outcome of conflicts between virtual and collective attributes.
+   */
+  private static final class DeferredVirtualAttributes
+  {
+    private final Entry entry;
+    /** The registered virtual attribute rules indexed by attribute type. */
+    private final Map<AttributeType, List<VirtualAttributeRule>> rules;
+    /** The attribute types whose virtual attribute rules have been processed. */
+    private Set<AttributeType> processedTypes;
+    private boolean collectiveAttributesDeferred = true;
+    /** Whether virtual attribute rules are being evaluated, which must not see collective attributes. */
+    private boolean processingRules;
+    private boolean complete;
+
+    private DeferredVirtualAttributes(Entry entry, Map<AttributeType, List<VirtualAttributeRule>> rules)
+    {
+      this.entry = entry;
+      this.rules = rules;
+    }
+
+    private void process(AttributeType attributeType)
+    {
+      if (complete)
+      {
+        return;
+      }
+      final List<VirtualAttributeRule> typeRules = rules.get(attributeType);
+      if (typeRules != null)
+      {
+        processRules(attributeType, typeRules);
+      }
+      if (collectiveAttributesDeferred && !processingRules && getCollectiveAttributeTypes().contains(attributeType))
+      {
+        processAll();
+      }
+    }
+
+    private void processUserAttributes()
+    {
+      if (complete)
+      {
+        return;
+      }
+      if (collectiveAttributesDeferred && !processingRules && !getCollectiveAttributeTypes().isEmpty())
+      {
+        processAll();
+        return;
+      }
+      for (Map.Entry<AttributeType, List<VirtualAttributeRule>> typeRules : rules.entrySet())
+      {
+        if (!typeRules.getKey().isOperational())
+        {
+          processRules(typeRules.getKey(), typeRules.getValue());
+        }
+      }
+    }
+
+    private void processAll()
+    {
+      if (complete)
+      {
+        return;
+      }
+      for (Map.Entry<AttributeType, List<VirtualAttributeRule>> typeRules : rules.entrySet())
+      {
+        processRules(typeRules.getKey(), typeRules.getValue());
+      }
+      if (!processingRules)
+      {
+        if (collectiveAttributesDeferred)
+        {
+          collectiveAttributesDeferred = false;
+          entry.processCollectiveAttributes();
+        }
+        complete = true;
+      }
+    }
+
+    private void processRules(AttributeType attributeType, List<VirtualAttributeRule> typeRules)
+    {
+      if (processedTypes == null)
+      {
+        processedTypes = new HashSet<>();
+      }
+      if (!processedTypes.add(attributeType))
+      {
+        return;
+      }
+
+      final boolean wasProcessingRules = processingRules;
+      processingRules = true;
+      try
+      {
+        // Like eager processing, evaluate the rules before adding any attribute.
+        final List<VirtualAttributeRule> applicableRules = new ArrayList<>(typeRules.size());
+        for (VirtualAttributeRule rule : typeRules)
+        {
+          if (rule.appliesToEntry(entry))
+          {
+            applicableRules.add(rule);
+          }
+        }
+        for (VirtualAttributeRule rule : applicableRules)
+        {
+          entry.processVirtualAttribute(rule);
+        }
+      }
+      finally
+      {
+        processingRules = wasProcessingRules;
+      }
+    }
+
+    private static Set<AttributeType> getCollectiveAttributeTypes()
+    {
+      final SubentryManager manager = DirectoryServer.getSubentryManager();
+      return manager != null ? manager.getCollectiveAttributeTypes() : Collections.<AttributeType> emptySet();
+    }
+  }
 }
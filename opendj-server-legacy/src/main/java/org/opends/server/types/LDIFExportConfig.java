@@ -127,6 +127,24 @@ public final class LDIFExportConfig extends OperationConfig
   /** The path to the LDIF file that should be written. */
   private String ldifFile;
 
+  /** The number of threads used to export the entries. */
+  private int threadCount;
+
+  /** The number of LDIF files to which the entries are written. */
+  private int shardCount;
+
+  /** The buffered writers to which each shard should be written. */
+  private BufferedWriter[] shardWriters;
+
+  /**
+   * Indicates whether the entries should be written as binary entry
+   * records rather than as LDIF.
+   */
+  private boolean binaryFormat;
+
+  /** The output stream to which the binary entry records should be written. */
+  private OutputStream recordOutputStream;
+
 
 
   /**
@@ -162,6 +180,9 @@ public final class LDIFExportConfig extends OperationConfig
     excludeAttributes            = new HashSet<>();
     includeAttributes            = new HashSet<>();
     wrapColumn                   = -1;
+    threadCount                  = 1;
+    shardCount                   = 1;
+    binaryFormat                 = false;
   }
 
 
@@ -196,6 +217,9 @@ public final class LDIFExportConfig extends OperationConfig
     excludeAttributes            = new HashSet<>();
     includeAttributes            = new HashSet<>();
     wrapColumn                   = -1;
+    threadCount                  = 1;
+    shardCount                   = 1;
+    binaryFormat                 = false;
   }
 
 
@@ -217,89 +241,302 @@ public final class LDIFExportConfig extends OperationConfig
     {
       if (ldifOutputStream == null)
       {
-        File f = new File(ldifFile);
-        boolean mustSetPermissions = false;
+        ldifOutputStream = openFile(ldifFile);
+      }
+      writer = newWriter(ldifOutputStream);
+    }
 
-        switch (existingFileBehavior)
-        {
-        case APPEND:
-          // Create new file if it doesn't exist ensuring that we can
-          // set its permissions.
-          if (!f.exists())
-          {
-            f.createNewFile();
-            mustSetPermissions = true;
-          }
-          ldifOutputStream = new FileOutputStream(ldifFile, true);
-          break;
-        case OVERWRITE:
-          // Create new file if it doesn't exist ensuring that we can
-          // set its permissions.
-          if (!f.exists())
-          {
-            f.createNewFile();
-            mustSetPermissions = true;
-          }
-          ldifOutputStream = new FileOutputStream(ldifFile, false);
-          break;
-        case FAIL:
-          if (f.exists())
-          {
-            LocalizableMessage message = ERR_LDIF_FILE_EXISTS.get(ldifFile);
-            throw new IOException(message.toString());
-          }
-          else
-          {
-            // Create new file ensuring that we can set its permissions.
-            f.createNewFile();
-            mustSetPermissions = true;
-            ldifOutputStream = new FileOutputStream(ldifFile);
-          }
-          break;
-        }
+    return writer;
+  }
 
-        if (mustSetPermissions)
-        {
-          try
-          {
-            // Ignore
-            FilePermission.setSafePermissions(f, 0600);
-          }
-          catch (Exception e)
-          {
-            // The file could not be created with the correct permissions.
-            LocalizableMessage message = WARN_EXPORT_LDIF_SET_PERMISSION_FAILED
-                .get(f, stackTraceToSingleLineString(e));
-            throw new IOException(message.toString());
-          }
-        }
+
+
+  /**
+   * Retrieves the output stream that should be used to write the
+   * binary entry records when the entries are written in binary
+   * format.  If compression is to be used, then it must be enabled
+   * before the first call to this method.
+   *
+   * @return  The output stream that should be used to write the
+   *          binary entry records.
+   *
+   * @throws  IOException  If a problem occurs while preparing the
+   *                       output stream.
+   */
+  public OutputStream getOutputStream()
+         throws IOException
+  {
+    if (recordOutputStream == null)
+    {
+      if (ldifOutputStream == null)
+      {
+        ldifOutputStream = openFile(ldifFile);
       }
+      recordOutputStream =
+          new BufferedOutputStream(compressIfNeeded(ldifOutputStream));
+    }
+
+    return recordOutputStream;
+  }
 
 
-      // See if we should compress the output.
-      OutputStream outputStream;
-      if (compressData)
+
+  /**
+   * Retrieves the path of the LDIF file to which the provided shard
+   * should be written when the export is split into several files.
+   *
+   * @param  shard  The index of the shard, starting at zero.
+   *
+   * @return  The path of the LDIF file for the shard, which is the
+   *          path of the LDIF file to export followed by the shard
+   *          number, or {@code null} if the LDIF data is written to
+   *          an output stream.
+   */
+  public String getShardFile(int shard)
+  {
+    return ldifFile != null ? ldifFile + "." + (shard + 1) : null;
+  }
+
+
+
+  /**
+   * Retrieves the writer that should be used to write the LDIF data
+   * of the provided shard when the export is split into several
+   * files.  If compression or encryption are to be used, then they
+   * must be enabled before the first call to this method.  Each shard
+   * writer must only be used by one thread at a time.
+   *
+   * @param  shard  The index of the shard, starting at zero.
+   *
+   * @return  The writer that should be used to write the LDIF data
+   *          of the shard.
+   *
+   * @throws  IOException  If a problem occurs while preparing the
+   *                       writer, or if the LDIF data is written to
+   *                       an output stream.
+   */
+  public synchronized BufferedWriter getShardWriter(int shard)
+         throws IOException
+  {
+    if (ldifFile == null)
+    {
+      throw new IOException(ERR_LDIF_EXPORT_SHARDS_REQUIRE_FILE.get().toString());
+    }
+    if (shardWriters == null)
+    {
+      shardWriters = new BufferedWriter[shardCount];
+    }
+    if (shardWriters[shard] == null)
+    {
+      shardWriters[shard] = newWriter(openFile(getShardFile(shard)));
+    }
+    return shardWriters[shard];
+  }
+
+
+
+  /**
+   * Opens the provided LDIF file for writing according to the
+   * behavior to use when the file already exists.
+   */
+  private OutputStream openFile(String file) throws IOException
+  {
+    File f = new File(file);
+    boolean mustSetPermissions = false;
+    OutputStream outputStream = null;
+
+    switch (existingFileBehavior)
+    {
+    case APPEND:
+      // Create new file if it doesn't exist ensuring that we can
+      // set its permissions.
+      if (!f.exists())
       {
-        outputStream = new GZIPOutputStream(ldifOutputStream);
+        f.createNewFile();
+        mustSetPermissions = true;
+      }
+      outputStream = new FileOutputStream(file, true);
+      break;
+    case OVERWRITE:
+      // Create new file if it doesn't exist ensuring that we can
+      // set its permissions.
+      if (!f.exists())
+      {
+        f.createNewFile();
+        mustSetPermissions = true;
+      }
+      outputStream = new FileOutputStream(file, false);
+      break;
+    case FAIL:
+      if (f.exists())
+      {
+        LocalizableMessage message = ERR_LDIF_FILE_EXISTS.get(file);
+        throw new IOException(message.toString());
       }
       else
       {
-        outputStream = ldifOutputStream;
+        // Create new file ensuring that we can set its permissions.
+        f.createNewFile();
+        mustSetPermissions = true;
+        outputStream = new FileOutputStream(file);
       }
+      break;
+    }
 
-
-      // See if we should encrypt the output.
-      if (encryptData)
+    if (mustSetPermissions)
+    {
+      try
       {
-        // FIXME -- Implement this.
+        // Ignore
+        FilePermission.setSafePermissions(f, 0600);
       }
+      catch (Exception e)
+      {
+        // The file could not be created with the correct permissions.
+        LocalizableMessage message = WARN_EXPORT_LDIF_SET_PERMISSION_FAILED
+            .get(f, stackTraceToSingleLineString(e));
+        throw new IOException(message.toString());
+      }
+    }
+    return outputStream;
+  }
+
+
+
+  /**
+   * Creates a writer to the provided output stream, compressing the
+   * data if needed.
+   */
+  private BufferedWriter newWriter(OutputStream ldifOutputStream)
+          throws IOException
+  {
+    return new BufferedWriter(
+        new OutputStreamWriter(compressIfNeeded(ldifOutputStream)));
+  }
+
 
 
-      // Create the writer.
-      writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+  /** Wraps the provided output stream to compress the data if needed. */
+  private OutputStream compressIfNeeded(OutputStream ldifOutputStream)
+          throws IOException
+  {
+    // See if we should compress the output.
+    OutputStream outputStream;
+    if (compressData)
+    {
+      outputStream = new GZIPOutputStream(ldifOutputStream);
+    }
+    else
+    {
+      outputStream = ldifOutputStream;
     }
 
-    return writer;
+
+    // See if we should encrypt the output.
+    if (encryptData)
+    {
+      // FIXME -- Implement this.
+    }
+
+    return outputStream;
+  }
+
+
+
+  /**
+   * Retrieves the number of threads used to export the entries.
+   *
+   * @return  The number of threads used to export the entries, or
+   *          zero to use as many threads as available processors.
+   */
+  public int getThreadCount()
+  {
+    return threadCount;
+  }
+
+
+
+  /**
+   * Specifies the number of threads used to export the entries.
+   * Backends which do not support parallel exports ignore this
+   * setting.  Entries are written in the same order regardless of
+   * the number of threads, unless the export is split into several
+   * files.
+   *
+   * @param  threadCount  The number of threads used to export the
+   *                      entries, or zero to use as many threads as
+   *                      available processors.
+   */
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = threadCount;
+  }
+
+
+
+  /**
+   * Retrieves the number of LDIF files to which the entries are
+   * written.
+   *
+   * @return  The number of LDIF files to which the entries are
+   *          written.
+   */
+  public int getShardCount()
+  {
+    return shardCount;
+  }
+
+
+
+  /**
+   * Specifies the number of LDIF files to which the entries are
+   * written.  When greater than one, each file is written by
+   * {@link #getShardWriter(int)} and holds a contiguous range of the
+   * exported entries, so that the files can be imported in parallel.
+   * Backends which do not support parallel exports ignore this
+   * setting.
+   *
+   * @param  shardCount  The number of LDIF files to which the
+   *                     entries are written.
+   */
+  public void setShardCount(int shardCount)
+  {
+    this.shardCount = Math.max(1, shardCount);
+  }
+
+
+
+  /**
+   * Indicates whether the entries should be written as binary entry
+   * records rather than as LDIF.
+   *
+   * @return  <CODE>true</CODE> if the entries should be written as
+   *          binary entry records, or <CODE>false</CODE> if they
+   *          should be written as LDIF.
+   */
+  public boolean isBinaryFormat()
+  {
+    return binaryFormat;
+  }
+
+
+
+  /**
+   * Specifies whether the entries should be written as binary entry
+   * records, as described in {@link Entry#toBinaryRecord}, to the
+   * output stream returned by {@link #getOutputStream()}.  Binary
+   * entry records can only be read by an LDIF import configured
+   * with the binary format, and are only written by the backends
+   * which support the
+   * {@link org.opends.server.api.Backend.BackendOperation#BINARY_ENTRY_EXPORT}
+   * operation.  They are never split into several files.
+   *
+   * @param  binaryFormat  Indicates whether the entries should be
+   *                       written as binary entry records.
+   */
+  public void setBinaryFormat(boolean binaryFormat)
+  {
+    this.binaryFormat = binaryFormat;
   }
 
 
@@ -924,5 +1161,7 @@ public final class LDIFExportConfig extends OperationConfig
   {
     // FIXME -- Need to add code to generate a signed hash of the LDIF content.
     StaticUtils.close(writer);
+    StaticUtils.close(recordOutputStream);
+    StaticUtils.close(shardWriters);
   }
 }
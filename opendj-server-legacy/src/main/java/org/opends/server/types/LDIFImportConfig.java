@@ -113,6 +113,11 @@ public final class LDIFImportConfig extends OperationConfig
   /** Indicates the memory size, in megabytes, to use for off-heap buffers. */
   private int offHeapSize;
 
+  /** Indicates whether the entries are read from binary entry records rather than from LDIF. */
+  private boolean binaryFormat;
+  /** The input stream from which the binary entry records are read. */
+  private DataInputStream recordInputStream;
+
 
   /**
    * Creates a new LDIF import configuration that will read from the
@@ -210,33 +215,80 @@ public final class LDIFImportConfig extends OperationConfig
   {
     if (reader == null)
     {
-      InputStream inputStream;
-      if (ldifInputStream != null)
-      {
-        inputStream = ldifInputStream;
-      }
-      else
-      {
-        inputStream = ldifInputStream =
-             new FileInputStream(ldifFileIterator.next());
-      }
+      reader = new BufferedReader(new InputStreamReader(openInputStream()),
+                                  bufferSize);
+    }
 
-      if (isEncrypted)
-      {
-        // FIXME -- Add support for encryption with a cipher input
-        //          stream.
-      }
+    return reader;
+  }
 
-      if (isCompressed)
-      {
-        inputStream = new GZIPInputStream(inputStream);
-      }
 
-      reader = new BufferedReader(new InputStreamReader(inputStream),
-                                  bufferSize);
+
+  /**
+   * Retrieves the input stream that should be used to read the binary
+   * entry records when the entries are read in binary format.  Note
+   * that if the data is compressed, then that must be indicated before
+   * this method is called for the first time.
+   *
+   * @return  The input stream that should be used to read the binary
+   *          entry records.
+   *
+   * @throws  IOException  If a problem occurs while obtaining the
+   *                       input stream.
+   */
+  public DataInputStream getRecordInputStream()
+         throws IOException
+  {
+    if (recordInputStream == null)
+    {
+      recordInputStream = new DataInputStream(
+          new BufferedInputStream(openInputStream(), bufferSize));
     }
 
-    return reader;
+    return recordInputStream;
+  }
+
+
+
+  /** Opens the input stream from which the data is read, uncompressing it if needed. */
+  private InputStream openInputStream() throws IOException
+  {
+    InputStream inputStream;
+    if (ldifInputStream != null)
+    {
+      inputStream = ldifInputStream;
+    }
+    else
+    {
+      inputStream = ldifInputStream =
+           new FileInputStream(ldifFileIterator.next());
+    }
+
+    if (isEncrypted)
+    {
+      // FIXME -- Add support for encryption with a cipher input
+      //          stream.
+    }
+
+    if (isCompressed)
+    {
+      inputStream = new GZIPInputStream(inputStream);
+    }
+    return inputStream;
+  }
+
+
+
+  /**
+   * Retrieves the paths of the LDIF files to import.
+   *
+   * @return  The paths of the LDIF files to import, or <CODE>null</CODE>
+   *          if the LDIF data is read from an input stream, a reader or
+   *          a template file.
+   */
+  public List<String> getLDIFFiles()
+  {
+    return ldifFiles;
   }
 
 
@@ -1020,7 +1072,7 @@ public final class LDIFImportConfig extends OperationConfig
   @Override
   public void close()
   {
-    StaticUtils.close(reader, rejectWriter, skipWriter);
+    StaticUtils.close(reader, recordInputStream, rejectWriter, skipWriter);
   }
 
   /**
@@ -1103,4 +1155,30 @@ public final class LDIFImportConfig extends OperationConfig
   {
     return this.threadCount;
   }
+
+  /**
+   * Indicates whether the entries are read from binary entry records
+   * rather than from LDIF.
+   *
+   * @return {@code true} if the entries are read from binary entry records.
+   */
+  public boolean isBinaryFormat()
+  {
+    return binaryFormat;
+  }
+
+  /**
+   * Specifies whether the entries are read from binary entry records, as
+   * written by {@link Entry#toBinaryRecord}, rather than from LDIF. The
+   * attributes included in or excluded from the import are not applied to
+   * the entries read from binary entry records.
+   *
+   * @param binaryFormat
+   *          Indicates whether the entries are read from binary entry
+   *          records.
+   */
+  public void setBinaryFormat(boolean binaryFormat)
+  {
+    this.binaryFormat = binaryFormat;
+  }
 }
@@ -0,0 +1,157 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.types;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.forgerock.opendj.ldap.ByteSequenceReader;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.api.CompressedSchema;
+
+/**
+ * The list of the attributes of an entry having the same attribute type, whose values are only
+ * decoded from the encoded entry when first accessed.
+ * <p>
+ * Lazily decoded entries are built from the attribute headers of the encoded entry, so that
+ * checking the presence of an attribute or the number of attributes of a type requires no
+ * decoding. The attributes are decoded the first time their content is accessed or the list is
+ * modified. Decoding is done once under the lock of the list, so that lists shared by entries
+ * cached by several threads all publish the same decoded attributes. The encoded entry is released
+ * once decoded.
+ */
+final class LazyAttributeList extends AbstractList<Attribute> implements RandomAccess
+{
+  private final CompressedSchema compressedSchema;
+  /** The encoded entry, or {@code null} once the attributes have been decoded. Read under the lock of this list. */
+  private ByteString encodedEntry;
+  /** The positions of the encoded attributes, or {@code null} once decoded. Read under the lock of this list. */
+  private int[] positions = new int[1];
+  private int size;
+  /** The decoded attributes, or {@code null} if they have not been decoded yet. */
+  private volatile List<Attribute> attributes;
+
+  /**
+   * Creates a new lazily decoded attribute list.
+   *
+   * @param encodedEntry
+   *          The encoded entry containing the attributes, which must not be modified anymore.
+   * @param compressedSchema
+   *          The compressed schema to use for decoding the attributes.
+   */
+  LazyAttributeList(ByteString encodedEntry, CompressedSchema compressedSchema)
+  {
+    this.encodedEntry = encodedEntry;
+    this.compressedSchema = compressedSchema;
+  }
+
+  /**
+   * Adds the attribute encoded at the provided position of the encoded entry to this list. This
+   * method must only be called while the entry is being decoded.
+   *
+   * @param position
+   *          The position of the encoded attribute in the encoded entry.
+   */
+  void addEncodedAttribute(int position)
+  {
+    if (size == positions.length)
+    {
+      positions = Arrays.copyOf(positions, size * 2);
+    }
+    positions[size++] = position;
+  }
+
+  /**
+   * Returns whether the attributes of this list have already been decoded.
+   *
+   * @return {@code true} if the attributes have been decoded
+   */
+  boolean isDecoded()
+  {
+    return attributes != null;
+  }
+
+  private List<Attribute> decoded()
+  {
+    final List<Attribute> result = attributes;
+    return result != null ? result : decode();
+  }
+
+  private synchronized List<Attribute> decode()
+  {
+    if (attributes != null)
+    {
+      // Decoded by another thread while waiting for the lock
+      return attributes;
+    }
+    final List<Attribute> result = new ArrayList<>(size);
+    final ByteSequenceReader reader = encodedEntry.asReader();
+    for (int i = 0; i < size; i++)
+    {
+      reader.position(positions[i]);
+      try
+      {
+        result.add(compressedSchema.decodeAttribute(reader));
+      }
+      catch (DirectoryException e)
+      {
+        // Cannot happen: the attribute description has been decoded with the attribute header.
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }
+    attributes = result;
+    encodedEntry = null;
+    positions = null;
+    return result;
+  }
+
+  @Override
+  public Attribute get(int index)
+  {
+    return decoded().get(index);
+  }
+
+  @Override
+  public int size()
+  {
+    final List<Attribute> result = attributes;
+    return result != null ? result.size() : size;
+  }
+
+  @Override
+  public Attribute set(int index, Attribute attribute)
+  {
+    return decoded().set(index, attribute);
+  }
+
+  @Override
+  public void add(int index, Attribute attribute)
+  {
+    decoded().add(index, attribute);
+    modCount++;
+  }
+
+  @Override
+  public Attribute remove(int index)
+  {
+    final Attribute removed = decoded().remove(index);
+    modCount++;
+    return removed;
+  }
+}
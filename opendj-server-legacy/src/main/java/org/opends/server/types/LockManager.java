@@ -15,8 +15,10 @@
  */
 package org.opends.server.types;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -98,6 +100,13 @@ import org.forgerock.util.Reject;
  * Locks are dereferenced when they are unlocked, when they are evicted from a thread local cache,
  * and when a child lock's reference count reaches zero. A lock is completely removed from the lock
  * table once its reference count reaches zero.
+ * <p>
+ * Since every lock attempt read locks the subtree locks of all the parent entries, all the
+ * operations targeting entries below the same suffix update the reader count of the same subtree
+ * locks. The lock manager can optionally use striped subtree locks instead, whose readers are
+ * counted on a per-thread stripe, so that read locking the subtree lock of a parent entry does not
+ * require exclusive access to a cache line shared by all the processors.
+ * When using striped subtree locks, locks must be unlocked by the thread which acquired them.
  */
 @org.opends.server.types.PublicAPI(stability = org.opends.server.types.StabilityLevel.UNCOMMITTED,
     mayInstantiate = false, mayExtend = false, mayInvoke = true)
@@ -109,15 +118,43 @@ public final class LockManager
   public final class DNLock
   {
     private final DNLockHolder lock;
+    /** The subtree lock of the locked DN, or {@code null} when using striped subtree locks. */
     private final Lock subtreeLock;
     private final Lock entryLock;
     private boolean isLocked = true;
 
+    /** Striped subtree locks only: whether the subtree lock of the locked DN is write locked. */
+    private final boolean isSubtreeWriteLocked;
+    /** Striped subtree locks only: the locks held by the thread which acquired this lock. */
+    private final List<DNLockHolder> heldLocks;
+    /** Striped subtree locks only: the stripe on which the subtree read locks are counted. */
+    private final int stripe;
+    /**
+     * Striped subtree locks only: bit N is set if the subtree read lock acquired on the Nth parent
+     * of the locked DN was counted on the stripe rather than on the base counter. Bit 0 corresponds
+     * to the subtree read lock of the locked DN itself.
+     */
+    private long stripedReadLocks;
+
     private DNLock(final DNLockHolder lock, final Lock subtreeLock, final Lock entryLock)
     {
       this.lock = lock;
       this.subtreeLock = subtreeLock;
       this.entryLock = entryLock;
+      this.isSubtreeWriteLocked = false;
+      this.heldLocks = null;
+      this.stripe = StripedSubtreeLock.BASE;
+    }
+
+    private DNLock(final DNLockHolder lock, final boolean isSubtreeWriteLocked, final Lock entryLock,
+        final List<DNLockHolder> heldLocks)
+    {
+      this.lock = lock;
+      this.subtreeLock = null;
+      this.entryLock = entryLock;
+      this.isSubtreeWriteLocked = isSubtreeWriteLocked;
+      this.heldLocks = heldLocks;
+      this.stripe = StripedSubtreeLock.getStripe(numberOfStripes);
     }
 
     @Override
@@ -138,13 +175,63 @@ public final class LockManager
       {
         throw new IllegalStateException("Already unlocked");
       }
-      lock.releaseParentSubtreeReadLock();
-      subtreeLock.unlock();
+      if (subtreeLock != null)
+      {
+        lock.releaseParentSubtreeReadLock();
+        subtreeLock.unlock();
+      }
+      else
+      {
+        lock.releaseStripedParentSubtreeReadLock(this, 1);
+        lock.releaseStripedSubtreeLock(this);
+        heldLocks.remove(lock);
+      }
       entryLock.unlock();
       dereference(lock);
       isLocked = false;
     }
 
+    private boolean tryReadLock(final DNLockHolder holder, final int depth, final long deadlineNanos)
+    {
+      // Readers of very deep parents are counted on the base counter, since they cannot be recorded
+      final int counter = holder.stripedSubtreeLock.tryReadLock(
+          depth < Long.SIZE ? stripe : StripedSubtreeLock.BASE, isReadLockHeld(holder), deadlineNanos);
+      if (counter == StripedSubtreeLock.FAILED)
+      {
+        return false;
+      }
+      if (counter != StripedSubtreeLock.BASE)
+      {
+        stripedReadLocks |= 1L << depth;
+      }
+      return true;
+    }
+
+    /**
+     * Returns whether the thread acquiring this lock already holds the subtree read lock of the provided lock. A
+     * lock on a DN holds the subtree read locks of all its parents, and of the DN itself unless it write locks it.
+     */
+    private boolean isReadLockHeld(final DNLockHolder holder)
+    {
+      for (final DNLockHolder heldLock : heldLocks)
+      {
+        for (DNLockHolder lock = heldLock; lock != null; lock = lock.parent)
+        {
+          if (lock == holder)
+          {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private void releaseReadLock(final StripedSubtreeLock stripedLock, final int depth)
+    {
+      final boolean isStriped = depth < Long.SIZE && (stripedReadLocks & 1L << depth) != 0;
+      stripedLock.releaseReadLock(isStriped ? stripe : StripedSubtreeLock.BASE);
+    }
+
     // For unit testing.
     int refCount()
     {
@@ -161,7 +248,10 @@ public final class LockManager
     private final DNLockHolder parent;
     private final DN dn;
     private final int dnHashCode;
-    private final ReentrantReadWriteLock subtreeLock = new ReentrantReadWriteLock();
+    /** The subtree lock, or {@code null} when using striped subtree locks. */
+    private final ReentrantReadWriteLock subtreeLock;
+    /** The striped subtree lock, or {@code null} when not using striped subtree locks. */
+    private final StripedSubtreeLock stripedSubtreeLock;
     private final ReentrantReadWriteLock entryLock = new ReentrantReadWriteLock();
 
     DNLockHolder(final DNLockHolder parent, final DN dn, final int dnHashCode)
@@ -169,6 +259,8 @@ public final class LockManager
       this.parent = parent;
       this.dn = dn;
       this.dnHashCode = dnHashCode;
+      this.subtreeLock = numberOfStripes == 0 ? new ReentrantReadWriteLock() : null;
+      this.stripedSubtreeLock = numberOfStripes != 0 ? new StripedSubtreeLock(numberOfStripes) : null;
     }
 
     @Override
@@ -190,16 +282,28 @@ public final class LockManager
 
     DNLock tryReadLockEntry()
     {
+      if (stripedSubtreeLock != null)
+      {
+        return tryLockStriped(false, entryLock.readLock());
+      }
       return tryLock(subtreeLock.readLock(), entryLock.readLock());
     }
 
     DNLock tryWriteLockEntry()
     {
+      if (stripedSubtreeLock != null)
+      {
+        return tryLockStriped(false, entryLock.writeLock());
+      }
       return tryLock(subtreeLock.readLock(), entryLock.writeLock());
     }
 
     DNLock tryWriteLockSubtree()
     {
+      if (stripedSubtreeLock != null)
+      {
+        return tryLockStriped(true, entryLock.writeLock());
+      }
       return tryLock(subtreeLock.writeLock(), entryLock.writeLock());
     }
 
@@ -249,6 +353,85 @@ public final class LockManager
       return null;
     }
 
+    private DNLock tryLockStriped(final boolean writeLockSubtree, final Lock entryLock)
+    {
+      final long deadlineNanos = System.nanoTime() + lockTimeoutUnits.toNanos(lockTimeout);
+      final List<DNLockHolder> heldLocks = getThreadLocalHeldLocks();
+      final DNLock dnLock = new DNLock(this, writeLockSubtree, entryLock, heldLocks);
+      if (tryAcquireStripedParentSubtreeReadLock(dnLock, 1, deadlineNanos))
+      {
+        final boolean subtreeLocked = writeLockSubtree
+            ? stripedSubtreeLock.tryWriteLock(deadlineNanos)
+            : dnLock.tryReadLock(this, 0, deadlineNanos);
+        if (subtreeLocked)
+        {
+          if (tryLockWithTimeout(entryLock))
+          {
+            heldLocks.add(this);
+            return dnLock;
+          }
+          releaseStripedSubtreeLock(dnLock);
+        }
+        releaseStripedParentSubtreeReadLock(dnLock, 1);
+      }
+      // Failed to acquire all the necessary locks within the time out.
+      dereference(this);
+      return null;
+    }
+
+    /**
+     * Locks the striped subtree read lock from the root down to the parent of this lock.
+     *
+     * @param depth
+     *          The depth of the parent of this lock relative to the DN locked by the provided lock.
+     */
+    private boolean tryAcquireStripedParentSubtreeReadLock(final DNLock dnLock, final int depth,
+        final long deadlineNanos)
+    {
+      if (parent == null)
+      {
+        return true;
+      }
+      if (!parent.tryAcquireStripedParentSubtreeReadLock(dnLock, depth + 1, deadlineNanos))
+      {
+        return false;
+      }
+      if (dnLock.tryReadLock(parent, depth, deadlineNanos))
+      {
+        return true;
+      }
+      // Failed to grab the parent lock within the timeout, so roll-back the other locks.
+      parent.releaseStripedParentSubtreeReadLock(dnLock, depth + 1);
+      return false;
+    }
+
+    /**
+     * Unlocks the striped subtree read lock from the parent of this lock up to the root.
+     *
+     * @param depth
+     *          The depth of the parent of this lock relative to the DN locked by the provided lock.
+     */
+    void releaseStripedParentSubtreeReadLock(final DNLock dnLock, final int depth)
+    {
+      int parentDepth = depth;
+      for (DNLockHolder lock = parent; lock != null; lock = lock.parent)
+      {
+        dnLock.releaseReadLock(lock.stripedSubtreeLock, parentDepth++);
+      }
+    }
+
+    void releaseStripedSubtreeLock(final DNLock dnLock)
+    {
+      if (dnLock.isSubtreeWriteLocked)
+      {
+        stripedSubtreeLock.releaseWriteLock();
+      }
+      else
+      {
+        dnLock.releaseReadLock(stripedSubtreeLock, 0);
+      }
+    }
+
     private boolean tryLockWithTimeout(final Lock lock)
     {
       try
@@ -273,9 +456,13 @@ public final class LockManager
   private final LinkedList<DNLockHolder>[] lockTable;
   private final long lockTimeout;
   private final TimeUnit lockTimeoutUnits;
+  /** The number of stripes of the striped subtree locks, or 0 when not using striped subtree locks. */
+  private final int numberOfStripes;
 
   // Avoid sub-classing in order to workaround class leaks in app servers.
   private final ThreadLocal<LinkedList<DNLockHolder>> threadLocalCache = new ThreadLocal<>();
+  /** Striped subtree locks only: the locks currently held by each thread. */
+  private final ThreadLocal<List<DNLockHolder>> threadLocalHeldLocks = new ThreadLocal<>();
 
   /**
    * Creates a new lock manager with a lock timeout of 9 seconds and an automatically chosen number
@@ -310,8 +497,41 @@ public final class LockManager
    * @param numberOfBuckets
    *          The number of buckets to use in the lock table. The minimum number of buckets is 64.
    */
-  @SuppressWarnings("unchecked")
   public LockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit, final int numberOfBuckets)
+  {
+    this(lockTimeout, lockTimeoutUnit, numberOfBuckets, false);
+  }
+
+  /**
+   * Creates a new lock manager with a lock timeout of 9 seconds and an automatically chosen number
+   * of lock table buckets based on the number of processors.
+   *
+   * @param useStripedSubtreeLocks
+   *          Indicates whether the readers of the subtree locks should be counted on per-thread
+   *          stripes rather than by a {@code ReentrantReadWriteLock}.
+   */
+  public LockManager(final boolean useStripedSubtreeLocks)
+  {
+    this(DEFAULT_LOCK_TIMEOUT, DEFAULT_LOCK_TIMEOUT_UNITS, Runtime.getRuntime().availableProcessors() * 8,
+        useStripedSubtreeLocks);
+  }
+
+  /**
+   * Creates a new lock manager with the provided configuration.
+   *
+   * @param lockTimeout
+   *          The lock timeout.
+   * @param lockTimeoutUnit
+   *          The lock timeout units.
+   * @param numberOfBuckets
+   *          The number of buckets to use in the lock table. The minimum number of buckets is 64.
+   * @param useStripedSubtreeLocks
+   *          Indicates whether the readers of the subtree locks should be counted on per-thread
+   *          stripes rather than by a {@code ReentrantReadWriteLock}.
+   */
+  @SuppressWarnings("unchecked")
+  public LockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit, final int numberOfBuckets,
+      final boolean useStripedSubtreeLocks)
   {
     Reject.ifFalse(lockTimeout >= 0, "lockTimeout must be a non-negative integer");
     Reject.ifNull(lockTimeoutUnit, "lockTimeoutUnit must be non-null");
@@ -319,6 +539,7 @@ public final class LockManager
 
     this.lockTimeout = lockTimeout;
     this.lockTimeoutUnits = lockTimeoutUnit;
+    this.numberOfStripes = useStripedSubtreeLocks ? StripedSubtreeLock.getNumberOfStripes() : 0;
     this.numberOfBuckets = getNumberOfBuckets(numberOfBuckets);
     this.lockTable = new LinkedList[this.numberOfBuckets];
     for (int i = 0; i < this.numberOfBuckets; i++)
@@ -423,6 +644,17 @@ public final class LockManager
     return -1;
   }
 
+  private List<DNLockHolder> getThreadLocalHeldLocks()
+  {
+    List<DNLockHolder> heldLocks = threadLocalHeldLocks.get();
+    if (heldLocks == null)
+    {
+      heldLocks = new ArrayList<>();
+      threadLocalHeldLocks.set(heldLocks);
+    }
+    return heldLocks;
+  }
+
   private DNLockHolder acquireLockFromCache(final DN dn)
   {
     LinkedList<DNLockHolder> cache = threadLocalCache.get();
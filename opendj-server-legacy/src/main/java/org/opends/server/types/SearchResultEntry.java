@@ -56,9 +56,7 @@ public final class SearchResultEntry
    */
   public SearchResultEntry(Entry entry)
   {
-    super(entry.getName(), entry.getObjectClasses(),
-          entry.getUserAttributes(),
-          entry.getOperationalAttributes());
+    super(entry);
 
 
     this.controls = new ArrayList<>(0);
@@ -79,9 +77,7 @@ public final class SearchResultEntry
    */
   public SearchResultEntry(Entry entry, List<Control> controls)
   {
-    super(entry.getName(), entry.getObjectClasses(),
-          entry.getUserAttributes(),
-          entry.getOperationalAttributes());
+    super(entry);
 
 
     if (controls == null)
@@ -0,0 +1,312 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.types;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A read-write lock whose readers are counted on per-thread stripes, used by the {@link LockManager} for the subtree
+ * locks of hot parent DNs. Read locking a subtree lock which is not write locked only increments a counter which is
+ * local to the cache line of the current stripe, so that readers of the same parent DN do not contend with each other.
+ * <p>
+ * Readers are first counted on a single base counter: the stripes are only allocated once several readers contend on
+ * it. Each read lock must be released on the counter it was acquired on, which is why {@link #tryReadLock} returns it.
+ * <p>
+ * A writer first prevents new readers from acquiring the lock, then waits until the counters drop to zero. Only the
+ * readers which already hold this lock are allowed to acquire it again while the writer waits for the counters to
+ * drop: they would otherwise wait for the writer, which waits for them, until the timeout expires. All the other
+ * readers queue behind the pending writer, so that a steady flow of readers cannot starve it. Readers blocked by a
+ * writer wait on the monitor of this lock, which is notified once the writer releases it.
+ * <p>
+ * The write lock is reentrant, and the thread holding it may also acquire the read lock. Read locks must be released
+ * by the thread which acquired them.
+ */
+final class StripedSubtreeLock
+{
+  /** Returned by {@link #tryReadLock} when the reader was counted on the base counter. */
+  static final int BASE = -1;
+  /** Returned by {@link #tryReadLock} when the read lock could not be acquired before the deadline. */
+  static final int FAILED = -2;
+
+  /** The maximum number of stripes of a lock. */
+  private static final int MAX_NUMBER_OF_STRIPES = 64;
+  /** The number of counters in a cache line, only the first of which is used by each stripe. */
+  private static final int STRIPE_PADDING = 16;
+  /** The maximum time a writer sleeps before checking again whether the readers have released the lock. */
+  private static final long MAX_WRITER_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** No writer holds or waits for the lock. */
+  private static final int FREE = 0;
+  /** A writer waits for the readers to release the lock. */
+  private static final int PENDING = 1;
+  /** A writer holds the lock. */
+  private static final int OWNED = 2;
+
+  private static final AtomicIntegerFieldUpdater<StripedSubtreeLock> BASE_READERS =
+      AtomicIntegerFieldUpdater.newUpdater(StripedSubtreeLock.class, "baseReaders");
+  private static final AtomicIntegerFieldUpdater<StripedSubtreeLock> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(StripedSubtreeLock.class, "state");
+  private static final AtomicReferenceFieldUpdater<StripedSubtreeLock, AtomicIntegerArray> STRIPED_READERS =
+      AtomicReferenceFieldUpdater.newUpdater(StripedSubtreeLock.class, AtomicIntegerArray.class, "stripedReaders");
+
+  private final int numberOfStripes;
+  private volatile int baseReaders;
+  private volatile AtomicIntegerArray stripedReaders;
+  private volatile int state;
+  private volatile Thread writeOwner;
+  /** Only accessed by the write owner. */
+  private int writeHoldCount;
+
+  /**
+   * Creates a new striped subtree lock.
+   *
+   * @param numberOfStripes
+   *          The number of stripes, which must be a power of 2, as returned by {@link #getNumberOfStripes()}.
+   */
+  StripedSubtreeLock(final int numberOfStripes)
+  {
+    this.numberOfStripes = numberOfStripes;
+  }
+
+  /**
+   * Returns the number of stripes to use for the locks, based on the number of processors.
+   *
+   * @return The number of stripes to use for the locks.
+   */
+  static int getNumberOfStripes()
+  {
+    final int processors = Math.min(Runtime.getRuntime().availableProcessors(), MAX_NUMBER_OF_STRIPES);
+    int powerOf2 = 1;
+    while (powerOf2 < processors)
+    {
+      powerOf2 <<= 1;
+    }
+    return powerOf2;
+  }
+
+  /**
+   * Returns the stripe on which the read locks of the current thread are counted. Threads IDs are allocated
+   * sequentially, so that concurrent threads generally use distinct stripes.
+   *
+   * @param numberOfStripes
+   *          The number of stripes of the locks.
+   * @return The stripe on which the read locks of the current thread are counted.
+   */
+  static int getStripe(final int numberOfStripes)
+  {
+    return (int) Thread.currentThread().getId() & (numberOfStripes - 1);
+  }
+
+  /**
+   * Acquires the read lock.
+   *
+   * @param stripe
+   *          The stripe of the current thread, or {@link #BASE} if the reader must be counted on the base counter.
+   * @param isReentrant
+   *          Whether the current thread already holds the read lock, in which case the lock is acquired even if a
+   *          writer is waiting for the lock.
+   * @param deadlineNanos
+   *          The value of {@link System#nanoTime()} after which the attempt fails.
+   * @return The counter which must be provided when releasing the lock, or {@link #FAILED} if the lock could not be
+   *         acquired before the deadline.
+   */
+  int tryReadLock(final int stripe, final boolean isReentrant, final long deadlineNanos)
+  {
+    if (writeOwner == Thread.currentThread())
+    {
+      return incrementReaders(stripe);
+    }
+    while (true)
+    {
+      final int counter = incrementReaders(stripe);
+      final int currentState = state;
+      if (currentState == FREE || (currentState == PENDING && isReentrant))
+      {
+        return counter;
+      }
+      decrementReaders(counter);
+      if (!awaitNoWriter(deadlineNanos))
+      {
+        return FAILED;
+      }
+    }
+  }
+
+  /**
+   * Releases the read lock.
+   *
+   * @param counter
+   *          The counter returned when acquiring the lock.
+   */
+  void releaseReadLock(final int counter)
+  {
+    decrementReaders(counter);
+  }
+
+  /**
+   * Acquires the write lock.
+   *
+   * @param deadlineNanos
+   *          The value of {@link System#nanoTime()} after which the attempt fails.
+   * @return {@code true} if the lock was acquired, {@code false} if it could not be acquired before the deadline.
+   */
+  boolean tryWriteLock(final long deadlineNanos)
+  {
+    final Thread currentThread = Thread.currentThread();
+    if (writeOwner == currentThread)
+    {
+      writeHoldCount++;
+      return true;
+    }
+
+    // Exclude the other writers and the new readers.
+    while (!STATE.compareAndSet(this, FREE, PENDING))
+    {
+      if (!awaitNoWriter(deadlineNanos))
+      {
+        return false;
+      }
+    }
+
+    // Wait for the current readers.
+    long backoffNanos = 1000;
+    while (true)
+    {
+      if (getReaders() == 0)
+      {
+        // Reentrant readers may have been let in while checking, so check again after forbidding them.
+        state = OWNED;
+        if (getReaders() == 0)
+        {
+          writeOwner = currentThread;
+          writeHoldCount = 1;
+          return true;
+        }
+        state = PENDING;
+      }
+
+      final long remainingNanos = deadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0 || currentThread.isInterrupted())
+      {
+        releaseWriters();
+        return false;
+      }
+      LockSupport.parkNanos(this, Math.min(backoffNanos, remainingNanos));
+      backoffNanos = Math.min(backoffNanos * 2, MAX_WRITER_BACKOFF_NANOS);
+    }
+  }
+
+  /** Releases the write lock. */
+  void releaseWriteLock()
+  {
+    if (--writeHoldCount == 0)
+    {
+      writeOwner = null;
+      releaseWriters();
+    }
+  }
+
+  private synchronized void releaseWriters()
+  {
+    state = FREE;
+    notifyAll();
+  }
+
+  private synchronized boolean awaitNoWriter(final long deadlineNanos)
+  {
+    while (state != FREE)
+    {
+      final long remainingNanos = deadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0)
+      {
+        return false;
+      }
+      try
+      {
+        TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+      }
+      catch (final InterruptedException e)
+      {
+        // Unable to handle interrupts here.
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int incrementReaders(final int stripe)
+  {
+    AtomicIntegerArray readers = stripedReaders;
+    if (readers == null || stripe == BASE)
+    {
+      final int baseValue = baseReaders;
+      if (BASE_READERS.compareAndSet(this, baseValue, baseValue + 1))
+      {
+        return BASE;
+      }
+      if (stripe == BASE)
+      {
+        BASE_READERS.incrementAndGet(this);
+        return BASE;
+      }
+      // Contended: start counting the readers on the stripes.
+      readers = new AtomicIntegerArray(numberOfStripes * STRIPE_PADDING);
+      if (!STRIPED_READERS.compareAndSet(this, null, readers))
+      {
+        readers = stripedReaders;
+      }
+    }
+    readers.incrementAndGet(stripe * STRIPE_PADDING);
+    return stripe;
+  }
+
+  private void decrementReaders(final int counter)
+  {
+    if (counter == BASE)
+    {
+      BASE_READERS.decrementAndGet(this);
+    }
+    else
+    {
+      stripedReaders.decrementAndGet(counter * STRIPE_PADDING);
+    }
+  }
+
+  private int getReaders()
+  {
+    int readers = baseReaders;
+    final AtomicIntegerArray striped = stripedReaders;
+    if (striped != null)
+    {
+      for (int i = 0; i < numberOfStripes; i++)
+      {
+        readers += striped.get(i * STRIPE_PADDING);
+      }
+    }
+    return readers;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "readers=" + getReaders() + ", writeOwner=" + writeOwner;
+  }
+}
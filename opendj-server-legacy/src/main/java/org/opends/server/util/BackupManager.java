@@ -18,13 +18,18 @@ package org.opends.server.util;
 
 import static java.util.Collections.*;
 
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.messages.UtilityMessages.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -33,25 +38,37 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -113,6 +130,31 @@ public class BackupManager
    */
   private static final String ZIPENTRY_EMPTY_PLACEHOLDER = "empty.placeholder";
 
+  /**
+   * The name of the property that holds the format of the archive file, which
+   * is absent for the zip archives written by previous versions.
+   */
+  private static final String PROPERTY_ARCHIVE_FORMAT = "archive_format";
+
+  /** The format of the archive files made of chunks of files. */
+  private static final String ARCHIVE_FORMAT_CHUNKED = "chunked";
+
+  /** The first bytes of a chunked archive file. */
+  private static final int CHUNKED_ARCHIVE_MAGIC_NUMBER = 0x4F444A01;
+
+  /** The types of the records of a chunked archive file. */
+  private static final byte RECORD_END_OF_ARCHIVE = 0;
+  private static final byte RECORD_UNCHANGED_FILES = 1;
+  private static final byte RECORD_FILE = 2;
+  private static final byte RECORD_CHUNK = 3;
+  private static final byte RECORD_END_OF_FILE = 4;
+
+  /** The size of the chunks of the files, which are compressed, hashed and encrypted in parallel. */
+  private static final int CHUNK_SIZE = 1024 * 1024;
+
+  private static final String BACKUP_THREAD_NAME = "BACKUP-%d";
+  private static final String RESTORE_THREAD_NAME = "RESTORE-%d";
+
 
   /**
    * The backend ID.
@@ -136,6 +178,8 @@ public class BackupManager
   {
     final CryptoManager cryptoManager;
     final boolean shouldEncrypt;
+    /** The algorithm of the digests of the chunks of the backed up files, or null if the backup is not hashed. */
+    final String digestAlgorithm;
 
     /** Creates a crypto engine for archive creation. */
     static CryptoEngine forCreation(BackupConfig backupConfig, NewBackupParams backupParams)
@@ -179,10 +223,11 @@ public class BackupManager
       }
     }
 
-    CryptoEngine(boolean shouldEncrypt)
+    CryptoEngine(boolean shouldEncrypt, String digestAlgorithm)
     {
       cryptoManager = DirectoryServer.getCryptoManager();
       this.shouldEncrypt = shouldEncrypt;
+      this.digestAlgorithm = digestAlgorithm;
     }
 
     /** Indicates if data is encrypted. */
@@ -221,10 +266,11 @@ public class BackupManager
     /** Wraps an output stream in a cipher output stream if encryption is required. */
     final OutputStream encryptOutput(OutputStream output) throws DirectoryException
     {
-      if (!shouldEncrypt())
+      if (!shouldEncrypt)
       {
         return output;
       }
+
       try
       {
         return cryptoManager.getCipherOutputStream(output);
@@ -259,6 +305,66 @@ public class BackupManager
       }
     }
 
+    /** Encrypts the provided data if encryption is required. */
+    final byte[] encrypt(byte[] data) throws IOException
+    {
+      if (!shouldEncrypt)
+      {
+        return data;
+      }
+      try
+      {
+        return cryptoManager.encrypt(data);
+      }
+      catch (GeneralSecurityException | CryptoManagerException e)
+      {
+        throw new IOException(e);
+      }
+    }
+
+    /** Decrypts the provided data if it is encrypted. */
+    final byte[] decrypt(byte[] data) throws IOException
+    {
+      if (!shouldEncrypt)
+      {
+        return data;
+      }
+      try
+      {
+        return cryptoManager.decrypt(data);
+      }
+      catch (GeneralSecurityException | CryptoManagerException e)
+      {
+        throw new IOException(e);
+      }
+    }
+
+    /** Returns the digest of a chunk of a backed up file, or null if the backup is not hashed. */
+    final byte[] hashChunk(byte[] buffer, int length) throws DirectoryException
+    {
+      if (digestAlgorithm == null)
+      {
+        return null;
+      }
+      final MessageDigest chunkDigest = retrieveMessageDigest(digestAlgorithm);
+      chunkDigest.update(buffer, 0, length);
+      return chunkDigest.digest();
+    }
+
+    final MessageDigest retrieveMessageDigest(String digestAlgorithm) throws DirectoryException
+    {
+      try
+      {
+        return cryptoManager.getMessageDigest(digestAlgorithm);
+      }
+      catch (Exception e)
+      {
+        LocalizableMessage message =
+            ERR_BACKUP_CANNOT_GET_DIGEST.get(digestAlgorithm, stackTraceToSingleLineString(e));
+        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
+      }
+    }
+
   }
 
   /** Represents the cryptographic engine with no hash used for a backup. */
@@ -267,7 +373,7 @@ public class BackupManager
 
     NoHashCryptoEngine(boolean shouldEncrypt)
     {
-      super(shouldEncrypt);
+      super(shouldEncrypt, null);
     }
 
     @Override
@@ -307,7 +413,9 @@ public class BackupManager
     /** Constructor for backup creation. */
     private MacCryptoEngine(BackupConfig backupConfig, NewBackupParams backupParams) throws DirectoryException
     {
-      super(backupConfig.encryptData());
+      super(backupConfig.encryptData(), DirectoryServer.getCryptoManager().getPreferredMessageDigestAlgorithm());
+      // The MAC is computed on the digests of the chunks of the files
+      backupParams.putProperty(BACKUP_PROPERTY_DIGEST_ALGORITHM, digestAlgorithm);
 
       String macKeyID = null;
       try
@@ -327,7 +435,7 @@ public class BackupManager
     /** Constructor for backup restore. */
     private MacCryptoEngine(BackupInfo backupInfo) throws DirectoryException
     {
-      super(backupInfo.isEncrypted());
+      super(backupInfo.isEncrypted(), backupInfo.getBackupProperties().get(BACKUP_PROPERTY_DIGEST_ALGORITHM));
       HashMap<String,String> backupProperties = backupInfo.getBackupProperties();
       String macKeyID = backupProperties.get(BACKUP_PROPERTY_MAC_KEY_ID);
       retrieveMacEngine(macKeyID);
@@ -394,8 +502,7 @@ public class BackupManager
     /** Constructor for backup creation. */
     private DigestCryptoEngine(BackupConfig backupConfig, NewBackupParams backupParams) throws DirectoryException
     {
-      super(backupConfig.encryptData());
-      String digestAlgorithm = cryptoManager.getPreferredMessageDigestAlgorithm();
+      super(backupConfig.encryptData(), DirectoryServer.getCryptoManager().getPreferredMessageDigestAlgorithm());
       backupParams.putProperty(BACKUP_PROPERTY_DIGEST_ALGORITHM, digestAlgorithm);
       digest = retrieveMessageDigest(digestAlgorithm);
     }
@@ -403,26 +510,10 @@ public class BackupManager
     /** Constructor for backup restore. */
     private DigestCryptoEngine(BackupInfo backupInfo) throws DirectoryException
     {
-      super(backupInfo.isEncrypted());
-      HashMap<String, String> backupProperties = backupInfo.getBackupProperties();
-      String digestAlgorithm = backupProperties.get(BACKUP_PROPERTY_DIGEST_ALGORITHM);
+      super(backupInfo.isEncrypted(), backupInfo.getBackupProperties().get(BACKUP_PROPERTY_DIGEST_ALGORITHM));
       digest = retrieveMessageDigest(digestAlgorithm);
     }
 
-    private MessageDigest retrieveMessageDigest(String digestAlgorithm) throws DirectoryException
-    {
-      try
-      {
-        return cryptoManager.getMessageDigest(digestAlgorithm);
-      }
-      catch (Exception e)
-      {
-        LocalizableMessage message =
-            ERR_BACKUP_CANNOT_GET_DIGEST.get(digestAlgorithm, stackTraceToSingleLineString(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
-      }
-    }
-
     /** {@inheritDoc} */
     @Override
     public void updateHashWith(String s)
@@ -708,33 +799,40 @@ public class BackupManager
 
   }
 
-  /** Represents a writer of a backup archive. */
-  private static final class BackupArchiveWriter implements Closeable {
+  /**
+   * Represents a writer of a backup archive.
+   * <p>
+   * Archives are written as zip files, which can be restored by any version of the server, unless the chunked
+   * format is enabled with the {@link ServerConstants#PROPERTY_BACKUP_CHUNKED_ARCHIVES} system property.
+   */
+  private static abstract class BackupArchiveWriter implements Closeable {
 
-    private final ZipOutputStream zipOutputStream;
-    private final NewBackupArchive archive;
-    private final CryptoEngine cryptoEngine;
+    final NewBackupArchive archive;
+    final CryptoEngine cryptoEngine;
 
-    BackupArchiveWriter(NewBackupArchive archive) throws DirectoryException
+    BackupArchiveWriter(NewBackupArchive archive)
     {
       this.archive = archive;
       this.cryptoEngine = archive.cryptoEngine;
-      this.zipOutputStream = open(archive.getBackupPath(), archive.getArchiveFilename());
     }
 
-    @Override
-    public void close() throws IOException
+    /** Returns a writer of a new archive, in the zip format or in the chunked format if it is enabled. */
+    static BackupArchiveWriter newWriter(NewBackupArchive archive) throws DirectoryException
     {
-      StaticUtils.close(zipOutputStream);
+      if (Boolean.getBoolean(PROPERTY_BACKUP_CHUNKED_ARCHIVES))
+      {
+        return new ChunkedBackupArchiveWriter(archive);
+      }
+      return new ZipBackupArchiveWriter(archive);
     }
 
     /**
-     * Writes the provided file to a new entry in the archive.
+     * Writes the provided file to the archive.
      *
      * @param file
      *          The file to be written.
-     * @param cryptoMethod
-     *          The cryptographic method for the written data.
+     * @param relativePath
+     *          The path of the file, relative to the backed up directory.
      * @param backupConfig
      *          The configuration, used to know if operation is cancelled.
      *
@@ -742,93 +840,36 @@ public class BackupManager
      * @throws FileNotFoundException If the file to be archived does not exist.
      * @throws IOException If an I/O error occurs while archiving the file.
      */
-    long writeFile(Path file, String relativePath, CryptoEngine cryptoMethod, BackupConfig backupConfig)
-         throws IOException, FileNotFoundException
-    {
-      ZipEntry zipEntry = new ZipEntry(relativePath);
-      zipOutputStream.putNextEntry(zipEntry);
-
-      cryptoMethod.updateHashWith(relativePath);
-
-      InputStream inputStream = null;
-      long totalBytesRead = 0;
-      try {
-        inputStream = new FileInputStream(file.toFile());
-        byte[] buffer = new byte[8192];
-        int bytesRead = inputStream.read(buffer);
-        while (bytesRead > 0 && !backupConfig.isCancelled())
-        {
-          cryptoMethod.updateHashWith(buffer, 0, bytesRead);
-          zipOutputStream.write(buffer, 0, bytesRead);
-          totalBytesRead += bytesRead;
-          bytesRead = inputStream.read(buffer);
-        }
-      }
-      finally {
-        StaticUtils.close(inputStream);
-      }
-
-      zipOutputStream.closeEntry();
-      logger.info(NOTE_BACKUP_ARCHIVED_FILE, zipEntry.getName());
-      return totalBytesRead;
-    }
+    abstract long writeFile(Path file, String relativePath, BackupConfig backupConfig)
+        throws IOException, FileNotFoundException;
 
     /**
-     * Write a list of strings to an entry in the archive.
+     * Write a list of strings to the archive.
      *
      * @param stringList
      *          A list of strings to be written.  The strings must not
      *          contain newlines.
-     * @param fileName
-     *          The name of the zip entry to be written.
-     * @param cryptoMethod
-     *          The cryptographic method for the written data.
+     * @param name
+     *          The name of the list, used to compute the hash of the archive.
      * @throws IOException
-     *          If an I/O error occurs while writing the archive entry.
+     *          If an I/O error occurs while writing the archive.
      */
-    void writeStrings(List<String> stringList, String fileName, CryptoEngine cryptoMethod)
-         throws IOException
-    {
-      ZipEntry zipEntry = new ZipEntry(fileName);
-      zipOutputStream.putNextEntry(zipEntry);
-
-      cryptoMethod.updateHashWith(fileName);
+    abstract void writeStrings(List<String> stringList, String name) throws IOException;
 
-      Writer writer = new OutputStreamWriter(zipOutputStream);
-      for (String s : stringList)
-      {
-        cryptoMethod.updateHashWith(s);
-        writer.write(s);
-        writer.write(EOL);
-      }
-      writer.flush();
-      zipOutputStream.closeEntry();
-    }
-
-    /** Writes a empty placeholder entry into the archive. */
-    void writeEmptyPlaceHolder() throws DirectoryException
-    {
-      try
-      {
-        ZipEntry emptyPlaceholder = new ZipEntry(ZIPENTRY_EMPTY_PLACEHOLDER);
-        zipOutputStream.putNextEntry(emptyPlaceholder);
-      }
-      catch (IOException e)
-      {
-        logger.traceException(e);
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-            ERR_BACKUP_CANNOT_WRITE_ARCHIVE_FILE.get(ZIPENTRY_EMPTY_PLACEHOLDER, archive.getBackupID(),
-                stackTraceToSingleLineString(e)),
-            e);
-      }
-    }
+    /**
+     * Completes the archive, once all the files have been written. It must not be called when writing the files
+     * failed, so that the archive is not mistaken for a complete one.
+     *
+     * @throws IOException
+     *          If an I/O error occurs while writing the archive.
+     */
+    abstract void finish() throws IOException;
 
     /**
      * Writes the files that are unchanged from the base backup (for an
      * incremental backup only).
      * <p>
-     * The unchanged files names are listed in the "unchanged.txt" file, which
-     * is put in the archive.
+     * The unchanged files names are listed in the first entry of the archive.
      *
      */
     void writeUnchangedFiles(Path rootDirectory, ListIterator<Path> files, BackupConfig backupConfig)
@@ -855,20 +896,20 @@ public class BackupManager
       }
     }
 
-    /** Writes the list of unchanged files names in a file as new entry in the archive. */
+    /** Writes the list of unchanged files names in a new entry of the archive. */
     private void writeUnchangedFilenames(List<String> unchangedList) throws DirectoryException
     {
-      String zipEntryName = ZIPENTRY_UNCHANGED_LOGFILES;
+      String name = ZIPENTRY_UNCHANGED_LOGFILES;
       try
       {
-        writeStrings(unchangedList, zipEntryName, archive.cryptoEngine);
+        writeStrings(unchangedList, name);
       }
       catch (IOException e)
       {
         logger.traceException(e);
         throw new DirectoryException(
              DirectoryServer.getServerErrorResultCode(),
-             ERR_BACKUP_CANNOT_WRITE_ARCHIVE_FILE.get(zipEntryName, archive.getBackupID(),
+             ERR_BACKUP_CANNOT_WRITE_ARCHIVE_FILE.get(name, archive.getBackupID(),
                  stackTraceToSingleLineString(e)), e);
       }
       archive.addBaseBackupAsDependency();
@@ -886,7 +927,7 @@ public class BackupManager
           String relativePath = rootDirectory.relativize(file).toString();
           try
           {
-            archive.latestFileSize = writeFile(file, relativePath, archive.cryptoEngine, backupConfig);
+            archive.latestFileSize = writeFile(file, relativePath, backupConfig);
             archive.latestFileName = relativePath;
           }
           catch (FileNotFoundException e)
@@ -905,14 +946,7 @@ public class BackupManager
         }
     }
 
-    private ZipOutputStream open(String backupPath, String archiveFilename) throws DirectoryException
-    {
-      OutputStream output = openStream(backupPath, archiveFilename);
-      output = cryptoEngine.encryptOutput(output);
-      return openZipStream(output);
-    }
-
-    private OutputStream openStream(String backupPath, String archiveFilename) throws DirectoryException {
+    OutputStream openStream(String backupPath, String archiveFilename) throws DirectoryException {
       OutputStream output = null;
       try
       {
@@ -937,6 +971,102 @@ public class BackupManager
       }
     }
 
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + " [archive file=" + archive.getArchiveFilename() + ", backendId="
+          + archive.getBackendID() + "]";
+    }
+
+  }
+
+  /**
+   * Represents a writer of a zip backup archive, whose entries are the backed up files. The hash of the backup is
+   * computed on the names and on the content of the files.
+   */
+  private static final class ZipBackupArchiveWriter extends BackupArchiveWriter {
+
+    private final ZipOutputStream zipOutputStream;
+    private boolean hasEntries;
+
+    ZipBackupArchiveWriter(NewBackupArchive archive) throws DirectoryException
+    {
+      super(archive);
+      this.zipOutputStream = open(archive.getBackupPath(), archive.getArchiveFilename());
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      StaticUtils.close(zipOutputStream);
+    }
+
+    @Override
+    void finish() throws IOException
+    {
+      if (!hasEntries)
+      {
+        // A zip file must have at least one entry
+        zipOutputStream.putNextEntry(new ZipEntry(ZIPENTRY_EMPTY_PLACEHOLDER));
+      }
+      zipOutputStream.finish();
+    }
+
+    @Override
+    long writeFile(Path file, String relativePath, BackupConfig backupConfig)
+         throws IOException, FileNotFoundException
+    {
+      long totalBytesRead = 0;
+      try (InputStream inputStream = new FileInputStream(file.toFile()))
+      {
+        ZipEntry zipEntry = new ZipEntry(relativePath);
+        zipOutputStream.putNextEntry(zipEntry);
+        hasEntries = true;
+        cryptoEngine.updateHashWith(relativePath);
+
+        byte[] buffer = new byte[8192];
+        int bytesRead = inputStream.read(buffer);
+        while (bytesRead > 0 && !backupConfig.isCancelled())
+        {
+          cryptoEngine.updateHashWith(buffer, 0, bytesRead);
+          zipOutputStream.write(buffer, 0, bytesRead);
+          totalBytesRead += bytesRead;
+          bytesRead = inputStream.read(buffer);
+        }
+      }
+
+      zipOutputStream.closeEntry();
+      logger.info(NOTE_BACKUP_ARCHIVED_FILE, relativePath);
+      return totalBytesRead;
+    }
+
+    @Override
+    void writeStrings(List<String> stringList, String name) throws IOException
+    {
+      ZipEntry zipEntry = new ZipEntry(name);
+      zipOutputStream.putNextEntry(zipEntry);
+      hasEntries = true;
+
+      cryptoEngine.updateHashWith(name);
+
+      Writer writer = new OutputStreamWriter(zipOutputStream);
+      for (String s : stringList)
+      {
+        cryptoEngine.updateHashWith(s);
+        writer.write(s);
+        writer.write(EOL);
+      }
+      writer.flush();
+      zipOutputStream.closeEntry();
+    }
+
+    private ZipOutputStream open(String backupPath, String archiveFilename) throws DirectoryException
+    {
+      OutputStream output = openStream(backupPath, archiveFilename);
+      output = cryptoEngine.encryptOutput(output);
+      return openZipStream(output);
+    }
+
     /** Wraps the file output stream in a zip output stream. */
     private ZipOutputStream openZipStream(OutputStream outputStream)
     {
@@ -956,15 +1086,312 @@ public class BackupManager
       return zipStream;
     }
 
+  }
+
+  /**
+   * Represents a writer of a chunked backup archive.
+   * <p>
+   * The archive is a sequence of records. The files are split into chunks which are compressed, hashed and encrypted
+   * by a pool of worker threads, then written in order by the calling thread. The hash of the backup is computed on
+   * the names of the files and the hashes of their chunks. The archive ends with a record which is only written
+   * once all the files have been written, so that a truncated archive can not be restored.
+   */
+  private static final class ChunkedBackupArchiveWriter extends BackupArchiveWriter {
+
+    private final DataOutputStream output;
+    private final ExecutorService executor;
+    /** The maximum number of chunks being encoded by the worker threads, bounding the memory used by the backup. */
+    private final int maxChunksInProgress;
+
+    ChunkedBackupArchiveWriter(NewBackupArchive archive) throws DirectoryException
+    {
+      super(archive);
+      this.output = open(archive.getBackupPath(), archive.getArchiveFilename());
+      final int nbThreads = Runtime.getRuntime().availableProcessors();
+      this.executor = Executors.newFixedThreadPool(nbThreads, newThreadFactory(null, BACKUP_THREAD_NAME, true));
+      this.maxChunksInProgress = 2 * nbThreads;
+    }
+
     @Override
-    public String toString()
+    public void close() throws IOException
     {
-      return "BackupArchiveWriter [archive file=" + archive.getArchiveFilename() + ", backendId="
-          + archive.getBackendID() + "]";
+      executor.shutdownNow();
+      output.close();
+    }
+
+    @Override
+    void finish() throws IOException
+    {
+      output.writeByte(RECORD_END_OF_ARCHIVE);
+      output.flush();
+    }
+
+    @Override
+    long writeFile(Path file, String relativePath, BackupConfig backupConfig)
+         throws IOException, FileNotFoundException
+    {
+      long totalBytesRead = 0;
+      try (InputStream inputStream = new FileInputStream(file.toFile()))
+      {
+        output.writeByte(RECORD_FILE);
+        writeString(relativePath);
+        cryptoEngine.updateHashWith(relativePath);
+
+        final Deque<Future<Chunk>> chunks = new ArrayDeque<>();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int bytesRead = readChunk(inputStream, buffer);
+        while (bytesRead > 0 && !backupConfig.isCancelled())
+        {
+          chunks.add(executor.submit(new ChunkEncoder(cryptoEngine, archive.newBackupParams.shouldCompress,
+              buffer, bytesRead)));
+          if (chunks.size() >= maxChunksInProgress)
+          {
+            writeChunk(getChunk(chunks.remove()));
+          }
+          totalBytesRead += bytesRead;
+          buffer = new byte[CHUNK_SIZE];
+          bytesRead = readChunk(inputStream, buffer);
+        }
+        while (!chunks.isEmpty())
+        {
+          writeChunk(getChunk(chunks.remove()));
+        }
+        output.writeByte(RECORD_END_OF_FILE);
+      }
+
+      logger.info(NOTE_BACKUP_ARCHIVED_FILE, relativePath);
+      return totalBytesRead;
+    }
+
+    private void writeChunk(Chunk chunk) throws IOException
+    {
+      if (chunk.digest != null)
+      {
+        cryptoEngine.updateHashWith(chunk.digest, 0, chunk.digest.length);
+      }
+      output.writeByte(RECORD_CHUNK);
+      output.writeInt(chunk.clearLength);
+      output.writeBoolean(chunk.isCompressed);
+      output.writeInt(chunk.data.length);
+      output.write(chunk.data);
+    }
+
+    /** Writes a string, encrypted if required, to the archive. */
+    private void writeString(String s) throws IOException
+    {
+      final byte[] bytes = cryptoEngine.encrypt(getBytes(s));
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+
+    @Override
+    void writeStrings(List<String> stringList, String name) throws IOException
+    {
+      cryptoEngine.updateHashWith(name);
+
+      final StringBuilder builder = new StringBuilder();
+      for (String s : stringList)
+      {
+        cryptoEngine.updateHashWith(s);
+        builder.append(s).append(EOL);
+      }
+      output.writeByte(RECORD_UNCHANGED_FILES);
+      writeString(builder.toString());
+    }
+
+    private DataOutputStream open(String backupPath, String archiveFilename) throws DirectoryException
+    {
+      final DataOutputStream dataOutput =
+          new DataOutputStream(new BufferedOutputStream(openStream(backupPath, archiveFilename)));
+      try
+      {
+        dataOutput.writeInt(CHUNKED_ARCHIVE_MAGIC_NUMBER);
+        archive.newBackupParams.putProperty(PROPERTY_ARCHIVE_FORMAT, ARCHIVE_FORMAT_CHUNKED);
+        return dataOutput;
+      }
+      catch (IOException e)
+      {
+        logger.traceException(e);
+        StaticUtils.close(dataOutput);
+        LocalizableMessage message = ERR_BACKUP_CANNOT_CREATE_ARCHIVE_FILE.
+            get(archiveFilename, backupPath, archive.getBackupID(), stackTraceToSingleLineString(e));
+        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
+      }
     }
 
   }
 
+  /** A chunk of a file, as stored in a backup archive or once restored. */
+  private static final class Chunk
+  {
+    /** The stored bytes of the chunk when backing up, the restored bytes when restoring. */
+    private final byte[] data;
+    private final int clearLength;
+    private final boolean isCompressed;
+    /** The hash of the clear bytes of the chunk, or {@code null} if the backup is not hashed. */
+    private final byte[] digest;
+
+    private Chunk(byte[] data, int clearLength, boolean isCompressed, byte[] digest)
+    {
+      this.data = data;
+      this.clearLength = clearLength;
+      this.isCompressed = isCompressed;
+      this.digest = digest;
+    }
+  }
+
+  /** Compresses, hashes and encrypts a chunk of a file to back up. */
+  private static final class ChunkEncoder implements Callable<Chunk>
+  {
+    private final CryptoEngine cryptoEngine;
+    private final boolean shouldCompress;
+    private final byte[] buffer;
+    private final int length;
+
+    private ChunkEncoder(CryptoEngine cryptoEngine, boolean shouldCompress, byte[] buffer, int length)
+    {
+      this.cryptoEngine = cryptoEngine;
+      this.shouldCompress = shouldCompress;
+      this.buffer = buffer;
+      this.length = length;
+    }
+
+    @Override
+    public Chunk call() throws Exception
+    {
+      final byte[] digest = cryptoEngine.hashChunk(buffer, length);
+      byte[] data = null;
+      if (shouldCompress)
+      {
+        data = compress(buffer, length);
+      }
+      final boolean isCompressed = data != null;
+      if (!isCompressed)
+      {
+        data = Arrays.copyOf(buffer, length);
+      }
+      return new Chunk(cryptoEngine.encrypt(data), length, isCompressed, digest);
+    }
+
+    /** Returns the compressed bytes, or null if compressing does not reduce the size of the data. */
+    private static byte[] compress(byte[] buffer, int length)
+    {
+      final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+      try
+      {
+        deflater.setInput(buffer, 0, length);
+        deflater.finish();
+        final byte[] compressed = new byte[length];
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < length)
+        {
+          compressedLength += deflater.deflate(compressed, compressedLength, length - compressedLength);
+        }
+        return deflater.finished() ? Arrays.copyOf(compressed, compressedLength) : null;
+      }
+      finally
+      {
+        deflater.end();
+      }
+    }
+  }
+
+  /** Decrypts, uncompresses and hashes a chunk of a file to restore. */
+  private static final class ChunkDecoder implements Callable<Chunk>
+  {
+    private final CryptoEngine cryptoEngine;
+    private final Chunk storedChunk;
+
+    private ChunkDecoder(CryptoEngine cryptoEngine, Chunk storedChunk)
+    {
+      this.cryptoEngine = cryptoEngine;
+      this.storedChunk = storedChunk;
+    }
+
+    @Override
+    public Chunk call() throws Exception
+    {
+      byte[] data = cryptoEngine.decrypt(storedChunk.data);
+      if (storedChunk.isCompressed)
+      {
+        data = uncompress(data, storedChunk.clearLength);
+      }
+      else if (data.length != storedChunk.clearLength)
+      {
+        throw new IOException("Expected " + storedChunk.clearLength + " bytes in chunk, got " + data.length);
+      }
+      final byte[] digest = cryptoEngine.hashChunk(data, data.length);
+      return new Chunk(data, data.length, false, digest);
+    }
+
+    private static byte[] uncompress(byte[] compressed, int clearLength) throws IOException
+    {
+      final Inflater inflater = new Inflater();
+      try
+      {
+        inflater.setInput(compressed);
+        final byte[] data = new byte[clearLength];
+        int length = 0;
+        while (!inflater.finished() && length < clearLength)
+        {
+          final int inflated = inflater.inflate(data, length, clearLength - length);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          {
+            break;
+          }
+          length += inflated;
+        }
+        if (!inflater.finished() || length != clearLength)
+        {
+          throw new IOException("Expected " + clearLength + " bytes in compressed chunk, got " + length);
+        }
+        return data;
+      }
+      catch (DataFormatException e)
+      {
+        throw new IOException(e);
+      }
+      finally
+      {
+        inflater.end();
+      }
+    }
+  }
+
+  /** Fills the provided buffer with the bytes of the input stream, returns the number of bytes read. */
+  private static int readChunk(InputStream inputStream, byte[] buffer) throws IOException
+  {
+    int length = 0;
+    int bytesRead;
+    while (length < buffer.length && (bytesRead = inputStream.read(buffer, length, buffer.length - length)) > 0)
+    {
+      length += bytesRead;
+    }
+    return length;
+  }
+
+  /** Waits for a chunk being encoded or decoded by the worker threads. */
+  private static Chunk getChunk(Future<Chunk> future) throws IOException
+  {
+    try
+    {
+      return future.get();
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof IOException)
+      {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
   /** Represents a reader of a backup archive. */
   private static final class BackupArchiveReader {
 
@@ -1002,6 +1429,10 @@ public class BackupManager
      */
     Set<String> readUnchangedDependentFiles() throws DirectoryException
     {
+      if (isChunkedArchive())
+      {
+        return readUnchangedDependentFilesFromChunkedArchive();
+      }
       Set<String> hashSet = new HashSet<>();
       ZipInputStream zipStream = null;
       try
@@ -1033,6 +1464,31 @@ public class BackupManager
       }
     }
 
+    private Set<String> readUnchangedDependentFilesFromChunkedArchive() throws DirectoryException
+    {
+      try (DataInputStream input = openChunkedStream())
+      {
+        // The list of unchanged files is always the first record of the archive
+        if (input.readByte() == RECORD_UNCHANGED_FILES)
+        {
+          return new HashSet<>(readUnchangedFilenames(input));
+        }
+        return new HashSet<>();
+      }
+      catch (IOException e)
+      {
+        logger.traceException(e);
+        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), ERR_BACKUP_CANNOT_RESTORE.get(
+            identifier, stackTraceToSingleLineString(e)), e);
+      }
+    }
+
+    /** Indicates whether the archive is a chunked archive, or a zip file. */
+    private boolean isChunkedArchive()
+    {
+      return ARCHIVE_FORMAT_CHUNKED.equals(backupInfo.getBackupProperties().get(PROPERTY_ARCHIVE_FORMAT));
+    }
+
     /**
      * Restore the provided list of files from the provided restore directory.
      * @param restoreDir
@@ -1051,7 +1507,14 @@ public class BackupManager
     {
       try
       {
-        restoreArchive0(restoreDir, filesToRestore, restoreConfig, backupable);
+        if (isChunkedArchive())
+        {
+          restoreChunkedArchive(restoreDir, filesToRestore, restoreConfig);
+        }
+        else
+        {
+          restoreArchive0(restoreDir, filesToRestore, restoreConfig, backupable);
+        }
       }
       catch (IOException e)
       {
@@ -1103,6 +1566,153 @@ public class BackupManager
       }
     }
 
+    /**
+     * Restores the files of a chunked archive, the chunks of the files being decrypted, uncompressed and hashed by a
+     * pool of worker threads.
+     */
+    private void restoreChunkedArchive(Path restoreDir, Set<String> filesToRestore, RestoreConfig restoreConfig)
+        throws DirectoryException, IOException
+    {
+      final int nbThreads = Runtime.getRuntime().availableProcessors();
+      final ExecutorService executor =
+          Executors.newFixedThreadPool(nbThreads, newThreadFactory(null, RESTORE_THREAD_NAME, true));
+      try (DataInputStream input = openChunkedStream())
+      {
+        byte recordType = input.readByte();
+        while (recordType != RECORD_END_OF_ARCHIVE && !restoreConfig.isCancelled())
+        {
+          switch (recordType)
+          {
+          case RECORD_UNCHANGED_FILES:
+            // This record is never restored, and its hash is computed on the strings
+            cryptoEngine.updateHashWith(ZIPENTRY_UNCHANGED_LOGFILES);
+            for (String line : readUnchangedFilenames(input))
+            {
+              cryptoEngine.updateHashWith(line);
+            }
+            break;
+          case RECORD_FILE:
+            restoreChunkedFile(input, readString(input), restoreDir, filesToRestore, restoreConfig, executor,
+                2 * nbThreads);
+            break;
+          default:
+            throw new IOException("Unexpected record type " + recordType + " in archive " + archiveFile);
+          }
+          recordType = input.readByte();
+        }
+      }
+      finally
+      {
+        executor.shutdownNow();
+      }
+    }
+
+    /**
+     * Restores a file of a chunked archive. The file is only hashed, not written on disk, when only verifying the
+     * archive or when the file is not one of the files to restore.
+     */
+    private void restoreChunkedFile(DataInputStream input, String fileName, Path restoreDir,
+        Set<String> filesToRestore, RestoreConfig restoreConfig, ExecutorService executor, int maxChunksInProgress)
+        throws IOException, DirectoryException
+    {
+      final boolean mustRestoreOnDisk = !restoreConfig.verifyOnly()
+          && (filesToRestore.isEmpty() || filesToRestore.contains(fileName));
+      OutputStream outputStream = null;
+      try
+      {
+        if (mustRestoreOnDisk)
+        {
+          Path fileToRestore = restoreDir.resolve(fileName);
+          ensureFileCanBeRestored(fileToRestore);
+          outputStream = new FileOutputStream(fileToRestore.toFile());
+        }
+        else if (restoreConfig.verifyOnly())
+        {
+          logger.info(NOTE_BACKUP_VERIFY_FILE, fileName);
+        }
+        cryptoEngine.updateHashWith(fileName);
+
+        final Deque<Future<Chunk>> chunks = new ArrayDeque<>();
+        long totalBytesRead = 0;
+        byte recordType = input.readByte();
+        while (recordType == RECORD_CHUNK && !restoreConfig.isCancelled())
+        {
+          final int clearLength = input.readInt();
+          final boolean isCompressed = input.readBoolean();
+          final byte[] data = new byte[input.readInt()];
+          input.readFully(data);
+          chunks.add(executor.submit(new ChunkDecoder(cryptoEngine, new Chunk(data, clearLength, isCompressed, null))));
+          if (chunks.size() >= maxChunksInProgress)
+          {
+            totalBytesRead += restoreChunk(getChunk(chunks.remove()), outputStream);
+          }
+          recordType = input.readByte();
+        }
+        while (!chunks.isEmpty())
+        {
+          totalBytesRead += restoreChunk(getChunk(chunks.remove()), outputStream);
+        }
+        if (recordType != RECORD_END_OF_FILE && !restoreConfig.isCancelled())
+        {
+          throw new IOException("Unexpected record type " + recordType + " in file " + fileName
+              + " of archive " + archiveFile);
+        }
+        if (mustRestoreOnDisk)
+        {
+          logger.info(NOTE_BACKUP_RESTORED_FILE, fileName, totalBytesRead);
+        }
+      }
+      finally
+      {
+        StaticUtils.close(outputStream);
+      }
+    }
+
+    /** Restores a chunk, the restore being virtual if the output stream is {@code null}. */
+    private int restoreChunk(Chunk chunk, OutputStream outputStream) throws IOException
+    {
+      if (chunk.digest != null)
+      {
+        cryptoEngine.updateHashWith(chunk.digest, 0, chunk.digest.length);
+      }
+      if (outputStream != null)
+      {
+        outputStream.write(chunk.data);
+      }
+      return chunk.data.length;
+    }
+
+    private DataInputStream openChunkedStream() throws DirectoryException, IOException
+    {
+      final DataInputStream input = new DataInputStream(new BufferedInputStream(openStream()));
+      if (input.readInt() != CHUNKED_ARCHIVE_MAGIC_NUMBER)
+      {
+        StaticUtils.close(input);
+        throw new IOException("File " + archiveFile + " is not a backup archive");
+      }
+      return input;
+    }
+
+    /** Reads a string, decrypted if required, from the archive. */
+    private String readString(DataInputStream input) throws IOException
+    {
+      final byte[] bytes = new byte[input.readInt()];
+      input.readFully(bytes);
+      return new String(cryptoEngine.decrypt(bytes), "UTF-8");
+    }
+
+    private List<String> readUnchangedFilenames(DataInputStream input) throws IOException
+    {
+      final BufferedReader reader = new BufferedReader(new StringReader(readString(input)));
+      final List<String> results = new ArrayList<>();
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        results.add(line);
+      }
+      return results;
+    }
+
     /**
      * Handle any special entry in the archive.
      *
@@ -1250,12 +1860,17 @@ public class BackupManager
   /**
    * Creates a backup of the provided backupable entity.
    * <p>
-   * The backup is stored in a single zip file in the backup directory.
+   * The backup is stored in a single archive file in the backup directory.
+   * The archive is a zip file, unless the chunked format is enabled with the
+   * {@link ServerConstants#PROPERTY_BACKUP_CHUNKED_ARCHIVES} system property:
+   * the files are then split into chunks which are compressed, hashed and
+   * encrypted in parallel. Chunked archives can not be restored by the versions
+   * of the server which do not support this format.
    * <p>
-   * If the backup is incremental, then the first entry in the zip is a text
-   * file containing a list of all the log files that are unchanged since the
-   * previous backup. The remaining zip entries are the log files themselves,
-   * which, for an incremental, only include those files that have changed.
+   * If the backup is incremental, then the first record in the archive is the
+   * list of all the log files that are unchanged since the previous backup.
+   * The remaining records are the log files themselves, which, for an
+   * incremental, only include those files that have changed.
    *
    * @param backupable
    *          The underlying entity (storage, backend) to be backed up.
@@ -1275,18 +1890,13 @@ public class BackupManager
     {
       final ListIterator<Path> files = backupable.getFilesToBackup();
       final Path rootDirectory = backupable.getDirectory().toPath();
-      archiveWriter = new BackupArchiveWriter(newArchive);
+      archiveWriter = BackupArchiveWriter.newWriter(newArchive);
 
-      if (files.hasNext())
-      {
-        if (backupParams.isIncremental) {
-          archiveWriter.writeUnchangedFiles(rootDirectory, files, backupConfig);
-        }
-        archiveWriter.writeChangedFiles(rootDirectory, files, backupConfig);
-      }
-      else {
-        archiveWriter.writeEmptyPlaceHolder();
+      if (backupParams.isIncremental) {
+        archiveWriter.writeUnchangedFiles(rootDirectory, files, backupConfig);
       }
+      archiveWriter.writeChangedFiles(rootDirectory, files, backupConfig);
+      finishArchiveWriter(archiveWriter, newArchive);
     }
     finally
     {
@@ -1374,6 +1984,22 @@ public class BackupManager
     return restoreDirectory.toPath();
   }
 
+  private void finishArchiveWriter(BackupArchiveWriter archiveWriter, NewBackupArchive archive)
+      throws DirectoryException
+  {
+    try
+    {
+      archiveWriter.finish();
+    }
+    catch (IOException e)
+    {
+      logger.traceException(e);
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+          ERR_BACKUP_CANNOT_WRITE_ARCHIVE_FILE.get(archive.getArchiveFilename(), archive.getBackupID(),
+              stackTraceToSingleLineString(e)), e);
+    }
+  }
+
   private void closeArchiveWriter(BackupArchiveWriter archiveWriter, String backupFile, String backupPath)
       throws DirectoryException
   {
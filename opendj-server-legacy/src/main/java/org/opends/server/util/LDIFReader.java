@@ -24,9 +24,12 @@ import static org.opends.server.util.StaticUtils.*;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -54,6 +57,7 @@ import org.opends.server.types.AcceptRejectWarn;
 import org.opends.server.types.Attribute;
 import org.opends.server.types.AttributeBuilder;
 import org.opends.server.types.Attributes;
+import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
 import org.opends.server.types.LDIFImportConfig;
 import org.opends.server.types.ObjectClass;
@@ -76,6 +80,9 @@ public class LDIFReader implements Closeable
   /** The reader that will be used to read the data. */
   private BufferedReader reader;
 
+  /** The input stream that will be used to read the binary entry records, if any. */
+  private DataInputStream recordInput;
+
   /** The import configuration that specifies what should be imported. */
   protected LDIFImportConfig importConfig;
 
@@ -135,7 +142,14 @@ public class LDIFReader implements Closeable
     ifNull(importConfig);
     this.importConfig = importConfig;
 
-    reader               = importConfig.getReader();
+    if (importConfig.isBinaryFormat())
+    {
+      recordInput        = importConfig.getRecordInputStream();
+    }
+    else
+    {
+      reader             = importConfig.getReader();
+    }
     lastEntryBodyLines   = new LinkedList<>();
     lastEntryHeaderLines = new LinkedList<>();
     pluginConfigManager  = DirectoryServer.getPluginConfigManager();
@@ -188,6 +202,10 @@ public class LDIFReader implements Closeable
   public Entry readEntry(boolean checkSchema)
          throws IOException, LDIFException
   {
+    if (recordInput != null)
+    {
+      return readEntryFromRecords(checkSchema);
+    }
     while (true)
     {
       // Read the set of lines that make up the next entry.
@@ -237,6 +255,113 @@ public class LDIFReader implements Closeable
     }
   }
 
+  private Entry readEntryFromRecords(boolean checkSchema) throws IOException, LDIFException
+  {
+    while (true)
+    {
+      final Entry entry = readEntryRecord();
+      if (entry == null)
+      {
+        return null;
+      }
+      final List<StringBuilder> lines = linesOf(entry);
+      lastEntryBodyLines   = lines;
+      lastEntryHeaderLines = new LinkedList<>();
+      entriesRead.incrementAndGet();
+
+      final DN entryDN = entry.getName();
+      if (!importConfig.includeEntry(entryDN))
+      {
+        logger.trace("Skipping entry %s because the DN is not one that "
+            + "should be included based on the include and exclude branches.", entryDN);
+        logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+        continue;
+      }
+      if (!isIncludedInImport(entry, lines)
+          || !invokeImportPlugins(entry, lines))
+      {
+        continue;
+      }
+      validateAgainstSchemaIfNeeded(checkSchema, entry, lines);
+      return entry;
+    }
+  }
+
+  /**
+   * Reads and decodes the next binary entry record, as written by
+   * {@link Entry#toBinaryRecord(org.opends.server.types.LDIFExportConfig, ByteStringBuilder)}.
+   * The number of the record, starting with 1, is used in place of the line number of the entry.
+   *
+   * @return the next entry, or {@code null} if the end of the data is reached
+   * @throws IOException
+   *           If an I/O problem occurs while reading the record.
+   * @throws LDIFException
+   *           If the record cannot be decoded as an entry.
+   */
+  protected Entry readEntryRecord() throws IOException, LDIFException
+  {
+    final int length;
+    try
+    {
+      length = recordInput.readInt();
+    }
+    catch (EOFException e)
+    {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    recordInput.readFully(bytes);
+    lineNumber++;
+    lastEntryLineNumber = lineNumber;
+    try
+    {
+      return Entry.decode(ByteString.wrap(bytes).asReader());
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      LocalizableMessage message = ERR_LDIF_CANNOT_DECODE_ENTRY_RECORD.get(lineNumber, e.getMessageObject());
+      throw new LDIFException(message, lineNumber, true, e);
+    }
+  }
+
+  /**
+   * Returns the LDIF lines of an entry read from a binary record, only computing them when they are
+   * first needed, which is when the entry is logged to the reject or to the skip file.
+   *
+   * @param entry
+   *          the entry read from a binary record
+   * @return the LDIF lines of the entry
+   */
+  protected static List<StringBuilder> linesOf(final Entry entry)
+  {
+    return new AbstractList<StringBuilder>()
+    {
+      private List<StringBuilder> lines;
+
+      private List<StringBuilder> lines()
+      {
+        if (lines == null)
+        {
+          lines = entry.toLDIF();
+        }
+        return lines;
+      }
+
+      @Override
+      public StringBuilder get(int index)
+      {
+        return lines().get(index);
+      }
+
+      @Override
+      public int size()
+      {
+        return lines().size();
+      }
+    };
+  }
+
   private Entry createEntry(DN entryDN, List<StringBuilder> lines, boolean checkSchema) throws LDIFException
   {
     Map<ObjectClass, String> objectClasses = new HashMap<>();
@@ -253,7 +378,7 @@ public class LDIFReader implements Closeable
     return entry;
   }
 
-  private boolean isIncludedInImport(Entry entry, LinkedList<StringBuilder> lines) throws LDIFException
+  private boolean isIncludedInImport(Entry entry, List<StringBuilder> lines) throws LDIFException
   {
     try
     {
@@ -277,7 +402,7 @@ public class LDIFReader implements Closeable
     return true;
   }
 
-  private boolean invokeImportPlugins(Entry entry, LinkedList<StringBuilder> lines)
+  private boolean invokeImportPlugins(Entry entry, List<StringBuilder> lines)
   {
     if (importConfig.invokeImportPlugins())
     {
@@ -304,7 +429,7 @@ public class LDIFReader implements Closeable
     return true;
   }
 
-  private void validateAgainstSchemaIfNeeded(boolean checkSchema, final Entry entry, LinkedList<StringBuilder> lines)
+  private void validateAgainstSchemaIfNeeded(boolean checkSchema, final Entry entry, List<StringBuilder> lines)
       throws LDIFException
   {
     if (checkSchema)
@@ -558,6 +683,26 @@ public class LDIFReader implements Closeable
    *                         occurs while trying to parse it.
    */
   protected DN readDN(LinkedList<StringBuilder> lines) throws LDIFException
+  {
+    return readDN(lines, lastEntryHeaderLines);
+  }
+
+  /**
+   * Reads the DN of the entry from the provided list of lines, recording the
+   * header lines of the entry in the provided list rather than in the header
+   * lines of the last entry read by this LDIF reader.
+   *
+   * @param  lines        The set of lines from which the DN should be read.
+   * @param  headerLines  The list where the header lines of the entry should be
+   *                      recorded.
+   *
+   * @return  The decoded entry DN.
+   *
+   * @throws  LDIFException  If DN is not the first element in the list (or the
+   *                         second after the LDIF version), or if a problem
+   *                         occurs while trying to parse it.
+   */
+  protected DN readDN(LinkedList<StringBuilder> lines, List<StringBuilder> headerLines) throws LDIFException
   {
     if (lines.isEmpty())
     {
@@ -568,7 +713,7 @@ public class LDIFReader implements Closeable
     }
 
     StringBuilder line = lines.remove();
-    lastEntryHeaderLines.add(line);
+    headerLines.add(line);
     int colonPos = line.indexOf(":");
     if (colonPos <= 0)
     {
@@ -583,7 +728,7 @@ public class LDIFReader implements Closeable
     if (attrName.equals("version"))
     {
       // This is the version line, and we can skip it.
-      return readDN(lines);
+      return readDN(lines, headerLines);
     }
     else if (! attrName.equals("dn"))
     {
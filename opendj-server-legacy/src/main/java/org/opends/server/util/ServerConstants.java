@@ -2795,6 +2795,18 @@ public final class ServerConstants
 
 
 
+  /**
+   * The name of the system property that can be used to indicate that the
+   * backups should be written in the chunked archive format, whose files are
+   * compressed, hashed and encrypted in parallel, rather than in zip files.
+   * Chunked archives can not be restored by the versions of the server which
+   * do not support this format.
+   */
+  public static final String PROPERTY_BACKUP_CHUNKED_ARCHIVES =
+       "org.opends.server.BackupChunkedArchives";
+
+
+
   /**
    * The name of the system property that can be used to specify the
    * fully-qualified name of theclass that provides the Director Server config
@@ -2897,6 +2909,17 @@ public final class ServerConstants
 
 
 
+  /**
+   * The name of the system property that can be used to indicate that the
+   * lock manager should count the readers of its subtree locks on per-thread
+   * stripes. This reduces the contention on the subtree locks of the parent
+   * entries shared by all the entries, such as the suffix entries.
+   */
+  public static final String PROPERTY_LOCK_MANAGER_STRIPED_SUBTREE_LOCKS =
+       "org.opends.server.LockManagerStripedSubtreeLocks";
+
+
+
   /**
    * The name of the system property that can be used to determine whether the
    * server should maintain an archive of previous configurations.  If this is
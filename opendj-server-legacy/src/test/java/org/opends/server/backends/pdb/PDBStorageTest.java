@@ -21,12 +21,16 @@ import static org.opends.server.ConfigurationMock.*;
 import static org.opends.server.util.StaticUtils.*;
 import static org.forgerock.opendj.ldap.ByteString.*;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.forgerock.opendj.config.server.ConfigException;
 import org.opends.server.DirectoryServerTestCase;
 import org.opends.server.TestCaseUtils;
 import org.opends.server.admin.std.server.PDBBackendCfg;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.TreePreloadStats;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
 import org.opends.server.core.MemoryQuota;
@@ -122,6 +126,36 @@ public class PDBStorageTest extends DirectoryServerTestCase
     assertThat(storage.getNewExchange(treeName, true)).isNotSameAs(initial);
   }
 
+  @Test
+  public void testPreloadReadsAllTheRecordsOfTheTrees() throws Exception
+  {
+    final TreeName otherTreeName = new TreeName("dc=test", "other");
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        txn.openTree(treeName, true);
+        txn.openTree(otherTreeName, true);
+        for (int i = 0; i < 2500; i++)
+        {
+          txn.put(treeName, valueOfUtf8(String.format("key%04d", i)), valueOfUtf8("value"));
+        }
+        txn.put(otherTreeName, valueOfUtf8("key"), valueOfUtf8("value"));
+      }
+    });
+
+    final List<TreePreloadStats> stats = storage.preload(Arrays.asList(treeName, otherTreeName), 60000);
+    assertThat(stats).hasSize(2);
+    assertThat(stats.get(0).getTreeName()).isEqualTo(treeName);
+    assertThat(stats.get(0).getRecordCount()).isEqualTo(2500);
+    assertThat(stats.get(0).getByteCount()).isEqualTo(2500 * (7 + 5));
+    assertThat(stats.get(0).isComplete()).isTrue();
+    assertThat(stats.get(1).getTreeName()).isEqualTo(otherTreeName);
+    assertThat(stats.get(1).getRecordCount()).isEqualTo(1);
+    assertThat(stats.get(1).isComplete()).isTrue();
+  }
+
   protected PDBBackendCfg createBackendCfg()
   {
     PDBBackendCfg backendCfg = legacyMockCfg(PDBBackendCfg.class);
@@ -23,9 +23,11 @@ import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.State.IndexFlag.*;
 import static org.opends.server.backends.pluggable.Utils.assertIdsEquals;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -97,6 +99,126 @@ public class DefaultIndexTest extends DirectoryServerTestCase
     assertThat(txn.read(index.getName(), valueOfUtf8("key"))).isNull();
   }
 
+  @Test
+  public void testBigKeyIsSplitIntoSegments() {
+    index = newBigKeysIndex();
+    put(newDefinedSet(1, 2, 3, 4));
+    update(newDefinedSet(), newDefinedSet(5, 6, 7, 8));
+
+    assertThat(index.valueToString(getFromDb())).isEqualTo("[SEGMENTS:4]");
+    assertThat(txn.getRecordCount(getSegmentsTreeName())).isEqualTo(4);
+    assertThat(index.get(txn, valueOfUtf8("key")).toLongArray()).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+  }
+
+  @Test
+  public void testBigKeyUpdateOnlyRewritesAffectedSegment() {
+    index = newBigKeysIndex();
+    put(newDefinedSet(1, 2, 3, 4));
+    update(newDefinedSet(), newDefinedSet(5, 6, 7, 8));
+    final ByteString bigKeyRecord = getFromDb();
+    final Map<ByteString, ByteString> segments = getSegments();
+
+    update(newDefinedSet(3), newDefinedSet());
+
+    assertThat(getFromDb()).isEqualTo(bigKeyRecord);
+    final Map<ByteString, ByteString> updatedSegments = getSegments();
+    assertThat(updatedSegments).hasSameSizeAs(segments);
+    updatedSegments.entrySet().removeAll(segments.entrySet());
+    assertThat(updatedSegments).hasSize(1);
+    assertThat(index.get(txn, valueOfUtf8("key")).toLongArray()).containsExactly(1, 2, 4, 5, 6, 7, 8);
+  }
+
+  @Test
+  public void testBigKeySegmentsAreSplitAndRemoved() {
+    index = newBigKeysIndex();
+    put(newDefinedSet(1, 2, 3, 4));
+    update(newDefinedSet(), newDefinedSet(5, 6, 7, 8));
+
+    update(newDefinedSet(), newDefinedSet(0, 9, 10, 11));
+    assertThat(index.get(txn, valueOfUtf8("key")).toLongArray()).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+
+    update(newDefinedSet(0, 1, 2, 5, 6), newDefinedSet());
+    assertThat(index.get(txn, valueOfUtf8("key")).toLongArray()).containsExactly(3, 4, 7, 8, 9, 10, 11);
+
+    update(newDefinedSet(3, 4, 7, 8, 9, 10, 11), newDefinedSet());
+    assertThat(getFromDb()).isNull();
+    assertThat(txn.getRecordCount(getSegmentsTreeName())).isEqualTo(0);
+  }
+
+  @Test
+  public void testBigKeyCursor() {
+    index = newBigKeysIndex();
+    put(newDefinedSet(1, 2, 3, 4));
+    update(newDefinedSet(), newDefinedSet(5, 6, 7, 8));
+    index.update(txn, valueOfUtf8("other"), null, newDefinedSet(9));
+
+    try (Cursor<ByteString, EntryIDSet> cursor = index.openCursor(txn))
+    {
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("key"));
+      assertThat(cursor.getValue().toLongArray()).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.getValue().toLongArray()).containsExactly(9);
+      assertThat(cursor.next()).isFalse();
+    }
+  }
+
+  @Test
+  public void testBigKeySegmentedCursor() {
+    index = newBigKeysIndex();
+    put(newDefinedSet(1, 2, 3, 4));
+    update(newDefinedSet(), newDefinedSet(5, 6, 7, 8));
+    index.update(txn, valueOfUtf8("other"), null, newDefinedSet(9));
+
+    try (Cursor<ByteString, EntryIDSet> cursor = index.openSegmentedCursor(txn))
+    {
+      final List<Long> entryIDs = new ArrayList<>();
+      assertThat(cursor.positionToKey(valueOfUtf8("key"))).isTrue();
+      int nbSegments = 0;
+      do
+      {
+        for (EntryID entryID : cursor.getValue())
+        {
+          entryIDs.add(entryID.longValue());
+        }
+        nbSegments++;
+      }
+      while (cursor.next() && cursor.getKey().equals(valueOfUtf8("key")));
+      assertThat(nbSegments).isEqualTo(4);
+      assertThat(entryIDs).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("other"));
+      assertThat(cursor.getValue().toLongArray()).containsExactly(9);
+      assertThat(cursor.next()).isFalse();
+      assertThat(cursor.isDefined()).isFalse();
+    }
+  }
+
+  private DefaultIndex newBigKeysIndex()
+  {
+    final DefaultIndex bigKeysIndex = newIndex("test", 5, EnumSet.of(TRUSTED, COMPACTED), true);
+    bigKeysIndex.open(txn, true);
+    return bigKeysIndex;
+  }
+
+  private TreeName getSegmentsTreeName()
+  {
+    return new TreeName("dc=example,dc=com", "test" + DefaultIndex.SEGMENTS_TREE_SUFFIX);
+  }
+
+  private Map<ByteString, ByteString> getSegments()
+  {
+    final Map<ByteString, ByteString> segments = new HashMap<>();
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getSegmentsTreeName()))
+    {
+      while (cursor.next())
+      {
+        segments.put(cursor.getKey(), cursor.getValue());
+      }
+    }
+    return segments;
+  }
+
   private void update(EntryIDSet deletedIDSet, EntryIDSet addedIDSet) {
     index.update(txn, valueOfUtf8("key"), deletedIDSet, addedIDSet);
   }
@@ -115,10 +237,17 @@ public class DefaultIndexTest extends DirectoryServerTestCase
   }
 
   private static DefaultIndex newIndex(String name, int indexLimit, EnumSet<IndexFlag> indexFlags)
+  {
+    return newIndex(name, indexLimit, indexFlags, false);
+  }
+
+  private static DefaultIndex newIndex(String name, int indexLimit, EnumSet<IndexFlag> indexFlags,
+      boolean bigIndexKeysEnabled)
   {
     final State state = mock(State.class);
     when(state.getIndexFlags(any(ReadableTransaction.class), any(TreeName.class))).thenReturn(indexFlags);
-    return new DefaultIndex(new TreeName("dc=example,dc=com", name), state, indexLimit, mock(EntryContainer.class));
+    return new DefaultIndex(new TreeName("dc=example,dc=com", name), state, indexLimit, bigIndexKeysEnabled,
+        mock(EntryContainer.class));
   }
 
   static final class DummyWriteableTransaction implements WriteableTransaction {
@@ -196,7 +325,14 @@ public class DefaultIndexTest extends DirectoryServerTestCase
           current = null;
 
           it = tree.tailMap(key.toByteString()).entrySet().iterator();
-          return it.hasNext() && it.next().getKey().equals(key.toByteString());
+          if (it.hasNext()) {
+            final Entry<ByteString, ByteString> next = it.next();
+            if (next.getKey().equals(key.toByteString())) {
+              current = next;
+              return true;
+            }
+          }
+          return false;
         }
 
         @Override
@@ -206,7 +342,7 @@ public class DefaultIndexTest extends DirectoryServerTestCase
 
           it = tree.tailMap(key.toByteString()).entrySet().iterator();
           if( it.hasNext() ) {
-            it.next();
+            current = it.next();
             return true;
           }
           return false;
@@ -247,7 +383,10 @@ public class DefaultIndexTest extends DirectoryServerTestCase
     @Override
     public void openTree(TreeName name, boolean createOnDemand)
     {
-      storage.put(name, new TreeMap<ByteString, ByteString>());
+      if (!storage.containsKey(name))
+      {
+        storage.put(name, new TreeMap<ByteString, ByteString>());
+      }
     }
 
     @Override
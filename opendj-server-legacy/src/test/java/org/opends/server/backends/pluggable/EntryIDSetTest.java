@@ -290,9 +290,142 @@ public class EntryIDSetTest extends DirectoryServerTestCase
     assertIdsEquals(retained, 1, 3, 5, 7, 9);
   }
 
+  @Test
+  public void testBitmapAddRemoveContain()
+  {
+    final EntryIDSet set = newBitmapSet(6, 8, 10, 12);
+
+    assertThat(set.add(id(4))).isTrue();
+    assertThat(set.add(id(1L << 32))).isTrue();
+    assertThat(set.add(id(10))).isFalse();
+    assertThat(set.toLongArray()).containsExactly(4, 6, 8, 10, 12, 1L << 32);
+
+    assertThat(set.remove(id(8))).isTrue();
+    assertThat(set.remove(id(1L << 32))).isTrue();
+    assertThat(set.remove(id(7))).isFalse();
+    assertThat(set.toLongArray()).containsExactly(4, 6, 10, 12);
+
+    assertThat(set.contains(id(6))).isTrue();
+    assertThat(set.contains(id(8))).isFalse();
+    assertThat(set.size()).isEqualTo(4);
+    assertIdsEquals(set.iterator(), 4, 6, 10, 12);
+  }
+
+  @Test
+  public void testBitmapContainerConversions()
+  {
+    final EntryIDSet set = newBitmapSet();
+    for (long id = 0; id < 10000; id += 2)
+    {
+      set.add(id(id));
+    }
+    assertThat(set.size()).isEqualTo(5000);
+    assertThat(set.contains(id(9998))).isTrue();
+    assertThat(set.contains(id(9999))).isFalse();
+
+    for (long id = 0; id < 9000; id += 2)
+    {
+      set.remove(id(id));
+    }
+    assertThat(set.size()).isEqualTo(500);
+    assertThat(set.toLongArray()[0]).isEqualTo(9000);
+    assertThat(CODEC_V3.decode(KEY, CODEC_V3.encode(set)).toLongArray()).isEqualTo(set.toLongArray());
+  }
+
+  @Test
+  public void testBitmapCodecIsSmallerForDenseSets()
+  {
+    final long[] consecutiveIds = range(1, 200000, 1);
+    final long[] halfIds = range(1, 200000, 2);
+    final long[] sparseIds = range(1, 200000, 1000);
+
+    for (long[] ids : new long[][] { consecutiveIds, halfIds, sparseIds })
+    {
+      final ByteString encoded = CODEC_V3.encode(newDefinedSet(ids));
+      assertThat(CODEC_V3.decode(KEY, encoded).toLongArray()).isEqualTo(ids);
+    }
+    assertThat(CODEC_V3.encode(newDefinedSet(consecutiveIds)).length() * 10)
+        .isLessThan(CODEC_V2.encode(newDefinedSet(consecutiveIds)).length());
+    assertThat(CODEC_V3.encode(newDefinedSet(halfIds)).length() * 3)
+        .isLessThan(CODEC_V2.encode(newDefinedSet(halfIds)).length());
+  }
+
+  @Test
+  public void testBitmapAddAllRemoveAll()
+  {
+    final long[] evenIds = range(0, 20000, 2);
+    final long[] oddIds = range(1, 20000, 2);
+
+    final EntryIDSet set = newBitmapSet(evenIds);
+    set.addAll(newBitmapSet(oddIds));
+    assertThat(set.toLongArray()).isEqualTo(range(0, 20000, 1));
+
+    set.removeAll(newDefinedSet(evenIds));
+    assertThat(set.toLongArray()).isEqualTo(oddIds);
+
+    set.addAll(newDefinedSet(70000, 70001));
+    set.removeAll(newBitmapSet(range(1, 19999, 2)));
+    assertThat(set.toLongArray()).containsExactly(19999, 70000, 70001);
+  }
+
+  @Test
+  public void testBitmapRetainAll()
+  {
+    EntryIDSet retained = newBitmapSet(range(0, 20000, 2));
+    retained.retainAll(newBitmapSet(range(0, 20000, 3)));
+    assertThat(retained.toLongArray()).isEqualTo(range(0, 20000, 6));
+
+    retained = newBitmapSet(range(0, 20000, 2));
+    retained.retainAll(newDefinedSet(1, 2, 3, 4, 100001));
+    assertThat(retained.toLongArray()).containsExactly(2, 4);
+
+    retained = newDefinedSet(1, 2, 3, 4, 100001);
+    retained.retainAll(newBitmapSet(range(0, 20000, 2)));
+    assertThat(retained.toLongArray()).containsExactly(2, 4);
+
+    final EntryIDSet bitmap = newBitmapSet(1, 3, 5);
+    retained = newUndefinedSet();
+    retained.retainAll(bitmap);
+    retained.add(id(7));
+    assertThat(retained.toLongArray()).containsExactly(1, 3, 5, 7);
+    assertThat(bitmap.toLongArray()).containsExactly(1, 3, 5);
+
+    retained = newBitmapSet(1, 3, 5);
+    retained.retainAll(newUndefinedSet());
+    assertThat(retained.toLongArray()).containsExactly(1, 3, 5);
+  }
+
+  @Test
+  public void testBitmapNewSetFromUnions()
+  {
+    final EntryIDSet bitmap = newBitmapSet(range(0, 10000, 2));
+    final EntryIDSet union =
+        newSetFromUnion(Arrays.asList(bitmap, newDefinedSet(1, 3, 100000), newBitmapSet(range(1, 10000, 2))));
+    assertThat(union.size()).isEqualTo(10001);
+    assertThat(union.contains(id(100000))).isTrue();
+    assertThat(bitmap.size()).isEqualTo(5000);
+
+    assertThat(newSetFromUnion(Arrays.asList(bitmap, newUndefinedSet())).isDefined()).isFalse();
+  }
+
+  private static EntryIDSet newBitmapSet(long... ids)
+  {
+    return CODEC_V3.decode(KEY, CODEC_V3.encode(newDefinedSet(ids)));
+  }
+
+  private static long[] range(long from, long to, long step)
+  {
+    final long[] ids = new long[(int) ((to - from + step - 1) / step)];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = from + i * step;
+    }
+    return ids;
+  }
+
   @DataProvider(name = "codecs")
   public static Object[][] codecs() {
-     return new Object[][] { { CODEC_V1 }, { CODEC_V2 } };
+     return new Object[][] { { CODEC_V1 }, { CODEC_V2 }, { CODEC_V3 } };
   }
 
 }
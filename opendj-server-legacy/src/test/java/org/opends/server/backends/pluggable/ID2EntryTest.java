@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.backends.pluggable.ID2Entry.*;
+import static org.opends.server.core.DirectoryServer.*;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DecodeException;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.backends.pluggable.DefaultIndexTest.DummyWriteableTransaction;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+import org.opends.server.types.Entry;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend" }, sequential = true)
+public class ID2EntryTest extends DirectoryServerTestCase
+{
+  private static final TreeName ID2ENTRY_TREE_NAME = new TreeName("dc=example,dc=com", "id2entry");
+  private static final TreeName DICTIONARIES_TREE_NAME =
+      new TreeName("dc=example,dc=com", "id2entry" + DICTIONARIES_TREE_SUFFIX);
+
+  private WriteableTransaction txn;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void setUp()
+  {
+    txn = new DummyWriteableTransaction();
+  }
+
+  @Test
+  public void testImportTrainsDictionary() throws Exception
+  {
+    final ID2Entry id2entry = newID2Entry(true);
+    final int nbEntries = DICTIONARY_SAMPLE_SIZE + 10;
+    for (int i = 0; i < nbEntries; i++)
+    {
+      id2entry.importEntry(txn, new EntryID(i), newEntry(i));
+    }
+
+    assertThat(txn.getRecordCount(DICTIONARIES_TREE_NAME)).isEqualTo(1);
+    final ByteString dictionary = txn.read(DICTIONARIES_TREE_NAME, ByteString.valueOfInt(1));
+    assertThat(dictionary.length()).isBetween(1, CompressionDictionaryTrainer.MAX_DICTIONARY_SIZE);
+
+    // Entries imported once the dictionary is trained are smaller than without dictionary
+    final Entry entry = newEntry(nbEntries);
+    assertThat(id2entry.encode(entry).length())
+        .isLessThan(entryToDatabase(entry, new DataConfig(true, false, null)).length());
+
+    // Both the sampled entries and the entries compressed with the dictionary can be read back
+    assertThat(read(id2entry, 0)).isEqualTo(newEntry(0));
+    assertThat(read(id2entry, nbEntries - 1)).isEqualTo(newEntry(nbEntries - 1));
+  }
+
+  @Test
+  public void testTrainDictionaryOnExistingEntries() throws Exception
+  {
+    final ID2Entry id2entry = newID2Entry(true);
+    id2entry.put(txn, new EntryID(0), newEntry(0));
+    final ByteString withoutDictionary = txn.read(ID2ENTRY_TREE_NAME, new EntryID(0).toByteString());
+    for (int i = 1; i < 100; i++)
+    {
+      id2entry.put(txn, new EntryID(i), newEntry(i));
+    }
+
+    id2entry.trainDictionary(txn);
+    id2entry.put(txn, new EntryID(0), newEntry(0));
+
+    assertThat(txn.getRecordCount(DICTIONARIES_TREE_NAME)).isEqualTo(1);
+    assertThat(txn.read(ID2ENTRY_TREE_NAME, new EntryID(0).toByteString())).isNotEqualTo(withoutDictionary);
+    for (int i = 0; i < 100; i++)
+    {
+      assertThat(read(id2entry, i)).isEqualTo(newEntry(i));
+    }
+  }
+
+  @Test(expectedExceptions = DecodeException.class)
+  public void testDecodeWithUnknownDictionaryFails() throws Exception
+  {
+    final ID2Entry id2entry = newID2Entry(true);
+    for (int i = 0; i < 100; i++)
+    {
+      id2entry.put(txn, new EntryID(i), newEntry(i));
+    }
+    id2entry.trainDictionary(txn);
+
+    entryFromDatabase(id2entry.encode(newEntry(0)), getDefaultCompressedSchema());
+  }
+
+  @Test
+  public void testCompressedWithoutDictionary() throws Exception
+  {
+    final ID2Entry id2entry = newID2Entry(false);
+    for (int i = 0; i < 100; i++)
+    {
+      id2entry.importEntry(txn, new EntryID(i), newEntry(i));
+    }
+
+    assertThat(txn.getRecordCount(DICTIONARIES_TREE_NAME)).isEqualTo(0);
+    final ByteString encodedEntry = id2entry.encode(newEntry(0));
+    assertThat(entryFromDatabase(encodedEntry, getDefaultCompressedSchema())).isEqualTo(newEntry(0));
+  }
+
+  @Test
+  public void testTrainingWithoutDictionaryIsOnlyRepeatedOnceEntriesHaveDoubled() throws Exception
+  {
+    final ID2Entry id2entry = newID2Entry(true);
+    id2entry.put(txn, new EntryID(0), newEntry(0));
+
+    // A single entry does not share content with other entries
+    id2entry.trainDictionary(txn);
+    assertThat(txn.getRecordCount(DICTIONARIES_TREE_NAME)).isEqualTo(1);
+    assertThat(txn.read(DICTIONARIES_TREE_NAME, NO_DICTIONARY_KEY)).isEqualTo(ByteString.valueOfLong(1));
+
+    // Pretend the last training happened with more entries than there are now
+    txn.put(DICTIONARIES_TREE_NAME, NO_DICTIONARY_KEY, ByteString.valueOfLong(60));
+    for (int i = 1; i < 100; i++)
+    {
+      id2entry.put(txn, new EntryID(i), newEntry(i));
+    }
+    newID2Entry(true);
+    assertThat(txn.getRecordCount(DICTIONARIES_TREE_NAME)).isEqualTo(1);
+    assertThat(txn.read(DICTIONARIES_TREE_NAME, NO_DICTIONARY_KEY)).isEqualTo(ByteString.valueOfLong(60));
+
+    for (int i = 100; i < 120; i++)
+    {
+      id2entry.put(txn, new EntryID(i), newEntry(i));
+    }
+    final ID2Entry reopened = newID2Entry(true);
+    assertThat(txn.getRecordCount(DICTIONARIES_TREE_NAME)).isEqualTo(1);
+    assertThat(txn.read(DICTIONARIES_TREE_NAME, NO_DICTIONARY_KEY)).isNull();
+    assertThat(txn.read(DICTIONARIES_TREE_NAME, ByteString.valueOfInt(1))).isNotNull();
+    assertThat(read(reopened, 0)).isEqualTo(newEntry(0));
+  }
+
+  private ID2Entry newID2Entry(boolean compressedWithDictionary)
+  {
+    final ID2Entry id2entry =
+        new ID2Entry(ID2ENTRY_TREE_NAME, new DataConfig(true, compressedWithDictionary, false, null));
+    id2entry.open(txn, true);
+    return id2entry;
+  }
+
+  /** Reads an entry without processing its virtual attributes. */
+  private Entry read(ID2Entry id2entry, int i) throws Exception
+  {
+    return id2entry.decodeEntry(txn.read(ID2ENTRY_TREE_NAME, new EntryID(i).toByteString()));
+  }
+
+  private static Entry newEntry(int i) throws Exception
+  {
+    return TestCaseUtils.makeEntry(
+        "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user." + i,
+        "givenName: User",
+        "sn: " + i,
+        "cn: User " + i,
+        "mail: user." + i + "@example.com",
+        "telephoneNumber: +1 408 555 " + (1000 + i),
+        "description: This is the description of user " + i + " in the example organization");
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class LDIFRangeTest extends DirectoryServerTestCase
+{
+  private static final int NB_ENTRIES = 5000;
+
+  @Test
+  public void testRangesStartAtEntryBoundaries() throws Exception
+  {
+    final File ldifFile = createLDIFFile("\n");
+    final File ldifFileWithCRLF = createLDIFFile("\r\n");
+    try
+    {
+      final List<LDIFRange> ranges = LDIFRange.split(Arrays.asList(ldifFile.getPath(), ldifFileWithCRLF.getPath()), 4);
+      assertThat(ranges.size()).isGreaterThan(2);
+
+      final List<String> dns = new ArrayList<>();
+      for (LDIFRange range : ranges)
+      {
+        try (BufferedReader reader = range.openReader(8192))
+        {
+          String line = reader.readLine();
+          assertThat(line).matches("(version|dn):.*|");
+          for (; line != null; line = reader.readLine())
+          {
+            if (line.startsWith("dn:"))
+            {
+              dns.add(line);
+            }
+          }
+        }
+      }
+      assertThat(dns).hasSize(2 * NB_ENTRIES);
+      assertThat(dns.get(0)).isEqualTo("dn: uid=user.0,ou=People,dc=example,dc=com");
+      assertThat(dns.get(2 * NB_ENTRIES - 1)).isEqualTo("dn: uid=user." + (NB_ENTRIES - 1) + ",ou=People,dc=example,dc=com");
+    }
+    finally
+    {
+      ldifFile.delete();
+      ldifFileWithCRLF.delete();
+    }
+  }
+
+  @Test
+  public void testEntryPositionsFollowRanges() throws Exception
+  {
+    final File ldifFile = createLDIFFile("\n");
+    try
+    {
+      final List<LDIFRange> ranges = LDIFRange.split(Arrays.asList(ldifFile.getPath()), 4);
+      assertThat(ranges.get(0).getEntryPosition(Integer.MAX_VALUE)).isLessThan(ranges.get(1).getEntryPosition(0));
+    }
+    finally
+    {
+      ldifFile.delete();
+    }
+  }
+
+  private File createLDIFFile(String eol) throws Exception
+  {
+    final File ldifFile = File.createTempFile("LDIFRangeTest", ".ldif");
+    try (Writer writer = new FileWriter(ldifFile))
+    {
+      writer.write("version: 1" + eol + eol);
+      for (int i = 0; i < NB_ENTRIES; i++)
+      {
+        writer.write("dn: uid=user." + i + ",ou=People,dc=example,dc=com" + eol
+            + "objectClass: top" + eol
+            + "objectClass: person" + eol
+            + "description: a description long enough to be folded" + eol
+            + "  on a continuation line" + eol
+            + eol);
+      }
+    }
+    return ldifFile;
+  }
+}
@@ -27,6 +27,7 @@ import static org.testng.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -79,6 +80,7 @@ import org.opends.server.types.BackupDirectory;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
+import org.opends.server.types.ExistingFileBehavior;
 import org.opends.server.types.LDIFExportConfig;
 import org.opends.server.types.LDIFImportConfig;
 import org.opends.server.types.Modification;
@@ -919,6 +921,52 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     }
   }
 
+  @Test
+  public void testParallelExportLDIF() throws Exception
+  {
+    final String sequentialLDIF = exportLDIF(1);
+    assertThat(sequentialLDIF).contains(searchDN.toString());
+    assertThat(exportLDIF(4)).isEqualTo(sequentialLDIF);
+
+    final File ldifDirectory = TestCaseUtils.createTemporaryDirectory("export");
+    try
+    {
+      final int shardCount = 3;
+      try (final LDIFExportConfig exportConfig = new LDIFExportConfig(
+          new File(ldifDirectory, "export.ldif").getPath(), ExistingFileBehavior.OVERWRITE))
+      {
+        exportConfig.setIncludeOperationalAttributes(true);
+        exportConfig.setThreadCount(2);
+        exportConfig.setShardCount(shardCount);
+        backend.exportLDIF(exportConfig);
+      }
+
+      // Each file holds a contiguous range of entry IDs.
+      final StringBuilder shardedLDIF = new StringBuilder();
+      for (int i = 1; i <= shardCount; i++)
+      {
+        shardedLDIF.append(TestCaseUtils.readFile(new File(ldifDirectory, "export.ldif." + i)));
+      }
+      assertThat(shardedLDIF.toString()).isEqualTo(sequentialLDIF);
+    }
+    finally
+    {
+      TestCaseUtils.deleteDirectory(ldifDirectory);
+    }
+  }
+
+  private String exportLDIF(int threadCount) throws Exception
+  {
+    ByteArrayOutputStream ldifOutputContent = new ByteArrayOutputStream();
+    try (final LDIFExportConfig exportConfig = new LDIFExportConfig(ldifOutputContent))
+    {
+      exportConfig.setIncludeOperationalAttributes(true);
+      exportConfig.setThreadCount(threadCount);
+      backend.exportLDIF(exportConfig);
+    }
+    return ldifOutputContent.toString();
+  }
+
   @Test
   public void testExportLDIFAndImportLDIF() throws Exception
   {
@@ -985,6 +1033,42 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     assertThat(backend.verifyBackend(config)).isEqualTo(0);
   }
 
+  @Test
+  public void testVerifyBackendInParallel() throws Exception
+  {
+    VerifyConfig config = new VerifyConfig();
+    config.setBaseDN(testBaseDN);
+    config.setThreadCount(4);
+    config.addCompleteIndex("dn2id");
+    for (String indexName : backendIndexes.keySet())
+    {
+      config.addCompleteIndex(indexName);
+    }
+    assertThat(backend.verifyBackend(config)).isEqualTo(0);
+
+    for (String indexName : backendIndexes.keySet())
+    {
+      config = new VerifyConfig();
+      config.setBaseDN(testBaseDN);
+      config.setThreadCount(4);
+      config.addCleanIndex(indexName);
+      assertThat(backend.verifyBackend(config)).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testVerifyBackendSampled() throws Exception
+  {
+    VerifyConfig config = new VerifyConfig();
+    config.setBaseDN(testBaseDN);
+    config.setSamplingPercentage(50);
+    for (String indexName : backendIndexes.keySet())
+    {
+      config.addCompleteIndex(indexName);
+    }
+    assertThat(backend.verifyBackend(config)).isEqualTo(0);
+  }
+
   @Test
   public void testRebuildAllIndex() throws Exception
   {
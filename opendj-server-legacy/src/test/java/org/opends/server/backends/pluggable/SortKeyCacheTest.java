@@ -0,0 +1,130 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static java.util.Arrays.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Collections;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.SortKey;
+import org.opends.server.types.SortOrder;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class SortKeyCacheTest extends DirectoryServerTestCase
+{
+  private static final ByteString KEY1 = ByteString.valueOfUtf8("key1");
+  private static final ByteString KEY2 = ByteString.valueOfUtf8("key2");
+
+  private SortOrder ascending;
+  private SortOrder descending;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    ascending = new SortOrder(new SortKey(DirectoryServer.getAttributeType("cn"), true));
+    descending = new SortOrder(new SortKey(DirectoryServer.getAttributeType("cn"), false));
+  }
+
+  @Test
+  public void testDisabledCacheDoesNotCacheKeys()
+  {
+    final SortKeyCache cache = new SortKeyCache(0);
+    assertThat(cache.isEnabled()).isFalse();
+
+    cache.put(ascending, 1, KEY1, cache.getInvalidationCount());
+    assertThat(cache.get(ascending, 1)).isNull();
+  }
+
+  @Test
+  public void testKeysAreCachedPerSortOrder()
+  {
+    final SortKeyCache cache = new SortKeyCache(10);
+    cache.put(ascending, 1, KEY1, cache.getInvalidationCount());
+    cache.put(descending, 1, KEY2, cache.getInvalidationCount());
+
+    assertThat(cache.get(ascending, 1)).isEqualTo(KEY1);
+    assertThat(cache.get(descending, 1)).isEqualTo(KEY2);
+    assertThat(cache.get(ascending, 2)).isNull();
+  }
+
+  @Test
+  public void testInvalidate()
+  {
+    final SortKeyCache cache = new SortKeyCache(10);
+    cache.put(ascending, 1, KEY1, cache.getInvalidationCount());
+    cache.put(ascending, 2, KEY2, cache.getInvalidationCount());
+
+    cache.invalidate(asList(1L));
+    assertThat(cache.get(ascending, 1)).isNull();
+    assertThat(cache.get(ascending, 2)).isEqualTo(KEY2);
+  }
+
+  @Test
+  public void testKeyReadBeforeInvalidationIsNotCached()
+  {
+    final SortKeyCache cache = new SortKeyCache(10);
+    final long invalidationCount = cache.getInvalidationCount();
+    cache.invalidate(asList(1L));
+
+    cache.put(ascending, 1, KEY1, invalidationCount);
+    assertThat(cache.get(ascending, 1)).isNull();
+  }
+
+  @Test
+  public void testEmptyInvalidationDoesNotPreventCaching()
+  {
+    final SortKeyCache cache = new SortKeyCache(10);
+    final long invalidationCount = cache.getInvalidationCount();
+    cache.invalidate(Collections.<Long> emptyList());
+
+    cache.put(ascending, 1, KEY1, invalidationCount);
+    assertThat(cache.get(ascending, 1)).isEqualTo(KEY1);
+  }
+
+  @Test
+  public void testCacheIsBounded()
+  {
+    final SortKeyCache cache = new SortKeyCache(1);
+    cache.put(ascending, 1, KEY1, cache.getInvalidationCount());
+    cache.put(ascending, 2, KEY2, cache.getInvalidationCount());
+
+    assertThat(cache.get(ascending, 1)).isEqualTo(KEY1);
+    assertThat(cache.get(ascending, 2)).isNull();
+  }
+
+  @Test
+  public void testDecreasingMaxSizeClearsCache()
+  {
+    final SortKeyCache cache = new SortKeyCache(10);
+    cache.put(ascending, 1, KEY1, cache.getInvalidationCount());
+
+    cache.setMaxSize(5);
+    assertThat(cache.get(ascending, 1)).isNull();
+
+    cache.setMaxSize(0);
+    assertThat(cache.isEnabled()).isFalse();
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+import static org.opends.server.ConfigurationMock.legacyMockCfg;
+import static org.opends.server.TestCaseUtils.makeEntry;
+import static org.opends.server.protocols.internal.InternalClientConnection.getRootConnection;
+import static org.opends.server.protocols.internal.Requests.newSearchRequest;
+import static org.opends.server.util.CollectionUtils.*;
+import static org.opends.server.util.ServerConstants.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.std.meta.BackendIndexCfgDefn.IndexType;
+import org.opends.server.admin.std.server.BackendIndexCfg;
+import org.opends.server.admin.std.server.PDBBackendCfg;
+import org.opends.server.backends.pdb.PDBBackend;
+import org.opends.server.controls.PagedResultsControl;
+import org.opends.server.controls.ServerSideSortRequestControl;
+import org.opends.server.controls.ServerSideSortResponseControl;
+import org.opends.server.core.AddOperation;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.protocols.internal.SearchRequest;
+import org.opends.server.protocols.ldap.LDAPControl;
+import org.opends.server.protocols.ldap.LDAPResultCode;
+import org.opends.server.types.Control;
+import org.opends.server.types.Entry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the server side sorting of unindexed searches, which walks the ordering index of the primary sort key.
+ */
+@SuppressWarnings("javadoc")
+public class UnindexedSortTestCase extends DirectoryServerTestCase
+{
+  private static final String BACKEND_BASE_DN = "dc=pluggable-sort,dc=com";
+  private static final String BACKEND_NAME = "pluggable-sort";
+  private static final String FILTER = "(objectClass=person)";
+
+  /** Each array holds the employee number, the surname and the given names of a user. */
+  private static final String[][] USERS = {
+    { "0", "Zorro", "Alice" },
+    { "1", "deBuilder", "Bob", "Robert" },
+    { "2", "Speed", "Charlie" },
+    { "3", "Mouse", "Mickie" },
+    { "4", "Beak", "William", "Bill" },
+    { "5", "Prince" },
+    { "6", "Chalk", "Charlie" },
+    { "7", "DEinstein", "Albert" },
+    { "8", "Mouse", "Mini" },
+  };
+
+  /** Ordered by ascending givenName then entryID, "charlie" exceeds the index entry limit. */
+  private static final List<Integer> USERS_BY_GIVEN_NAME = Arrays.asList(7, 0, 4, 1, 2, 6, 3, 8, 5);
+
+  /** Ordered by ascending sn then ascending employeeNumber. */
+  private static final List<Integer> USERS_BY_SN_AND_EMPLOYEE_NUMBER = Arrays.asList(4, 6, 1, 7, 3, 8, 5, 2, 0);
+
+  private PDBBackend backend;
+
+  @BeforeClass
+  public void beforeClass() throws Exception
+  {
+    TestCaseUtils.startServer();
+
+    final DN baseDN = DN.valueOf(BACKEND_BASE_DN);
+
+    final PDBBackendCfg backendCfg = legacyMockCfg(PDBBackendCfg.class);
+    when(backendCfg.dn()).thenReturn(baseDN);
+    when(backendCfg.getBackendId()).thenReturn(BACKEND_NAME);
+    when(backendCfg.getBaseDN()).thenReturn(newTreeSet(baseDN));
+    when(backendCfg.listBackendIndexes()).thenReturn(new String[] { "givenName", "sn" });
+    when(backendCfg.listBackendVLVIndexes()).thenReturn(new String[0]);
+    // Prevent searches from using the scope as candidates, so that they are unindexed
+    when(backendCfg.getIndexEntryLimit()).thenReturn(2);
+
+    when(backendCfg.getDBDirectory()).thenReturn(BACKEND_NAME);
+    when(backendCfg.getDBDirectoryPermissions()).thenReturn("755");
+    when(backendCfg.getDBCacheSize()).thenReturn(0L);
+    when(backendCfg.getDBCachePercent()).thenReturn(20);
+
+    createOrderingIndex(backendCfg, "givenName");
+    createOrderingIndex(backendCfg, "sn");
+
+    backend = new PDBBackend();
+    backend.setBackendID(backendCfg.getBackendId());
+    backend.configureBackend(backendCfg, DirectoryServer.getInstance().getServerContext());
+    backend.openBackend();
+
+    AddOperation op = mock(AddOperation.class);
+    backend.addEntry(makeEntry("dn: " + BACKEND_BASE_DN, "objectclass: top", "objectclass: domain"), op);
+    for (int i = 0; i < USERS.length; i++)
+    {
+      backend.addEntry(toEntry(i), op);
+    }
+  }
+
+  private void createOrderingIndex(final PDBBackendCfg backendCfg, final String attributeName)
+  {
+    final BackendIndexCfg indexCfg = legacyMockCfg(BackendIndexCfg.class);
+    when(indexCfg.getAttribute()).thenReturn(DirectoryServer.getAttributeType(attributeName.toLowerCase()));
+    when(indexCfg.getIndexType()).thenReturn(newTreeSet(IndexType.ORDERING));
+    when(indexCfg.getIndexEntryLimit()).thenReturn(1);
+    when(backendCfg.getBackendIndex(attributeName)).thenReturn(indexCfg);
+  }
+
+  @AfterClass
+  public void afterClass() throws Exception
+  {
+    backend.finalizeBackend();
+    backend = null;
+  }
+
+  @DataProvider
+  private Object[][] sortOrders()
+  {
+    return new Object[][] {
+      { "givenName", USERS_BY_GIVEN_NAME },
+      { "sn,employeeNumber", USERS_BY_SN_AND_EMPLOYEE_NUMBER },
+    };
+  }
+
+  @Test(dataProvider = "sortOrders")
+  public void unindexedSearchShouldBeSortedUsingOrderingIndex(final String sortOrder,
+      final List<Integer> expectedOrder) throws Exception
+  {
+    final SearchRequest request = newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, FILTER)
+        .addControl(new ServerSideSortRequestControl(true, sortOrder));
+    final InternalSearchOperation internalSearch = getRootConnection().processSearch(request);
+
+    assertThat(internalSearch.getResultCode()).isEqualTo(ResultCode.SUCCESS);
+    assertThat(getDNs(internalSearch.getSearchEntries())).isEqualTo(getDNs(expectedOrder));
+    assertThat(getServerSideSortResultCode(internalSearch.getResponseControls())).isEqualTo(LDAPResultCode.SUCCESS);
+  }
+
+  @Test(dataProvider = "sortOrders")
+  public void unindexedPagedSearchShouldBeSortedUsingOrderingIndex(final String sortOrder,
+      final List<Integer> expectedOrder) throws Exception
+  {
+    final List<DN> dns = new ArrayList<>();
+    ByteString cookie = ByteString.empty();
+    do
+    {
+      final SearchRequest request = newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, FILTER)
+          .addControl(new ServerSideSortRequestControl(true, sortOrder))
+          .addControl(new PagedResultsControl(true, 2, cookie));
+      final InternalSearchOperation internalSearch = getRootConnection().processSearch(request);
+
+      assertThat(internalSearch.getResultCode()).isEqualTo(ResultCode.SUCCESS);
+      assertThat(internalSearch.getSearchEntries().size()).isLessThanOrEqualTo(2);
+      dns.addAll(getDNs(internalSearch.getSearchEntries()));
+      cookie = getPagedResultsCookie(internalSearch.getResponseControls());
+    }
+    while (cookie.length() != 0);
+
+    assertThat(dns).isEqualTo(getDNs(expectedOrder));
+  }
+
+  @Test
+  public void unindexedSearchCannotBeSortedInDescendingOrder() throws Exception
+  {
+    final SearchRequest request = newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, FILTER)
+        .addControl(new ServerSideSortRequestControl(true, "-sn"));
+    final InternalSearchOperation internalSearch = getRootConnection().processSearch(request);
+
+    assertThat(internalSearch.getResultCode()).isEqualTo(ResultCode.UNAVAILABLE_CRITICAL_EXTENSION);
+    assertThat(internalSearch.getSearchEntries()).isEmpty();
+  }
+
+  private static Entry toEntry(final int user) throws Exception
+  {
+    final String[] attributes = USERS[user];
+    final List<String> ldif = new ArrayList<>();
+    ldif.add("dn: " + toDN(user));
+    ldif.add("objectClass: top");
+    ldif.add("objectClass: person");
+    ldif.add("objectClass: organizationalPerson");
+    ldif.add("objectClass: inetOrgPerson");
+    ldif.add("employeeNumber: " + attributes[0]);
+    ldif.add("sn: " + attributes[1]);
+    ldif.add("cn: " + attributes[1]);
+    for (int i = 2; i < attributes.length; i++)
+    {
+      ldif.add("givenName: " + attributes[i]);
+    }
+    return makeEntry(ldif.toArray(new String[0]));
+  }
+
+  private static DN toDN(final int user)
+  {
+    return DN.valueOf("employeeNumber=" + user + "," + BACKEND_BASE_DN);
+  }
+
+  private static List<DN> getDNs(final List<? extends Entry> entries)
+  {
+    final List<DN> results = new ArrayList<>();
+    for (final Entry e : entries)
+    {
+      results.add(e.getName());
+    }
+    return results;
+  }
+
+  private static List<DN> getDNs(final List<Integer> expectedOrder)
+  {
+    final List<DN> dns = new ArrayList<>();
+    for (int i : expectedOrder)
+    {
+      dns.add(toDN(i));
+    }
+    return dns;
+  }
+
+  private static int getServerSideSortResultCode(final List<Control> responseControls) throws Exception
+  {
+    for (final Control c : responseControls)
+    {
+      if (c.getOID().equals(OID_SERVER_SIDE_SORT_RESPONSE_CONTROL))
+      {
+        final ServerSideSortResponseControl sortResponse = c instanceof LDAPControl
+            ? ServerSideSortResponseControl.DECODER.decode(c.isCritical(), ((LDAPControl) c).getValue())
+            : (ServerSideSortResponseControl) c;
+        return sortResponse.getResultCode();
+      }
+    }
+    throw new AssertionError("Expected to find ServerSideSortResponseControl");
+  }
+
+  private static ByteString getPagedResultsCookie(final List<Control> responseControls) throws Exception
+  {
+    for (final Control c : responseControls)
+    {
+      if (c.getOID().equals(OID_PAGED_RESULTS_CONTROL))
+      {
+        final PagedResultsControl pagedResults = c instanceof LDAPControl
+            ? PagedResultsControl.DECODER.decode(c.isCritical(), ((LDAPControl) c).getValue())
+            : (PagedResultsControl) c;
+        return pagedResults.getCookie();
+      }
+    }
+    throw new AssertionError("Expected to find PagedResultsControl");
+  }
+}
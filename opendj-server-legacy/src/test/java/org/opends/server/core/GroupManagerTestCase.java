@@ -49,6 +49,7 @@ import static org.forgerock.opendj.ldap.ModificationType.*;
 import static org.forgerock.opendj.ldap.requests.Requests.*;
 import static org.opends.server.protocols.internal.InternalClientConnection.*;
 import static org.opends.server.protocols.internal.Requests.*;
+import static org.opends.server.util.CollectionUtils.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.testng.Assert.*;
 
@@ -2291,6 +2292,62 @@ public class GroupManagerTestCase
     TestCaseUtils.clearBackend("userRoot");
   }
 
+  /**
+   * Tests that the reverse membership index returns direct, nested and dynamic
+   * group memberships, and that it is kept up to date by ldap modify.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testGetGroupDNsForMember() throws Exception {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+    addNestedGroupTestEntries();
+    DN group1DN = DN.valueOf("cn=group 1,ou=Groups,o=test");
+    DN group2DN = DN.valueOf("cn=group 2,ou=Groups,o=test");
+    DN group3DN = DN.valueOf("cn=group 3,ou=Groups,o=test");
+    DN group4DN = DN.valueOf("cn=group 4,ou=Groups,o=test");
+    Entry user1Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.1,ou=People,o=test"));
+    Entry user2Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.2,ou=People,o=test"));
+    Entry user3Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.3,ou=People,o=test"));
+    Entry user5Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.5,ou=People,o=test"));
+
+    ModifyOperation modifyOperation = getRootConnection().processModify(newModifyRequest(group1DN)
+        .addModification(ADD, "member", "cn=group 2,ou=Groups,o=test", "uid=user.1,ou=People,o=test"));
+    assertEquals(modifyOperation.getResultCode(), ResultCode.SUCCESS);
+    modifyOperation = getRootConnection().processModify(newModifyRequest(group2DN)
+        .addModification(ADD, "member", "uid=user.2,ou=People,o=test"));
+    assertEquals(modifyOperation.getResultCode(), ResultCode.SUCCESS);
+    modifyOperation = getRootConnection().processModify(newModifyRequest(group3DN)
+        .addModification(ADD, "member", "cn=group 4,ou=Groups,o=test"));
+    assertEquals(modifyOperation.getResultCode(), ResultCode.SUCCESS);
+
+    assertEquals(groupManager.getGroupDNsForMember(user1Entry), newHashSet(group1DN));
+    assertEquals(groupManager.getGroupDNsForMember(user2Entry), newHashSet(group1DN, group2DN));
+    assertEquals(groupManager.getGroupDNsForMember(user5Entry), newHashSet(group3DN, group4DN));
+    assertTrue(groupManager.getGroupDNsForMember(user3Entry).isEmpty());
+
+    // Un-nest group 2 and check the transitive memberships are updated
+    modifyOperation = getRootConnection().processModify(newModifyRequest(group1DN)
+        .addModification(DELETE, "member", "cn=group 2,ou=Groups,o=test"));
+    assertEquals(modifyOperation.getResultCode(), ResultCode.SUCCESS);
+    assertEquals(groupManager.getGroupDNsForMember(user2Entry), newHashSet(group2DN));
+
+    // Use the group API, which bypasses the group manager change listeners
+    groupManager.getGroupInstance(group2DN).addMember(user3Entry);
+    assertEquals(groupManager.getGroupDNsForMember(user3Entry), newHashSet(group2DN));
+    groupManager.getGroupInstance(group2DN).removeMember(user3Entry.getName());
+    assertTrue(groupManager.getGroupDNsForMember(user3Entry).isEmpty());
+
+    // Deleting a group must remove it from the index
+    DeleteOperation deleteOperation = getRootConnection().processDelete(group2DN);
+    assertEquals(deleteOperation.getResultCode(), ResultCode.SUCCESS);
+    assertTrue(groupManager.getGroupDNsForMember(user2Entry).isEmpty());
+
+    TestCaseUtils.clearBackend("userRoot");
+  }
+
   /**
    * Adds nested group entries.
    *
@@ -0,0 +1,125 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.core;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.controls.PersistentSearchChangeType.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.opends.server.protocols.internal.Requests.*;
+
+import java.util.EnumSet;
+
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchFilter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/** Tests the indexing of persistent searches by the {@link PersistentSearchDispatcher}. */
+@SuppressWarnings("javadoc")
+public class PersistentSearchDispatcherTestCase extends CoreTestCase
+{
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @DataProvider
+  public Object[][] requiredAttributeTypes()
+  {
+    return new Object[][] {
+      { "(cn=test)", new String[] { "cn" } },
+      { "(sn=te*)", new String[] { "sn" } },
+      { "(description=*)", new String[] { "description" } },
+      { "(&(objectClass=person)(uid=test))", new String[] { "uid" } },
+      { "(|(cn=test)(sn=test))", new String[] { "cn", "sn" } },
+      { "(&(|(cn=test)(sn=test))(uid=test))", new String[] { "uid" } },
+      { "(objectClass=*)", null },
+      { "(!(cn=test))", null },
+      { "(|(cn=test)(!(sn=test)))", null },
+      { "(cn:dn:=test)", null },
+    };
+  }
+
+  @Test(dataProvider = "requiredAttributeTypes")
+  public void testGetRequiredAttributeTypes(String filter, String[] expectedTypes) throws Exception
+  {
+    final SearchFilter searchFilter = SearchFilter.createFilterFromString(filter);
+    if (expectedTypes == null)
+    {
+      assertThat(PersistentSearchDispatcher.getRequiredAttributeTypes(searchFilter)).isNull();
+      return;
+    }
+    assertThat(PersistentSearchDispatcher.getRequiredAttributeTypes(searchFilter)).hasSize(expectedTypes.length);
+    for (String type : expectedTypes)
+    {
+      assertThat(PersistentSearchDispatcher.getRequiredAttributeTypes(searchFilter))
+          .contains(DirectoryServer.getAttributeType(type));
+    }
+  }
+
+  @Test
+  public void testGetCandidates() throws Exception
+  {
+    final PersistentSearchDispatcher dispatcher = new PersistentSearchDispatcher();
+    final PersistentSearch allPeople = newPersistentSearch("ou=People,o=test", "(objectClass=*)");
+    final PersistentSearch withMail = newPersistentSearch("ou=People,o=test", "(mail=*)");
+    final PersistentSearch withName = newPersistentSearch("o=test", "(name=test)");
+    final PersistentSearch groups = newPersistentSearch("ou=Groups,o=test", "(objectClass=*)");
+    dispatcher.register(allPeople);
+    dispatcher.register(withMail);
+    dispatcher.register(withName);
+    dispatcher.register(groups);
+
+    final Entry user = TestCaseUtils.makeEntry(
+        "dn: uid=user,ou=People,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user",
+        "cn: User",
+        "sn: User");
+    // cn is a subtype of name
+    assertThat(dispatcher.getCandidates(user.getName(), null, user, null)).containsOnly(allPeople, withName);
+
+    final Entry userWithMail = user.duplicate(false);
+    userWithMail.addAttribute(Attributes.create("mail", "user@example.com"), null);
+    assertThat(dispatcher.getCandidates(user.getName(), null, userWithMail, user))
+        .containsOnly(allPeople, withMail, withName);
+
+    final DN groupDN = DN.valueOf("cn=group,ou=Groups,o=test");
+    assertThat(dispatcher.getCandidates(user.getName(), groupDN, user, null))
+        .containsOnly(allPeople, withName, groups);
+
+    dispatcher.deregister(allPeople);
+    dispatcher.deregister(withName);
+    assertThat(dispatcher.getCandidates(user.getName(), null, user, null)).isEmpty();
+  }
+
+  private PersistentSearch newPersistentSearch(String baseDN, String filter) throws Exception
+  {
+    final InternalSearchOperation searchOperation = new InternalSearchOperation(getRootConnection(),
+        nextOperationID(), nextMessageID(), newSearchRequest(DN.valueOf(baseDN), SearchScope.WHOLE_SUBTREE, filter));
+    return new PersistentSearch(searchOperation, EnumSet.of(ADD, DELETE, MODIFY, MODIFY_DN), true, false);
+  }
+}
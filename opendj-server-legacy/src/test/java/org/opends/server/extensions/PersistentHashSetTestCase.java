@@ -0,0 +1,120 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/** Tests for {@link PersistentHashSet}. */
+@SuppressWarnings("javadoc")
+public class PersistentHashSetTestCase extends ExtensionsTestCase
+{
+  /** Key with a configurable hash code, used to force hash collisions. */
+  private static final class Key
+  {
+    private final int value;
+    private final int hash;
+
+    private Key(int value, int hash)
+    {
+      this.value = value;
+      this.hash = hash;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      return obj instanceof Key && ((Key) obj).value == value;
+    }
+
+    @Override
+    public String toString()
+    {
+      return value + "#" + hash;
+    }
+  }
+
+  @DataProvider
+  public Object[][] hashModulos()
+  {
+    return new Object[][] { { Integer.MAX_VALUE }, { 7 }, { 1 } };
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    PersistentHashSet<String> set = PersistentHashSet.empty();
+    assertThat(set).isEmpty();
+    assertThat(set.contains("a")).isFalse();
+    assertThat(set.without("a")).isSameAs(set);
+  }
+
+  @Test
+  public void testUpdatesDoNotModifyOriginalSet()
+  {
+    PersistentHashSet<String> set1 = PersistentHashSet.empty();
+    PersistentHashSet<String> set2 = set1.with("a").with("b");
+    PersistentHashSet<String> set3 = set2.without("a");
+
+    assertThat(set1).isEmpty();
+    assertThat(set2).containsOnly("a", "b");
+    assertThat(set3).containsOnly("b");
+    assertThat(set2.with("a")).isSameAs(set2);
+    assertThat(set3.without("a")).isSameAs(set3);
+  }
+
+  @Test(dataProvider = "hashModulos")
+  public void testRandomUpdates(int hashModulo)
+  {
+    final Random random = new Random(0);
+    final Set<Key> expected = new HashSet<>();
+    PersistentHashSet<Key> set = PersistentHashSet.empty();
+    for (int i = 0; i < 10000; i++)
+    {
+      final int value = random.nextInt(2000);
+      final Key key = new Key(value, (value * 0x9E3779B9) % hashModulo);
+      if (random.nextBoolean())
+      {
+        set = set.with(key);
+        expected.add(key);
+      }
+      else
+      {
+        set = set.without(key);
+        expected.remove(key);
+      }
+      assertThat(set.size()).isEqualTo(expected.size());
+    }
+    assertThat(set).containsOnlyElementsOf(expected);
+    assertThat(set).hasSameSizeAs(expected);
+    for (Key key : expected)
+    {
+      assertThat(set.contains(key)).isTrue();
+    }
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.ConfigurationMock.*;
+import static org.opends.server.monitors.TraditionalWorkQueueMonitor.*;
+import static org.opends.server.monitors.WorkStealingWorkQueueMonitor.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.admin.std.server.WorkStealingWorkQueueCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.WorkStealingWorkQueueMonitor;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Operation;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** A set of test cases for the work stealing work queue. */
+@SuppressWarnings("javadoc")
+@Test(sequential = true)
+public class WorkStealingWorkQueueTestCase extends ExtensionsTestCase
+{
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private WorkStealingWorkQueue workQueue;
+  /** The monitor of the server work queue, replaced by the monitor of the tested work queue. */
+  private MonitorProvider<? extends MonitorProviderCfg> serverWorkQueueMonitor;
+  /** Lets the blocking operations complete. */
+  private CountDownLatch unblock;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void saveServerWorkQueueMonitor()
+  {
+    serverWorkQueueMonitor = DirectoryServer.getMonitorProvider("work queue");
+    unblock = new CountDownLatch(1);
+  }
+
+  @AfterMethod
+  public void finalizeWorkQueue()
+  {
+    unblock.countDown();
+    if (workQueue != null)
+    {
+      workQueue.finalizeWorkQueue(LocalizableMessage.raw("end of test"));
+      workQueue = null;
+    }
+    if (serverWorkQueueMonitor != null)
+    {
+      DirectoryServer.registerMonitorProvider(serverWorkQueueMonitor);
+    }
+  }
+
+  private WorkStealingWorkQueue newWorkQueue(int numWorkerThreads, int maxCapacity) throws Exception
+  {
+    final WorkStealingWorkQueueCfg cfg = legacyMockCfg(WorkStealingWorkQueueCfg.class);
+    when(cfg.getNumWorkerThreads()).thenReturn(numWorkerThreads);
+    when(cfg.getMaxWorkQueueCapacity()).thenReturn(maxCapacity);
+    workQueue = new WorkStealingWorkQueue();
+    workQueue.initializeWorkQueue(cfg);
+    return workQueue;
+  }
+
+  @Test
+  public void testSubmitAndExecute() throws Exception
+  {
+    newWorkQueue(4, 1000);
+    final int nbOperations = 100;
+    final CountDownLatch done = new CountDownLatch(nbOperations);
+    for (int i = 0; i < nbOperations; i++)
+    {
+      workQueue.submitOperation(newOperation(i, null, done, null));
+    }
+
+    assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    assertThat(workQueue.getOpsSubmitted()).isEqualTo(nbOperations);
+    assertThat(workQueue.getOpsRejectedDueToQueueFull()).isEqualTo(0);
+    assertThat(workQueue.waitUntilIdle(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS))).isTrue();
+    assertThat(workQueue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testStealingFromBusyShard() throws Exception
+  {
+    newWorkQueue(2, 1000);
+    final CountDownLatch blockingStarted = new CountDownLatch(1);
+    final AtomicReference<Thread> blockedThread = new AtomicReference<>();
+    workQueue.submitOperation(newOperation(0, blockingStarted, null, blockedThread, unblock));
+    assertThat(blockingStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+    // Submit to the home shard of the blocked worker thread: the other worker thread must steal it
+    final int busyShard = ((WorkStealingWorkerThread) blockedThread.get()).getHomeShard();
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<Thread> stealingThread = new AtomicReference<>();
+    workQueue.submitOperation(newOperation(busyShard, null, done, stealingThread));
+
+    assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    assertThat(stealingThread.get()).isNotSameAs(blockedThread.get());
+    assertThat(workQueue.getOpsStolen()).isGreaterThanOrEqualTo(1);
+  }
+
+  @Test
+  public void testIdleWorkerThreadsPassOnWakeUps() throws Exception
+  {
+    newWorkQueue(4, 1000);
+    for (int burst = 0; burst < 50; burst++)
+    {
+      assertThat(workQueue.waitUntilIdle(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS))).isTrue();
+      // Submit to a single shard, so that the woken up worker threads steal operations from each other
+      final int nbOperations = 8;
+      final CountDownLatch done = new CountDownLatch(nbOperations);
+      for (int i = 0; i < nbOperations; i++)
+      {
+        workQueue.submitOperation(newOperation(burst, null, done, null));
+      }
+      // Well below the time idle worker threads wait before polling the shards again
+      assertThat(done.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  @Test
+  public void testQueueFullRejection() throws Exception
+  {
+    newWorkQueue(1, 2);
+    final CountDownLatch blockingStarted = new CountDownLatch(1);
+    workQueue.submitOperation(newOperation(0, blockingStarted, null, null, unblock));
+    assertThat(blockingStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+    // The blocking operation has been taken by the worker thread, so the queue can hold two more operations
+    final CountDownLatch done = new CountDownLatch(2);
+    assertThat(workQueue.trySubmitOperation(newOperation(0, null, done, null))).isTrue();
+    assertThat(workQueue.trySubmitOperation(newOperation(1, null, done, null))).isTrue();
+    assertThat(workQueue.trySubmitOperation(newOperation(2, null, done, null))).isFalse();
+    assertThat(workQueue.getOpsRejectedDueToQueueFull()).isEqualTo(1);
+    assertThat(workQueue.size()).isEqualTo(2);
+
+    unblock.countDown();
+    assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    assertThat(workQueue.getOpsSubmitted()).isEqualTo(3);
+  }
+
+  @Test
+  public void testShutdownCancelsPendingOperations() throws Exception
+  {
+    newWorkQueue(1, 1000);
+    final CountDownLatch blockingStarted = new CountDownLatch(1);
+    workQueue.submitOperation(newOperation(0, blockingStarted, null, null, unblock));
+    assertThat(blockingStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+    final AtomicInteger nbRun = new AtomicInteger();
+    final List<Operation> pendingOperations = new ArrayList<>();
+    for (int i = 0; i < 5; i++)
+    {
+      final Operation operation = newOperation(i, null, null, null);
+      doAnswer(countRun(nbRun)).when(operation).run();
+      workQueue.submitOperation(operation);
+      pendingOperations.add(operation);
+    }
+
+    workQueue.finalizeWorkQueue(LocalizableMessage.raw("shutdown"));
+    assertThat(workQueue.size()).isEqualTo(0);
+    for (Operation operation : pendingOperations)
+    {
+      verify(operation).abort(any(CancelRequest.class));
+    }
+
+    try
+    {
+      workQueue.submitOperation(newOperation(0, null, null, null));
+      failBecauseExceptionWasNotThrown(DirectoryException.class);
+    }
+    catch (DirectoryException e)
+    {
+      assertThat(e.getResultCode()).isEqualTo(ResultCode.UNAVAILABLE);
+    }
+
+    unblock.countDown();
+    assertThat(workQueue.waitUntilIdle(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS))).isTrue();
+    assertThat(nbRun.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMonitorAttributes() throws Exception
+  {
+    newWorkQueue(2, 1000);
+    // Block both worker threads, so that the next operations stay in their shards
+    final CountDownLatch blockingStarted = new CountDownLatch(2);
+    workQueue.submitOperation(newOperation(0, blockingStarted, null, null, unblock));
+    workQueue.submitOperation(newOperation(1, blockingStarted, null, null, unblock));
+    assertThat(blockingStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+    for (int i = 0; i < 3; i++)
+    {
+      workQueue.submitOperation(newOperation(0, null, null, null));
+    }
+    workQueue.submitOperation(newOperation(1, null, null, null));
+    assertThat(workQueue.trySubmitOperation(newOperation(1, null, null, null))).isTrue();
+
+    final Map<String, List<String>> attributes = toMap(new WorkStealingWorkQueueMonitor(workQueue).getMonitorData());
+    assertThat(attributes.get(ATTR_CURRENT_BACKLOG)).containsExactly("5");
+    assertThat(attributes.get(ATTR_MAX_BACKLOG)).containsExactly("5");
+    assertThat(attributes.get(ATTR_OPS_SUBMITTED)).containsExactly("7");
+    assertThat(attributes.get(ATTR_OPS_REJECTED_QUEUE_FULL)).containsExactly("0");
+    assertThat(attributes.get(ATTR_SHARD_BACKLOG)).containsOnly("0:3", "1:2");
+    assertThat(attributes.get(ATTR_OPS_STOLEN)).containsExactly("0");
+  }
+
+  private Map<String, List<String>> toMap(Iterable<Attribute> monitorData)
+  {
+    final Map<String, List<String>> results = new HashMap<>();
+    for (Attribute attribute : monitorData)
+    {
+      final List<String> values = new ArrayList<>();
+      for (ByteString value : attribute)
+      {
+        values.add(value.toString());
+      }
+      results.put(attribute.getName(), values);
+    }
+    return results;
+  }
+
+  private Operation newOperation(long connectionID, CountDownLatch started, CountDownLatch done,
+      AtomicReference<Thread> runningThread) throws Exception
+  {
+    return newOperation(connectionID, started, done, runningThread, null);
+  }
+
+  /** Returns an operation counting down the provided latches when run, and blocking until the last one if any. */
+  private Operation newOperation(long connectionID, final CountDownLatch started, final CountDownLatch done,
+      final AtomicReference<Thread> runningThread, final CountDownLatch blockUntil) throws Exception
+  {
+    final Operation operation = mock(Operation.class);
+    when(operation.getConnectionID()).thenReturn(connectionID);
+    doAnswer(new Answer<Object>()
+    {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable
+      {
+        if (runningThread != null)
+        {
+          runningThread.set(Thread.currentThread());
+        }
+        if (started != null)
+        {
+          started.countDown();
+        }
+        if (blockUntil != null)
+        {
+          blockUntil.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        if (done != null)
+        {
+          done.countDown();
+        }
+        return null;
+      }
+    }).when(operation).run();
+    return operation;
+  }
+
+  private Answer<Object> countRun(final AtomicInteger nbRun)
+  {
+    return new Answer<Object>()
+    {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable
+      {
+        nbRun.incrementAndGet();
+        return null;
+      }
+    };
+  }
+}
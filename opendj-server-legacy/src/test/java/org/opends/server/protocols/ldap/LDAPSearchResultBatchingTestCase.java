@@ -0,0 +1,252 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.protocols.ldap;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.protocols.ldap.LDAPConstants.*;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DereferenceAliasesPolicy;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.core.QueueingStrategy;
+import org.opends.server.core.SearchOperation;
+import org.opends.server.tools.LDAPReader;
+import org.opends.server.types.DisconnectReason;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchResultEntry;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Tests the batching of the search results written by LDAP client connections. */
+@SuppressWarnings("javadoc")
+public class LDAPSearchResultBatchingTestCase extends LdapTestCase
+{
+  private static final int BATCH_SIZE = 2000;
+  private static final int MESSAGE_ID = 1;
+
+  private LDAPConnectionHandler connectionHandler;
+  private ServerSocketChannel serverChannel;
+  private Socket clientSocket;
+  private LDAPReader clientReader;
+  private LDAPClientConnection connection;
+  private SearchOperation searchOperation;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void connect() throws Exception
+  {
+    // The requests are not processed: the tests send the search results themselves
+    connectionHandler = getLDAPHandlerInstance(TestCaseUtils.makeEntry(
+        "dn: cn=Batching LDAP Connection Handler,cn=Connection Handlers,cn=config",
+        "objectClass: top",
+        "objectClass: ds-cfg-connection-handler",
+        "objectClass: ds-cfg-ldap-connection-handler",
+        "cn: Batching LDAP Connection Handler",
+        "ds-cfg-java-class: org.opends.server.protocols.ldap.LDAPConnectionHandler",
+        "ds-cfg-enabled: true",
+        "ds-cfg-listen-address: 127.0.0.1",
+        "ds-cfg-keep-stats: true",
+        "ds-cfg-search-result-batch-size: " + BATCH_SIZE + " bytes"),
+        mock(QueueingStrategy.class));
+    // Stop the search result flusher, so that batched search results are only written when the tests expect it
+    connectionHandler.finalizeConnectionHandler(LocalizableMessage.raw("search result flusher stopped by the test"));
+
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    clientSocket = new Socket("127.0.0.1", serverChannel.socket().getLocalPort());
+    clientSocket.setSoTimeout(10000);
+    clientReader = new LDAPReader(clientSocket);
+    connection = new LDAPClientConnection(connectionHandler, serverChannel.accept(), "LDAP");
+
+    SearchRequestProtocolOp searchRequest = new SearchRequestProtocolOp(ByteString.valueOfUtf8("dc=example,dc=com"),
+        SearchScope.WHOLE_SUBTREE, DereferenceAliasesPolicy.NEVER, 0, 0, false, LDAPFilter.objectClassPresent(),
+        new LinkedHashSet<String>());
+    assertThat(connection.processLDAPMessage(new LDAPMessage(MESSAGE_ID, searchRequest))).isTrue();
+    searchOperation = (SearchOperation) connection.getOperationInProgress(MESSAGE_ID);
+  }
+
+  @AfterMethod
+  public void disconnect() throws Exception
+  {
+    connection.disconnect(DisconnectReason.CLIENT_DISCONNECT, false, null);
+    clientSocket.close();
+    serverChannel.close();
+  }
+
+  @Test
+  public void testResultsBelowBatchSizeAreWrittenWithSearchResultDone() throws Exception
+  {
+    final List<Entry> entries = sendSearchEntries(3);
+    assertThat(clientSocket.getInputStream().available()).isEqualTo(0);
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(0);
+
+    searchOperation.setResultCode(ResultCode.SUCCESS);
+    connection.sendResponse(searchOperation);
+
+    assertThat(readSearchEntryDNs(entries.size())).isEqualTo(dnsOf(entries));
+    assertThat(clientReader.readMessage().getProtocolOpType()).isEqualTo(OP_TYPE_SEARCH_RESULT_DONE);
+    // The entries have been written in a single batch, before the search result done
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(1);
+    assertThat(getStatistics().getSearchResultFlushedBytes()).isBetween(1L, (long) BATCH_SIZE);
+    assertThat(getStatistics().getSearchResultEntries()).isEqualTo(entries.size());
+  }
+
+  @Test
+  public void testResultsAboveBatchSizeAreWrittenWhenBufferIsFull() throws Exception
+  {
+    final List<Entry> entries = sendSearchEntries(50);
+    assertThat(clientSocket.getInputStream().available()).isGreaterThan(0);
+    final long flushesBeforeDone = getStatistics().getSearchResultFlushes();
+    assertThat(flushesBeforeDone).isGreaterThan(1);
+
+    searchOperation.setResultCode(ResultCode.SUCCESS);
+    connection.sendResponse(searchOperation);
+
+    assertThat(readSearchEntryDNs(entries.size())).isEqualTo(dnsOf(entries));
+    assertThat(clientReader.readMessage().getProtocolOpType()).isEqualTo(OP_TYPE_SEARCH_RESULT_DONE);
+    final long flushes = getStatistics().getSearchResultFlushes();
+    assertThat(flushes).isEqualTo(flushesBeforeDone + 1);
+    final long flushedBytes = getStatistics().getSearchResultFlushedBytes();
+    assertThat(flushedBytes).isGreaterThan((flushes - 1) * BATCH_SIZE / 2);
+    assertThat(flushedBytes).isLessThanOrEqualTo(flushes * BATCH_SIZE);
+  }
+
+  @Test
+  public void testResultsAreWrittenWhenSearchCompletesWithoutResponse() throws Exception
+  {
+    final List<Entry> entries = sendSearchEntries(3);
+
+    // As done when the search has been abandoned
+    searchOperation.operationCompleted();
+
+    assertThat(readSearchEntryDNs(entries.size())).isEqualTo(dnsOf(entries));
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(1);
+    assertThat(connection.getOperationInProgress(MESSAGE_ID)).isNull();
+  }
+
+  @Test
+  public void testResultsAreWrittenBeforeNoticeOfDisconnection() throws Exception
+  {
+    final List<Entry> entries = sendSearchEntries(3);
+
+    connection.disconnect(DisconnectReason.SERVER_SHUTDOWN, true, LocalizableMessage.raw("shutdown"));
+
+    assertThat(readSearchEntryDNs(entries.size())).isEqualTo(dnsOf(entries));
+    final LDAPMessage message = clientReader.readMessage();
+    assertThat(message.getExtendedResponseProtocolOp().getOID()).isEqualTo(OID_NOTICE_OF_DISCONNECTION);
+  }
+
+  @Test
+  public void testResultsAreWrittenPeriodicallyWhileSearchIsInProgress() throws Exception
+  {
+    final List<Entry> entries = sendSearchEntries(3);
+    assertThat(clientSocket.getInputStream().available()).isEqualTo(0);
+
+    // As done by the search result flusher of the connection handler
+    connectionHandler.flushBatchedSearchResults();
+
+    assertThat(readSearchEntryDNs(entries.size())).isEqualTo(dnsOf(entries));
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(1);
+    assertThat(connection.getOperationInProgress(MESSAGE_ID)).isSameAs(searchOperation);
+
+    // The connection is only flushed again once it batches new search results
+    connectionHandler.flushBatchedSearchResults();
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(1);
+    final List<Entry> moreEntries = sendSearchEntries(2);
+    connectionHandler.flushBatchedSearchResults();
+    assertThat(readSearchEntryDNs(moreEntries.size())).isEqualTo(dnsOf(moreEntries));
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(2);
+  }
+
+  @Test
+  public void testPersistentSearchResultsAreNotBatched() throws Exception
+  {
+    // As done when the persistent search is enabled
+    searchOperation.setSendResponse(false);
+
+    final List<Entry> entries = sendSearchEntries(1);
+
+    assertThat(readSearchEntryDNs(entries.size())).isEqualTo(dnsOf(entries));
+    assertThat(getStatistics().getSearchResultFlushes()).isEqualTo(0);
+  }
+
+  private LDAPStatistics getStatistics()
+  {
+    return connectionHandler.getStatTracker();
+  }
+
+  private List<Entry> sendSearchEntries(int nbEntries) throws Exception
+  {
+    final List<Entry> entries = new ArrayList<>();
+    for (int i = 0; i < nbEntries; i++)
+    {
+      final Entry entry = TestCaseUtils.makeEntry(
+          "dn: uid=user." + i + ",dc=example,dc=com",
+          "objectClass: top",
+          "objectClass: person",
+          "objectClass: organizationalPerson",
+          "objectClass: inetOrgPerson",
+          "uid: user." + i,
+          "cn: User " + i,
+          "sn: " + i,
+          "description: This is the description of user " + i + " in the example organization");
+      connection.sendSearchEntry(searchOperation, new SearchResultEntry(entry));
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  private List<DN> readSearchEntryDNs(int nbEntries) throws Exception
+  {
+    final List<DN> dns = new ArrayList<>();
+    for (int i = 0; i < nbEntries; i++)
+    {
+      final LDAPMessage message = clientReader.readMessage();
+      assertThat(message.getMessageID()).isEqualTo(MESSAGE_ID);
+      dns.add(message.getSearchResultEntryProtocolOp().getDN());
+    }
+    return dns;
+  }
+
+  private List<DN> dnsOf(List<Entry> entries)
+  {
+    final List<DN> dns = new ArrayList<>();
+    for (Entry entry : entries)
+    {
+      dns.add(entry.getName());
+    }
+    return dns;
+  }
+}
@@ -28,6 +28,7 @@ import org.opends.server.TestCaseUtils;
 import org.opends.server.admin.server.AdminTestCaseUtils;
 import org.opends.server.admin.std.meta.LDAPConnectionHandlerCfgDefn;
 import org.opends.server.admin.std.server.LDAPConnectionHandlerCfg;
+import org.opends.server.core.QueueingStrategy;
 import org.opends.server.core.ServerContext;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.opends.server.types.Attribute;
@@ -99,12 +100,34 @@ public abstract class LdapTestCase extends DirectoryServerTestCase
    */
   static LDAPConnectionHandler getLDAPHandlerInstance(Entry handlerEntry)
       throws Exception
+  {
+    return getLDAPHandlerInstance(handlerEntry, new LDAPConnectionHandler());
+  }
+
+  /**
+   * Generate a LDAPConnectionHandler from a entry, using the provided
+   * queueing strategy for the requests of its client connections. The listen
+   * port is determined automatically, so no ATTR_LISTEN_PORT should be in the
+   * entry.
+   *
+   * @param handlerEntry The entry to be used to configure the handle.
+   * @param strategy The strategy used to queue the requests.
+   * @return Returns the new LDAP connection handler.
+   * @throws Exception if the handler cannot be initialized.
+   */
+  static LDAPConnectionHandler getLDAPHandlerInstance(Entry handlerEntry,
+      QueueingStrategy strategy) throws Exception
+  {
+    return getLDAPHandlerInstance(handlerEntry, new LDAPConnectionHandler(strategy, null));
+  }
+
+  private static LDAPConnectionHandler getLDAPHandlerInstance(Entry handlerEntry,
+      LDAPConnectionHandler handler) throws Exception
   {
     long serverLdapPort = TestCaseUtils.findFreePort();
     Attribute a = Attributes.create(ATTR_LISTEN_PORT, String.valueOf(serverLdapPort));
     handlerEntry.addAttribute(a, null);
     LDAPConnectionHandlerCfg config = getConfiguration(handlerEntry);
-    LDAPConnectionHandler handler = new LDAPConnectionHandler();
     handler.initializeConnectionHandler(mock(ServerContext.class), config);
     return handler;
   }
@@ -440,6 +440,7 @@ public class AssuredReplicationPluginTest extends ReplicationTestCase
         {
           session.stopEncryption();
         }
+        session.startBatching(false);
 
         ReplicationMsg msg = session.receive();
         if (msg instanceof StopMsg){
@@ -366,7 +366,6 @@ public class NamingConflictTest extends ReplicationTestCase
   {
     domain.processUpdate(updateMsg);
     LDAPUpdateMsg ldapUpdate = queue.take().getUpdateMessage();
-    domain.markInProgress(ldapUpdate);
     domain.replay(ldapUpdate, SHUTDOWN);
   }
 }
@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+import org.testng.annotations.Test;
+
+/** Tests for {@link ReplayLanes}. */
+@SuppressWarnings("javadoc")
+public class ReplayLanesTest extends ReplicationTestCase
+{
+  private static final int NB_ENTRIES = 50;
+  private static final int NB_UPDATES_PER_ENTRY = 20;
+
+  @Test
+  public void testUpdatesOfAnEntryStayInOrder() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(4);
+    offerUpdates(lanes);
+
+    assertUpdatesAreInOrder(lanes, 4);
+  }
+
+  @Test
+  public void testSetNumberOfLanesKeepsUpdatesInOrder() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(4);
+    offerUpdates(lanes);
+
+    lanes.setNumberOfLanes(7);
+    assertThat(lanes.getNumberOfLanes()).isEqualTo(7);
+    assertUpdatesAreInOrder(lanes, 7);
+  }
+
+  /** Offers interleaved updates of several entries, in increasing CSN order. */
+  private void offerUpdates(ReplayLanes lanes) throws Exception
+  {
+    int seqNum = 0;
+    for (int i = 0; i < NB_UPDATES_PER_ENTRY; i++)
+    {
+      for (int entry = 0; entry < NB_ENTRIES; entry++)
+      {
+        final LDAPUpdateMsg msg = new DeleteMsg(entryDN(entry), new CSN(1, seqNum++, 1), "uuid" + entry);
+        assertThat(lanes.offer(new UpdateToReplay(msg, null), 1, SECONDS)).isTrue();
+      }
+    }
+  }
+
+  private void assertUpdatesAreInOrder(ReplayLanes lanes, int nbLanes) throws Exception
+  {
+    final List<LDAPUpdateMsg> replayed = new ArrayList<>();
+    for (int laneIndex = 0; laneIndex < nbLanes; laneIndex++)
+    {
+      UpdateToReplay update;
+      while ((update = lanes.poll(laneIndex, 0, SECONDS)) != null)
+      {
+        final LDAPUpdateMsg msg = update.getUpdateMessage();
+        assertThat(ReplayLanes.getLaneIndex(msg.getDN(), nbLanes)).isEqualTo(laneIndex);
+        replayed.add(msg);
+      }
+    }
+    assertThat(replayed).hasSize(NB_ENTRIES * NB_UPDATES_PER_ENTRY);
+
+    for (int entry = 0; entry < NB_ENTRIES; entry++)
+    {
+      CSN previous = null;
+      for (LDAPUpdateMsg msg : replayed)
+      {
+        if (msg.getDN().equals(entryDN(entry)))
+        {
+          assertThat(previous == null || msg.getCSN().isNewerThan(previous)).isTrue();
+          previous = msg.getCSN();
+        }
+      }
+    }
+  }
+
+  private DN entryDN(int entry)
+  {
+    return DN.valueOf("uid=user." + entry + ",ou=People,dc=example,dc=com");
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.protocol;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/** Tests for {@link FrameOutputStream} and {@link FrameInputStream}. */
+@SuppressWarnings("javadoc")
+public class FrameStreamTest extends DirectoryServerTestCase
+{
+  @DataProvider
+  public Object[][] compress()
+  {
+    return new Object[][] { { false }, { true } };
+  }
+
+  @Test(dataProvider = "compress")
+  public void testReadFrames(boolean compress) throws Exception
+  {
+    final List<byte[]> messages = newMessages();
+    final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    final FrameOutputStream out = new FrameOutputStream(wire, compress);
+    for (int i = 0; i < messages.size(); i++)
+    {
+      out.write(messages.get(i));
+      // Batch messages by frames of varying sizes, small frames are never compressed
+      if (i % 7 == 0 || i % 3 == 0)
+      {
+        out.flush();
+      }
+    }
+    out.flush();
+
+    final DataInputStream in = new DataInputStream(new FrameInputStream(new ByteArrayInputStream(wire.toByteArray())));
+    for (byte[] message : messages)
+    {
+      final byte[] read = new byte[message.length];
+      in.readFully(read);
+      assertThat(read).isEqualTo(message);
+    }
+    assertThat(in.read()).isEqualTo(-1);
+
+    if (compress)
+    {
+      assertThat(out.getCompressionRatio()).isGreaterThan(2);
+    }
+    else
+    {
+      assertThat(out.getCompressionRatio()).isLessThan(1);
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testReadTruncatedFrame() throws Exception
+  {
+    final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    final FrameOutputStream out = new FrameOutputStream(wire, true);
+    out.write(newMessages().get(0));
+    out.flush();
+
+    final byte[] truncated = new byte[wire.size() - 1];
+    System.arraycopy(wire.toByteArray(), 0, truncated, 0, truncated.length);
+    new DataInputStream(new FrameInputStream(new ByteArrayInputStream(truncated))).readFully(new byte[10000]);
+  }
+
+  @Test
+  public void testCloseReleasesCompressionResources() throws Exception
+  {
+    final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    final FrameOutputStream out = new FrameOutputStream(wire, true);
+    int firstFrameLength = 0;
+    for (byte[] message : newMessages())
+    {
+      out.write(message);
+      firstFrameLength += message.length;
+    }
+    out.flush();
+    for (byte[] message : newMessages())
+    {
+      out.write(message);
+    }
+    out.flush();
+    out.close();
+    out.close();
+    try
+    {
+      out.flush();
+      failBecauseExceptionWasNotThrown(IOException.class);
+    }
+    catch (IOException expected)
+    {
+      // The deflater has been released
+    }
+
+    final FrameInputStream in = new FrameInputStream(new ByteArrayInputStream(wire.toByteArray()));
+    new DataInputStream(in).readFully(new byte[firstFrameLength]);
+    in.close();
+    try
+    {
+      in.read();
+      failBecauseExceptionWasNotThrown(IOException.class);
+    }
+    catch (IOException expected)
+    {
+      // The inflater has been released
+    }
+  }
+
+  /** Returns messages sharing most of their content, like replicated modifications. */
+  private static List<byte[]> newMessages()
+  {
+    final Random random = new Random(0);
+    final List<byte[]> messages = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+    {
+      final StringBuilder builder = new StringBuilder();
+      builder.append("uid=user.").append(i).append(",ou=People,dc=example,dc=com");
+      for (int j = 0; j < random.nextInt(20); j++)
+      {
+        builder.append("replace: description\ndescription: updated description ").append(random.nextInt(100));
+      }
+      messages.add(builder.toString().getBytes());
+    }
+    return messages;
+  }
+}
@@ -1136,6 +1136,28 @@ public class SynchronizationMsgTest extends ReplicationTestCase
     assertEquals(requestorID, newMsg.getInitiatorID());
     assertEquals(entryCount, newMsg.getEntryCount());
     assertEquals(TEST_ROOT_DN, newMsg.getBaseDN());
+    assertFalse(newMsg.isBinaryEntryFormat());
+  }
+
+  /**
+   * Test that the binary entry format of InitializeTargetMsg is only sent from V10.
+   */
+  @Test
+  public void initializeTargetMsgBinaryEntryFormatTest() throws Exception
+  {
+    InitializeTargetMsg msg = new InitializeTargetMsg(TEST_ROOT_DN, 45678, 2, 3, 4, 100);
+    msg.setBinaryEntryFormat(true);
+
+    InitializeTargetMsg newMsg =
+        new InitializeTargetMsg(msg.getBytes(REPLICATION_PROTOCOL_V10), REPLICATION_PROTOCOL_V10);
+    assertTrue(newMsg.isBinaryEntryFormat());
+    assertEquals(newMsg.getEntryCount(), 4);
+    assertEquals(newMsg.getInitWindow(), 100);
+
+    newMsg = new InitializeTargetMsg(msg.getBytes(REPLICATION_PROTOCOL_V9), REPLICATION_PROTOCOL_V9);
+    assertFalse(newMsg.isBinaryEntryFormat());
+    assertEquals(newMsg.getEntryCount(), 4);
+    assertEquals(newMsg.getInitWindow(), 100);
   }
 
   /**
@@ -821,6 +821,7 @@ public class AssuredReplicationServerTest
         {
           session.stopEncryption();
         }
+        session.startBatching(false);
 
         // Send our topo mesg
         RSInfo rsInfo = new RSInfo(serverId, fakeUrl, generationId, groupId, 1);
@@ -0,0 +1,271 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.forgerock.opendj.ldap.DN;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.replication.common.CSNGenerator;
+import org.opends.server.replication.common.ServerState;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.UpdateRingBuffer.PublishedUpdate;
+import org.opends.server.replication.server.changelog.api.DBCursor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Tests how {@link MessageHandler}s follow the ring buffer of their replication server domain. */
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "unit" }, sequential = true)
+public class MessageHandlerTest extends DirectoryServerTestCase
+{
+  private static final int CAPACITY = 10;
+  private static final long TIMEOUT_SECONDS = 30;
+
+  private final CSNGenerator csnGenerator = new CSNGenerator(1, 0);
+  private UpdateRingBuffer ringBuffer;
+  private ReplicationServerDomain domain;
+  /** The updates stored in the changelog, in publication order. */
+  private List<UpdateMsg> changelog;
+
+  @BeforeMethod
+  public void setUp() throws Exception
+  {
+    ringBuffer = new UpdateRingBuffer(CAPACITY, new ServerState());
+    changelog = new CopyOnWriteArrayList<>();
+    domain = mock(ReplicationServerDomain.class);
+    when(domain.getUpdateRingBuffer()).thenReturn(ringBuffer);
+    when(domain.getCursorFrom(any(ServerState.class))).thenAnswer(new Answer<DBCursor<UpdateMsg>>()
+    {
+      @Override
+      public DBCursor<UpdateMsg> answer(InvocationOnMock invocation) throws Throwable
+      {
+        final ServerState startAfterState = (ServerState) invocation.getArguments()[0];
+        final List<UpdateMsg> records = new ArrayList<>();
+        for (UpdateMsg msg : changelog)
+        {
+          if (!startAfterState.cover(msg.getCSN()))
+          {
+            records.add(msg);
+          }
+        }
+        return new ListCursor(records);
+      }
+    });
+  }
+
+  @Test
+  public void testFollowRingBuffer() throws Exception
+  {
+    final MessageHandler handler = newMessageHandler();
+    final List<UpdateMsg> published = publish(3);
+
+    assertThat(handler.getNextMessage()).isSameAs(published.get(0));
+    assertThat(handler.getRcvMsgQueueSize()).isEqualTo(2);
+    assertThat(handler.getOlderUpdateCSN()).isEqualTo(published.get(1).getCSN());
+    assertThat(handler.getNextMessage()).isSameAs(published.get(1));
+    assertThat(handler.getNextMessage()).isSameAs(published.get(2));
+    assertThat(handler.getRcvMsgQueueSize()).isEqualTo(0);
+    assertThat(handler.getOlderUpdateCSN()).isNull();
+    verify(domain, never()).getCursorFrom(any(ServerState.class));
+  }
+
+  @Test
+  public void testFallOffRingBufferAndRejoin() throws Exception
+  {
+    final MessageHandler handler = newMessageHandler();
+    final List<UpdateMsg> published = publish(2);
+    assertThat(handler.getNextMessage()).isSameAs(published.get(0));
+
+    // The handler falls off the end of the ring buffer: the missed updates are read from the changelog
+    published.addAll(publish(CAPACITY + 5));
+    assertThat(ringBuffer.isEvicted(1)).isTrue();
+    final List<UpdateMsg> received = new ArrayList<>();
+    for (int i = 1; i < published.size(); i++)
+    {
+      received.add(handler.getNextMessage());
+    }
+    assertThat(received).isEqualTo(published.subList(1, published.size()));
+
+    // All the evicted updates have been sent: the handler follows the ring buffer again
+    final List<UpdateMsg> next = publish(1);
+    assertThat(handler.getNextMessage()).isSameAs(next.get(0));
+    assertThat(handler.getRcvMsgQueueSize()).isEqualTo(0);
+    verify(domain, times(1)).getCursorFrom(any(ServerState.class));
+  }
+
+  @Test
+  public void testNewHandlerReadsEvictedUpdatesFromChangelog() throws Exception
+  {
+    final List<UpdateMsg> published = publish(CAPACITY + 2);
+    assertThat(ringBuffer.canFollowFromHead(new ServerState())).isFalse();
+
+    // A new handler which has not seen the evicted updates must read them from the changelog first
+    final MessageHandler handler = newMessageHandler();
+    for (UpdateMsg msg : published)
+    {
+      assertThat(handler.getNextMessage()).isSameAs(msg);
+    }
+    assertThat(handler.getServerState().cover(published.get(1).getCSN())).isTrue();
+    assertThat(ringBuffer.canFollowFromHead(handler.getServerState())).isTrue();
+  }
+
+  @Test
+  public void testAssuredUpdateSelection() throws Exception
+  {
+    final DataServerHandler assuredHandler = newDataServerHandler(2);
+    final DataServerHandler notAssuredHandler = newDataServerHandler(3);
+    final UpdateMsg updateMsg = newUpdateMsg();
+    final NotAssuredUpdateMsg notAssuredUpdateMsg = new NotAssuredUpdateMsg(updateMsg);
+    changelog.add(updateMsg);
+    ringBuffer.publish(new PublishedUpdate(updateMsg, notAssuredUpdateMsg, Arrays.asList(2), null));
+
+    assertThat(assuredHandler.getNextMessage()).isSameAs(updateMsg);
+    assertThat(notAssuredHandler.getNextMessage()).isSameAs(notAssuredUpdateMsg);
+  }
+
+  @Test
+  public void testEvictionWhileSlowHandlerReads() throws Exception
+  {
+    final MessageHandler handler = newMessageHandler();
+    final int nbUpdates = 1000;
+    final List<UpdateMsg> received = new ArrayList<>();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread consumer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          for (int i = 0; i < nbUpdates; i++)
+          {
+            received.add(handler.getNextMessage());
+            if (i % 50 == 0)
+            {
+              // Be slow, so that the publisher evicts the updates not read yet
+              Thread.sleep(5);
+            }
+          }
+        }
+        catch (Throwable t)
+        {
+          failure.set(t);
+        }
+      }
+    });
+    consumer.start();
+
+    final List<UpdateMsg> published = new ArrayList<>();
+    for (int i = 0; i < nbUpdates; i++)
+    {
+      published.addAll(publish(1));
+      if (i % 100 == 0)
+      {
+        Thread.sleep(1);
+      }
+    }
+
+    consumer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    handler.setConsumerActive(false);
+    ringBuffer.wakeUpConsumers();
+    assertThat(consumer.isAlive()).isFalse();
+    assertThat(failure.get()).isNull();
+    // No update has been lost nor sent twice
+    assertThat(received).isEqualTo(published);
+    verify(domain, atLeastOnce()).getCursorFrom(any(ServerState.class));
+  }
+
+  private MessageHandler newMessageHandler() throws Exception
+  {
+    final MessageHandler handler = new MessageHandler(CAPACITY, null);
+    handler.replicationServerDomain = domain;
+    handler.setInitialServerState(new ServerState());
+    return handler;
+  }
+
+  private DataServerHandler newDataServerHandler(int serverId) throws Exception
+  {
+    final DataServerHandler handler = new DataServerHandler(null, CAPACITY, null, 100);
+    handler.serverId = serverId;
+    handler.replicationServerDomain = domain;
+    handler.setInitialServerState(new ServerState());
+    return handler;
+  }
+
+  /** Publishes updates as done by the replication server domain, once they are stored in the changelog. */
+  private List<UpdateMsg> publish(int nbUpdates) throws Exception
+  {
+    final List<UpdateMsg> published = new ArrayList<>();
+    for (int i = 0; i < nbUpdates; i++)
+    {
+      final UpdateMsg updateMsg = newUpdateMsg();
+      changelog.add(updateMsg);
+      ringBuffer.publish(new PublishedUpdate(updateMsg, null, null, null));
+      published.add(updateMsg);
+    }
+    return published;
+  }
+
+  private UpdateMsg newUpdateMsg() throws Exception
+  {
+    return new DeleteMsg(DN.valueOf("uid=user,dc=example,dc=com"), csnGenerator.newCSN(), "uid");
+  }
+
+  /** A cursor over the updates of a list. */
+  private static final class ListCursor implements DBCursor<UpdateMsg>
+  {
+    private final Iterator<UpdateMsg> iterator;
+    private UpdateMsg record;
+
+    private ListCursor(List<UpdateMsg> records)
+    {
+      this.iterator = records.iterator();
+    }
+
+    @Override
+    public UpdateMsg getRecord()
+    {
+      return record;
+    }
+
+    @Override
+    public boolean next()
+    {
+      record = iterator.hasNext() ? iterator.next() : null;
+      return record != null;
+    }
+
+    @Override
+    public void close()
+    {
+      // Nothing to do
+    }
+  }
+}
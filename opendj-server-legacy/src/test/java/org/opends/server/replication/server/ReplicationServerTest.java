@@ -878,6 +878,7 @@ public class ReplicationServerTest extends ReplicationTestCase
       {
         session.stopEncryption();
       }
+      session.startBatching(true);
 
       // Send StartSessionMsg
       StartSessionMsg startSessionMsg = new StartSessionMsg(
@@ -0,0 +1,189 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.replication.common.CSNGenerator;
+import org.opends.server.replication.common.ServerState;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.UpdateRingBuffer.PublishedUpdate;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "unit" }, sequential = true)
+public class UpdateRingBufferTest extends DirectoryServerTestCase
+{
+  private static final int CAPACITY = 10;
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private final CSNGenerator csnGenerator = new CSNGenerator(1, 0);
+
+  @Test
+  public void testPublishAndFollow() throws Exception
+  {
+    final UpdateRingBuffer ringBuffer = new UpdateRingBuffer(CAPACITY, new ServerState());
+    final List<UpdateMsg> published = publish(ringBuffer, 3);
+
+    assertThat(ringBuffer.getHeadSequence()).isEqualTo(0);
+    assertThat(ringBuffer.getTailSequence()).isEqualTo(3);
+    assertThat(ringBuffer.awaitUpdate(1, 0).getUpdateMsg()).isSameAs(published.get(1));
+    assertThat(ringBuffer.awaitUpdate(3, 1)).isNull();
+    assertThat(updateMsgsFrom(ringBuffer, 1)).containsExactly(published.get(1), published.get(2));
+    assertThat(ringBuffer.getUpdatesCountFrom(1)).isEqualTo(2);
+    assertThat(ringBuffer.getOldestUpdateFrom(1).getUpdateMsg()).isSameAs(published.get(1));
+    assertThat(ringBuffer.getOldestUpdateFrom(3)).isNull();
+    assertThat(ringBuffer.canFollowFromHead(new ServerState())).isTrue();
+  }
+
+  @Test
+  public void testEvictionWhenFull() throws Exception
+  {
+    final UpdateRingBuffer ringBuffer = new UpdateRingBuffer(CAPACITY, new ServerState());
+    final List<UpdateMsg> published = publish(ringBuffer, CAPACITY + 2);
+
+    assertThat(ringBuffer.getHeadSequence()).isEqualTo(2);
+    assertThat(ringBuffer.isEvicted(1)).isTrue();
+    assertThat(ringBuffer.isEvicted(2)).isFalse();
+    assertThat(ringBuffer.awaitUpdate(0, 0)).isNull();
+    assertThat(ringBuffer.getUpdate(0)).isNull();
+    assertThat(updateMsgsFrom(ringBuffer, 0)).isEqualTo(published.subList(2, CAPACITY + 2));
+    assertThat(ringBuffer.getUpdatesCountFrom(0)).isEqualTo(CAPACITY);
+    assertThat(ringBuffer.getOldestUpdateFrom(0).getUpdateMsg()).isSameAs(published.get(2));
+
+    final ServerState serverState = new ServerState();
+    assertThat(ringBuffer.canFollowFromHead(serverState)).isFalse();
+    serverState.update(published.get(1).getCSN());
+    assertThat(ringBuffer.canFollowFromHead(serverState)).isTrue();
+  }
+
+  @Test
+  public void testChangelogStateIsConsideredEvicted() throws Exception
+  {
+    final ServerState changelogState = new ServerState();
+    changelogState.update(csnGenerator.newCSN());
+    final UpdateRingBuffer ringBuffer = new UpdateRingBuffer(CAPACITY, changelogState);
+
+    assertThat(ringBuffer.canFollowFromHead(new ServerState())).isFalse();
+    assertThat(ringBuffer.canFollowFromHead(changelogState)).isTrue();
+  }
+
+  @Test
+  public void testAwaitUpdateIsWokenUpByPublish() throws Exception
+  {
+    final UpdateRingBuffer ringBuffer = new UpdateRingBuffer(CAPACITY, new ServerState());
+    final CountDownLatch waiting = new CountDownLatch(1);
+    final AtomicReference<PublishedUpdate> received = new AtomicReference<>();
+    final Thread consumer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          waiting.countDown();
+          while (received.get() == null)
+          {
+            received.set(ringBuffer.awaitUpdate(0, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS)));
+          }
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    consumer.start();
+    assertThat(waiting.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+    final List<UpdateMsg> published = publish(ringBuffer, 1);
+    consumer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertThat(consumer.isAlive()).isFalse();
+    assertThat(received.get().getUpdateMsg()).isSameAs(published.get(0));
+  }
+
+  @Test(expectedExceptions = InterruptedException.class)
+  public void testAwaitUpdateInterrupted() throws Exception
+  {
+    final UpdateRingBuffer ringBuffer = new UpdateRingBuffer(CAPACITY, new ServerState());
+    Thread.currentThread().interrupt();
+    ringBuffer.awaitUpdate(0, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+  }
+
+  @Test
+  public void testEvictionWhenTooManyBytes() throws Exception
+  {
+    final UpdateRingBuffer ringBuffer = new UpdateRingBuffer(CAPACITY, new ServerState());
+    final String largeValue = new String(new char[CAPACITY * 100]).replace('\0', 'x');
+    final UpdateMsg largeUpdateMsg = new DeleteMsg(DN.valueOf("uid=" + largeValue + ",dc=example,dc=com"),
+        csnGenerator.newCSN(), "uid");
+    ringBuffer.publish(new PublishedUpdate(largeUpdateMsg, null, null, null));
+    final List<UpdateMsg> published = publish(ringBuffer, 5);
+
+    // The large update has been evicted to bound the bytes of the ring buffer, which keeps a minimum of updates
+    assertThat(ringBuffer.isEvicted(0)).isTrue();
+    assertThat(updateMsgsFrom(ringBuffer, 0)).isEqualTo(published);
+  }
+
+  @Test
+  public void testUpdateMsgForAssuredServers() throws Exception
+  {
+    final UpdateMsg updateMsg = newUpdateMsg();
+    final UpdateMsg notAssuredUpdateMsg = new NotAssuredUpdateMsg(updateMsg);
+    final PublishedUpdate update = new PublishedUpdate(updateMsg, notAssuredUpdateMsg, Arrays.asList(2), null);
+
+    assertThat(update.getUpdateMsgFor(2)).isSameAs(updateMsg);
+    assertThat(update.getUpdateMsgFor(3)).isSameAs(notAssuredUpdateMsg);
+    assertThat(new PublishedUpdate(updateMsg, null, null, null).getUpdateMsgFor(3)).isSameAs(updateMsg);
+  }
+
+  private List<UpdateMsg> publish(UpdateRingBuffer ringBuffer, int nbUpdates) throws Exception
+  {
+    final List<UpdateMsg> published = new ArrayList<>();
+    for (int i = 0; i < nbUpdates; i++)
+    {
+      final UpdateMsg updateMsg = newUpdateMsg();
+      ringBuffer.publish(new PublishedUpdate(updateMsg, null, null, null));
+      published.add(updateMsg);
+    }
+    return published;
+  }
+
+  private UpdateMsg newUpdateMsg() throws Exception
+  {
+    return new DeleteMsg(DN.valueOf("uid=user,dc=example,dc=com"), csnGenerator.newCSN(), "uid");
+  }
+
+  private List<UpdateMsg> updateMsgsFrom(UpdateRingBuffer ringBuffer, long sequence)
+  {
+    final List<UpdateMsg> results = new ArrayList<>();
+    for (long seq = Math.max(sequence, ringBuffer.getHeadSequence()); seq < ringBuffer.getTailSequence(); seq++)
+    {
+      results.add(ringBuffer.getUpdate(seq).getUpdateMsg());
+    }
+    return results;
+  }
+}
@@ -66,6 +66,7 @@ public class LogFileTest extends DirectoryServerTestCase
     {
       TEST_LOG_FILE.delete();
     }
+    LogFileSummary.getSummaryFile(TEST_LOG_FILE).delete();
     try (LogFile<String, String> logFile = getLogFile(RECORD_PARSER))
     {
       for (int i = 1; i <= 10; i++)
@@ -210,6 +211,130 @@ public class LogFileTest extends DirectoryServerTestCase
     }
   }
 
+  @Test
+  public void testGetNumberOfRecords() throws Exception
+  {
+    try (LogFile<String, String> changelog = getLogFile(RECORD_PARSER))
+    {
+      assertThat(changelog.getNumberOfRecords()).isEqualTo(10);
+
+      changelog.append(Record.from("key11", "value11"));
+
+      assertThat(changelog.getNumberOfRecords()).isEqualTo(11);
+    }
+  }
+
+  /** The summary file of a read-only log file allows to retrieve its records count and bounds without reading it. */
+  @Test
+  public void testReadOnlyLogFileWithSummary() throws Exception
+  {
+    writeSummaryOfTestLogFile();
+
+    FailingStringRecordParser parser = new FailingStringRecordParser();
+    try (LogFile<String, String> changelog = LogFile.newReadOnlyLogFile(TEST_LOG_FILE, parser))
+    {
+      parser.setFailToRead(true);
+
+      assertThat(changelog.getNumberOfRecords()).isEqualTo(10);
+      assertThat(changelog.getOldestRecord()).isEqualTo(Record.from("key01", "value1"));
+      assertThat(changelog.getNewestRecord()).isEqualTo(Record.from("key10", "value10"));
+    }
+  }
+
+  @Test
+  public void testReadOnlyLogFileIgnoresOutdatedSummary() throws Exception
+  {
+    writeSummaryOfTestLogFile();
+    try (LogFile<String, String> logFile = getLogFile(RECORD_PARSER))
+    {
+      logFile.append(Record.from("key11", "value11"));
+    }
+
+    try (LogFile<String, String> changelog = LogFile.newReadOnlyLogFile(TEST_LOG_FILE, RECORD_PARSER))
+    {
+      assertThat(changelog.getNumberOfRecords()).isEqualTo(11);
+      assertThat(changelog.getNewestRecord()).isEqualTo(Record.from("key11", "value11"));
+    }
+    // the summary has been written again
+    assertThat(LogFileSummary.readFrom(TEST_LOG_FILE, RECORD_PARSER).getNumberOfRecords()).isEqualTo(11);
+  }
+
+  @Test(dataProvider="cursorPositionTo")
+  public void testCursorPositionToWithSummary(String key, KeyMatchingStrategy matchingStrategy,
+      PositionStrategy positionStrategy, boolean positionShouldBeFound, int cursorShouldStartAt,
+      int cursorShouldEndAt) throws Exception
+  {
+    writeSummaryOfTestLogFile();
+
+    try (LogFile<String, String> changelog = LogFile.newReadOnlyLogFile(TEST_LOG_FILE, RECORD_PARSER);
+        LogFileCursor<String, String> cursor = changelog.getCursor())
+    {
+      boolean success = cursor.positionTo(key, matchingStrategy, positionStrategy);
+
+      assertThat(success).isEqualTo(positionShouldBeFound);
+      if (cursorShouldStartAt >= 0)
+      {
+        assertThatCursorCanBeFullyRead(cursor, cursorShouldStartAt, cursorShouldEndAt);
+      }
+      else
+      {
+        assertThatCursorIsExhausted(cursor);
+      }
+    }
+  }
+
+  /** Seeking in a log file spanning several entries of the sparse index of its summary. */
+  @Test
+  public void testCursorPositionToWithSparseIndex() throws Exception
+  {
+    final int nbRecords = 5000;
+    try (LogFile<String, String> logFile = getLogFile(RECORD_PARSER))
+    {
+      for (int i = 11; i <= nbRecords; i++)
+      {
+        logFile.append(Record.from(getSparseIndexKey(i), "value" + i));
+      }
+    }
+    writeSummaryOfTestLogFile();
+
+    try (LogFile<String, String> changelog = LogFile.newReadOnlyLogFile(TEST_LOG_FILE, RECORD_PARSER))
+    {
+      assertThat(changelog.getNumberOfRecords()).isEqualTo(nbRecords);
+      for (int i = 1; i <= nbRecords; i += 97)
+      {
+        final String key = getSparseIndexKey(i);
+        try (LogFileCursor<String, String> cursor = changelog.getCursor())
+        {
+          assertThat(cursor.positionTo(key, EQUAL_TO_KEY, ON_MATCHING_KEY)).as(key).isTrue();
+          assertThat(cursor.next()).isTrue();
+          assertThat(cursor.getRecord()).isEqualTo(Record.from(key, "value" + i));
+        }
+        try (LogFileCursor<String, String> cursor = changelog.getCursor())
+        {
+          assertThat(cursor.positionTo(key + "a", LESS_THAN_OR_EQUAL_TO_KEY, ON_MATCHING_KEY)).as(key).isTrue();
+          assertThat(cursor.next()).isTrue();
+          assertThat(cursor.getRecord()).isEqualTo(Record.from(key, "value" + i));
+        }
+      }
+    }
+  }
+
+  /** Returns keys ordered after the keys "key01" to "key10" of the test log file. */
+  private String getSparseIndexKey(int i)
+  {
+    return i <= 10 ? String.format("key%02d", i) : String.format("keyz%05d", i);
+  }
+
+  private void writeSummaryOfTestLogFile() throws Exception
+  {
+    final LogFileSummary<String, String> summary;
+    try (LogFile<String, String> logFile = getLogFile(RECORD_PARSER))
+    {
+      summary = logFile.getSummary();
+    }
+    LogFile.writeSummaryFile(TEST_LOG_FILE, summary, RECORD_PARSER);
+  }
+
   @DataProvider(name = "corruptedRecordData")
   Object[][] corruptedRecordData()
   {
@@ -22,6 +22,8 @@ import static org.opends.server.replication.server.changelog.api.DBCursor.Positi
 import static org.opends.server.replication.server.changelog.file.LogFileTest.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.opends.server.DirectoryServerTestCase;
@@ -351,6 +353,46 @@ public class LogTest extends DirectoryServerTestCase
     }
   }
 
+  @Test
+  public void testGetNumberOfRecords() throws Exception
+  {
+    try (Log<String, String> log = openLog(LogFileTest.RECORD_PARSER))
+    {
+      assertThat(log.getNumberOfRecords()).isEqualTo(10);
+    }
+  }
+
+  /** Each rotated log file has a summary file, which is deleted along with the log file when purged. */
+  @Test
+  public void testSummaryFilesOfRotatedLogFiles() throws Exception
+  {
+    try (Log<String, String> log = openLog(LogFileTest.RECORD_PARSER))
+    {
+      final List<File> rotatedLogFiles = new ArrayList<>();
+      for (File file : LOG_DIRECTORY.listFiles())
+      {
+        if (file.getName().endsWith(".log") && !file.getName().equals(Log.HEAD_LOG_FILE_NAME))
+        {
+          rotatedLogFiles.add(file);
+        }
+      }
+      assertThat(rotatedLogFiles).isNotEmpty();
+      for (File rotatedLogFile : rotatedLogFiles)
+      {
+        final LogFileSummary<String, String> summary = LogFileSummary.readFrom(rotatedLogFile, RECORD_PARSER);
+        assertThat(summary).as(rotatedLogFile.getName()).isNotNull();
+        assertThat(summary.getNumberOfRecords()).isEqualTo(2);
+      }
+
+      log.purgeUpTo("key010");
+
+      for (File rotatedLogFile : rotatedLogFiles)
+      {
+        assertThat(LogFileSummary.getSummaryFile(rotatedLogFile).exists()).isEqualTo(rotatedLogFile.exists());
+      }
+    }
+  }
+
   /** TODO : Should be re-enabled once the issue with robot functional test replication/totalupdate.txt is solved */
   @Test(enabled=false, expectedExceptions=ChangelogException.class)
   public void testClearWhenCursorIsOpened() throws Exception
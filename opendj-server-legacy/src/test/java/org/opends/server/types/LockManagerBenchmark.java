@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.types;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.opendj.ldap.DN;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of the {@link LockManager} using {@code ReentrantReadWriteLock} subtree
+ * locks with the one using striped subtree locks, when concurrently write locking sibling entries
+ * as modify operations do. Each thread locks its own entries, so the only contention is on the
+ * subtree locks of the parent entries.
+ * <p>
+ * This is not a unit test: run it using {@link #main(String[])} with the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@SuppressWarnings("javadoc")
+public class LockManagerBenchmark
+{
+  private static final String PARENT_DN = "ou=people,dc=example,dc=com";
+
+  @State(Scope.Benchmark)
+  public static class LockManagerState
+  {
+    @Param({ "false", "true" })
+    public boolean stripedSubtreeLocks;
+
+    private final AtomicInteger nextThreadIndex = new AtomicInteger();
+    private LockManager lockManager;
+
+    @Setup
+    public void setup()
+    {
+      lockManager = new LockManager(stripedSubtreeLocks);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class SiblingEntriesState
+  {
+    /** The number of entries locked in turn by each thread, more than 8 defeats the thread local cache. */
+    @Param({ "1", "64" })
+    public int entriesPerThread;
+
+    private DN[] entries;
+    private int nextEntry;
+
+    @Setup
+    public void setup(final LockManagerState lockManagerState)
+    {
+      final int threadIndex = lockManagerState.nextThreadIndex.getAndIncrement();
+      entries = new DN[entriesPerThread];
+      for (int i = 0; i < entriesPerThread; i++)
+      {
+        entries[i] = DN.valueOf("uid=user." + threadIndex + "." + i + "," + PARENT_DN);
+      }
+    }
+
+    private DN nextEntry()
+    {
+      final DN entry = entries[nextEntry];
+      nextEntry = (nextEntry + 1) % entries.length;
+      return entry;
+    }
+  }
+
+  @Benchmark
+  public void writeLockSiblingEntry(final LockManagerState lockManagerState, final SiblingEntriesState entriesState)
+  {
+    lockManagerState.lockManager.tryWriteLockEntry(entriesState.nextEntry()).unlock();
+  }
+
+  public static void main(final String[] args) throws Exception
+  {
+    new Runner(new OptionsBuilder().include(LockManagerBenchmark.class.getSimpleName()).build()).run();
+  }
+}
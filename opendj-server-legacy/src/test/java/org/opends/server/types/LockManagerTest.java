@@ -75,7 +75,7 @@ public class LockManagerTest extends TypesTestCase
   private final ExecutorService thread2 = Executors.newSingleThreadExecutor();
 
   @BeforeClass
-  private void setup() throws Exception
+  void setup() throws Exception
   {
     TestCaseUtils.startServer();
     dnA = DN.valueOf("dc=a");
@@ -84,10 +84,20 @@ public class LockManagerTest extends TypesTestCase
     dnABD = DN.valueOf("dc=d,dc=b,dc=a");
   }
 
+  LockManager newLockManager()
+  {
+    return new LockManager();
+  }
+
+  LockManager newLockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit)
+  {
+    return new LockManager(lockTimeout, lockTimeoutUnit);
+  }
+
   @Test
   public void testLockTimeout() throws Exception
   {
-    final LockManager lockManager = new LockManager(100, TimeUnit.MILLISECONDS);
+    final LockManager lockManager = newLockManager(100, TimeUnit.MILLISECONDS);
     DNLock lock1 = lockUsingThread(thread1, lockManager, LockType.WRITE_ENTRY, dnABC).get();
     DNLock lock2 = lockUsingThread(thread2, lockManager, LockType.WRITE_ENTRY, dnABC).get();
     assertThat(lock1).isNotNull();
@@ -96,7 +106,7 @@ public class LockManagerTest extends TypesTestCase
   }
 
   @DataProvider
-  private Object[][] multiThreadedLockCombinationsWhichShouldBlock()
+  Object[][] multiThreadedLockCombinationsWhichShouldBlock()
   {
     // @formatter:off
     return new Object[][] {
@@ -124,7 +134,7 @@ public class LockManagerTest extends TypesTestCase
   public void testMultiThreadedLockCombinationsWhichShouldBlock(final LockType lock1Type, final DN dn1,
       final LockType lock2Type, final DN dn2) throws Exception
   {
-    final LockManager lockManager = new LockManager();
+    final LockManager lockManager = newLockManager();
     final DNLock lock1 = lockUsingThread(thread1, lockManager, lock1Type, dn1).get();
     final Future<DNLock> lock2Future = lockUsingThread(thread2, lockManager, lock2Type, dn2);
 
@@ -148,7 +158,7 @@ public class LockManagerTest extends TypesTestCase
   }
 
   @DataProvider
-  private Object[][] multiThreadedLockCombinationsWhichShouldNotBlock()
+  Object[][] multiThreadedLockCombinationsWhichShouldNotBlock()
   {
     // @formatter:off
     return new Object[][] {
@@ -174,7 +184,7 @@ public class LockManagerTest extends TypesTestCase
   public void testMultiThreadedLockCombinationsWhichShouldNotBlock(final LockType lock1Type, final DN dn1,
       final LockType lock2Type, final DN dn2) throws Exception
   {
-    final LockManager lockManager = new LockManager();
+    final LockManager lockManager = newLockManager();
     final DNLock lock1 = lockUsingThread(thread1, lockManager, lock1Type, dn1).get();
     final DNLock lock2 = lockUsingThread(thread2, lockManager, lock2Type, dn2).get();
 
@@ -189,7 +199,7 @@ public class LockManagerTest extends TypesTestCase
   }
 
   @DataProvider
-  private LockType[][] reentrantLockCombinationsWhichShouldNotBlock()
+  LockType[][] reentrantLockCombinationsWhichShouldNotBlock()
   {
     // @formatter:off
     return new LockType[][] {
@@ -208,7 +218,7 @@ public class LockManagerTest extends TypesTestCase
   @Test(dataProvider = "reentrantLockCombinationsWhichShouldNotBlock")
   public void testReentrantLockCombinationsWhichShouldNotBlock(final LockType lock1Type, final LockType lock2Type)
   {
-    final LockManager lockManager = new LockManager();
+    final LockManager lockManager = newLockManager();
     final DNLock lock1 = lock1Type.lock(lockManager, dnA);
     final DNLock lock2 = lock2Type.lock(lockManager, dnA);
 
@@ -228,10 +238,84 @@ public class LockManagerTest extends TypesTestCase
     assertThat(lockManager.getLockTableRefCountFor(dnA)).isGreaterThan(0);
   }
 
+  @Test
+  public void testReentrantParentReadLockIsNotBlockedByPendingSubtreeWriteLock() throws Exception
+  {
+    final LockManager lockManager = newLockManager();
+    final DNLock lock1 = lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dnABC).get();
+    final Future<DNLock> subtreeLockFuture = lockUsingThread(thread2, lockManager, LockType.WRITE_SUBTREE, dnAB);
+    try
+    {
+      subtreeLockFuture.get(10, TimeUnit.MILLISECONDS);
+    }
+    catch (final TimeoutException e)
+    {
+      // Ignore: we'll check the state of the future instead.
+    }
+    assertThat(subtreeLockFuture.isDone()).isFalse();
+
+    // The first thread already holds the subtree read lock of the parent, so it must not wait for the writer.
+    final DNLock lock2 = lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dnABD).get(1, TimeUnit.SECONDS);
+    assertThat(lock2).isNotNull();
+    assertThat(subtreeLockFuture.isDone()).isFalse();
+
+    unlockUsingThread(thread1, lock1);
+    unlockUsingThread(thread1, lock2);
+    final DNLock subtreeLock = subtreeLockFuture.get();
+    assertThat(subtreeLock).isNotNull();
+    unlockUsingThread(thread2, subtreeLock);
+  }
+
+  @Test
+  public void testReadLockHoldingOtherLocksIsQueuedBehindPendingSubtreeWriteLock() throws Exception
+  {
+    final LockManager lockManager = newLockManager();
+    final ExecutorService thread3 = Executors.newSingleThreadExecutor();
+    try
+    {
+      final DNLock lock1 = lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dnABC).get();
+      final Future<DNLock> subtreeLockFuture = lockUsingThread(thread3, lockManager, LockType.WRITE_SUBTREE, dnAB);
+      assertNotDoneWithin(subtreeLockFuture, 10);
+
+      // The second thread holds a lock outside of the subtree, so it must wait for the writer.
+      final DNLock otherLock = lockUsingThread(thread2, lockManager, LockType.READ_ENTRY, DN.valueOf("dc=x")).get();
+      final Future<DNLock> lock2Future = lockUsingThread(thread2, lockManager, LockType.READ_ENTRY, dnABD);
+      assertNotDoneWithin(lock2Future, 10);
+
+      unlockUsingThread(thread1, lock1);
+      final DNLock subtreeLock = subtreeLockFuture.get();
+      assertThat(subtreeLock).isNotNull();
+      assertNotDoneWithin(lock2Future, 10);
+
+      unlockUsingThread(thread3, subtreeLock);
+      final DNLock lock2 = lock2Future.get();
+      assertThat(lock2).isNotNull();
+      unlockUsingThread(thread2, lock2);
+      unlockUsingThread(thread2, otherLock);
+    }
+    finally
+    {
+      thread3.shutdown();
+    }
+  }
+
+  private void assertNotDoneWithin(final Future<DNLock> future, final long millis) throws Exception
+  {
+    try
+    {
+      future.get(millis, TimeUnit.MILLISECONDS);
+    }
+    catch (final TimeoutException e)
+    {
+      // Ignore: we'll check the state of the future instead.
+    }
+    assertThat(future.isDone()).isFalse();
+  }
+
   @Test
   public void testThreadLocalCacheEviction() throws Exception
   {
-    final LockManager lockManager = new LockManager();
+    final LockManager lockManager = newLockManager();
 
     // Acquire 100 different locks. The first few locks should be evicted from the cache.
     final LinkedList<DNLock> locks = new LinkedList<>();
@@ -269,7 +353,7 @@ public class LockManagerTest extends TypesTestCase
   @Test(description = "OPENDJ-1984")
   public void stressTestForDeadlocks() throws Exception
   {
-    final LockManager lockManager = new LockManager();
+    final LockManager lockManager = newLockManager();
     final int threadCount = Runtime.getRuntime().availableProcessors();
     final ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
     for (int i = 0; i < threadCount; i++)
@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.types;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.types.LockManager.DNLock;
+import org.testng.annotations.Test;
+
+/** Runs the {@link LockManagerTest} tests against a lock manager using striped subtree locks. */
+@Test(timeOut = 20000, sequential = true)
+@SuppressWarnings("javadoc")
+public class StripedLockManagerTest extends LockManagerTest
+{
+  @Override
+  LockManager newLockManager()
+  {
+    return new LockManager(true);
+  }
+
+  @Override
+  LockManager newLockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit)
+  {
+    return new LockManager(lockTimeout, lockTimeoutUnit, 64, true);
+  }
+
+  @Test
+  public void testStripedSubtreeLockExcludesReadersOnAllStripes() throws Exception
+  {
+    final StripedSubtreeLock lock = new StripedSubtreeLock(4);
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    final int[] counters = new int[4];
+    for (int stripe = 0; stripe < counters.length; stripe++)
+    {
+      counters[stripe] = lock.tryReadLock(stripe, false, deadline);
+      assertThat(counters[stripe]).isNotEqualTo(StripedSubtreeLock.FAILED);
+    }
+
+    final long shortDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+    assertThat(lock.tryWriteLock(shortDeadline)).isFalse();
+
+    for (int stripe = 0; stripe < counters.length; stripe++)
+    {
+      lock.releaseReadLock(counters[stripe]);
+    }
+    assertThat(lock.tryWriteLock(deadline)).isTrue();
+
+    // The write lock is reentrant
+    assertThat(lock.tryWriteLock(deadline)).isTrue();
+    lock.releaseWriteLock();
+    lock.releaseWriteLock();
+
+    final int counter = lock.tryReadLock(0, false, deadline);
+    assertThat(counter).isNotEqualTo(StripedSubtreeLock.FAILED);
+    lock.releaseReadLock(counter);
+  }
+
+  @Test
+  public void stressTestSubtreeWriteLockExcludesSiblingEntryLocks() throws Exception
+  {
+    final LockManager lockManager = newLockManager();
+    final DN parentDN = DN.valueOf("ou=people,dc=example,dc=com");
+    final int threadCount = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    final AtomicBoolean subtreeLocked = new AtomicBoolean();
+    final AtomicBoolean violation = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(threadCount);
+    final ExecutorService threadPool = Executors.newFixedThreadPool(threadCount + 1);
+    for (int i = 0; i < threadCount; i++)
+    {
+      final DN dn = DN.valueOf("uid=user." + i + "," + parentDN);
+      threadPool.submit(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < 100000; j++)
+          {
+            final DNLock lock = lockManager.tryWriteLockEntry(dn);
+            if (subtreeLocked.get())
+            {
+              violation.set(true);
+            }
+            lock.unlock();
+          }
+          done.countDown();
+        }
+      });
+    }
+    threadPool.submit(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        while (done.getCount() > 0)
+        {
+          final DNLock lock = lockManager.tryWriteLockSubtree(parentDN);
+          subtreeLocked.set(true);
+          Thread.yield();
+          subtreeLocked.set(false);
+          lock.unlock();
+          // Let the entry locks be acquired in between
+          LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+      }
+    });
+
+    threadPool.shutdown();
+    assertThat(threadPool.awaitTermination(15, TimeUnit.SECONDS)).as("Deadlock detected during stress test").isTrue();
+    assertThat(violation.get()).as("Entry locked while its parent subtree was locked").isFalse();
+  }
+}
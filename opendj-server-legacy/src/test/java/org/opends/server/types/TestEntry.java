@@ -20,17 +20,24 @@ import static org.assertj.core.api.Assertions.*;
 import static org.opends.server.util.CollectionUtils.*;
 import static org.testng.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.assertj.core.api.Assertions;
 import org.forgerock.i18n.LocalizableMessageBuilder;
 import org.forgerock.i18n.LocalizedIllegalArgumentException;
 import org.forgerock.opendj.ldap.AttributeDescription;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.opendj.ldap.schema.AttributeType;
 import org.opends.server.TestCaseUtils;
@@ -640,4 +647,176 @@ public final class TestEntry extends TypesTestCase {
     assertThat(e.getOperationalAttribute(AttributeDescription.create(uidType, options))).isEmpty();
     assertThat(e.getOperationalAttribute(AttributeDescription.create(mnType, options))).isEmpty();
   }
+
+  @Test
+  public void testDecodeLazilyOnlyDecodesAccessedAttributes() throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.0,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.0",
+        "cn: user 0",
+        "cn;lang-fr: utilisateur 0",
+        "sn: 0",
+        "description: first",
+        "description: second",
+        "createTimestamp: 20160101000000Z");
+    final ByteStringBuilder buffer = new ByteStringBuilder();
+    entry.encode(buffer, new EntryEncodeConfig(false, true, true));
+
+    final Entry lazyEntry = Entry.decodeLazily(buffer.toByteString(), DirectoryServer.getDefaultCompressedSchema());
+    final AttributeType cnType = DirectoryServer.getAttributeType("cn");
+    final AttributeType snType = DirectoryServer.getAttributeType("sn");
+    assertTrue(lazyEntry.hasUserAttribute(snType));
+    assertThat(lazyEntry.getUserAttributes().get(cnType)).hasSize(2);
+    assertThat(lazyEntry.getUserAttributes().get(cnType)).isInstanceOf(LazyAttributeList.class);
+    assertFalse(isDecoded(lazyEntry, cnType));
+
+    assertThat(lazyEntry.getAttribute("cn")).hasSize(2);
+    assertTrue(isDecoded(lazyEntry, cnType));
+    assertFalse(isDecoded(lazyEntry, snType));
+
+    assertEquals(lazyEntry, entry);
+    assertTrue(isDecoded(lazyEntry, snType));
+  }
+
+  @Test
+  public void testDecodeLazilyWithUncompressedAttributes() throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.0,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user 0",
+        "sn: 0");
+    final ByteStringBuilder buffer = new ByteStringBuilder();
+    entry.encode(buffer, new EntryEncodeConfig(false, false, false));
+
+    final Entry lazyEntry = Entry.decodeLazily(buffer.toByteString(), DirectoryServer.getDefaultCompressedSchema());
+    assertThat(lazyEntry.getUserAttributes().get(DirectoryServer.getAttributeType("cn")))
+        .isNotInstanceOf(LazyAttributeList.class);
+    assertEquals(lazyEntry, entry);
+  }
+
+  @Test
+  public void testDecodeLazilyThenModify() throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.0,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user 0",
+        "sn: 0");
+    final ByteStringBuilder buffer = new ByteStringBuilder();
+    entry.encode(buffer, new EntryEncodeConfig(false, true, true));
+
+    final Entry lazyEntry = Entry.decodeLazily(buffer.toByteString(), DirectoryServer.getDefaultCompressedSchema());
+    lazyEntry.addAttribute(Attributes.create("cn", "user zero"), null);
+    lazyEntry.removeAttribute(DirectoryServer.getAttributeType("sn"));
+    assertThat(lazyEntry.getAttribute("cn")).hasSize(1);
+    assertThat(lazyEntry.getAttribute("cn").get(0)).hasSize(2);
+    assertFalse(lazyEntry.hasAttribute(DirectoryServer.getAttributeType("sn")));
+  }
+
+  @Test
+  public void testDecodeLazilyConcurrently() throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.0,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user 0",
+        "sn: 0");
+    final ByteStringBuilder buffer = new ByteStringBuilder();
+    entry.encode(buffer, new EntryEncodeConfig(false, true, true));
+    final Entry lazyEntry = Entry.decodeLazily(buffer.toByteString(), DirectoryServer.getDefaultCompressedSchema());
+    final List<Attribute> cnAttributes = lazyEntry.getUserAttributes().get(DirectoryServer.getAttributeType("cn"));
+
+    final int nbThreads = 8;
+    final CyclicBarrier barrier = new CyclicBarrier(nbThreads);
+    final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    try
+    {
+      final List<Future<Attribute>> results = new ArrayList<>();
+      for (int i = 0; i < nbThreads; i++)
+      {
+        results.add(executor.submit(new Callable<Attribute>()
+        {
+          @Override
+          public Attribute call() throws Exception
+          {
+            barrier.await();
+            return cnAttributes.get(0);
+          }
+        }));
+      }
+      // All the threads see the same decoded attributes
+      final Attribute decoded = results.get(0).get();
+      for (Future<Attribute> result : results)
+      {
+        assertSame(result.get(), decoded);
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+    assertTrue(((LazyAttributeList) cnAttributes).isDecoded());
+    assertSame(cnAttributes.get(0), lazyEntry.getAttribute("cn").get(0));
+  }
+
+  @Test
+  public void testProcessVirtualAttributesOnDemand() throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.0,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "uid: user.0",
+        "cn: user 0",
+        "sn: 0");
+    final AttributeType entryDNType = DirectoryServer.getAttributeType("entrydn");
+    final Entry eagerEntry = entry.duplicate(true);
+    assertTrue(eagerEntry.hasOperationalAttribute(entryDNType));
+
+    final Entry lazyEntry = entry.duplicate(false);
+    lazyEntry.processVirtualAttributesOnDemand();
+    final Entry userAttrsEntry = lazyEntry.filterEntry(newHashSet("*"), false, false, false);
+    assertFalse(userAttrsEntry.hasAttribute(entryDNType));
+    final Entry cnEntry = lazyEntry.filterEntry(newHashSet("cn"), false, false, false);
+    assertThat(cnEntry.getAttributes()).hasSize(1);
+
+    final Entry operationalAttrsEntry = lazyEntry.filterEntry(newHashSet("+"), false, false, false);
+    assertTrue(operationalAttrsEntry.hasAttribute(entryDNType));
+    assertEquals(lazyEntry.getAttribute(entryDNType), eagerEntry.getAttribute(entryDNType));
+    assertEquals(lazyEntry.getOperationalAttributes().keySet(), eagerEntry.getOperationalAttributes().keySet());
+    assertEquals(lazyEntry, eagerEntry);
+  }
+
+  @Test
+  public void testProcessVirtualAttributesOnDemandSharedWithSearchResultEntry() throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.0,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user 0",
+        "sn: 0");
+    final AttributeType entryDNType = DirectoryServer.getAttributeType("entrydn");
+    entry.processVirtualAttributesOnDemand();
+
+    final SearchResultEntry searchEntry = new SearchResultEntry(entry);
+    assertTrue(searchEntry.hasAttribute(entryDNType));
+    assertTrue(entry.hasAttribute(entryDNType));
+    assertThat(entry.getAttribute(entryDNType)).hasSize(1);
+    assertThat(searchEntry.getAttribute(entryDNType)).hasSize(1);
+  }
+
+  private boolean isDecoded(Entry entry, AttributeType attributeType)
+  {
+    return ((LazyAttributeList) entry.getUserAttributes().get(attributeType)).isDecoded();
+  }
 }
@@ -17,17 +17,21 @@ package org.opends.server.util;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
+import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Random;
 
 import org.opends.server.DirectoryServerTestCase;
 import org.opends.server.TestCaseUtils;
@@ -35,10 +39,12 @@ import org.opends.server.api.Backupable;
 import org.opends.server.types.BackupConfig;
 import org.opends.server.types.BackupDirectory;
 import org.forgerock.opendj.ldap.DN;
+import org.opends.server.types.DirectoryException;
 import org.opends.server.types.RestoreConfig;
 
 import org.opends.server.util.StaticUtils;
 import org.testng.Reporter;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -62,29 +68,45 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     TestCaseUtils.startServer();
   }
 
+  @AfterMethod
+  public void resetArchiveFormat()
+  {
+    System.clearProperty(PROPERTY_BACKUP_CHUNKED_ARCHIVES);
+  }
+
   @DataProvider
   Object[][] backupData() throws Exception {
+    // Zip archives are the ones written by previous versions and must still be restored
+    List<Object[]> cases = new ArrayList<>();
+    cases.addAll(Arrays.asList(backupData(false)));
+    cases.addAll(Arrays.asList(backupData(true)));
+    return cases.toArray(new Object[cases.size()][]);
+  }
+
+  private Object[][] backupData(boolean chunkedArchive) throws Exception {
 
     // For each case is provided
     // - a label identifying the case (not used in method but allow to identify easily the case in IDE)
+    // - whether the archive is written in the chunked format rather than as a zip file
     // - a mock of a backupable (building the mock also involves creating directory and files to backup)
     // - a backup config
     // - a restore config
 
-    String label0 = "nohash";
+    String prefix = chunkedArchive ? "chunked_" : "zip_";
+    String label0 = prefix + "nohash";
     Backupable backupable0 = buildBackupable(createSourceDirectory(label0), 3);
     BackupDirectory backupDir0 = buildBackupDir(label0);
     BackupConfig backupConfig0 = new BackupConfig(backupDir0, BACKUP_ID, false);
     RestoreConfig restoreConfig0 = new RestoreConfig(backupDir0, BACKUP_ID, false);
 
-    String label1 = "unsignedhash";
+    String label1 = prefix + "unsignedhash";
     Backupable backupable1 = buildBackupable(createSourceDirectory(label1), 3);
     BackupDirectory backupDir1 = buildBackupDir(label1);
     BackupConfig backupConfig1 = new BackupConfig(backupDir1, BACKUP_ID, false);
     backupConfig1.setHashData(true);
     RestoreConfig restoreConfig1 = new RestoreConfig(backupDir1, BACKUP_ID, false);
 
-    String label2 = "signedhash";
+    String label2 = prefix + "signedhash";
     Backupable backupable2 = buildBackupable(createSourceDirectory(label2), 3);
     BackupDirectory backupDir2 = buildBackupDir(label2);
     BackupConfig backupConfig2 = new BackupConfig(backupDir2, BACKUP_ID, false);
@@ -92,7 +114,7 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     backupConfig2.setSignHash(true);
     RestoreConfig restoreConfig2 = new RestoreConfig(backupDir2, BACKUP_ID, false);
 
-    String label3 = "encrypted_compressed";
+    String label3 = prefix + "encrypted_compressed";
     Backupable backupable3 = buildBackupable(createSourceDirectory(label3), 3);
     BackupDirectory backupDir3 = buildBackupDir(label3);
     BackupConfig backupConfig3 = new BackupConfig(backupDir3, BACKUP_ID, false);
@@ -101,33 +123,33 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     RestoreConfig restoreConfig3 = new RestoreConfig(backupDir3, BACKUP_ID, false);
 
     // should perform a normal backup in absence of incremental base ID
-    String label4 = "incremental_without_incrementalBaseID";
+    String label4 = prefix + "incremental_without_incrementalBaseID";
     Backupable backupable4 = buildBackupable(createSourceDirectory(label4), 3);
     BackupDirectory backupDir4 = buildBackupDir(label4);
     BackupConfig backupConfig4 = new BackupConfig(backupDir4, BACKUP_ID, true);
     backupConfig4.setHashData(true);
     RestoreConfig restoreConfig4 = new RestoreConfig(backupDir4, BACKUP_ID, false);
 
-    String label5 = "noFiles";
+    String label5 = prefix + "noFiles";
     Backupable backupable5 = buildBackupable(createSourceDirectory(label5), 0);
     BackupDirectory backupDir5 = buildBackupDir(label5);
     BackupConfig backupConfig5 = new BackupConfig(backupDir5, BACKUP_ID, false);
     RestoreConfig restoreConfig5 = new RestoreConfig(backupDir5, BACKUP_ID, false);
 
-    String label6 = "multiple_directories";
+    String label6 = prefix + "multiple_directories";
     Backupable backupable6 = buildBackupableForMultipleDirectoriesCase(createSourceDirectory(label6), 3);
     BackupDirectory backupDir6 = buildBackupDir(label6);
     BackupConfig backupConfig6 = new BackupConfig(backupDir6, BACKUP_ID, false);
     RestoreConfig restoreConfig6 = new RestoreConfig(backupDir6, BACKUP_ID, false);
 
     return new Object[][] {
-      { label0, backupable0, backupConfig0, restoreConfig0 },
-      { label1, backupable1, backupConfig1, restoreConfig1 },
-      { label2, backupable2, backupConfig2, restoreConfig2 },
-      { label3, backupable3, backupConfig3, restoreConfig3 },
-      { label4, backupable4, backupConfig4, restoreConfig4 },
-      { label5, backupable5, backupConfig5, restoreConfig5 },
-      { label6, backupable6, backupConfig6, restoreConfig6 },
+      { label0, chunkedArchive, backupable0, backupConfig0, restoreConfig0 },
+      { label1, chunkedArchive, backupable1, backupConfig1, restoreConfig1 },
+      { label2, chunkedArchive, backupable2, backupConfig2, restoreConfig2 },
+      { label3, chunkedArchive, backupable3, backupConfig3, restoreConfig3 },
+      { label4, chunkedArchive, backupable4, backupConfig4, restoreConfig4 },
+      { label5, chunkedArchive, backupable5, backupConfig5, restoreConfig5 },
+      { label6, chunkedArchive, backupable6, backupConfig6, restoreConfig6 },
     };
   }
 
@@ -137,17 +159,19 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
    * It allows to ensure that a backup can actually be restored.
    */
   @Test(dataProvider="backupData")
-  public void testCreateBackupThenRestoreThenRemove(String label, Backupable backupable, BackupConfig backupConfig,
-      RestoreConfig restoreConfig) throws Exception
+  public void testCreateBackupThenRestoreThenRemove(String label, boolean chunkedArchive, Backupable backupable,
+      BackupConfig backupConfig, RestoreConfig restoreConfig) throws Exception
   {
     BackupManager backupManager = new BackupManager(BACKEND_ID);
 
     // create and check archive files
+    setChunkedArchives(chunkedArchive);
     backupManager.createBackup(backupable, backupConfig);
 
     String backupPath = backupConfig.getBackupDirectory().getPath();
     assertThat(new File(backupPath, getArchiveFileName(BACKUP_ID))).exists();
     assertThat(new File(backupPath, "backup.info")).exists();
+    assertThat(isChunkedArchive(backupConfig.getBackupDirectory(), BACKUP_ID)).isEqualTo(chunkedArchive);
 
     // change content of directory to later check that backup is recovering everything
     removeBackedUpFiles(backupable);
@@ -164,13 +188,27 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     //cleanDirectories(sourceDirectory, backupPath);
   }
 
+  @DataProvider
+  Object[][] archiveFormats()
+  {
+    // the format of the base backup, then the format of the incremental backup
+    return new Object[][] {
+      { false, false },
+      { true, true },
+      // the base backup has been written by a previous version
+      { false, true },
+      { true, false },
+    };
+  }
+
   /**
    * This test encompasses creation, restore and remove of an incremental backup.
    *
    * It allows to ensure that a backup can actually be restored.
    */
-  @Test()
-  public void testCreateIncrementalBackupThenRestoreThenRemove() throws Exception
+  @Test(dataProvider = "archiveFormats")
+  public void testCreateIncrementalBackupThenRestoreThenRemove(boolean chunkedBaseArchive,
+      boolean chunkedIncrementalArchive) throws Exception
   {
     Path sourceDirectory = createSourceDirectory("incremental");
     BackupDirectory backupDir = buildBackupDir("incremental");
@@ -181,6 +219,7 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     String initialBackupId = BACKUP_ID + "_0";
     BackupConfig backupConfig0 = new BackupConfig(backupDir, initialBackupId, true);
 
+    setChunkedArchives(chunkedBaseArchive);
     backupManager.createBackup(backupable0, backupConfig0);
 
     // check archive and info file
@@ -192,8 +231,13 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     // now backup with id "backupID" should depend on backup with id "backupID_0"
     Backupable backupable1 = buildBackupable(sourceDirectory, 4);
     BackupConfig backupConfig1 = new BackupConfig(backupDir, BACKUP_ID, true);
+    backupConfig1.setHashData(true);
 
+    setChunkedArchives(chunkedIncrementalArchive);
     backupManager.createBackup(backupable1, backupConfig1);
+    assertThat(backupDir.getBackupInfo(BACKUP_ID).getDependencies()).containsExactly(initialBackupId);
+    assertThat(isChunkedArchive(backupDir, initialBackupId)).isEqualTo(chunkedBaseArchive);
+    assertThat(isChunkedArchive(backupDir, BACKUP_ID)).isEqualTo(chunkedIncrementalArchive);
 
     assertThat(new File(backupPath, getArchiveFileName(initialBackupId))).exists();
     assertThat(new File(backupPath, getArchiveFileName(BACKUP_ID))).exists();
@@ -218,6 +262,114 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     cleanDirectories(sourceDirectory, backupPath);
   }
 
+  /** Files larger than a chunk are compressed, hashed and encrypted by several chunks in parallel. */
+  @Test
+  public void testCreateBackupThenRestoreOfFilesLargerThanAChunk() throws Exception
+  {
+    Path sourceDirectory = createSourceDirectory("large_files");
+    BackupDirectory backupDir = buildBackupDir("large_files");
+    BackupManager backupManager = new BackupManager(BACKEND_ID);
+    setChunkedArchives(true);
+
+    // compressible content followed by random content, spanning several chunks
+    byte[] content = new byte[3 * 1024 * 1024 + 123];
+    for (int i = 0; i < content.length / 2; i++)
+    {
+      content[i] = (byte) (i % 7);
+    }
+    byte[] random = new byte[content.length - content.length / 2];
+    new Random(0).nextBytes(random);
+    System.arraycopy(random, 0, content, content.length / 2, random.length);
+
+    Path file = sourceDirectory.resolve(FILE_NAME_PREFIX + "large");
+    createFile(file, content);
+    Backupable backupable = mock(Backupable.class);
+    when(backupable.getDirectory()).thenReturn(sourceDirectory.toFile());
+    when(backupable.getFilesToBackup()).thenReturn(new ArrayList<>(Arrays.asList(file)).listIterator());
+    when(backupable.isDirectRestore()).thenReturn(true);
+
+    BackupConfig backupConfig = new BackupConfig(backupDir, BACKUP_ID, false);
+    backupConfig.setHashData(true);
+    backupConfig.setSignHash(true);
+    backupConfig.setEncryptData(true);
+    backupConfig.setCompressData(true);
+    backupManager.createBackup(backupable, backupConfig);
+
+    Files.delete(file);
+    backupManager.restoreBackup(backupable, new RestoreConfig(backupDir, BACKUP_ID, false));
+
+    assertThat(Files.readAllBytes(file)).isEqualTo(content);
+
+    backupManager.removeBackup(backupDir, BACKUP_ID);
+    cleanDirectories(sourceDirectory, backupDir.getPath());
+  }
+
+  /** A chunked archive is only complete once all the files have been written. */
+  @Test(expectedExceptions = DirectoryException.class)
+  public void testRestoreOfTruncatedChunkedArchiveFails() throws Exception
+  {
+    Path sourceDirectory = createSourceDirectory("truncated");
+    BackupDirectory backupDir = buildBackupDir("truncated");
+    BackupManager backupManager = new BackupManager(BACKEND_ID);
+    setChunkedArchives(true);
+    Backupable backupable = buildBackupable(sourceDirectory, 3);
+    backupManager.createBackup(backupable, new BackupConfig(backupDir, BACKUP_ID, false));
+
+    // remove the last record, which marks the end of the archive
+    try (RandomAccessFile archive = new RandomAccessFile(new File(backupDir.getPath(), getArchiveFileName(BACKUP_ID)),
+        "rw"))
+    {
+      assertThat(readLastByte(archive)).isEqualTo((byte) 0);
+      archive.setLength(archive.length() - 1);
+    }
+
+    try
+    {
+      backupManager.restoreBackup(backupable, new RestoreConfig(backupDir, BACKUP_ID, true));
+    }
+    finally
+    {
+      cleanDirectories(sourceDirectory, backupDir.getPath());
+    }
+  }
+
+  @Test
+  public void testFailedBackupDoesNotEndChunkedArchive() throws Exception
+  {
+    Path sourceDirectory = createSourceDirectory("failed");
+    BackupDirectory backupDir = buildBackupDir("failed");
+    BackupManager backupManager = new BackupManager(BACKEND_ID);
+    setChunkedArchives(true);
+
+    // the second file can not be listed
+    final List<Path> files = createFilesInDirectoryToBackup(sourceDirectory, 1);
+    @SuppressWarnings("unchecked")
+    ListIterator<Path> failingIterator = mock(ListIterator.class);
+    when(failingIterator.hasNext()).thenReturn(true);
+    when(failingIterator.next()).thenReturn(files.get(0)).thenThrow(new IllegalStateException("failure"));
+    Backupable backupable = mock(Backupable.class);
+    when(backupable.getDirectory()).thenReturn(sourceDirectory.toFile());
+    when(backupable.getFilesToBackup()).thenReturn(failingIterator);
+
+    try
+    {
+      backupManager.createBackup(backupable, new BackupConfig(backupDir, BACKUP_ID, false));
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    }
+    catch (IllegalStateException expected)
+    {
+      // the archive has been closed without its last record
+    }
+
+    assertThat(backupDir.getBackupInfo(BACKUP_ID)).isNull();
+    try (RandomAccessFile archive = new RandomAccessFile(new File(backupDir.getPath(), getArchiveFileName(BACKUP_ID)),
+        "r"))
+    {
+      assertThat(readLastByte(archive)).isNotEqualTo((byte) 0);
+    }
+    cleanDirectories(sourceDirectory, backupDir.getPath());
+  }
+
   @Test
   public void testCreateDirectoryWithNumericSuffix() throws Exception
   {
@@ -264,6 +416,22 @@ public class BackupManagerTestCase extends DirectoryServerTestCase
     StaticUtils.recursiveDelete(new File(backupPath));
   }
 
+  private void setChunkedArchives(boolean chunkedArchive)
+  {
+    System.setProperty(PROPERTY_BACKUP_CHUNKED_ARCHIVES, String.valueOf(chunkedArchive));
+  }
+
+  private boolean isChunkedArchive(BackupDirectory backupDir, String backupId)
+  {
+    return "chunked".equals(backupDir.getBackupInfo(backupId).getBackupProperties().get("archive_format"));
+  }
+
+  private byte readLastByte(RandomAccessFile file) throws IOException
+  {
+    file.seek(file.length() - 1);
+    return file.readByte();
+  }
+
   private String getArchiveFileName(String backupId)
   {
     return "backup-" + BACKEND_ID + "-" + backupId;
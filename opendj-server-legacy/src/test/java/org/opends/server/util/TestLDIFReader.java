@@ -17,6 +17,7 @@
 package org.opends.server.util;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
@@ -26,6 +27,7 @@ import java.util.List;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.opendj.ldap.ModificationType;
 import org.forgerock.opendj.ldap.schema.AttributeType;
 import org.opends.server.TestCaseUtils;
@@ -35,6 +37,7 @@ import org.opends.server.types.AttributeBuilder;
 import org.opends.server.types.Attributes;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.Entry;
+import org.opends.server.types.LDIFExportConfig;
 import org.opends.server.types.LDIFImportConfig;
 import org.opends.server.types.Modification;
 import org.opends.server.types.ObjectClass;
@@ -405,6 +408,49 @@ public final class TestLDIFReader extends UtilTestCase {
     }
   }
 
+  /**
+   * Attempt to read multiple entries written as binary records.
+   *
+   * @throws Exception
+   *           If the test failed unexpectedly.
+   */
+  @Test(dependsOnMethods = { "testReadEntryMultiple" })
+  public void testReadEntryBinaryRecords() throws Exception {
+    final String ldifString = "dn: cn=john, dc=foo, dc=com\n"
+        + "objectClass: top\n" + "objectClass: person\n" + "cn: john\n"
+        + "sn: smith\n" + "\n" + "dn: cn=anne, dc=foo, dc=com\n"
+        + "objectClass: top\n" + "objectClass: person\n" + "cn: anne\n"
+        + "sn: other\n" + "description: once upon a time in the west\n";
+
+    final ByteStringBuilder records = new ByteStringBuilder();
+    final List<Entry> entries = new ArrayList<>();
+    try (LDIFReader reader = createLDIFReader(ldifString)) {
+      final LDIFExportConfig exportConfig = new LDIFExportConfig(new ByteArrayOutputStream());
+      Entry entry;
+      while ((entry = reader.readEntry()) != null) {
+        Assert.assertTrue(entry.toBinaryRecord(exportConfig, records));
+        entries.add(entry);
+      }
+    }
+
+    final LDIFImportConfig importConfig = new LDIFImportConfig(new ByteArrayInputStream(records.toByteArray()));
+    importConfig.setBinaryFormat(true);
+    try (LDIFReader reader = new LDIFReader(importConfig)) {
+      for (Entry expected : entries) {
+        Entry entry = reader.readEntry();
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(entry.getName(), expected.getName());
+        Assert.assertEquals(entry.toLDIFString(), expected.toLDIFString());
+      }
+      Assert.assertNull(reader.readEntry());
+
+      Assert.assertEquals(reader.getEntriesIgnored(), 0);
+      Assert.assertEquals(reader.getEntriesRead(), 2);
+      Assert.assertEquals(reader.getEntriesRejected(), 0);
+      Assert.assertEquals(reader.getLastEntryLineNumber(), 2);
+    }
+  }
+
   /**
    * Attempt to read multiple changes.
    *